@@ -0,0 +1,67 @@
+package com.jetbrains.jetpad.vclang.benchmark;
+
+import com.jetbrains.jetpad.vclang.core.definition.Definition;
+import com.jetbrains.jetpad.vclang.core.expr.Expression;
+import com.jetbrains.jetpad.vclang.frontend.Concrete;
+import com.jetbrains.jetpad.vclang.typechecking.TypeCheckingTestCase;
+
+import static com.jetbrains.jetpad.vclang.core.expr.ExpressionFactory.Suc;
+import static com.jetbrains.jetpad.vclang.core.expr.ExpressionFactory.Zero;
+
+/**
+ * Gives benchmarks access to the test infrastructure.
+ * Every environment has its own typechecker state which contains the prelude.
+ */
+public class BenchmarkEnvironment extends TypeCheckingTestCase {
+  public Concrete.ClassDefinition resolve(String text) {
+    return resolveNamesClass(text);
+  }
+
+  public TypecheckedModule typecheck(Concrete.ClassDefinition module) {
+    return new TypecheckedModule(typeCheckClass(module));
+  }
+
+  public TypecheckedModule typecheck(String text) {
+    return typecheck(resolve(text));
+  }
+
+  public class TypecheckedModule {
+    private final TypeCheckClassResult myResult;
+
+    private TypecheckedModule(TypeCheckClassResult result) {
+      myResult = result;
+    }
+
+    public Definition getDefinition(String path) {
+      return myResult.getDefinition(path);
+    }
+  }
+
+  public static Expression number(int n) {
+    Expression result = Zero();
+    for (int i = 0; i < n; i++) {
+      result = Suc(result);
+    }
+    return result;
+  }
+
+  /**
+   * Generates a module with {@code size} functions, each of which depends on the previous one,
+   * and a data type with two constructors for every ten functions.
+   * The module does not depend on the prelude.
+   */
+  public static String syntheticModule(int size) {
+    StringBuilder builder = new StringBuilder();
+    builder.append("\\data N | z | s N\n");
+    builder.append("\\function plus (a b : N) : N => \\elim a | z => b | s a => s (plus a b)\n");
+    builder.append("\\function f0 (x : N) : N => x\n");
+    for (int i = 1; i < size; i++) {
+      builder.append("\\function f").append(i).append(" (x : N) : N => plus (f").append(i - 1).append(" (s x)) x\n");
+      if (i % 10 == 0) {
+        builder.append("\\data D").append(i).append(" (A : \\Type0) | nil").append(i).append(" | cons").append(i).append(" A (D").append(i).append(" A)\n");
+        builder.append("\\function g").append(i).append(" (d : D").append(i).append(" N) : N => \\elim d | nil").append(i).append(" => z | cons").append(i).append(" x d => plus (f").append(i).append(" x) (g").append(i).append(" d)\n");
+      }
+    }
+    return builder.toString();
+  }
+}
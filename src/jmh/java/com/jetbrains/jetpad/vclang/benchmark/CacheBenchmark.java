@@ -0,0 +1,113 @@
+package com.jetbrains.jetpad.vclang.benchmark;
+
+import com.jetbrains.jetpad.vclang.core.definition.Definition;
+import com.jetbrains.jetpad.vclang.module.CachingTestCase;
+import com.jetbrains.jetpad.vclang.module.MemoryStorage;
+import com.jetbrains.jetpad.vclang.module.ModulePath;
+import com.jetbrains.jetpad.vclang.module.caching.CacheCodec;
+import com.jetbrains.jetpad.vclang.module.caching.CacheLoadingException;
+import com.jetbrains.jetpad.vclang.module.caching.CachePersistenceException;
+import com.jetbrains.jetpad.vclang.module.caching.LocalizedTypecheckerState;
+import com.jetbrains.jetpad.vclang.term.Abstract;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persisting and loading of the cache of a synthetic module with the given number of definitions.
+ * The size of the cache written with each codec is reported as the {@code bytes} secondary result.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheBenchmark extends CachingTestCase {
+  @Param({"10", "100", "1000"})
+  public int definitions;
+
+  @Param({"none", "gzip"})
+  public String codec;
+
+  private MemoryStorage.SourceId mySourceId;
+  private Abstract.ClassDefinition myModule;
+  private long myCacheSize;
+
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class CacheSize {
+    public long bytes;
+  }
+
+  @Setup(Level.Trial)
+  public void setup() throws CachePersistenceException, IOException {
+    initialize();
+    cacheManager.setCodec(CacheCodec.fromName(codec));
+    mySourceId = storage.add(ModulePath.moduleName("A"), BenchmarkEnvironment.syntheticModule(definitions));
+    myModule = moduleLoader.load(mySourceId);
+    typecheck(myModule);
+    cacheManager.persistCache(mySourceId);
+
+    try (InputStream cache = storage.getCacheInputStream(mySourceId)) {
+      while (cache.read() != -1) {
+        myCacheSize++;
+      }
+    }
+  }
+
+  private LocalizedTypecheckerState<MemoryStorage.SourceId>.LocalTypecheckerState getLocalState() {
+    //noinspection unchecked
+    return ((LocalizedTypecheckerState<MemoryStorage.SourceId>) tcState).getLocal(mySourceId);
+  }
+
+  private boolean reload() throws CacheLoadingException {
+    cacheManager.unloadCache(mySourceId);
+    return cacheManager.loadCache(mySourceId, myModule);
+  }
+
+  @Setup(Level.Invocation)
+  public void prepare() throws CacheLoadingException {
+    if (!reload()) {
+      throw new IllegalStateException("Cache is not available");
+    }
+    getLocalState().loadLazyDefinitions();
+  }
+
+  /**
+   * Serializes every definition of the module.
+   */
+  @Benchmark
+  public boolean persist(CacheSize size) throws CachePersistenceException {
+    // Recording a definition again makes the state out of sync, so the cache is written
+    LocalizedTypecheckerState<MemoryStorage.SourceId>.LocalTypecheckerState localState = getLocalState();
+    Abstract.Definition definition = get(myModule, "f0");
+    Definition typechecked = localState.getTypechecked(definition);
+    localState.reset(definition);
+    localState.record(definition, typechecked);
+    size.bytes = myCacheSize;
+    return cacheManager.persistCache(mySourceId);
+  }
+
+  /**
+   * Reads the index of the module; definitions are deserialized when they are requested.
+   */
+  @Benchmark
+  public boolean loadIndex(CacheSize size) throws CacheLoadingException {
+    size.bytes = myCacheSize;
+    return reload();
+  }
+
+  /**
+   * Reads the index and deserializes every definition of the module.
+   */
+  @Benchmark
+  public boolean loadAll(CacheSize size) throws CacheLoadingException {
+    size.bytes = myCacheSize;
+    boolean result = reload();
+    getLocalState().loadLazyDefinitions();
+    return result;
+  }
+}
@@ -0,0 +1,59 @@
+package com.jetbrains.jetpad.vclang.benchmark;
+
+import com.jetbrains.jetpad.vclang.core.definition.FunctionDefinition;
+import com.jetbrains.jetpad.vclang.core.expr.Expression;
+import com.jetbrains.jetpad.vclang.core.expr.FunCallExpression;
+import com.jetbrains.jetpad.vclang.core.sort.Sort;
+import com.jetbrains.jetpad.vclang.typechecking.implicitargs.equations.Equations;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static com.jetbrains.jetpad.vclang.benchmark.BenchmarkEnvironment.number;
+
+/**
+ * Comparison of terms that are equal only up to reduction.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+// Both the normalizer and the comparison are recursive
+@Fork(value = 1, jvmArgsAppend = "-Xss64m")
+public class ComparisonBenchmark {
+  private static final String MODULE =
+    "\\function + (x y : Nat) : Nat => \\elim x | zero => y | suc x' => suc (x' + y)\n" +
+    "\\function double (x : Nat) : Nat => \\elim x | zero => zero | suc x' => suc (suc (double x'))";
+
+  @Param({"10", "100", "300"})
+  public int n;
+
+  private Expression myPlus;
+  private Expression myDouble;
+  private Expression myNumber;
+
+  @Setup
+  public void setup() {
+    BenchmarkEnvironment.TypecheckedModule module = new BenchmarkEnvironment().typecheck(MODULE);
+    myPlus = new FunCallExpression((FunctionDefinition) module.getDefinition("+"), Sort.SET0, Arrays.asList(number(n), number(n)));
+    myDouble = new FunCallExpression((FunctionDefinition) module.getDefinition("double"), Sort.SET0, Arrays.asList(number(n)));
+    myNumber = number(2 * n);
+  }
+
+  @Benchmark
+  public boolean reducedToNumber() {
+    return Expression.compare(myPlus, myNumber, Equations.CMP.EQ);
+  }
+
+  @Benchmark
+  public boolean bothReduced() {
+    return Expression.compare(myPlus, myDouble, Equations.CMP.EQ);
+  }
+
+  @Benchmark
+  public boolean sameTerm() {
+    return Expression.compare(myDouble, myDouble, Equations.CMP.EQ);
+  }
+}
@@ -0,0 +1,48 @@
+package com.jetbrains.jetpad.vclang.benchmark;
+
+import com.jetbrains.jetpad.vclang.frontend.Concrete;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Inference of implicit arguments in deeply nested applications.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ImplicitArgumentsBenchmark {
+  @Param({"10", "50", "200"})
+  public int depth;
+
+  private String myText;
+  private BenchmarkEnvironment myEnvironment;
+  private Concrete.ClassDefinition myModule;
+
+  @Setup(Level.Trial)
+  public void generate() {
+    StringBuilder term = new StringBuilder("0");
+    for (int i = 0; i < depth; i++) {
+      term.insert(0, i % 2 == 0 ? "id (" : "fst (pair (").append(i % 2 == 0 ? ")" : ") (suc 0))");
+    }
+    myText =
+      "\\function id {A : \\Type} (a : A) => a\n" +
+      "\\data Pair (A B : \\Type) | pair A B\n" +
+      "\\function fst {A B : \\Type} (p : Pair A B) : A => \\elim p | pair a _ => a\n" +
+      "\\function test : Nat => " + term;
+  }
+
+  @Setup(Level.Invocation)
+  public void resolve() {
+    myEnvironment = new BenchmarkEnvironment();
+    myModule = myEnvironment.resolve(myText);
+  }
+
+  @Benchmark
+  public BenchmarkEnvironment.TypecheckedModule typecheck() {
+    return myEnvironment.typecheck(myModule);
+  }
+}
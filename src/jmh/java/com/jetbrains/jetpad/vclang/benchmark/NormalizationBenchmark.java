@@ -0,0 +1,84 @@
+package com.jetbrains.jetpad.vclang.benchmark;
+
+import com.jetbrains.jetpad.vclang.core.definition.FunctionDefinition;
+import com.jetbrains.jetpad.vclang.core.expr.Expression;
+import com.jetbrains.jetpad.vclang.core.expr.FunCallExpression;
+import com.jetbrains.jetpad.vclang.core.expr.visitor.NormalizeVisitor;
+import com.jetbrains.jetpad.vclang.core.sort.Sort;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static com.jetbrains.jetpad.vclang.benchmark.BenchmarkEnvironment.number;
+
+/**
+ * Normalization of recursive functions on natural numbers and of functions that use {@code coe} and {@code @}.
+ */
+// The engine is installed on the thread that runs the benchmark
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+// Both the normalizer and the comparison are recursive
+@Fork(value = 1, jvmArgsAppend = "-Xss64m")
+public class NormalizationBenchmark {
+  private static final String MODULE =
+    "\\function + (x y : Nat) : Nat => \\elim x | zero => y | suc x' => suc (x' + y)\n" +
+    "\\function * (x y : Nat) : Nat => \\elim x | zero => zero | suc x' => (x' * y) + y\n" +
+    "\\function transport (x : Nat) : Nat => \\elim x | zero => zero | suc x' => suc (coe (\\lam _ => Nat) (transport x') right)\n" +
+    "\\function refl (x : Nat) : x = x => path (\\lam _ => x)\n" +
+    "\\function at (x : Nat) : Nat => \\elim x | zero => zero | suc x' => suc (refl (at x') @ left)";
+
+  @Param({"10", "100", "300"})
+  public int n;
+
+  @Param({"SUBSTITUTION", "ENVIRONMENT"})
+  public NormalizeVisitor.Engine engine;
+
+  private Expression myPlus;
+  private Expression myMul;
+  private Expression myTransport;
+  private Expression myAt;
+  private NormalizeVisitor.Engine myPreviousEngine;
+
+  @Setup
+  public void setup() {
+    myPreviousEngine = NormalizeVisitor.setCurrentEngine(engine);
+    BenchmarkEnvironment.TypecheckedModule module = new BenchmarkEnvironment().typecheck(MODULE);
+    myPlus = call(module, "+", number(n), number(n));
+    myMul = call(module, "*", number(n / 10), number(10));
+    myTransport = call(module, "transport", number(n));
+    myAt = call(module, "at", number(n));
+  }
+
+  @TearDown
+  public void tearDown() {
+    NormalizeVisitor.setCurrentEngine(myPreviousEngine);
+  }
+
+  private static Expression call(BenchmarkEnvironment.TypecheckedModule module, String name, Expression... args) {
+    return new FunCallExpression((FunctionDefinition) module.getDefinition(name), Sort.SET0, Arrays.asList(args));
+  }
+
+  @Benchmark
+  public Expression plus() {
+    return myPlus.normalize(NormalizeVisitor.Mode.NF);
+  }
+
+  @Benchmark
+  public Expression mul() {
+    return myMul.normalize(NormalizeVisitor.Mode.NF);
+  }
+
+  @Benchmark
+  public Expression coe() {
+    return myTransport.normalize(NormalizeVisitor.Mode.NF);
+  }
+
+  @Benchmark
+  public Expression at() {
+    return myAt.normalize(NormalizeVisitor.Mode.NF);
+  }
+}
@@ -0,0 +1,74 @@
+package com.jetbrains.jetpad.vclang.benchmark;
+
+import com.jetbrains.jetpad.vclang.core.definition.Constructor;
+import com.jetbrains.jetpad.vclang.core.definition.DataDefinition;
+import com.jetbrains.jetpad.vclang.core.definition.FunctionDefinition;
+import com.jetbrains.jetpad.vclang.core.expr.ConCallExpression;
+import com.jetbrains.jetpad.vclang.core.expr.Expression;
+import com.jetbrains.jetpad.vclang.core.expr.FunCallExpression;
+import com.jetbrains.jetpad.vclang.core.expr.visitor.NormalizeVisitor;
+import com.jetbrains.jetpad.vclang.core.sort.Sort;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Evaluation of functions defined by pattern matching on a data type with many constructors and on nested patterns.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+// The normalizer is recursive
+@Fork(value = 1, jvmArgsAppend = "-Xss64m")
+public class PatternMatchingBenchmark {
+  private static final int DIGITS = 10;
+
+  @Param({"10", "100", "300"})
+  public int n;
+
+  private Expression mySum;
+  private Expression myPairs;
+
+  @Setup
+  public void setup() {
+    StringBuilder text = new StringBuilder("\\data Digit");
+    for (int i = 0; i < DIGITS; i++) {
+      text.append(" | d").append(i);
+    }
+    text.append("\n\\data Digits | nil | cons Digit Digits\n");
+    text.append("\\function value (d : Digit) : Nat => \\elim d");
+    for (int i = 0; i < DIGITS; i++) {
+      text.append(" | d").append(i).append(" => ").append(i);
+    }
+    text.append("\n\\function sum (ds : Digits) : Nat => \\elim ds | nil => 0 | cons d ds => value d + sum ds\n");
+    text.append("\\function pairs (ds : Digits) : Nat => \\elim ds | cons d0 (cons d1 ds) => suc (pairs ds) | cons d9 ds => pairs ds | cons _ ds => pairs ds | nil => 0\n");
+    text.append("\\function + (x y : Nat) : Nat => \\elim x | zero => y | suc x' => suc (x' + y)");
+    BenchmarkEnvironment.TypecheckedModule module = new BenchmarkEnvironment().typecheck(text.toString());
+
+    DataDefinition digit = (DataDefinition) module.getDefinition("Digit");
+    DataDefinition digits = (DataDefinition) module.getDefinition("Digits");
+    Constructor nil = digits.getConstructor("nil");
+    Constructor cons = digits.getConstructor("cons");
+    Expression list = new ConCallExpression(nil, Sort.SET0, Collections.emptyList(), Collections.emptyList());
+    for (int i = 0; i < n; i++) {
+      Expression d = new ConCallExpression(digit.getConstructors().get(i % DIGITS), Sort.SET0, Collections.emptyList(), Collections.emptyList());
+      list = new ConCallExpression(cons, Sort.SET0, Collections.emptyList(), Arrays.asList(d, list));
+    }
+    mySum = new FunCallExpression((FunctionDefinition) module.getDefinition("sum"), Sort.SET0, Collections.singletonList(list));
+    myPairs = new FunCallExpression((FunctionDefinition) module.getDefinition("pairs"), Sort.SET0, Collections.singletonList(list));
+  }
+
+  @Benchmark
+  public Expression sum() {
+    return mySum.normalize(NormalizeVisitor.Mode.NF);
+  }
+
+  @Benchmark
+  public Expression nestedPatterns() {
+    return myPairs.normalize(NormalizeVisitor.Mode.NF);
+  }
+}
@@ -0,0 +1,41 @@
+package com.jetbrains.jetpad.vclang.benchmark;
+
+import com.jetbrains.jetpad.vclang.frontend.Concrete;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Typechecking of a synthetic module with the given number of definitions.
+ * Every invocation typechecks a freshly resolved module in a new state, so the measured time includes the whole module.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TypeCheckingBenchmark {
+  @Param({"10", "100", "1000"})
+  public int definitions;
+
+  private String myText;
+  private BenchmarkEnvironment myEnvironment;
+  private Concrete.ClassDefinition myModule;
+
+  @Setup(Level.Trial)
+  public void generate() {
+    myText = BenchmarkEnvironment.syntheticModule(definitions);
+  }
+
+  @Setup(Level.Invocation)
+  public void resolve() {
+    myEnvironment = new BenchmarkEnvironment();
+    myModule = myEnvironment.resolve(myText);
+  }
+
+  @Benchmark
+  public BenchmarkEnvironment.TypecheckedModule typecheck() {
+    return myEnvironment.typecheck(myModule);
+  }
+}
@@ -24,6 +24,7 @@ public class Constructor extends Definition implements Function {
   private Patterns myPatterns;
   private Body myConditions;
   private List<ClauseBase> myClauses;
+  private int myIndex = -1;
 
   public Constructor(Abstract.Constructor abstractDef, DataDefinition dataType) {
     super(abstractDef, TypeCheckingStatus.HEADER_HAS_ERRORS);
@@ -32,6 +33,18 @@ public class Constructor extends Definition implements Function {
     myClauses = Collections.emptyList();
   }
 
+  /**
+   * @return the position of this constructor in the list of constructors of its data type
+   *         or -1 if it was not added to the data type yet.
+   */
+  public int getIndex() {
+    return myIndex;
+  }
+
+  void setIndex(int index) {
+    myIndex = index;
+  }
+
   public void setBody(Body conditions) {
     myConditions = conditions;
   }
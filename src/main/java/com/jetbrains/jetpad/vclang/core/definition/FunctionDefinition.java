@@ -17,6 +17,7 @@ public class FunctionDefinition extends Definition implements Function {
   private DependentLink myParameters;
   private Expression myResultType;
   private Body myBody;
+  private int myHeight;
 
   public FunctionDefinition(Abstract.Definition abstractDef) {
     super(abstractDef, TypeCheckingStatus.HEADER_HAS_ERRORS);
@@ -32,6 +33,19 @@ public class FunctionDefinition extends Definition implements Function {
     myBody = body;
   }
 
+  /**
+   * The definitional height of a function is greater than the heights of all functions that occur in its body.
+   * Functions without a body and recursive calls have height 0.
+   * The height is used to decide which side of an equation should be unfolded first.
+   */
+  public int getHeight() {
+    return myHeight;
+  }
+
+  public void setHeight(int height) {
+    myHeight = height;
+  }
+
   @Override
   public DependentLink getParameters() {
     return myParameters;
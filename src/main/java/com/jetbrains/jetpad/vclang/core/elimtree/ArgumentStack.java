@@ -0,0 +1,62 @@
+package com.jetbrains.jetpad.vclang.core.elimtree;
+
+import com.jetbrains.jetpad.vclang.core.expr.Expression;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An array-backed stack of arguments that are matched against an {@link ElimTree}.
+ *
+ * There is one stack per thread.
+ * Evaluations may be nested, so every evaluation pushes its arguments on top of the arguments of the enclosing one
+ * and restores the size of the stack when it finishes, even if it fails.
+ */
+public final class ArgumentStack {
+  private static final ThreadLocal<ArgumentStack> ourStacks = ThreadLocal.withInitial(ArgumentStack::new);
+
+  private Expression[] myElements = new Expression[64];
+  private int mySize = 0;
+
+  private ArgumentStack() {
+  }
+
+  public static ArgumentStack get() {
+    return ourStacks.get();
+  }
+
+  public int size() {
+    return mySize;
+  }
+
+  /**
+   * Pushes {@code arguments} in the reverse order, so that the first one is on the top of the stack.
+   */
+  public void pushAll(List<? extends Expression> arguments) {
+    int size = arguments.size();
+    if (mySize + size > myElements.length) {
+      myElements = Arrays.copyOf(myElements, Math.max(myElements.length * 2, mySize + size));
+    }
+    for (int i = size - 1; i >= 0; i--) {
+      myElements[mySize++] = arguments.get(i);
+    }
+  }
+
+  public Expression peek() {
+    return myElements[mySize - 1];
+  }
+
+  public Expression pop() {
+    Expression result = myElements[--mySize];
+    myElements[mySize] = null;
+    return result;
+  }
+
+  /**
+   * Removes all elements above {@code size}.
+   */
+  public void reset(int size) {
+    Arrays.fill(myElements, size, mySize, null);
+    mySize = size;
+  }
+}
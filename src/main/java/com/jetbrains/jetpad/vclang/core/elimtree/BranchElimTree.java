@@ -2,16 +2,37 @@ package com.jetbrains.jetpad.vclang.core.elimtree;
 
 import com.jetbrains.jetpad.vclang.core.context.param.DependentLink;
 import com.jetbrains.jetpad.vclang.core.definition.Constructor;
+import com.jetbrains.jetpad.vclang.core.definition.DataDefinition;
 import com.jetbrains.jetpad.vclang.core.expr.ConCallExpression;
 import com.jetbrains.jetpad.vclang.core.expr.Expression;
 
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
 public class BranchElimTree extends ElimTree {
   private final Map<Constructor, ElimTree> myChildren;
+  private Dispatch myDispatch;
+
+  /**
+   * Children indexed by {@link Constructor#getIndex()}.
+   * It is built once, on the first lookup.
+   * If the children cannot be indexed, {@link #myChildren} is null and lookups use the map.
+   * If this is only because the index of {@link #myPending} is not known yet, the dispatch is built again when it becomes known.
+   */
+  private static class Dispatch {
+    private final DataDefinition myDataType;
+    private final ElimTree[] myChildren;
+    private final ElimTree myOtherwise;
+    private final Constructor myPending;
+
+    private Dispatch(DataDefinition dataType, ElimTree[] children, ElimTree otherwise, Constructor pending) {
+      myDataType = dataType;
+      myChildren = children;
+      myOtherwise = otherwise;
+      myPending = pending;
+    }
+  }
 
   public BranchElimTree(DependentLink parameters, Map<Constructor, ElimTree> children) {
     super(parameters);
@@ -19,7 +40,45 @@ public class BranchElimTree extends ElimTree {
   }
 
   public ElimTree getChild(Constructor constructor) {
-    return myChildren.get(constructor);
+    Dispatch dispatch = myDispatch;
+    if (dispatch == null || dispatch.myPending != null && dispatch.myPending.getIndex() >= 0) {
+      dispatch = makeDispatch();
+      myDispatch = dispatch;
+    }
+
+    if (dispatch.myChildren == null || constructor != null && constructor.getDataType() != dispatch.myDataType) {
+      return myChildren.get(constructor);
+    }
+    if (constructor == null) {
+      return dispatch.myOtherwise;
+    }
+    int index = constructor.getIndex();
+    return index >= 0 && index < dispatch.myChildren.length ? dispatch.myChildren[index] : null;
+  }
+
+  private Dispatch makeDispatch() {
+    DataDefinition dataType = null;
+    int size = 0;
+    for (Constructor constructor : myChildren.keySet()) {
+      if (constructor != null) {
+        if (constructor.getIndex() < 0) {
+          return new Dispatch(null, null, null, constructor);
+        }
+        if (dataType != null && constructor.getDataType() != dataType) {
+          return new Dispatch(null, null, null, null);
+        }
+        dataType = constructor.getDataType();
+        size = Math.max(size, constructor.getIndex() + 1);
+      }
+    }
+
+    ElimTree[] children = new ElimTree[size];
+    for (Map.Entry<Constructor, ElimTree> entry : myChildren.entrySet()) {
+      if (entry.getKey() != null) {
+        children[entry.getKey().getIndex()] = entry.getValue();
+      }
+    }
+    return new Dispatch(dataType, children, myChildren.get(null), null);
   }
 
   public Collection<Map.Entry<Constructor, ElimTree>> getChildren() {
@@ -28,43 +87,80 @@ public class BranchElimTree extends ElimTree {
 
   @Override
   public boolean isWHNF(List<? extends Expression> arguments) {
-    int index = DependentLink.Helper.size(getParameters());
-    if (!arguments.get(index).isWHNF()) {
-      return false;
-    }
-    if (arguments.get(index).isInstance(ConCallExpression.class)) {
-      ConCallExpression conCall = arguments.get(index).cast(ConCallExpression.class);
-      ElimTree elimTree = myChildren.get(conCall.getDefinition());
-      if (elimTree != null) {
-        List<Expression> newArguments = new ArrayList<>(conCall.getDefCallArguments().size() + arguments.size() - index - 1);
-        newArguments.addAll(conCall.getDefCallArguments());
-        newArguments.addAll(arguments.subList(index + 1, arguments.size()));
-        return elimTree.isWHNF(newArguments);
-      } else {
-        elimTree = myChildren.get(null);
-        //noinspection SimplifiableConditionalExpression
-        return elimTree != null ? elimTree.isWHNF(arguments.subList(index, arguments.size())) : true;
+    ArgumentStack stack = ArgumentStack.get();
+    int base = stack.size();
+    stack.pushAll(arguments);
+    try {
+      ElimTree elimTree = this;
+      while (true) {
+        for (DependentLink link = elimTree.getParameters(); link.hasNext(); link = link.getNext()) {
+          stack.pop();
+        }
+        if (elimTree instanceof LeafElimTree) {
+          return false;
+        }
+
+        Expression argument = stack.peek();
+        if (!argument.isWHNF()) {
+          return false;
+        }
+        if (!argument.isInstance(ConCallExpression.class)) {
+          return true;
+        }
+
+        ConCallExpression conCall = argument.cast(ConCallExpression.class);
+        ElimTree child = ((BranchElimTree) elimTree).getChild(conCall.getDefinition());
+        if (child != null) {
+          stack.pop();
+          stack.pushAll(conCall.getDefCallArguments());
+        } else {
+          child = ((BranchElimTree) elimTree).getChild(null);
+          if (child == null) {
+            return true;
+          }
+        }
+        elimTree = child;
       }
+    } finally {
+      stack.reset(base);
     }
-    return true;
   }
 
   @Override
   public Expression getStuckExpression(List<? extends Expression> arguments, Expression expression) {
-    int index = DependentLink.Helper.size(getParameters());
-    if (arguments.get(index).isInstance(ConCallExpression.class)) {
-      ConCallExpression conCall = arguments.get(index).cast(ConCallExpression.class);
-      ElimTree elimTree = myChildren.get(conCall.getDefinition());
-      if (elimTree != null) {
-        List<Expression> newArguments = new ArrayList<>(conCall.getDefCallArguments().size() + arguments.size() - index - 1);
-        newArguments.addAll(conCall.getDefCallArguments());
-        newArguments.addAll(arguments.subList(index + 1, arguments.size()));
-        return elimTree.getStuckExpression(newArguments, expression);
-      } else {
-        elimTree = myChildren.get(null);
-        return elimTree != null ? elimTree.getStuckExpression(arguments.subList(index, arguments.size()), expression) : expression;
+    ArgumentStack stack = ArgumentStack.get();
+    int base = stack.size();
+    stack.pushAll(arguments);
+    try {
+      ElimTree elimTree = this;
+      while (true) {
+        for (DependentLink link = elimTree.getParameters(); link.hasNext(); link = link.getNext()) {
+          stack.pop();
+        }
+        if (elimTree instanceof LeafElimTree) {
+          return null;
+        }
+
+        Expression argument = stack.peek();
+        if (!argument.isInstance(ConCallExpression.class)) {
+          return argument.getStuckExpression();
+        }
+
+        ConCallExpression conCall = argument.cast(ConCallExpression.class);
+        ElimTree child = ((BranchElimTree) elimTree).getChild(conCall.getDefinition());
+        if (child != null) {
+          stack.pop();
+          stack.pushAll(conCall.getDefCallArguments());
+        } else {
+          child = ((BranchElimTree) elimTree).getChild(null);
+          if (child == null) {
+            return expression;
+          }
+        }
+        elimTree = child;
       }
+    } finally {
+      stack.reset(base);
     }
-    return arguments.get(index).getStuckExpression();
   }
 }
@@ -26,8 +26,35 @@ import java.util.List;
 import java.util.Set;
 
 public abstract class Expression implements ExpectedType {
+  private long myVariableSummary;
+  private int myStructuralHash;
+
   public abstract <P, R> R accept(ExpressionVisitor<? super P, ? extends R> visitor, P params);
 
+  /**
+   * @return the {@link VariableSummary} of this expression; it is computed on the first call.
+   */
+  public final long getVariableSummary() {
+    long summary = myVariableSummary;
+    if (summary == 0) {
+      summary = VariableSummary.compute(this);
+      myVariableSummary = summary;
+    }
+    return summary;
+  }
+
+  /**
+   * @return the {@link StructuralHash} of this expression; it is computed on the first call.
+   */
+  public final int getStructuralHash() {
+    int hash = myStructuralHash;
+    if (hash == 0) {
+      hash = StructuralHash.compute(this);
+      myStructuralHash = hash;
+    }
+    return hash;
+  }
+
   @Override
   public String toString() {
     StringBuilder builder = new StringBuilder();
@@ -72,6 +99,14 @@ public abstract class Expression implements ExpectedType {
     }
   }
 
+  /**
+   * Checks if the type of this expression may be a unit type, that is, a class call.
+   * It does not compute the type, so it may return true even if the type is not a class call.
+   */
+  public boolean mayHaveUnitType() {
+    return accept(MayHaveUnitTypeVisitor.INSTANCE, null);
+  }
+
   public boolean findBinding(Variable binding) {
     return accept(new FindBindingVisitor(Collections.singleton(binding)), null) != null;
   }
@@ -84,6 +119,10 @@ public abstract class Expression implements ExpectedType {
     return accept(new StripVisitor(errorReporter), null);
   }
 
+  /**
+   * Replaces solved inference variables with their solutions.
+   * Subexpressions without inference variables are shared with this expression.
+   */
   public Expression copy() {
     return accept(new SubstVisitor(new ExprSubstitution(), LevelSubstitution.EMPTY), null);
   }
@@ -106,7 +145,11 @@ public abstract class Expression implements ExpectedType {
 
   @Override
   public Expression normalize(NormalizeVisitor.Mode mode) {
-    return accept(NormalizeVisitor.INSTANCE, mode);
+    if (mode != NormalizeVisitor.Mode.WHNF) {
+      return accept(NormalizeVisitor.INSTANCE, mode);
+    }
+    WhnfCache cache = WhnfCache.getCurrent();
+    return cache != null ? cache.normalize(this) : NormalizeVisitor.whnf(this);
   }
 
   public static boolean compare(Expression expr1, Expression expr2, Equations.CMP cmp) {
@@ -0,0 +1,233 @@
+package com.jetbrains.jetpad.vclang.core.expr;
+
+import com.google.common.collect.MapMaker;
+import com.jetbrains.jetpad.vclang.core.sort.Level;
+import com.jetbrains.jetpad.vclang.core.sort.Sort;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A table of structurally equal closed expressions, that is, expressions without free bindings and level variables.
+ * Interning is disabled by default; if it is disabled, every method returns its argument.
+ *
+ * Only universes, data type and constructor calls, sorts and levels are interned.
+ * A call is closed if its sort argument is closed and all of its arguments are interned.
+ * Interned expressions are shared, so they must never be modified; substitutions do not change them.
+ *
+ * The table refers to interned expressions weakly, so expressions that are no longer used are removed from it
+ * and it does not grow when the same modules are typechecked again and again.
+ */
+public class ExpressionInterner {
+  private static volatile ExpressionInterner ourInstance = null;
+
+  private static final Object SEPARATOR = new Object();
+
+  // A key refers only to components of its value, which are kept alive by the value itself
+  private final Map<Integer, Level> myLevels = new MapMaker().weakValues().makeMap();
+  private final Map<Key, Object> myTable = new MapMaker().weakValues().makeMap();
+
+  private ExpressionInterner() {
+    internSort(Sort.PROP);
+    internSort(Sort.SET0);
+  }
+
+  /**
+   * Enables or disables interning.
+   * If it is enabled again, a new table is created.
+   */
+  public static void setEnabled(boolean enabled) {
+    ourInstance = enabled ? new ExpressionInterner() : null;
+  }
+
+  public static boolean isEnabled() {
+    return ourInstance != null;
+  }
+
+  /**
+   * @return the number of interned objects that are still in use or 0 if interning is disabled.
+   */
+  public static int getSize() {
+    ExpressionInterner interner = ourInstance;
+    if (interner == null) {
+      return 0;
+    }
+
+    // Sizes of the maps may include entries whose values were collected, but iterators skip them
+    int size = 0;
+    for (Object ignored : interner.myLevels.values()) {
+      size++;
+    }
+    for (Object ignored : interner.myTable.values()) {
+      size++;
+    }
+    return size;
+  }
+
+  public static Level intern(Level level) {
+    ExpressionInterner interner = ourInstance;
+    return interner == null ? level : interner.internLevel(level);
+  }
+
+  public static Sort intern(Sort sort) {
+    ExpressionInterner interner = ourInstance;
+    return interner == null ? sort : interner.internSort(sort);
+  }
+
+  public static UniverseExpression intern(UniverseExpression expr) {
+    ExpressionInterner interner = ourInstance;
+    if (interner == null) {
+      return expr;
+    }
+
+    Sort sort = interner.internSort(expr.getSort());
+    if (!isClosed(sort)) {
+      return expr;
+    }
+    return interner.put(new Key(UniverseExpression.class, sort), sort == expr.getSort() ? expr : new UniverseExpression(sort));
+  }
+
+  public static DataCallExpression intern(DataCallExpression expr) {
+    ExpressionInterner interner = ourInstance;
+    if (interner == null || !isClosed(expr.getSortArgument()) || !interner.areInterned(expr.getDefCallArguments())) {
+      return expr;
+    }
+    return interner.put(interner.key(expr), expr);
+  }
+
+  public static ConCallExpression intern(ConCallExpression expr) {
+    ExpressionInterner interner = ourInstance;
+    if (interner == null || !isClosed(expr.getSortArgument()) || !interner.areInterned(expr.getDataTypeArguments()) || !interner.areInterned(expr.getDefCallArguments())) {
+      return expr;
+    }
+    return interner.put(interner.key(expr), expr);
+  }
+
+  /**
+   * @return true if {@code expr} is an interned expression; such an expression is closed.
+   */
+  public static boolean isInterned(Expression expr) {
+    ExpressionInterner interner = ourInstance;
+    return interner != null && interner.contains(expr);
+  }
+
+  private static boolean isClosed(Sort sort) {
+    return sort.getPLevel().isClosed() && sort.getHLevel().isClosed();
+  }
+
+  private Level internLevel(Level level) {
+    if (!level.isClosed() || level.isInfinity()) {
+      return level;
+    }
+    Level result = myLevels.putIfAbsent(level.getConstant(), level);
+    return result == null ? level : result;
+  }
+
+  private Sort internSort(Sort sort) {
+    if (!isClosed(sort)) {
+      return sort;
+    }
+    Level pLevel = internLevel(sort.getPLevel());
+    Level hLevel = internLevel(sort.getHLevel());
+    return put(new Key(Sort.class, pLevel, hLevel), pLevel == sort.getPLevel() && hLevel == sort.getHLevel() ? sort : new Sort(pLevel, hLevel));
+  }
+
+  private <T> T put(Key key, T value) {
+    Object result = myTable.putIfAbsent(key, value);
+    //noinspection unchecked
+    return result == null ? value : (T) result;
+  }
+
+  private boolean contains(Expression expr) {
+    Key key;
+    if (expr instanceof UniverseExpression) {
+      key = new Key(UniverseExpression.class, internSort(((UniverseExpression) expr).getSort()));
+    } else if (expr instanceof DataCallExpression) {
+      key = key((DataCallExpression) expr);
+    } else if (expr instanceof ConCallExpression) {
+      key = key((ConCallExpression) expr);
+    } else {
+      return false;
+    }
+    return myTable.get(key) == expr;
+  }
+
+  private boolean areInterned(List<? extends Expression> exprs) {
+    for (Expression expr : exprs) {
+      if (!contains(expr)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private Key key(DataCallExpression expr) {
+    List<? extends Expression> args = expr.getDefCallArguments();
+    Object[] items = new Object[args.size() + 2];
+    items[0] = expr.getDefinition();
+    items[1] = internSort(expr.getSortArgument());
+    for (int i = 0; i < args.size(); i++) {
+      items[i + 2] = args.get(i);
+    }
+    return new Key(items);
+  }
+
+  private Key key(ConCallExpression expr) {
+    List<? extends Expression> dataTypeArgs = expr.getDataTypeArguments();
+    List<? extends Expression> args = expr.getDefCallArguments();
+    Object[] items = new Object[dataTypeArgs.size() + args.size() + 3];
+    items[0] = expr.getDefinition();
+    items[1] = internSort(expr.getSortArgument());
+    int i = 2;
+    for (Expression arg : dataTypeArgs) {
+      items[i++] = arg;
+    }
+    items[i++] = SEPARATOR;
+    for (Expression arg : args) {
+      items[i++] = arg;
+    }
+    return new Key(items);
+  }
+
+  /**
+   * Compares its components by identity.
+   */
+  private static class Key {
+    private final Object[] myItems;
+    private final int myHashCode;
+
+    Key(Object... items) {
+      myItems = items;
+      int hashCode = 1;
+      for (Object item : items) {
+        hashCode = 31 * hashCode + System.identityHashCode(item);
+      }
+      myHashCode = hashCode;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Object[] items = ((Key) obj).myItems;
+      if (items.length != myItems.length) {
+        return false;
+      }
+      for (int i = 0; i < items.length; i++) {
+        if (items[i] != myItems[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public int hashCode() {
+      return myHashCode;
+    }
+  }
+}
@@ -4,6 +4,7 @@ import com.jetbrains.jetpad.vclang.core.context.binding.inference.InferenceVaria
 import com.jetbrains.jetpad.vclang.core.definition.ClassField;
 import com.jetbrains.jetpad.vclang.core.expr.visitor.ExpressionVisitor;
 import com.jetbrains.jetpad.vclang.core.expr.visitor.NormalizeVisitor;
+import com.jetbrains.jetpad.vclang.core.expr.visitor.WhnfCache;
 import com.jetbrains.jetpad.vclang.typechecking.implicitargs.equations.Equations;
 
 public class InferenceReferenceExpression extends Expression {
@@ -45,6 +46,10 @@ public class InferenceReferenceExpression extends Expression {
 
   public void setSubstExpression(Expression substExpression) {
     mySubstExpression = substExpression;
+    WhnfCache cache = WhnfCache.getCurrent();
+    if (cache != null) {
+      cache.invalidateInferenceResults();
+    }
   }
 
   @Override
@@ -0,0 +1,86 @@
+package com.jetbrains.jetpad.vclang.core.expr;
+
+import com.jetbrains.jetpad.vclang.core.expr.visitor.ExpressionVisitor;
+import com.jetbrains.jetpad.vclang.core.sort.Sort;
+import com.jetbrains.jetpad.vclang.term.Prelude;
+
+import java.math.BigInteger;
+import java.util.Collections;
+
+/**
+ * A natural number literal in binary representation.
+ *
+ * A literal behaves as the corresponding chain of {@link Prelude#SUC} and {@link Prelude#ZERO}:
+ * {@code isInstance(ConCallExpression.class)} is true and {@code cast(ConCallExpression.class)} returns
+ * either {@code zero} or {@code suc} applied to the predecessor literal.
+ * The view is built on demand, so pattern matching on a literal takes constant time per constructor.
+ */
+public class IntegerExpression extends Expression {
+  private final BigInteger myInteger;
+  private ConCallExpression myConCall;
+
+  public IntegerExpression(BigInteger integer) {
+    assert integer.signum() >= 0;
+    myInteger = integer;
+  }
+
+  public IntegerExpression(int integer) {
+    this(BigInteger.valueOf(integer));
+  }
+
+  public BigInteger getInteger() {
+    return myInteger;
+  }
+
+  public boolean isZero() {
+    return myInteger.signum() == 0;
+  }
+
+  public IntegerExpression pred() {
+    assert !isZero();
+    return new IntegerExpression(myInteger.subtract(BigInteger.ONE));
+  }
+
+  public IntegerExpression suc() {
+    return new IntegerExpression(myInteger.add(BigInteger.ONE));
+  }
+
+  /**
+   * @return either {@code zero} or {@code suc} applied to the predecessor of this literal.
+   */
+  public ConCallExpression getConCall() {
+    ConCallExpression conCall = myConCall;
+    if (conCall == null) {
+      conCall = isZero()
+        ? new ConCallExpression(Prelude.ZERO, Sort.SET0, Collections.emptyList(), Collections.emptyList())
+        : new ConCallExpression(Prelude.SUC, Sort.SET0, Collections.emptyList(), Collections.singletonList(pred()));
+      myConCall = conCall;
+    }
+    return conCall;
+  }
+
+  @Override
+  public <P, R> R accept(ExpressionVisitor<? super P, ? extends R> visitor, P params) {
+    return visitor.visitInteger(this, params);
+  }
+
+  @Override
+  public <T extends Expression> T cast(Class<T> clazz) {
+    return clazz.isInstance(this) ? clazz.cast(this) : getConCall().cast(clazz);
+  }
+
+  @Override
+  public <T extends Expression> boolean isInstance(Class<T> clazz) {
+    return clazz.isInstance(this) || clazz == ConCallExpression.class || clazz == DefCallExpression.class;
+  }
+
+  @Override
+  public boolean isWHNF() {
+    return true;
+  }
+
+  @Override
+  public Expression getStuckExpression() {
+    return null;
+  }
+}
@@ -0,0 +1,215 @@
+package com.jetbrains.jetpad.vclang.core.expr;
+
+import com.jetbrains.jetpad.vclang.core.context.param.DependentLink;
+import com.jetbrains.jetpad.vclang.core.definition.ClassField;
+import com.jetbrains.jetpad.vclang.core.definition.Constructor;
+import com.jetbrains.jetpad.vclang.core.elimtree.BranchElimTree;
+import com.jetbrains.jetpad.vclang.core.elimtree.ElimTree;
+import com.jetbrains.jetpad.vclang.core.elimtree.LeafElimTree;
+import com.jetbrains.jetpad.vclang.core.expr.visitor.ExpressionVisitor;
+import com.jetbrains.jetpad.vclang.core.sort.Level;
+import com.jetbrains.jetpad.vclang.core.sort.Sort;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * A hash of the structure of an expression that does not depend on names of bindings, so alpha-equivalent expressions have the same hash.
+ *
+ * References to bindings and inference variables are not distinguished, so the hash of an expression is determined by its subexpressions
+ * and does not change when an inference variable is solved.
+ * Expressions with different hashes may still be convertible, so the hash can be used only to find candidates for equality.
+ *
+ * Hashes are computed on demand and cached in expressions, see {@link Expression#getStructuralHash()}.
+ */
+public final class StructuralHash {
+  private static final int APP = 1;
+  private static final int DEF_CALL = 2;
+  private static final int CLASS_CALL = 3;
+  private static final int REFERENCE = 4;
+  private static final int INFERENCE_REFERENCE = 5;
+  private static final int LAM = 6;
+  private static final int PI = 7;
+  private static final int SIGMA = 8;
+  private static final int UNIVERSE = 9;
+  private static final int ERROR = 10;
+  private static final int TUPLE = 11;
+  private static final int PROJ = 12;
+  private static final int NEW = 13;
+  private static final int LET = 14;
+  private static final int CASE = 15;
+  private static final int INTEGER = 16;
+
+  private StructuralHash() {
+  }
+
+  static int compute(Expression expression) {
+    int hash = expression.accept(Hasher.INSTANCE, null);
+    // 0 means that the hash is not computed yet
+    return hash == 0 ? 1 : hash;
+  }
+
+  private static int combine(int hash, int value) {
+    return 31 * hash + value;
+  }
+
+  private static int hash(Collection<? extends Expression> exprs, int hash) {
+    for (Expression expr : exprs) {
+      hash = combine(hash, expr.getStructuralHash());
+    }
+    return hash;
+  }
+
+  private static int hash(Level level) {
+    if (level.isInfinity()) {
+      return -1;
+    }
+    return combine(combine(System.identityHashCode(level.getVar()), level.getConstant()), level.getMaxConstant());
+  }
+
+  private static int hash(Sort sort) {
+    return combine(hash(sort.getPLevel()), hash(sort.getHLevel()));
+  }
+
+  private static int hash(DependentLink link, int hash) {
+    for (; link.hasNext(); link = link.getNext()) {
+      hash = combine(hash, link.isExplicit() ? 1 : 0);
+      hash = combine(hash, link.getTypeExpr().getStructuralHash());
+    }
+    return hash;
+  }
+
+  private static int hash(ElimTree elimTree, int hash) {
+    hash = hash(elimTree.getParameters(), hash);
+    if (elimTree instanceof LeafElimTree) {
+      return combine(hash, ((LeafElimTree) elimTree).getExpression().getStructuralHash());
+    }
+    for (Map.Entry<Constructor, ElimTree> entry : ((BranchElimTree) elimTree).getChildren()) {
+      hash = hash(entry.getValue(), combine(hash, System.identityHashCode(entry.getKey())));
+    }
+    return hash;
+  }
+
+  private static class Hasher implements ExpressionVisitor<Void, Integer> {
+    private static final Hasher INSTANCE = new Hasher();
+
+    private Integer visitDefCall(DefCallExpression expr, int hash) {
+      hash = combine(hash, System.identityHashCode(expr.getDefinition()));
+      hash = combine(hash, hash(expr.getSortArgument()));
+      return hash(expr.getDefCallArguments(), hash);
+    }
+
+    @Override
+    public Integer visitApp(AppExpression expr, Void params) {
+      return combine(combine(APP, expr.getFunction().getStructuralHash()), expr.getArgument().getStructuralHash());
+    }
+
+    @Override
+    public Integer visitFunCall(FunCallExpression expr, Void params) {
+      return visitDefCall(expr, DEF_CALL);
+    }
+
+    @Override
+    public Integer visitConCall(ConCallExpression expr, Void params) {
+      return visitDefCall(expr, hash(expr.getDataTypeArguments(), DEF_CALL));
+    }
+
+    @Override
+    public Integer visitDataCall(DataCallExpression expr, Void params) {
+      return visitDefCall(expr, DEF_CALL);
+    }
+
+    @Override
+    public Integer visitFieldCall(FieldCallExpression expr, Void params) {
+      return visitDefCall(expr, DEF_CALL);
+    }
+
+    @Override
+    public Integer visitClassCall(ClassCallExpression expr, Void params) {
+      // The order of implementations does not matter
+      int implementations = 0;
+      for (Map.Entry<ClassField, Expression> entry : expr.getImplementedHere().entrySet()) {
+        implementations += combine(System.identityHashCode(entry.getKey()), entry.getValue().getStructuralHash());
+      }
+      return combine(visitDefCall(expr, CLASS_CALL), implementations);
+    }
+
+    @Override
+    public Integer visitReference(ReferenceExpression expr, Void params) {
+      return REFERENCE;
+    }
+
+    @Override
+    public Integer visitInferenceReference(InferenceReferenceExpression expr, Void params) {
+      return INFERENCE_REFERENCE;
+    }
+
+    @Override
+    public Integer visitLam(LamExpression expr, Void params) {
+      return combine(hash(expr.getParameters(), combine(LAM, hash(expr.getResultSort()))), expr.getBody().getStructuralHash());
+    }
+
+    @Override
+    public Integer visitPi(PiExpression expr, Void params) {
+      return combine(hash(expr.getParameters(), combine(PI, hash(expr.getResultSort()))), expr.getCodomain().getStructuralHash());
+    }
+
+    @Override
+    public Integer visitSigma(SigmaExpression expr, Void params) {
+      return hash(expr.getParameters(), combine(SIGMA, hash(expr.getSort())));
+    }
+
+    @Override
+    public Integer visitUniverse(UniverseExpression expr, Void params) {
+      return combine(UNIVERSE, hash(expr.getSort()));
+    }
+
+    @Override
+    public Integer visitError(ErrorExpression expr, Void params) {
+      return ERROR;
+    }
+
+    @Override
+    public Integer visitTuple(TupleExpression expr, Void params) {
+      return combine(hash(expr.getFields(), TUPLE), expr.getSigmaType().getStructuralHash());
+    }
+
+    @Override
+    public Integer visitProj(ProjExpression expr, Void params) {
+      return combine(combine(PROJ, expr.getField()), expr.getExpression().getStructuralHash());
+    }
+
+    @Override
+    public Integer visitNew(NewExpression expr, Void params) {
+      return combine(NEW, expr.getExpression().getStructuralHash());
+    }
+
+    @Override
+    public Integer visitLet(LetExpression expr, Void params) {
+      int hash = LET;
+      for (LetClause clause : expr.getClauses()) {
+        hash = combine(hash, clause.getExpression().getStructuralHash());
+      }
+      return combine(hash, expr.getExpression().getStructuralHash());
+    }
+
+    @Override
+    public Integer visitCase(CaseExpression expr, Void params) {
+      int hash = hash(expr.getArguments(), CASE);
+      hash = hash(expr.getParameters(), hash);
+      hash = combine(hash, expr.getResultType().getStructuralHash());
+      return hash(expr.getElimTree(), hash);
+    }
+
+    @Override
+    public Integer visitOfType(OfTypeExpression expr, Void params) {
+      // OfTypeExpression is transparent
+      return expr.getExpression().getStructuralHash();
+    }
+
+    @Override
+    public Integer visitInteger(IntegerExpression expr, Void params) {
+      return combine(INTEGER, expr.getInteger().hashCode());
+    }
+  }
+}
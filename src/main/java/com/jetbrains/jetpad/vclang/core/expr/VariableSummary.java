@@ -0,0 +1,249 @@
+package com.jetbrains.jetpad.vclang.core.expr;
+
+import com.jetbrains.jetpad.vclang.core.context.binding.Variable;
+import com.jetbrains.jetpad.vclang.core.context.param.DependentLink;
+import com.jetbrains.jetpad.vclang.core.definition.Constructor;
+import com.jetbrains.jetpad.vclang.core.elimtree.BranchElimTree;
+import com.jetbrains.jetpad.vclang.core.elimtree.ElimTree;
+import com.jetbrains.jetpad.vclang.core.elimtree.LeafElimTree;
+import com.jetbrains.jetpad.vclang.core.expr.type.Type;
+import com.jetbrains.jetpad.vclang.core.expr.type.TypeExpression;
+import com.jetbrains.jetpad.vclang.core.expr.visitor.ExpressionVisitor;
+import com.jetbrains.jetpad.vclang.core.sort.Sort;
+import com.jetbrains.jetpad.vclang.term.Prelude;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * A conservative summary of the variables that occur in an expression, packed into a {@code long}.
+ *
+ * The lower {@link #VARIABLE_BITS} bits form a bloom filter over every variable that occurs in the expression,
+ * that is, bindings, definitions and class fields, both free and bound.
+ * If the bit of a variable is not set, the variable does not occur in the expression.
+ * The remaining bits are flags: {@link #LEVELS} is set if some sort in the expression has level variables
+ * and {@link #UNSTABLE} is set if the expression contains an inference reference,
+ * so it may change when the inference variable is solved.
+ *
+ * Summaries are computed on demand and cached in expressions, see {@link Expression#getVariableSummary()}.
+ */
+public final class VariableSummary {
+  public static final int VARIABLE_BITS = 61;
+  public static final long VARIABLES = (1L << VARIABLE_BITS) - 1;
+  public static final long LEVELS = 1L << VARIABLE_BITS;
+  public static final long UNSTABLE = 1L << (VARIABLE_BITS + 1);
+  static final long COMPUTED = 1L << (VARIABLE_BITS + 2);
+
+  private VariableSummary() {
+  }
+
+  public static long of(Variable variable) {
+    int hash = System.identityHashCode(variable) * 0x9E3779B9;
+    return 1L << Integer.remainderUnsigned(hash ^ (hash >>> 16), VARIABLE_BITS);
+  }
+
+  public static long of(Collection<? extends Variable> variables) {
+    long result = 0;
+    for (Variable variable : variables) {
+      result |= of(variable);
+    }
+    return result;
+  }
+
+  /**
+   * Checks if an expression with the given summary may contain one of the variables of {@code mask}
+   * or may be affected by a level substitution if {@code levels} is true.
+   */
+  public static boolean mayContain(long summary, long mask, boolean levels) {
+    return (summary & mask) != 0 || (summary & UNSTABLE) != 0 || levels && (summary & LEVELS) != 0;
+  }
+
+  static long compute(Expression expression) {
+    Collector collector = new Collector();
+    expression.accept(collector, null);
+    return collector.mySummary | COMPUTED;
+  }
+
+  private static class Collector implements ExpressionVisitor<Void, Void> {
+    private long mySummary;
+
+    private void add(Expression expr) {
+      mySummary |= expr.getVariableSummary();
+    }
+
+    private void add(Collection<? extends Expression> exprs) {
+      for (Expression expr : exprs) {
+        add(expr);
+      }
+    }
+
+    private void add(Sort sort) {
+      if (!sort.getPLevel().isClosed() || !sort.getHLevel().isClosed()) {
+        mySummary |= LEVELS;
+      }
+    }
+
+    private void add(DependentLink link) {
+      for (; link.hasNext(); link = link.getNext()) {
+        link = link.getNextTyped(null);
+        Type type = link.getType();
+        add(type.getExpr());
+        if (type instanceof TypeExpression) {
+          add(type.getSortOfType());
+        }
+      }
+    }
+
+    private void add(ElimTree elimTree) {
+      add(elimTree.getParameters());
+      if (elimTree instanceof LeafElimTree) {
+        add(((LeafElimTree) elimTree).getExpression());
+      } else {
+        for (Map.Entry<Constructor, ElimTree> entry : ((BranchElimTree) elimTree).getChildren()) {
+          add(entry.getValue());
+        }
+      }
+    }
+
+    private Void visitDefCall(DefCallExpression expr) {
+      mySummary |= of(expr.getDefinition());
+      add(expr.getSortArgument());
+      add(expr.getDefCallArguments());
+      return null;
+    }
+
+    @Override
+    public Void visitApp(AppExpression expr, Void params) {
+      add(expr.getFunction());
+      add(expr.getArgument());
+      return null;
+    }
+
+    @Override
+    public Void visitFunCall(FunCallExpression expr, Void params) {
+      return visitDefCall(expr);
+    }
+
+    @Override
+    public Void visitConCall(ConCallExpression expr, Void params) {
+      add(expr.getDataTypeArguments());
+      return visitDefCall(expr);
+    }
+
+    @Override
+    public Void visitDataCall(DataCallExpression expr, Void params) {
+      return visitDefCall(expr);
+    }
+
+    @Override
+    public Void visitFieldCall(FieldCallExpression expr, Void params) {
+      return visitDefCall(expr);
+    }
+
+    @Override
+    public Void visitClassCall(ClassCallExpression expr, Void params) {
+      add(expr.getImplementedHere().values());
+      add(expr.getSort());
+      return visitDefCall(expr);
+    }
+
+    @Override
+    public Void visitReference(ReferenceExpression expr, Void params) {
+      mySummary |= of(expr.getBinding());
+      return null;
+    }
+
+    @Override
+    public Void visitInferenceReference(InferenceReferenceExpression expr, Void params) {
+      mySummary |= UNSTABLE;
+      return null;
+    }
+
+    @Override
+    public Void visitLam(LamExpression expr, Void params) {
+      add(expr.getResultSort());
+      add(expr.getParameters());
+      add(expr.getBody());
+      return null;
+    }
+
+    @Override
+    public Void visitPi(PiExpression expr, Void params) {
+      add(expr.getResultSort());
+      add(expr.getParameters());
+      add(expr.getCodomain());
+      return null;
+    }
+
+    @Override
+    public Void visitSigma(SigmaExpression expr, Void params) {
+      add(expr.getSort());
+      add(expr.getParameters());
+      return null;
+    }
+
+    @Override
+    public Void visitUniverse(UniverseExpression expr, Void params) {
+      add(expr.getSort());
+      return null;
+    }
+
+    @Override
+    public Void visitError(ErrorExpression expr, Void params) {
+      if (expr.getExpression() != null) {
+        add(expr.getExpression());
+      }
+      return null;
+    }
+
+    @Override
+    public Void visitTuple(TupleExpression expr, Void params) {
+      add(expr.getFields());
+      add(expr.getSigmaType());
+      return null;
+    }
+
+    @Override
+    public Void visitProj(ProjExpression expr, Void params) {
+      add(expr.getExpression());
+      return null;
+    }
+
+    @Override
+    public Void visitNew(NewExpression expr, Void params) {
+      add(expr.getExpression());
+      return null;
+    }
+
+    @Override
+    public Void visitLet(LetExpression expr, Void params) {
+      for (LetClause clause : expr.getClauses()) {
+        add(clause.getExpression());
+      }
+      add(expr.getExpression());
+      return null;
+    }
+
+    @Override
+    public Void visitCase(CaseExpression expr, Void params) {
+      add(expr.getArguments());
+      add(expr.getParameters());
+      add(expr.getResultType());
+      add(expr.getElimTree());
+      return null;
+    }
+
+    @Override
+    public Void visitOfType(OfTypeExpression expr, Void params) {
+      add(expr.getExpression());
+      add(expr.getTypeOf());
+      return null;
+    }
+
+    @Override
+    public Void visitInteger(IntegerExpression expr, Void params) {
+      mySummary |= of(Prelude.ZERO) | of(Prelude.SUC);
+      return null;
+    }
+  }
+}
@@ -7,6 +7,7 @@ import com.jetbrains.jetpad.vclang.term.Abstract;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.math.BigInteger;
 import java.util.List;
 
 public interface AbstractExpressionFactory {
@@ -35,7 +36,7 @@ public interface AbstractExpressionFactory {
   @Nonnull Abstract.Expression makeSigma(@Nonnull List<? extends Abstract.TypeParameter> arguments);
   @Nonnull Abstract.Expression makeProj(@Nonnull Abstract.Expression expr, int field);
   @Nonnull Abstract.Expression makeNew(@Nonnull Abstract.Expression expr);
-  @Nonnull Abstract.Expression makeNumericalLiteral(int num);
+  @Nonnull Abstract.Expression makeNumericalLiteral(@Nonnull BigInteger num);
   @Nonnull Abstract.Expression makeLet(@Nonnull List<? extends Abstract.LetClause> clauses, @Nonnull Abstract.Expression expr);
   @Nonnull Abstract.LetClause makeLetClause(@Nonnull String name, @Nonnull List<? extends Abstract.Parameter> arguments, @Nonnull Abstract.Expression term);
   @Nonnull Abstract.Expression makeCase(@Nonnull List<? extends Abstract.Expression> expressions, @Nonnull List<? extends Abstract.FunctionClause> clauses);
@@ -8,6 +8,7 @@ import com.jetbrains.jetpad.vclang.term.Abstract;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.math.BigInteger;
 import java.util.List;
 
 import static com.jetbrains.jetpad.vclang.frontend.ConcreteExpressionFactory.*;
@@ -166,7 +167,7 @@ public class ConcreteExpressionFactory implements AbstractExpressionFactory {
 
   @Nonnull
   @Override
-  public Abstract.Expression makeNumericalLiteral(int num) {
+  public Abstract.Expression makeNumericalLiteral(@Nonnull BigInteger num) {
     return cNum(num);
   }
 
@@ -21,6 +21,10 @@ public class CollectFreeVariablesVisitor extends BaseExpressionVisitor<Set<Varia
     return freeVars == null ? Collections.emptySet() : freeVars;
   }
 
+  private static boolean hasVariables(Expression expr) {
+    return VariableSummary.mayContain(expr.getVariableSummary(), VariableSummary.VARIABLES, false);
+  }
+
   private void addFreeVariables(Binding binding, Set<Variable> variables) {
     if (!variables.isEmpty()) {
       myFreeVariables.computeIfAbsent(binding, k -> new HashSet<>()).addAll(variables);
@@ -29,6 +33,9 @@ public class CollectFreeVariablesVisitor extends BaseExpressionVisitor<Set<Varia
 
   @Override
   public Void visitApp(AppExpression expr, Set<Variable> variables) {
+    if (!hasVariables(expr)) {
+      return null;
+    }
     expr.getFunction().accept(this, variables);
     expr.getArgument().accept(this, variables);
     return null;
@@ -73,18 +80,27 @@ public class CollectFreeVariablesVisitor extends BaseExpressionVisitor<Set<Varia
 
   @Override
   public Void visitLam(LamExpression expr, Set<Variable> variables) {
+    if (!hasVariables(expr)) {
+      return null;
+    }
     visitParameters(expr.getParameters(), vars -> expr.getBody().accept(this, vars), variables);
     return null;
   }
 
   @Override
   public Void visitPi(PiExpression expr, Set<Variable> variables) {
+    if (!hasVariables(expr)) {
+      return null;
+    }
     visitParameters(expr.getParameters(), vars -> expr.getCodomain().accept(this, vars), variables);
     return null;
   }
 
   @Override
   public Void visitSigma(SigmaExpression expr, Set<Variable> variables) {
+    if (!hasVariables(expr)) {
+      return null;
+    }
     visitParameters(expr.getParameters(), null, variables);
     return null;
   }
@@ -104,6 +120,9 @@ public class CollectFreeVariablesVisitor extends BaseExpressionVisitor<Set<Varia
 
   @Override
   public Void visitTuple(TupleExpression expr, Set<Variable> variables) {
+    if (!hasVariables(expr)) {
+      return null;
+    }
     visitSigma(expr.getSigmaType(), variables);
     for (Expression field : expr.getFields()) {
       field.accept(this, variables);
@@ -113,6 +132,9 @@ public class CollectFreeVariablesVisitor extends BaseExpressionVisitor<Set<Varia
 
   @Override
   public Void visitProj(ProjExpression expr, Set<Variable> variables) {
+    if (!hasVariables(expr)) {
+      return null;
+    }
     expr.getExpression().accept(this, variables);
     return null;
   }
@@ -125,6 +147,9 @@ public class CollectFreeVariablesVisitor extends BaseExpressionVisitor<Set<Varia
 
   @Override
   public Void visitLet(LetExpression expr, Set<Variable> variables) {
+    if (!hasVariables(expr)) {
+      return null;
+    }
     visitLetClauses(0, expr, variables);
     return null;
   }
@@ -148,6 +173,9 @@ public class CollectFreeVariablesVisitor extends BaseExpressionVisitor<Set<Varia
 
   @Override
   public Void visitCase(CaseExpression expr, Set<Variable> variables) {
+    if (!hasVariables(expr)) {
+      return null;
+    }
     for (Expression arg : expr.getArguments()) {
       arg.accept(this, variables);
     }
@@ -168,6 +196,9 @@ public class CollectFreeVariablesVisitor extends BaseExpressionVisitor<Set<Varia
 
   @Override
   public Void visitOfType(OfTypeExpression expr, Set<Variable> variables) {
+    if (!hasVariables(expr)) {
+      return null;
+    }
     expr.getExpression().accept(this, variables);
     expr.getTypeOf().accept(this, variables);
     return null;
@@ -199,4 +230,9 @@ public class CollectFreeVariablesVisitor extends BaseExpressionVisitor<Set<Varia
     }
     return null;
   }
+
+  @Override
+  public Void visitInteger(IntegerExpression expr, Set<Variable> variables) {
+    return null;
+  }
 }
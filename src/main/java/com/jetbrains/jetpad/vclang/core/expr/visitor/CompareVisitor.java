@@ -16,6 +16,7 @@ import com.jetbrains.jetpad.vclang.core.sort.Sort;
 import com.jetbrains.jetpad.vclang.core.subst.ExprSubstitution;
 import com.jetbrains.jetpad.vclang.term.Abstract;
 import com.jetbrains.jetpad.vclang.term.Prelude;
+import com.jetbrains.jetpad.vclang.typechecking.TypecheckingProfiler;
 import com.jetbrains.jetpad.vclang.typechecking.error.local.GoalError;
 import com.jetbrains.jetpad.vclang.typechecking.implicitargs.equations.DummyEquations;
 import com.jetbrains.jetpad.vclang.typechecking.implicitargs.equations.Equations;
@@ -29,20 +30,51 @@ public class CompareVisitor extends BaseExpressionVisitor<Expression, Boolean> {
   private Equations myEquations;
   private final Abstract.SourceNode mySourceNode;
   private Equations.CMP myCMP;
+  private final boolean myNormalize;
 
-  private CompareVisitor(Equations equations, Equations.CMP cmp, Abstract.SourceNode sourceNode) {
+  private CompareVisitor(Equations equations, Equations.CMP cmp, Abstract.SourceNode sourceNode, boolean normalize) {
     mySubstitution = new HashMap<>();
     myEquations = equations;
     mySourceNode = sourceNode;
     myCMP = cmp;
+    myNormalize = normalize;
   }
 
   public static boolean compare(Equations equations, Equations.CMP cmp, Expression expr1, Expression expr2, Abstract.SourceNode sourceNode) {
-    return new CompareVisitor(equations, cmp, sourceNode).compare(expr1, expr2);
+    TypecheckingProfiler.count(TypecheckingProfiler.Counter.COMPARISONS);
+    if (expr1 == expr2) {
+      return true;
+    }
+    if (compareSyntactically(expr1, expr2)) {
+      TypecheckingProfiler.count(TypecheckingProfiler.Counter.STRUCTURAL_MATCHES);
+      return true;
+    }
+
+    ConversionCache cache = equations == DummyEquations.getInstance() ? ConversionCache.getInstance() : null;
+    if (cache == null || !ConversionCache.isCacheable(expr1) || !ConversionCache.isCacheable(expr2)) {
+      return new CompareVisitor(equations, cmp, sourceNode, true).compare(expr1, expr2);
+    }
+
+    if (cache.contains(expr1, expr2, cmp)) {
+      return true;
+    }
+    boolean ok = new CompareVisitor(equations, cmp, sourceNode, true).compare(expr1, expr2);
+    if (ok) {
+      cache.add(expr1, expr2, cmp);
+    }
+    return ok;
+  }
+
+  /**
+   * Checks if expressions are equal up to renaming of bound variables without normalizing them.
+   * Expressions with different structural hashes are rejected immediately.
+   */
+  static boolean compareSyntactically(Expression expr1, Expression expr2) {
+    return expr1.getStructuralHash() == expr2.getStructuralHash() && new CompareVisitor(DummyEquations.getInstance(), Equations.CMP.EQ, null, false).compare(expr1, expr2);
   }
 
   public static boolean compare(Equations equations, ElimTree tree1, ElimTree tree2, Abstract.SourceNode sourceNode) {
-    return new CompareVisitor(equations, Equations.CMP.EQ, sourceNode).compare(tree1, tree2);
+    return new CompareVisitor(equations, Equations.CMP.EQ, sourceNode, true).compare(tree1, tree2);
   }
 
   private Boolean compare(ElimTree elimTree1, ElimTree elimTree2) {
@@ -94,6 +126,14 @@ public class CompareVisitor extends BaseExpressionVisitor<Expression, Boolean> {
   }
 
   private Boolean compare(Expression expr1, Expression expr2) {
+    if (expr1 == expr2) {
+      return true;
+    }
+    if (!myNormalize) {
+      return expr1.getStructuralHash() == expr2.getStructuralHash() && expr1.accept(this, expr2);
+    }
+    ReductionBudget.check();
+
     Equations.CMP origCMP = myCMP;
 
     LetClause letClause1 = getLetClause(expr1);
@@ -137,6 +177,38 @@ public class CompareVisitor extends BaseExpressionVisitor<Expression, Boolean> {
       }
     }
 
+    // Lazy delta-reduction: the function with the greater height is unfolded first since it cannot occur in the unfolding of the other one.
+    // Both sides are unfolded only if their heights are equal, so we stop as soon as heads of the expressions coincide.
+    expr1 = NormalizeVisitor.INSTANCE.beta(expr1);
+    expr2 = NormalizeVisitor.INSTANCE.beta(expr2);
+    while (expr1.isInstance(FunCallExpression.class) && expr2.isInstance(FunCallExpression.class)) {
+      FunCallExpression funCall1 = expr1.cast(FunCallExpression.class);
+      FunCallExpression funCall2 = expr2.cast(FunCallExpression.class);
+      int height1 = funCall1.getDefinition().getHeight();
+      int height2 = funCall2.getDefinition().getHeight();
+      if (height1 >= height2) {
+        Expression unfolded = NormalizeVisitor.INSTANCE.unfold(funCall1);
+        if (unfolded == null) {
+          break;
+        }
+        expr1 = NormalizeVisitor.INSTANCE.beta(unfolded);
+      }
+      if (height2 >= height1) {
+        Expression unfolded = NormalizeVisitor.INSTANCE.unfold(funCall2);
+        if (unfolded == null) {
+          break;
+        }
+        expr2 = NormalizeVisitor.INSTANCE.beta(unfolded);
+      }
+      ReductionBudget.check();
+
+      if (expr1.isInstance(FunCallExpression.class) && expr2.isInstance(FunCallExpression.class) && expr1.cast(FunCallExpression.class).getDefinition() == expr2.cast(FunCallExpression.class).getDefinition()) {
+        if (compareArguments(expr1.cast(FunCallExpression.class), expr2.cast(FunCallExpression.class), origCMP)) {
+          return true;
+        }
+      }
+    }
+
     expr1 = expr1.normalize(NormalizeVisitor.Mode.WHNF);
     expr2 = expr2.normalize(NormalizeVisitor.Mode.WHNF);
 
@@ -170,11 +242,11 @@ public class CompareVisitor extends BaseExpressionVisitor<Expression, Boolean> {
     if (expr2.isInstance(TupleExpression.class)) {
       ok = visitTuple(expr2.cast(TupleExpression.class), expr1, false);
     } else {
-      Expression type1 = expr1.getType();
+      Expression type1 = expr1.mayHaveUnitType() ? expr1.getType() : null;
       if (type1 != null && type1.isInstance(ClassCallExpression.class) && type1.cast(ClassCallExpression.class).isUnit()) {
         ok = compareUnit(type1.cast(ClassCallExpression.class), expr2, true);
       } else {
-        Expression type2 = expr2.getType();
+        Expression type2 = expr2.mayHaveUnitType() ? expr2.getType() : null;
         if (type2 != null && type2.isInstance(ClassCallExpression.class) && type2.cast(ClassCallExpression.class).isUnit()) {
           ok = compareUnit(type2.cast(ClassCallExpression.class), expr1, false);
         } else {
@@ -287,6 +359,16 @@ public class CompareVisitor extends BaseExpressionVisitor<Expression, Boolean> {
     return correctOrder ? compare(conCall1.getDefCallArguments().get(0), expr2) : compare(expr2, conCall1.getDefCallArguments().get(0));
   }
 
+  private boolean compareArguments(FunCallExpression funCall1, FunCallExpression funCall2, Equations.CMP origCMP) {
+    myCMP = Equations.CMP.EQ;
+    Equations equations = myEquations;
+    myEquations = DummyEquations.getInstance();
+    boolean ok = visitDefCall(funCall1, funCall2);
+    myEquations = equations;
+    myCMP = origCMP;
+    return ok;
+  }
+
   private Boolean visitDefCall(DefCallExpression expr1, Expression expr2, boolean correctOrder) {
     if (expr1.getDefinition() == Prelude.PATH_CON && !expr2.isInstance(ConCallExpression.class)) {
       return comparePathEta((ConCallExpression) expr1, expr2, correctOrder);
@@ -565,6 +647,10 @@ public class CompareVisitor extends BaseExpressionVisitor<Expression, Boolean> {
 
   @Override
   public Boolean visitLet(LetExpression letExpr1, Expression expr2) {
+    // Let expressions are not eliminated if expressions are not normalized
+    if (!myNormalize) {
+      return false;
+    }
     throw new IllegalStateException();
   }
 
@@ -592,4 +678,12 @@ public class CompareVisitor extends BaseExpressionVisitor<Expression, Boolean> {
   public Boolean visitOfType(OfTypeExpression expr, Expression params) {
     return expr.getExpression().accept(this, params);
   }
+
+  @Override
+  public Boolean visitInteger(IntegerExpression expr1, Expression expr2) {
+    if (expr2.isInstance(IntegerExpression.class)) {
+      return expr1.getInteger().equals(expr2.cast(IntegerExpression.class).getInteger());
+    }
+    return visitDefCall(expr1.getConCall(), expr2);
+  }
 }
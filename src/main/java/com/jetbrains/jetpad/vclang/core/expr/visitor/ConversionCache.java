@@ -0,0 +1,92 @@
+package com.jetbrains.jetpad.vclang.core.expr.visitor;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.jetbrains.jetpad.vclang.core.expr.Expression;
+import com.jetbrains.jetpad.vclang.core.expr.VariableSummary;
+import com.jetbrains.jetpad.vclang.typechecking.TypecheckingProfiler;
+import com.jetbrains.jetpad.vclang.typechecking.implicitargs.equations.DummyEquations;
+import com.jetbrains.jetpad.vclang.typechecking.implicitargs.equations.Equations;
+
+/**
+ * A bounded cache of positive results of comparisons with {@link DummyEquations}.
+ * When the cache is full, the least recently used results are evicted.
+ * The cache is disabled by default.
+ *
+ * Pairs of expressions are looked up by their structural hashes and matched with cached pairs syntactically,
+ * so alpha-equivalent expressions hit the same result.
+ * Free bindings are matched by identity, so a result holds wherever its expressions occur.
+ * Expressions with inference variables are not cached.
+ */
+public class ConversionCache {
+  private static volatile ConversionCache ourInstance = null;
+
+  private final Cache<Key, Boolean> myCache;
+
+  private ConversionCache(long maximumSize) {
+    myCache = CacheBuilder.newBuilder().maximumSize(maximumSize).build();
+  }
+
+  /**
+   * Enables the cache with at most {@code maximumSize} results or disables it if {@code maximumSize} is 0.
+   * If it is enabled again, a new cache is created.
+   */
+  public static void setMaximumSize(long maximumSize) {
+    ourInstance = maximumSize > 0 ? new ConversionCache(maximumSize) : null;
+  }
+
+  public static ConversionCache getInstance() {
+    return ourInstance;
+  }
+
+  public static boolean isCacheable(Expression expr) {
+    return (expr.getVariableSummary() & VariableSummary.UNSTABLE) == 0;
+  }
+
+  public boolean contains(Expression expr1, Expression expr2, Equations.CMP cmp) {
+    boolean found = myCache.getIfPresent(new Key(expr1, expr2, cmp)) != null;
+    TypecheckingProfiler.count(found ? TypecheckingProfiler.Counter.CONVERSION_CACHE_HITS : TypecheckingProfiler.Counter.CONVERSION_CACHE_MISSES);
+    return found;
+  }
+
+  public void add(Expression expr1, Expression expr2, Equations.CMP cmp) {
+    myCache.put(new Key(expr1, expr2, cmp), Boolean.TRUE);
+  }
+
+  public long size() {
+    return myCache.size();
+  }
+
+  private static class Key {
+    private final Expression myExpression1;
+    private final Expression myExpression2;
+    private final Equations.CMP myCMP;
+    private final int myHashCode;
+
+    Key(Expression expression1, Expression expression2, Equations.CMP cmp) {
+      myExpression1 = expression1;
+      myExpression2 = expression2;
+      myCMP = cmp;
+      myHashCode = 31 * (31 * expression1.getStructuralHash() + expression2.getStructuralHash()) + cmp.ordinal();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Key key = (Key) obj;
+      return myHashCode == key.myHashCode && myCMP == key.myCMP &&
+        CompareVisitor.compareSyntactically(myExpression1, key.myExpression1) &&
+        CompareVisitor.compareSyntactically(myExpression2, key.myExpression2);
+    }
+
+    @Override
+    public int hashCode() {
+      return myHashCode;
+    }
+  }
+}
@@ -35,6 +35,7 @@ public class ElimBindingVisitor extends BaseExpressionVisitor<Void, Expression>
   }
 
   private Expression findBindings(Expression expression, boolean normalize) {
+    ReductionBudget.check();
     myFoundVariable = expression.accept(myVisitor, null);
     if (myFoundVariable == null) {
       return expression;
@@ -293,4 +294,9 @@ public class ElimBindingVisitor extends BaseExpressionVisitor<Void, Expression>
     Expression newType = findBindings(expr.getTypeOf(), true);
     return newType == null ? null : new OfTypeExpression(newExpr, newType);
   }
+
+  @Override
+  public Expression visitInteger(IntegerExpression expr, Void params) {
+    return expr;
+  }
 }
@@ -0,0 +1,312 @@
+package com.jetbrains.jetpad.vclang.core.expr.visitor;
+
+import com.jetbrains.jetpad.vclang.core.context.binding.Binding;
+import com.jetbrains.jetpad.vclang.core.context.param.DependentLink;
+import com.jetbrains.jetpad.vclang.core.context.param.SingleDependentLink;
+import com.jetbrains.jetpad.vclang.core.definition.Definition;
+import com.jetbrains.jetpad.vclang.core.definition.Function;
+import com.jetbrains.jetpad.vclang.core.elimtree.Body;
+import com.jetbrains.jetpad.vclang.core.elimtree.BranchElimTree;
+import com.jetbrains.jetpad.vclang.core.elimtree.ElimTree;
+import com.jetbrains.jetpad.vclang.core.elimtree.LeafElimTree;
+import com.jetbrains.jetpad.vclang.core.expr.*;
+import com.jetbrains.jetpad.vclang.core.subst.ExprSubstitution;
+import com.jetbrains.jetpad.vclang.core.subst.LevelSubstitution;
+import com.jetbrains.jetpad.vclang.term.Prelude;
+import com.jetbrains.jetpad.vclang.typechecking.TypecheckingProfiler;
+import com.jetbrains.jetpad.vclang.util.ComputationInterruptedException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Computes weak head normal forms with an environment machine.
+ * Instead of substituting arguments into bodies of lambdas and functions, it evaluates a body in an environment that binds parameters to unevaluated closures.
+ * Substitution is performed only when a result is read back.
+ * Arguments are evaluated at most once (call-by-need).
+ *
+ * The machine handles beta reduction, pattern matching, let, case and projections.
+ * Other redexes (coe, interval eliminators, field calls) are delegated to {@link NormalizeVisitor}.
+ */
+public class EnvironmentNormalizer {
+  private static class Environment {
+    final Binding binding;
+    final Closure value;
+    final Environment next;
+
+    Environment(Binding binding, Closure value, Environment next) {
+      this.binding = binding;
+      this.value = value;
+      this.next = next;
+    }
+
+    static Closure lookup(Environment env, Binding binding) {
+      for (; env != null; env = env.next) {
+        if (env.binding == binding) {
+          return env.value;
+        }
+      }
+      return null;
+    }
+  }
+
+  private static class Closure {
+    final Expression expression;
+    final Environment environment;
+    final LevelSubstitution levels;
+    private Closure myWHNF;
+    private Expression myReadback;
+
+    Closure(Expression expression, Environment environment, LevelSubstitution levels) {
+      this.expression = expression;
+      this.environment = environment;
+      this.levels = levels;
+    }
+
+    Closure(Expression expression) {
+      this(expression, null, LevelSubstitution.EMPTY);
+    }
+  }
+
+  public static Expression normalize(Expression expression) {
+    TypecheckingProfiler.count(TypecheckingProfiler.Counter.ENVIRONMENT_NORMALIZATIONS);
+    return readback(whnf(new Closure(expression)));
+  }
+
+  private static Closure whnf(Closure closure) {
+    if (closure.myWHNF == null) {
+      closure.myWHNF = eval(closure.expression, closure.environment, closure.levels);
+    }
+    return closure.myWHNF;
+  }
+
+  private static Closure eval(Expression expr, Environment env, LevelSubstitution levels) {
+    List<Closure> spine = new ArrayList<>();
+    while (true) {
+      if (expr instanceof AppExpression) {
+        while (expr instanceof AppExpression) {
+          spine.add(new Closure(((AppExpression) expr).getArgument(), env, levels));
+          expr = ((AppExpression) expr).getFunction();
+        }
+        continue;
+      }
+
+      if (expr instanceof LamExpression) {
+        if (spine.isEmpty()) {
+          return new Closure(expr, env, levels);
+        }
+        ReductionBudget.reduce(null);
+        TypecheckingProfiler.count(TypecheckingProfiler.Counter.REDUCTIONS);
+        LamExpression lamExpr = (LamExpression) expr;
+        SingleDependentLink link = lamExpr.getParameters();
+        for (; link.hasNext() && !spine.isEmpty(); link = link.getNext()) {
+          env = new Environment(link, spine.remove(spine.size() - 1), env);
+        }
+        expr = link.hasNext() ? new LamExpression(lamExpr.getResultSort(), link, lamExpr.getBody()) : lamExpr.getBody();
+        continue;
+      }
+
+      if (expr instanceof ReferenceExpression) {
+        Binding binding = ((ReferenceExpression) expr).getBinding();
+        Closure value = Environment.lookup(env, binding);
+        if (value != null) {
+          value = whnf(value);
+          expr = value.expression;
+          env = value.environment;
+          levels = value.levels;
+          continue;
+        }
+        if (binding instanceof LetClause) {
+          expr = ((LetClause) binding).getExpression();
+          env = null;
+          levels = LevelSubstitution.EMPTY;
+          continue;
+        }
+        return neutral(expr, env, levels, spine);
+      }
+
+      if (expr instanceof InferenceReferenceExpression) {
+        Expression substExpr = ((InferenceReferenceExpression) expr).getSubstExpression();
+        if (substExpr != null) {
+          expr = substExpr;
+          continue;
+        }
+        WhnfCache cache = WhnfCache.getCurrent();
+        if (cache != null) {
+          cache.inferenceVariableVisited();
+        }
+        return neutral(expr, env, levels, spine);
+      }
+
+      if (expr instanceof LetExpression) {
+        for (LetClause clause : ((LetExpression) expr).getClauses()) {
+          env = new Environment(clause, new Closure(clause.getExpression(), env, levels), env);
+        }
+        expr = ((LetExpression) expr).getExpression();
+        continue;
+      }
+
+      if (expr instanceof OfTypeExpression) {
+        expr = ((OfTypeExpression) expr).getExpression();
+        continue;
+      }
+
+      if (expr instanceof ProjExpression) {
+        Closure tuple = whnf(new Closure(((ProjExpression) expr).getExpression(), env, levels));
+        if (!(tuple.expression instanceof TupleExpression)) {
+          return neutral(expr, env, levels, spine);
+        }
+        expr = ((TupleExpression) tuple.expression).getFields().get(((ProjExpression) expr).getField());
+        env = tuple.environment;
+        levels = tuple.levels;
+        continue;
+      }
+
+      if (expr instanceof CaseExpression) {
+        CaseExpression caseExpr = (CaseExpression) expr;
+        ReductionBudget.reduce(null);
+        Closure result = evalElimTree(caseExpr.getElimTree(), closures(caseExpr.getArguments(), env, levels), env, levels);
+        if (result == null) {
+          return neutral(expr, env, levels, spine);
+        }
+        TypecheckingProfiler.count(TypecheckingProfiler.Counter.REDUCTIONS);
+        expr = result.expression;
+        env = result.environment;
+        continue;
+      }
+
+      if (expr instanceof DefCallExpression && !(expr instanceof FieldCallExpression) && ((DefCallExpression) expr).getDefinition() instanceof Function) {
+        DefCallExpression defCall = (DefCallExpression) expr;
+        Definition definition = defCall.getDefinition();
+        if (!definition.status().bodyIsOK()) {
+          WhnfCache cache = WhnfCache.getCurrent();
+          if (cache != null) {
+            cache.uncheckedBodyVisited();
+          }
+          return neutral(expr, env, levels, spine);
+        }
+
+        Body body = ((Function) definition).getBody();
+        if (body == null) {
+          return neutral(expr, env, levels, spine);
+        }
+        if (definition == Prelude.COERCE || !(body instanceof ElimTree)) {
+          return delegate(expr, env, levels, spine);
+        }
+
+        Environment newEnv = null;
+        if (defCall instanceof ConCallExpression) {
+          List<Expression> dataTypeArgs = ((ConCallExpression) defCall).getDataTypeArguments();
+          int i = 0;
+          for (DependentLink link = ((ConCallExpression) defCall).getDefinition().getDataTypeParameters(); link.hasNext(); link = link.getNext()) {
+            newEnv = new Environment(link, new Closure(dataTypeArgs.get(i++), env, levels), newEnv);
+          }
+        }
+
+        ReductionBudget.reduce(definition);
+        LevelSubstitution newLevels = defCall.getSortArgument().subst(levels).toLevelSubstitution();
+        Closure result = evalElimTree((ElimTree) body, closures(defCall.getDefCallArguments(), env, levels), newEnv, newLevels);
+
+        if (Thread.interrupted()) {
+          throw new ComputationInterruptedException();
+        }
+
+        if (result == null) {
+          return neutral(expr, env, levels, spine);
+        }
+        TypecheckingProfiler.count(TypecheckingProfiler.Counter.REDUCTIONS);
+        expr = result.expression;
+        env = result.environment;
+        levels = newLevels;
+        continue;
+      }
+
+      if (expr instanceof FieldCallExpression) {
+        return delegate(expr, env, levels, spine);
+      }
+
+      return neutral(expr, env, levels, spine);
+    }
+  }
+
+  private static List<Closure> closures(List<? extends Expression> expressions, Environment env, LevelSubstitution levels) {
+    List<Closure> result = new ArrayList<>(expressions.size());
+    for (Expression expression : expressions) {
+      result.add(new Closure(expression, env, levels));
+    }
+    return result;
+  }
+
+  private static Closure evalElimTree(ElimTree elimTree, List<Closure> arguments, Environment env, LevelSubstitution levels) {
+    List<Closure> stack = new ArrayList<>(arguments.size());
+    for (int i = arguments.size() - 1; i >= 0; i--) {
+      stack.add(arguments.get(i));
+    }
+
+    while (true) {
+      for (DependentLink link = elimTree.getParameters(); link.hasNext(); link = link.getNext()) {
+        env = new Environment(link, stack.remove(stack.size() - 1), env);
+      }
+      if (elimTree instanceof LeafElimTree) {
+        return new Closure(((LeafElimTree) elimTree).getExpression(), env, levels);
+      }
+
+      Closure argument = whnf(stack.get(stack.size() - 1));
+      ConCallExpression conCall = argument.expression.checkedCast(ConCallExpression.class);
+      elimTree = ((BranchElimTree) elimTree).getChild(conCall == null ? null : conCall.getDefinition());
+      if (elimTree == null) {
+        return null;
+      }
+
+      if (conCall != null) {
+        stack.remove(stack.size() - 1);
+        for (int i = conCall.getDefCallArguments().size() - 1; i >= 0; i--) {
+          stack.add(new Closure(conCall.getDefCallArguments().get(i), argument.environment, argument.levels));
+        }
+      }
+    }
+  }
+
+  private static Closure neutral(Expression expr, Environment env, LevelSubstitution levels, List<Closure> spine) {
+    if (spine.isEmpty()) {
+      return new Closure(expr, env, levels);
+    }
+    return new Closure(apply(readback(expr, env, levels), spine));
+  }
+
+  private static Closure delegate(Expression expr, Environment env, LevelSubstitution levels, List<Closure> spine) {
+    return new Closure(apply(readback(expr, env, levels), spine).accept(NormalizeVisitor.INSTANCE, NormalizeVisitor.Mode.WHNF));
+  }
+
+  private static Expression apply(Expression function, List<Closure> spine) {
+    for (int i = spine.size() - 1; i >= 0; i--) {
+      function = new AppExpression(function, readback(spine.get(i)));
+    }
+    return function;
+  }
+
+  private static Expression readback(Closure closure) {
+    if (closure.myReadback == null) {
+      Closure value = closure.myWHNF != null ? closure.myWHNF : closure;
+      closure.myReadback = readback(value.expression, value.environment, value.levels);
+      if (value != closure) {
+        value.myReadback = closure.myReadback;
+      }
+    }
+    return closure.myReadback;
+  }
+
+  private static Expression readback(Expression expr, Environment env, LevelSubstitution levels) {
+    if (env == null) {
+      return expr.subst(levels);
+    }
+
+    ExprSubstitution substitution = new ExprSubstitution();
+    for (; env != null; env = env.next) {
+      if (substitution.get(env.binding) == null) {
+        substitution.add(env.binding, readback(env.value));
+      }
+    }
+    return expr.subst(substitution, levels);
+  }
+}
@@ -14,9 +14,15 @@ import java.util.Set;
 
 public class FindBindingVisitor extends BaseExpressionVisitor<Void, Variable> {
   private final Set<? extends Variable> myBindings;
+  private final long myMask;
 
   public FindBindingVisitor(Set<? extends Variable> binding) {
     myBindings = binding;
+    myMask = VariableSummary.of(binding);
+  }
+
+  private boolean mayContain(Expression expr) {
+    return VariableSummary.mayContain(expr.getVariableSummary(), myMask, false);
   }
 
   Set<? extends Variable> getBindings() {
@@ -25,6 +31,9 @@ public class FindBindingVisitor extends BaseExpressionVisitor<Void, Variable> {
 
   @Override
   public Variable visitApp(AppExpression expr, Void params) {
+    if (!mayContain(expr)) {
+      return null;
+    }
     Variable result = expr.getFunction().accept(this, null);
     if (result != null) {
       return result;
@@ -34,6 +43,9 @@ public class FindBindingVisitor extends BaseExpressionVisitor<Void, Variable> {
 
   @Override
   public Variable visitDefCall(DefCallExpression expr, Void params) {
+    if (!mayContain(expr)) {
+      return null;
+    }
     for (Expression arg : expr.getDefCallArguments()) {
       Variable result = arg.accept(this, null);
       if (result != null) {
@@ -45,6 +57,9 @@ public class FindBindingVisitor extends BaseExpressionVisitor<Void, Variable> {
 
   @Override
   public Variable visitConCall(ConCallExpression expr, Void params) {
+    if (!mayContain(expr)) {
+      return null;
+    }
     for (Expression arg : expr.getDataTypeArguments()) {
       Variable result = arg.accept(this, null);
       if (result != null) {
@@ -56,6 +71,9 @@ public class FindBindingVisitor extends BaseExpressionVisitor<Void, Variable> {
 
   @Override
   public Variable visitClassCall(ClassCallExpression expr, Void params) {
+    if (!mayContain(expr)) {
+      return null;
+    }
     for (Map.Entry<ClassField, Expression> entry : expr.getImplementedHere().entrySet()) {
       Variable result = entry.getValue().accept(this, null);
       if (result != null) {
@@ -77,12 +95,18 @@ public class FindBindingVisitor extends BaseExpressionVisitor<Void, Variable> {
 
   @Override
   public Variable visitLam(LamExpression expr, Void params) {
+    if (!mayContain(expr)) {
+      return null;
+    }
     Variable result = visitDependentLink(expr.getParameters());
     return result != null ? result : expr.getBody().accept(this, null);
   }
 
   @Override
   public Variable visitPi(PiExpression expr, Void params) {
+    if (!mayContain(expr)) {
+      return null;
+    }
     Variable result = visitDependentLink(expr.getParameters());
     return result != null ? result : expr.getCodomain().accept(this, null);
   }
@@ -99,6 +123,9 @@ public class FindBindingVisitor extends BaseExpressionVisitor<Void, Variable> {
 
   @Override
   public Variable visitTuple(TupleExpression expr, Void params) {
+    if (!mayContain(expr)) {
+      return null;
+    }
     for (Expression field : expr.getFields()) {
       Variable result = field.accept(this, null);
       if (result != null) {
@@ -110,11 +137,17 @@ public class FindBindingVisitor extends BaseExpressionVisitor<Void, Variable> {
 
   @Override
   public Variable visitSigma(SigmaExpression expr, Void params) {
+    if (!mayContain(expr)) {
+      return null;
+    }
     return visitDependentLink(expr.getParameters());
   }
 
   @Override
   public Variable visitProj(ProjExpression expr, Void params) {
+    if (!mayContain(expr)) {
+      return null;
+    }
     return expr.getExpression().accept(this, null);
   }
 
@@ -131,11 +164,17 @@ public class FindBindingVisitor extends BaseExpressionVisitor<Void, Variable> {
 
   @Override
   public Variable visitNew(NewExpression expr, Void params) {
+    if (!mayContain(expr)) {
+      return null;
+    }
     return expr.getExpression().accept(this, null);
   }
 
   @Override
   public Variable visitLet(LetExpression letExpression, Void params) {
+    if (!mayContain(letExpression)) {
+      return null;
+    }
     for (LetClause clause : letExpression.getClauses()) {
       Variable result = clause.getExpression().accept(this, null);
       if (result != null) {
@@ -147,6 +186,9 @@ public class FindBindingVisitor extends BaseExpressionVisitor<Void, Variable> {
 
   @Override
   public Variable visitCase(CaseExpression expr, Void params) {
+    if (!mayContain(expr)) {
+      return null;
+    }
     for (Expression argument : expr.getArguments()) {
       Variable result = argument.accept(this, null);
       if (result != null) {
@@ -189,7 +231,15 @@ public class FindBindingVisitor extends BaseExpressionVisitor<Void, Variable> {
 
   @Override
   public Variable visitOfType(OfTypeExpression expr, Void params) {
+    if (!mayContain(expr)) {
+      return null;
+    }
     Variable result = expr.getExpression().accept(this, null);
     return result != null ? result : expr.getTypeOf().accept(this, null);
   }
+
+  @Override
+  public Variable visitInteger(IntegerExpression expr, Void params) {
+    return null;
+  }
 }
@@ -229,4 +229,9 @@ public class FindMissingBindingVisitor extends BaseExpressionVisitor<Void, Varia
     Variable result = expr.getExpression().accept(this, null);
     return result != null ? result : expr.getTypeOf().accept(this, null);
   }
+
+  @Override
+  public Variable visitInteger(IntegerExpression expr, Void params) {
+    return null;
+  }
 }
@@ -26,6 +26,11 @@ public class GetTypeVisitor extends BaseExpressionVisitor<Void, Expression> {
 
   @Override
   public Expression visitDefCall(DefCallExpression expr, Void params) {
+    TypeCache cache = TypeCache.getCurrent();
+    return cache != null ? cache.getType(expr, GetTypeVisitor::getDefCallType) : getDefCallType(expr);
+  }
+
+  private static Expression getDefCallType(DefCallExpression expr) {
     List<DependentLink> defParams = new ArrayList<>();
     Expression type = expr.getDefinition().getTypeWithParams(defParams, expr.getSortArgument());
     assert expr.getDefCallArguments().size() == defParams.size();
@@ -39,6 +44,11 @@ public class GetTypeVisitor extends BaseExpressionVisitor<Void, Expression> {
 
   @Override
   public DataCallExpression visitConCall(ConCallExpression expr, Void params) {
+    TypeCache cache = TypeCache.getCurrent();
+    return cache != null ? cache.getType(expr, GetTypeVisitor::getConCallType) : getConCallType(expr);
+  }
+
+  private static DataCallExpression getConCallType(ConCallExpression expr) {
     return expr.getDefinition().getDataTypeExpression(expr.getSortArgument(), expr.getDataTypeArguments());
   }
 
@@ -129,4 +139,9 @@ public class GetTypeVisitor extends BaseExpressionVisitor<Void, Expression> {
   public Expression visitOfType(OfTypeExpression expr, Void params) {
     return expr.getTypeOf();
   }
+
+  @Override
+  public Expression visitInteger(IntegerExpression expr, Void params) {
+    return ExpressionFactory.Nat();
+  }
 }
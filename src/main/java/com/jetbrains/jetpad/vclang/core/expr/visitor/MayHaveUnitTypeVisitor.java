@@ -0,0 +1,120 @@
+package com.jetbrains.jetpad.vclang.core.expr.visitor;
+
+import com.jetbrains.jetpad.vclang.core.definition.FunctionDefinition;
+import com.jetbrains.jetpad.vclang.core.expr.*;
+
+/**
+ * Checks if the type of an expression may be a class call without computing the type.
+ * If the visitor returns false, the type is not a class call, so it is not a unit type.
+ */
+public class MayHaveUnitTypeVisitor extends BaseExpressionVisitor<Void, Boolean> {
+  public final static MayHaveUnitTypeVisitor INSTANCE = new MayHaveUnitTypeVisitor();
+
+  private MayHaveUnitTypeVisitor() {
+  }
+
+  private static boolean mayBeClassCall(Expression type) {
+    return type == null || !(type instanceof DataCallExpression || type instanceof PiExpression || type instanceof SigmaExpression || type instanceof UniverseExpression);
+  }
+
+  @Override
+  public Boolean visitDefCall(DefCallExpression expr, Void params) {
+    return true;
+  }
+
+  @Override
+  public Boolean visitFunCall(FunCallExpression expr, Void params) {
+    FunctionDefinition definition = expr.getDefinition();
+    return !definition.status().headerIsOK() || mayBeClassCall(definition.getResultType());
+  }
+
+  @Override
+  public Boolean visitConCall(ConCallExpression expr, Void params) {
+    return false;
+  }
+
+  @Override
+  public Boolean visitDataCall(DataCallExpression expr, Void params) {
+    return false;
+  }
+
+  @Override
+  public Boolean visitClassCall(ClassCallExpression expr, Void params) {
+    return false;
+  }
+
+  @Override
+  public Boolean visitApp(AppExpression expr, Void params) {
+    return true;
+  }
+
+  @Override
+  public Boolean visitReference(ReferenceExpression expr, Void params) {
+    return mayBeClassCall(expr.getBinding().getTypeExpr());
+  }
+
+  @Override
+  public Boolean visitInferenceReference(InferenceReferenceExpression expr, Void params) {
+    return expr.getSubstExpression() != null ? expr.getSubstExpression().accept(this, null) : mayBeClassCall(expr.getVariable().getType());
+  }
+
+  @Override
+  public Boolean visitLam(LamExpression expr, Void params) {
+    return false;
+  }
+
+  @Override
+  public Boolean visitPi(PiExpression expr, Void params) {
+    return false;
+  }
+
+  @Override
+  public Boolean visitSigma(SigmaExpression expr, Void params) {
+    return false;
+  }
+
+  @Override
+  public Boolean visitUniverse(UniverseExpression expr, Void params) {
+    return false;
+  }
+
+  @Override
+  public Boolean visitError(ErrorExpression expr, Void params) {
+    return true;
+  }
+
+  @Override
+  public Boolean visitTuple(TupleExpression expr, Void params) {
+    return false;
+  }
+
+  @Override
+  public Boolean visitProj(ProjExpression expr, Void params) {
+    return true;
+  }
+
+  @Override
+  public Boolean visitNew(NewExpression expr, Void params) {
+    return true;
+  }
+
+  @Override
+  public Boolean visitLet(LetExpression expr, Void params) {
+    return expr.getExpression().accept(this, null);
+  }
+
+  @Override
+  public Boolean visitCase(CaseExpression expr, Void params) {
+    return mayBeClassCall(expr.getResultType());
+  }
+
+  @Override
+  public Boolean visitOfType(OfTypeExpression expr, Void params) {
+    return mayBeClassCall(expr.getTypeOf());
+  }
+
+  @Override
+  public Boolean visitInteger(IntegerExpression expr, Void params) {
+    return false;
+  }
+}
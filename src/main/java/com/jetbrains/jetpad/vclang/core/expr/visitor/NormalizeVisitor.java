@@ -10,6 +10,7 @@ import com.jetbrains.jetpad.vclang.core.subst.ExprSubstitution;
 import com.jetbrains.jetpad.vclang.core.subst.LevelSubstitution;
 import com.jetbrains.jetpad.vclang.core.subst.SubstVisitor;
 import com.jetbrains.jetpad.vclang.term.Prelude;
+import com.jetbrains.jetpad.vclang.typechecking.TypecheckingProfiler;
 import com.jetbrains.jetpad.vclang.util.ComputationInterruptedException;
 
 import java.util.*;
@@ -17,18 +18,55 @@ import java.util.*;
 public class NormalizeVisitor extends BaseExpressionVisitor<NormalizeVisitor.Mode, Expression>  {
   public enum Mode { WHNF, NF, RNF }
 
+  /**
+   * The engine that computes weak head normal forms.
+   * {@code SUBSTITUTION} is this visitor; {@code ENVIRONMENT} is {@link EnvironmentNormalizer}.
+   * Other modes are always computed by this visitor, but the weak head normal forms of subterms are computed by the selected engine.
+   */
+  public enum Engine { SUBSTITUTION, ENVIRONMENT }
+
   public static final NormalizeVisitor INSTANCE = new NormalizeVisitor();
 
+  private static final ThreadLocal<Engine> CURRENT_ENGINE = new ThreadLocal<>();
+
   private NormalizeVisitor() {
   }
 
+  /**
+   * @return the engine that is installed on the current thread; {@code SUBSTITUTION} if none is installed.
+   */
+  public static Engine getCurrentEngine() {
+    Engine engine = CURRENT_ENGINE.get();
+    return engine != null ? engine : Engine.SUBSTITUTION;
+  }
+
+  /**
+   * Makes {@code engine} the engine used by {@link #whnf} on the current thread.
+   * It is installed by {@link com.jetbrains.jetpad.vclang.typechecking.Typechecking} for the duration of a typechecking run.
+   *
+   * @return the previously installed engine.
+   */
+  public static Engine setCurrentEngine(Engine engine) {
+    Engine previous = getCurrentEngine();
+    if (engine == null || engine == Engine.SUBSTITUTION) {
+      CURRENT_ENGINE.remove();
+    } else {
+      CURRENT_ENGINE.set(engine);
+    }
+    return previous;
+  }
+
+  public static Expression whnf(Expression expr) {
+    return CURRENT_ENGINE.get() == Engine.ENVIRONMENT ? EnvironmentNormalizer.normalize(expr) : expr.accept(INSTANCE, Mode.WHNF);
+  }
+
   @Override
   public Expression visitApp(AppExpression expr, Mode mode) {
     List<Expression> args = new ArrayList<>();
     Expression function = expr;
     while (function.isInstance(AppExpression.class)) {
       args.add(function.cast(AppExpression.class).getArgument());
-      function = function.cast(AppExpression.class).getFunction().accept(this, Mode.WHNF);
+      function = function.cast(AppExpression.class).getFunction().normalize(Mode.WHNF);
     }
     Collections.reverse(args);
 
@@ -45,7 +83,29 @@ public class NormalizeVisitor extends BaseExpressionVisitor<NormalizeVisitor.Mod
     return function;
   }
 
+  /**
+   * Reduces beta-redexes at the head of {@code expr}; functions are not unfolded.
+   */
+  public Expression beta(Expression expr) {
+    while (expr.isInstance(AppExpression.class)) {
+      List<Expression> args = new ArrayList<>();
+      Expression function = expr;
+      while (function.isInstance(AppExpression.class)) {
+        args.add(function.cast(AppExpression.class).getArgument());
+        function = function.cast(AppExpression.class).getFunction();
+      }
+      if (!function.isInstance(LamExpression.class)) {
+        break;
+      }
+      Collections.reverse(args);
+      expr = normalizeLam(function.cast(LamExpression.class), args);
+    }
+    return expr;
+  }
+
   private Expression normalizeLam(LamExpression fun, List<? extends Expression> arguments) {
+    ReductionBudget.reduce(null);
+    TypecheckingProfiler.count(TypecheckingProfiler.Counter.REDUCTIONS);
     int i = 0;
     SingleDependentLink link = fun.getParameters();
     ExprSubstitution subst = new ExprSubstitution();
@@ -95,6 +155,9 @@ public class NormalizeVisitor extends BaseExpressionVisitor<NormalizeVisitor.Mod
       for (Expression arg : expr.getDefCallArguments()) {
         args.add(arg.accept(this, mode));
       }
+      if (expr.getDefinition() == Prelude.SUC && args.get(0).isInstance(IntegerExpression.class)) {
+        return args.get(0).cast(IntegerExpression.class).suc();
+      }
       return new ConCallExpression((Constructor) expr.getDefinition(), expr.getSortArgument(), ((ConCallExpression) expr).getDataTypeArguments(), args);
     }
 
@@ -103,19 +166,19 @@ public class NormalizeVisitor extends BaseExpressionVisitor<NormalizeVisitor.Mod
 
   private Expression visitDefCall(DefCallExpression expr, LevelSubstitution levelSubstitution, Mode mode) {
     if (expr.getDefinition() == Prelude.COERCE) {
-      LamExpression lamExpr = expr.getDefCallArguments().get(0).accept(this, Mode.WHNF).checkedCast(LamExpression.class);
+      LamExpression lamExpr = expr.getDefCallArguments().get(0).normalize(Mode.WHNF).checkedCast(LamExpression.class);
       if (lamExpr != null) {
         Expression body = lamExpr.getParameters().getNext().hasNext() ? new LamExpression(lamExpr.getResultSort(), lamExpr.getParameters().getNext(), lamExpr.getBody()) : lamExpr.getBody();
-        body = body.accept(this, Mode.WHNF);
+        body = body.normalize(Mode.WHNF);
         FunCallExpression funCall = body.checkedCast(FunCallExpression.class);
         boolean checkSigma = true;
 
         if (funCall != null && funCall.getDefinition() == Prelude.ISO) {
           List<? extends Expression> isoArgs = funCall.getDefCallArguments();
-          ReferenceExpression refExpr = isoArgs.get(isoArgs.size() - 1).accept(this, Mode.WHNF).checkedCast(ReferenceExpression.class);
+          ReferenceExpression refExpr = isoArgs.get(isoArgs.size() - 1).normalize(Mode.WHNF).checkedCast(ReferenceExpression.class);
           if (refExpr != null && refExpr.getBinding() == lamExpr.getParameters()) {
             checkSigma = false;
-            ConCallExpression normedPtCon = expr.getDefCallArguments().get(2).accept(this, Mode.WHNF).checkedCast(ConCallExpression.class);
+            ConCallExpression normedPtCon = expr.getDefCallArguments().get(2).normalize(Mode.WHNF).checkedCast(ConCallExpression.class);
             if (normedPtCon != null && normedPtCon.getDefinition() == Prelude.RIGHT) {
               boolean noFreeVar = true;
               for (int i = 0; i < isoArgs.size() - 1; i++) {
@@ -143,7 +206,7 @@ public class NormalizeVisitor extends BaseExpressionVisitor<NormalizeVisitor.Mod
       IntervalElim elim = (IntervalElim) body;
       int i0 = expr.getDefCallArguments().size() - elim.getCases().size();
       for (int i = i0; i < expr.getDefCallArguments().size(); i++) {
-        Expression arg = expr.getDefCallArguments().get(i).accept(this, Mode.WHNF);
+        Expression arg = expr.getDefCallArguments().get(i).normalize(Mode.WHNF);
         ConCallExpression conCall = arg.checkedCast(ConCallExpression.class);
         if (conCall != null) {
           ExprSubstitution substitution = getDataTypeArgumentsSubstitution(expr);
@@ -175,75 +238,100 @@ public class NormalizeVisitor extends BaseExpressionVisitor<NormalizeVisitor.Mod
       return applyDefCall(expr, mode);
     }
 
+    ReductionBudget.reduce(expr.getDefinition());
     Expression result = eval(elimTree, expr.getDefCallArguments(), getDataTypeArgumentsSubstitution(expr), levelSubstitution);
 
     if (Thread.interrupted()) {
       throw new ComputationInterruptedException();
     }
 
-    return result == null ? applyDefCall(expr, mode) : result.accept(this, mode);
+    if (result == null) {
+      return applyDefCall(expr, mode);
+    }
+    TypecheckingProfiler.count(TypecheckingProfiler.Counter.REDUCTIONS);
+    return result.accept(this, mode);
   }
 
-  public Expression eval(ElimTree elimTree, List<? extends Expression> arguments, ExprSubstitution substitution, LevelSubstitution levelSubstitution) {
-    Stack<Expression> stack = new Stack<>();
-    for (int i = arguments.size() - 1; i >= 0; i--) {
-      stack.push(arguments.get(i));
+  /**
+   * Unfolds a function call once; the result is not normalized.
+   *
+   * @return the unfolded expression or null if the body of the function is not available or its evaluation is stuck.
+   */
+  public Expression unfold(FunCallExpression expr) {
+    FunctionDefinition definition = expr.getDefinition();
+    if (definition == Prelude.COERCE || !definition.status().bodyIsOK() || !(definition.getBody() instanceof ElimTree)) {
+      return null;
     }
 
-    while (true) {
-      for (DependentLink link = elimTree.getParameters(); link.hasNext(); link = link.getNext()) {
-        substitution.add(link, stack.pop());
-      }
-      if (elimTree instanceof LeafElimTree) {
-        return ((LeafElimTree) elimTree).getExpression().subst(substitution, levelSubstitution);
-      }
+    ReductionBudget.reduce(definition);
+    Expression result = eval((ElimTree) definition.getBody(), expr.getDefCallArguments(), new ExprSubstitution(), expr.getSortArgument().toLevelSubstitution());
+    if (result != null) {
+      TypecheckingProfiler.count(TypecheckingProfiler.Counter.REDUCTIONS);
+    }
+    return result;
+  }
 
-      Expression argument = stack.peek().accept(this, Mode.WHNF);
-      ConCallExpression conCall = argument.checkedCast(ConCallExpression.class);
-      elimTree = ((BranchElimTree) elimTree).getChild(conCall == null ? null : conCall.getDefinition());
-      if (elimTree == null) {
-        return null;
-      }
+  public Expression eval(ElimTree elimTree, List<? extends Expression> arguments, ExprSubstitution substitution, LevelSubstitution levelSubstitution) {
+    ArgumentStack stack = ArgumentStack.get();
+    int base = stack.size();
+    stack.pushAll(arguments);
+    try {
+      while (true) {
+        for (DependentLink link = elimTree.getParameters(); link.hasNext(); link = link.getNext()) {
+          assert stack.size() > base;
+          substitution.add(link, stack.pop());
+        }
+        if (elimTree instanceof LeafElimTree) {
+          return ((LeafElimTree) elimTree).getExpression().subst(substitution, levelSubstitution);
+        }
 
-      if (conCall != null) {
-        stack.pop();
-        for (int i = conCall.getDefCallArguments().size() - 1; i >= 0; i--) {
-          stack.push(conCall.getDefCallArguments().get(i));
+        Expression argument = stack.peek().normalize(Mode.WHNF);
+        ConCallExpression conCall = argument.checkedCast(ConCallExpression.class);
+        elimTree = ((BranchElimTree) elimTree).getChild(conCall == null ? null : conCall.getDefinition());
+        if (elimTree == null) {
+          return null;
+        }
+
+        if (conCall != null) {
+          stack.pop();
+          stack.pushAll(conCall.getDefCallArguments());
         }
       }
+    } finally {
+      stack.reset(base);
     }
   }
 
   public boolean doesEvaluate(ElimTree elimTree, List<? extends Expression> arguments) {
-    Stack<Expression> stack = new Stack<>();
-    for (int i = arguments.size() - 1; i >= 0; i--) {
-      stack.push(arguments.get(i));
-    }
-
-    while (true) {
-      for (DependentLink link = elimTree.getParameters(); link.hasNext(); link = link.getNext()) {
-        if (stack.isEmpty()) {
+    ArgumentStack stack = ArgumentStack.get();
+    int base = stack.size();
+    stack.pushAll(arguments);
+    try {
+      while (true) {
+        for (DependentLink link = elimTree.getParameters(); link.hasNext(); link = link.getNext()) {
+          if (stack.size() == base) {
+            return true;
+          }
+          stack.pop();
+        }
+        if (elimTree instanceof LeafElimTree || stack.size() == base) {
           return true;
         }
-        stack.pop();
-      }
-      if (elimTree instanceof LeafElimTree || stack.isEmpty()) {
-        return true;
-      }
 
-      Expression argument = stack.peek().accept(this, Mode.WHNF);
-      ConCallExpression conCall = argument.checkedCast(ConCallExpression.class);
-      elimTree = ((BranchElimTree) elimTree).getChild(conCall == null ? null : conCall.getDefinition());
-      if (elimTree == null) {
-        return false;
-      }
+        Expression argument = stack.peek().normalize(Mode.WHNF);
+        ConCallExpression conCall = argument.checkedCast(ConCallExpression.class);
+        elimTree = ((BranchElimTree) elimTree).getChild(conCall == null ? null : conCall.getDefinition());
+        if (elimTree == null) {
+          return false;
+        }
 
-      if (conCall != null) {
-        stack.pop();
-        for (int i = conCall.getDefCallArguments().size() - 1; i >= 0; i--) {
-          stack.push(conCall.getDefCallArguments().get(i));
+        if (conCall != null) {
+          stack.pop();
+          stack.pushAll(conCall.getDefCallArguments());
         }
       }
+    } finally {
+      stack.reset(base);
     }
   }
 
@@ -262,14 +350,20 @@ public class NormalizeVisitor extends BaseExpressionVisitor<NormalizeVisitor.Mod
   @Override
   public Expression visitDefCall(DefCallExpression expr, Mode mode) {
     if (!expr.getDefinition().status().bodyIsOK()) {
+      if (expr.getDefinition() instanceof Function) {
+        WhnfCache cache = WhnfCache.getCurrent();
+        if (cache != null) {
+          cache.uncheckedBodyVisited();
+        }
+      }
       return applyDefCall(expr, mode);
     }
 
     if (expr instanceof FieldCallExpression) {
-      Expression thisExpr = ((FieldCallExpression) expr).getExpression().accept(this, Mode.WHNF);
+      Expression thisExpr = ((FieldCallExpression) expr).getExpression().normalize(Mode.WHNF);
       if (!thisExpr.isInstance(InferenceReferenceExpression.class) || !(thisExpr.cast(InferenceReferenceExpression.class).getVariable() instanceof TypeClassInferenceVariable)) {
         Expression type = thisExpr.getType();
-        ClassCallExpression classCall = type == null ? null : type.accept(this, Mode.WHNF).checkedCast(ClassCallExpression.class);
+        ClassCallExpression classCall = type == null ? null : type.normalize(Mode.WHNF).checkedCast(ClassCallExpression.class);
         if (classCall != null) {
           Expression impl = classCall.getImplementation((ClassField) expr.getDefinition(), thisExpr);
           if (impl != null) {
@@ -310,7 +404,15 @@ public class NormalizeVisitor extends BaseExpressionVisitor<NormalizeVisitor.Mod
 
   @Override
   public Expression visitInferenceReference(InferenceReferenceExpression expr, Mode mode) {
-    return expr.getSubstExpression() != null ? expr.getSubstExpression().accept(this, mode) : expr;
+    if (expr.getSubstExpression() != null) {
+      return expr.getSubstExpression().accept(this, mode);
+    }
+
+    WhnfCache cache = WhnfCache.getCurrent();
+    if (cache != null) {
+      cache.inferenceVariableVisited();
+    }
+    return expr;
   }
 
   @Override
@@ -387,7 +489,7 @@ public class NormalizeVisitor extends BaseExpressionVisitor<NormalizeVisitor.Mod
 
   @Override
   public Expression visitProj(ProjExpression expr, Mode mode) {
-    Expression newExpr = expr.getExpression().accept(this, Mode.WHNF);
+    Expression newExpr = expr.getExpression().normalize(Mode.WHNF);
     TupleExpression exprNorm = newExpr.checkedCast(TupleExpression.class);
     if (exprNorm != null) {
       return exprNorm.getFields().get(expr.getField()).accept(this, mode);
@@ -416,6 +518,7 @@ public class NormalizeVisitor extends BaseExpressionVisitor<NormalizeVisitor.Mod
 
   @Override
   public Expression visitCase(CaseExpression expr, Mode mode) {
+    ReductionBudget.reduce(null);
     Expression result = eval(expr.getElimTree(), expr.getArguments(), new ExprSubstitution(), LevelSubstitution.EMPTY);
     if (result != null) {
       return result;
@@ -452,4 +555,9 @@ public class NormalizeVisitor extends BaseExpressionVisitor<NormalizeVisitor.Mod
   public Expression visitOfType(OfTypeExpression expr, Mode mode) {
     return mode == Mode.NF ? new OfTypeExpression(expr.getExpression().accept(this, mode), expr.getTypeOf()) : expr.getExpression().accept(this, mode);
   }
+
+  @Override
+  public Expression visitInteger(IntegerExpression expr, Mode mode) {
+    return expr;
+  }
 }
@@ -0,0 +1,128 @@
+package com.jetbrains.jetpad.vclang.core.expr.visitor;
+
+import com.jetbrains.jetpad.vclang.core.definition.Definition;
+
+/**
+ * Limits the number of reductions and the time that normalization may take while a definition is typechecked.
+ * Limits are disabled by default.
+ *
+ * A budget is installed on the current thread by {@link #setCurrent}.
+ * Normalizers consume it by {@link #reduce}, other long running visitors only check the deadline by {@link #check}.
+ * When the budget is exhausted, {@link ReductionLimitExceededException} is thrown.
+ * If no budget is installed, normalization is not limited.
+ */
+public class ReductionBudget {
+  private static final ThreadLocal<ReductionBudget> CURRENT = new ThreadLocal<>();
+  // The clock is read once in this number of steps
+  private static final int CLOCK_PERIOD = 1024;
+
+  private static volatile boolean ourEnabled = false;
+  private static volatile long ourMaxReductions = 0;
+  private static volatile long ourTimeout = 0;
+
+  private final long myMaxReductions;
+  private final long myDeadline;
+  private long myReductions;
+  private int myTicks;
+  private Definition myLastUnfolded;
+
+  private ReductionBudget(long maxReductions, long deadline) {
+    myMaxReductions = maxReductions;
+    myDeadline = deadline;
+  }
+
+  /**
+   * Sets limits of budgets that are created by {@link #create}.
+   *
+   * @param maxReductions  the maximal number of reductions or 0 if it is not limited.
+   * @param timeoutMillis  the maximal time in milliseconds or 0 if it is not limited.
+   */
+  public static void setLimits(long maxReductions, long timeoutMillis) {
+    ourMaxReductions = maxReductions;
+    ourTimeout = timeoutMillis;
+    ourEnabled = maxReductions > 0 || timeoutMillis > 0;
+  }
+
+  public static boolean isEnabled() {
+    return ourEnabled;
+  }
+
+  /**
+   * @return a new budget with the current limits or null if limits are disabled.
+   */
+  public static ReductionBudget create() {
+    if (!ourEnabled) {
+      return null;
+    }
+    long timeout = ourTimeout;
+    return new ReductionBudget(ourMaxReductions, timeout > 0 ? System.nanoTime() + timeout * 1000000 : 0);
+  }
+
+  public static ReductionBudget getCurrent() {
+    return CURRENT.get();
+  }
+
+  /**
+   * Makes {@code budget} the budget of normalization on the current thread.
+   *
+   * @return the previously installed budget.
+   */
+  public static ReductionBudget setCurrent(ReductionBudget budget) {
+    ReductionBudget previous = CURRENT.get();
+    if (budget == null) {
+      CURRENT.remove();
+    } else {
+      CURRENT.set(budget);
+    }
+    return previous;
+  }
+
+  /**
+   * Consumes one reduction of the current budget.
+   *
+   * @param definition  the unfolded definition or null for beta-reductions.
+   */
+  public static void reduce(Definition definition) {
+    if (ourEnabled) {
+      ReductionBudget budget = CURRENT.get();
+      if (budget != null) {
+        budget.consume(definition);
+      }
+    }
+  }
+
+  /**
+   * Checks that the deadline of the current budget has not passed.
+   */
+  public static void check() {
+    if (ourEnabled) {
+      ReductionBudget budget = CURRENT.get();
+      if (budget != null) {
+        budget.tick();
+      }
+    }
+  }
+
+  public long getReductions() {
+    return myReductions;
+  }
+
+  private void consume(Definition definition) {
+    if (definition != null) {
+      myLastUnfolded = definition;
+    }
+    if (myMaxReductions > 0 && ++myReductions > myMaxReductions) {
+      throw new ReductionLimitExceededException(myLastUnfolded, false);
+    }
+    tick();
+  }
+
+  private void tick() {
+    if (myDeadline != 0 && ++myTicks >= CLOCK_PERIOD) {
+      myTicks = 0;
+      if (System.nanoTime() - myDeadline > 0) {
+        throw new ReductionLimitExceededException(myLastUnfolded, true);
+      }
+    }
+  }
+}
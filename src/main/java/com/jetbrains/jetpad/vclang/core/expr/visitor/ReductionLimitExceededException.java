@@ -0,0 +1,21 @@
+package com.jetbrains.jetpad.vclang.core.expr.visitor;
+
+import com.jetbrains.jetpad.vclang.core.definition.Definition;
+
+/**
+ * Thrown when the {@link ReductionBudget} of the current thread is exhausted.
+ */
+public class ReductionLimitExceededException extends RuntimeException {
+  public final Definition definition;
+  public final boolean timeout;
+
+  /**
+   * @param definition  the definition that was unfolded last or null if no definition was unfolded.
+   * @param timeout     true if the deadline has passed, false if the number of reductions is exceeded.
+   */
+  public ReductionLimitExceededException(Definition definition, boolean timeout) {
+    super(timeout ? "Normalization timed out" : "Reduction limit exceeded", null, false, false);
+    this.definition = definition;
+    this.timeout = timeout;
+  }
+}
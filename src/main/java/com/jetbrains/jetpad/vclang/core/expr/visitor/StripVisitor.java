@@ -185,4 +185,9 @@ public class StripVisitor implements ExpressionVisitor<Void, Expression> {
   public Expression visitOfType(OfTypeExpression expr, Void params) {
     return expr.getExpression().accept(this, null);
   }
+
+  @Override
+  public Expression visitInteger(IntegerExpression expr, Void params) {
+    return expr;
+  }
 }
@@ -19,6 +19,7 @@ import com.jetbrains.jetpad.vclang.term.prettyprint.PrettyPrintVisitor;
 import com.jetbrains.jetpad.vclang.typechecking.error.local.GoalError;
 import com.jetbrains.jetpad.vclang.typechecking.patternmatching.Util;
 
+import java.math.BigInteger;
 import java.util.*;
 import java.util.function.Function;
 
@@ -279,7 +280,7 @@ public class ToAbstractVisitor extends BaseExpressionVisitor<Void, Abstract.Expr
 
   @Override
   public Abstract.Expression visitConCall(ConCallExpression expr, Void params) {
-    Integer num = getNum(expr);
+    BigInteger num = getNum(expr);
     if (num != null) {
       return myFactory.makeNumericalLiteral(num);
     }
@@ -403,18 +404,21 @@ public class ToAbstractVisitor extends BaseExpressionVisitor<Void, Abstract.Expr
     return result;
   }
 
-  private Integer getNum(Expression expr) {
+  private BigInteger getNum(Expression expr) {
+    if (expr.isInstance(IntegerExpression.class)) {
+      return expr.cast(IntegerExpression.class).getInteger();
+    }
     ConCallExpression conCall = expr.checkedCast(ConCallExpression.class);
     if (conCall == null) {
       return null;
     }
     if (conCall.getDefinition() == Prelude.ZERO) {
-      return 0;
+      return BigInteger.ZERO;
     }
     if (conCall.getDefinition() == Prelude.SUC) {
-      Integer result = getNum(conCall.getDefCallArguments().get(0));
+      BigInteger result = getNum(conCall.getDefCallArguments().get(0));
       if (result != null) {
-        return result + 1;
+        return result.add(BigInteger.ONE);
       }
     }
     return null;
@@ -524,6 +528,11 @@ public class ToAbstractVisitor extends BaseExpressionVisitor<Void, Abstract.Expr
     return clauses;
   }
 
+  @Override
+  public Abstract.Expression visitInteger(IntegerExpression expr, Void params) {
+    return myFactory.makeNumericalLiteral(expr.getInteger());
+  }
+
   @Override
   public Abstract.Expression visitOfType(OfTypeExpression expr, Void params) {
     return expr.getExpression().accept(this, null);
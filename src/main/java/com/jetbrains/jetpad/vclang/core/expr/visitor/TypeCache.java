@@ -0,0 +1,69 @@
+package com.jetbrains.jetpad.vclang.core.expr.visitor;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.jetbrains.jetpad.vclang.core.expr.DefCallExpression;
+import com.jetbrains.jetpad.vclang.core.expr.Expression;
+import com.jetbrains.jetpad.vclang.core.expr.VariableSummary;
+
+import java.util.function.Function;
+
+/**
+ * Memoizes types of definition calls by their identity while a definition is typechecked.
+ * Keys are weakly referenced, so the cache does not keep expressions alive.
+ *
+ * The type of a call is determined by the type of its definition and its arguments, so it does not change
+ * unless the header of the definition is not typechecked yet or the call contains inference variables;
+ * such types are not stored.
+ * A cache is installed on the current thread by {@link #setCurrent} and consulted by {@link GetTypeVisitor}.
+ */
+public class TypeCache {
+  private static final ThreadLocal<TypeCache> CURRENT = new ThreadLocal<>();
+
+  private final Cache<Expression, Expression> myCache = CacheBuilder.newBuilder().weakKeys().build();
+  private long myHits;
+  private long myMisses;
+
+  public static TypeCache getCurrent() {
+    return CURRENT.get();
+  }
+
+  /**
+   * Makes {@code cache} the cache consulted by {@link Expression#getType} on the current thread.
+   *
+   * @return the previously installed cache.
+   */
+  public static TypeCache setCurrent(TypeCache cache) {
+    TypeCache previous = CURRENT.get();
+    if (cache == null) {
+      CURRENT.remove();
+    } else {
+      CURRENT.set(cache);
+    }
+    return previous;
+  }
+
+  @SuppressWarnings("unchecked")
+  <E extends DefCallExpression, T extends Expression> T getType(E expr, Function<E, T> getType) {
+    T type = (T) myCache.getIfPresent(expr);
+    if (type != null) {
+      myHits++;
+      return type;
+    }
+
+    myMisses++;
+    type = getType.apply(expr);
+    if (type != null && expr.getDefinition().status().headerIsOK() && (expr.getVariableSummary() & VariableSummary.UNSTABLE) == 0) {
+      myCache.put(expr, type);
+    }
+    return type;
+  }
+
+  public long getHits() {
+    return myHits;
+  }
+
+  public long getMisses() {
+    return myMisses;
+  }
+}
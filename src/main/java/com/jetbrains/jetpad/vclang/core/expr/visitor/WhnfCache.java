@@ -0,0 +1,114 @@
+package com.jetbrains.jetpad.vclang.core.expr.visitor;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.jetbrains.jetpad.vclang.core.expr.Expression;
+import com.jetbrains.jetpad.vclang.typechecking.TypecheckingProfiler;
+
+/**
+ * Memoizes weak head normal forms of expressions by their identity.
+ * Keys are weakly referenced, so the cache does not keep expressions alive.
+ *
+ * A result that was computed while an unsolved inference variable was visited is valid only until some variable is solved;
+ * a result that was computed while a function without a checked body was visited is not stored at all.
+ * A cache is not thread-safe; it should be installed on one thread at a time.
+ * Hits and misses are also counted by {@link TypecheckingProfiler}.
+ */
+public class WhnfCache {
+  private static final ThreadLocal<WhnfCache> CURRENT = new ThreadLocal<>();
+
+  private final Cache<Expression, Entry> myCache = CacheBuilder.newBuilder().weakKeys().softValues().build();
+  private long myGeneration;
+  private long myHits;
+  private long myMisses;
+  private long myInferenceVariablesVisited;
+  private long myUncheckedBodiesVisited;
+
+  private static class Entry {
+    final Expression result;
+    final long generation; // -1 if the result does not depend on inference variables
+
+    Entry(Expression result, long generation) {
+      this.result = result;
+      this.generation = generation;
+    }
+  }
+
+  public static WhnfCache getCurrent() {
+    return CURRENT.get();
+  }
+
+  /**
+   * Makes {@code cache} the cache consulted by {@link Expression#normalize} on the current thread.
+   *
+   * @return the previously installed cache.
+   */
+  public static WhnfCache setCurrent(WhnfCache cache) {
+    WhnfCache previous = CURRENT.get();
+    if (cache == null) {
+      CURRENT.remove();
+    } else {
+      CURRENT.set(cache);
+    }
+    return previous;
+  }
+
+  public Expression normalize(Expression expr) {
+    Entry entry = myCache.getIfPresent(expr);
+    if (entry != null && (entry.generation == -1 || entry.generation == myGeneration)) {
+      myHits++;
+      TypecheckingProfiler.count(TypecheckingProfiler.Counter.WHNF_CACHE_HITS);
+      if (entry.generation != -1) {
+        myInferenceVariablesVisited++;
+      }
+      return entry.result;
+    }
+
+    myMisses++;
+    TypecheckingProfiler.count(TypecheckingProfiler.Counter.WHNF_CACHE_MISSES);
+    long generation = myGeneration;
+    long inferenceVariablesVisited = myInferenceVariablesVisited;
+    long uncheckedBodiesVisited = myUncheckedBodiesVisited;
+    Expression result = NormalizeVisitor.whnf(expr);
+    if (uncheckedBodiesVisited == myUncheckedBodiesVisited) {
+      myCache.put(expr, new Entry(result, inferenceVariablesVisited == myInferenceVariablesVisited ? -1 : generation));
+    }
+    return result;
+  }
+
+  void inferenceVariableVisited() {
+    myInferenceVariablesVisited++;
+  }
+
+  void uncheckedBodyVisited() {
+    myUncheckedBodiesVisited++;
+  }
+
+  /**
+   * Invalidates every result that depends on unsolved inference variables.
+   * Should be called whenever an inference variable gets a substitution.
+   */
+  public void invalidateInferenceResults() {
+    myGeneration++;
+  }
+
+  public void clear() {
+    myCache.invalidateAll();
+  }
+
+  public long getHits() {
+    return myHits;
+  }
+
+  public long getMisses() {
+    return myMisses;
+  }
+
+  /**
+   * Adds hits and misses of {@code cache} to the statistics of this cache.
+   */
+  public void addStatistics(WhnfCache cache) {
+    myHits += cache.myHits;
+    myMisses += cache.myMisses;
+  }
+}
@@ -2,6 +2,7 @@ package com.jetbrains.jetpad.vclang.core.subst;
 
 import com.jetbrains.jetpad.vclang.core.context.binding.Variable;
 import com.jetbrains.jetpad.vclang.core.expr.Expression;
+import com.jetbrains.jetpad.vclang.core.expr.VariableSummary;
 
 import java.util.Collections;
 import java.util.HashMap;
@@ -10,6 +11,7 @@ import java.util.Set;
 
 public class ExprSubstitution {
   private Map<Variable, Expression> mySubstExprs;
+  private long myVariableMask;
 
   public ExprSubstitution() {
     mySubstExprs = Collections.emptyMap();
@@ -32,8 +34,17 @@ public class ExprSubstitution {
     return mySubstExprs.get(binding);
   }
 
+  /**
+   * @return the {@link VariableSummary} bits of the substituted variables.
+   *         Removed variables may still be included.
+   */
+  public long getVariableMask() {
+    return myVariableMask;
+  }
+
   public void clear() {
     mySubstExprs.clear();
+    myVariableMask = 0;
   }
 
   public void remove(Variable variable) {
@@ -45,6 +56,7 @@ public class ExprSubstitution {
       mySubstExprs = new HashMap<>();
     }
     mySubstExprs.put(binding, expression);
+    myVariableMask |= VariableSummary.of(binding);
   }
 
   public void addAll(ExprSubstitution substitution) {
@@ -53,6 +65,7 @@ public class ExprSubstitution {
         mySubstExprs = new HashMap<>();
       }
       mySubstExprs.putAll(substitution.mySubstExprs);
+      myVariableMask |= substitution.myVariableMask;
     }
   }
 
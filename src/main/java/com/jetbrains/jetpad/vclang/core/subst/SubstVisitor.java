@@ -24,13 +24,27 @@ public class SubstVisitor extends BaseExpressionVisitor<Void, Expression> {
     myLevelSubstitution = levelSubstitution;
   }
 
+  /**
+   * Checks if {@code expr} may be changed by this substitution.
+   * Expressions that cannot be changed are returned as is, so the result shares them with the original expression.
+   */
+  private boolean isAffected(Expression expr) {
+    return VariableSummary.mayContain(expr.getVariableSummary(), myExprSubstitution.getVariableMask(), !myLevelSubstitution.isEmpty());
+  }
+
   @Override
   public AppExpression visitApp(AppExpression expr, Void params) {
+    if (!isAffected(expr)) {
+      return expr;
+    }
     return new AppExpression(expr.getFunction().accept(this, null), expr.getArgument().accept(this, null));
   }
 
   @Override
   public Expression visitDefCall(DefCallExpression expr, Void params) {
+    if (!isAffected(expr)) {
+      return expr;
+    }
     List<Expression> args = new ArrayList<>(expr.getDefCallArguments().size());
     for (Expression arg : expr.getDefCallArguments()) {
       args.add(arg.accept(this, null));
@@ -40,11 +54,18 @@ public class SubstVisitor extends BaseExpressionVisitor<Void, Expression> {
 
   @Override
   public DataCallExpression visitDataCall(DataCallExpression expr, Void params) {
-    return (DataCallExpression) visitDefCall(expr, null);
+    if (ExpressionInterner.isInterned(expr) || !isAffected(expr)) {
+      return expr;
+    }
+    return ExpressionInterner.intern((DataCallExpression) visitDefCall(expr, null));
   }
 
   @Override
   public ConCallExpression visitConCall(ConCallExpression expr, Void params) {
+    if (ExpressionInterner.isInterned(expr) || !isAffected(expr)) {
+      return expr;
+    }
+
     List<Expression> dataTypeArgs = new ArrayList<>(expr.getDataTypeArguments().size());
     for (Expression parameter : expr.getDataTypeArguments()) {
       dataTypeArgs.add(parameter.accept(this, null));
@@ -55,11 +76,14 @@ public class SubstVisitor extends BaseExpressionVisitor<Void, Expression> {
       args.add(arg.accept(this, null));
     }
 
-    return new ConCallExpression(expr.getDefinition(), expr.getSortArgument().subst(myLevelSubstitution), dataTypeArgs, args);
+    return ExpressionInterner.intern(new ConCallExpression(expr.getDefinition(), expr.getSortArgument().subst(myLevelSubstitution), dataTypeArgs, args));
   }
 
   @Override
   public ClassCallExpression visitClassCall(ClassCallExpression expr, Void params) {
+    if (!isAffected(expr)) {
+      return expr;
+    }
     Map<ClassField, Expression> fieldSet = new HashMap<>();
     for (Map.Entry<ClassField, Expression> entry : expr.getImplementedHere().entrySet()) {
       fieldSet.put(entry.getKey(), entry.getValue().accept(this, null));
@@ -69,6 +93,9 @@ public class SubstVisitor extends BaseExpressionVisitor<Void, Expression> {
 
   @Override
   public Expression visitFieldCall(FieldCallExpression expr, Void params) {
+    if (!isAffected(expr)) {
+      return expr;
+    }
     Expression result = myExprSubstitution.get(expr.getDefinition());
     if (result != null) {
       return new AppExpression(result, expr.getExpression().accept(this, null));
@@ -97,6 +124,9 @@ public class SubstVisitor extends BaseExpressionVisitor<Void, Expression> {
 
   @Override
   public LamExpression visitLam(LamExpression expr, Void params) {
+    if (!isAffected(expr)) {
+      return expr;
+    }
     SingleDependentLink parameters = DependentLink.Helper.subst(expr.getParameters(), myExprSubstitution, myLevelSubstitution);
     LamExpression result = new LamExpression(expr.getResultSort().subst(myLevelSubstitution), parameters, expr.getBody().accept(this, null));
     DependentLink.Helper.freeSubsts(expr.getParameters(), myExprSubstitution);
@@ -105,6 +135,9 @@ public class SubstVisitor extends BaseExpressionVisitor<Void, Expression> {
 
   @Override
   public PiExpression visitPi(PiExpression expr, Void params) {
+    if (!isAffected(expr)) {
+      return expr;
+    }
     SingleDependentLink parameters = DependentLink.Helper.subst(expr.getParameters(), myExprSubstitution, myLevelSubstitution);
     PiExpression result = new PiExpression(expr.getResultSort().subst(myLevelSubstitution), parameters, expr.getCodomain().accept(this, null));
     DependentLink.Helper.freeSubsts(expr.getParameters(), myExprSubstitution);
@@ -113,6 +146,9 @@ public class SubstVisitor extends BaseExpressionVisitor<Void, Expression> {
 
   @Override
   public SigmaExpression visitSigma(SigmaExpression expr, Void params) {
+    if (!isAffected(expr)) {
+      return expr;
+    }
     SigmaExpression result = new SigmaExpression(expr.getSort().subst(myLevelSubstitution), DependentLink.Helper.subst(expr.getParameters(), myExprSubstitution, myLevelSubstitution));
     DependentLink.Helper.freeSubsts(expr.getParameters(), myExprSubstitution);
     return result;
@@ -120,16 +156,22 @@ public class SubstVisitor extends BaseExpressionVisitor<Void, Expression> {
 
   @Override
   public UniverseExpression visitUniverse(UniverseExpression expr, Void params) {
-    return myLevelSubstitution.isEmpty() ? expr : new UniverseExpression(expr.getSort().subst(myLevelSubstitution));
+    return myLevelSubstitution.isEmpty() || ExpressionInterner.isInterned(expr) ? expr : ExpressionInterner.intern(new UniverseExpression(expr.getSort().subst(myLevelSubstitution)));
   }
 
   @Override
   public Expression visitError(ErrorExpression expr, Void params) {
+    if (!isAffected(expr)) {
+      return expr;
+    }
     return expr.getExpression() == null ? expr : new ErrorExpression(expr.getExpression().accept(this, null), expr.getError());
   }
 
   @Override
   public TupleExpression visitTuple(TupleExpression expr, Void params) {
+    if (!isAffected(expr)) {
+      return expr;
+    }
     List<Expression> fields = new ArrayList<>(expr.getFields().size());
     for (Expression field : expr.getFields()) {
       fields.add(field.accept(this, null));
@@ -139,16 +181,25 @@ public class SubstVisitor extends BaseExpressionVisitor<Void, Expression> {
 
   @Override
   public Expression visitProj(ProjExpression expr, Void params) {
+    if (!isAffected(expr)) {
+      return expr;
+    }
     return ProjExpression.make(expr.getExpression().accept(this, null), expr.getField());
   }
 
   @Override
   public Expression visitNew(NewExpression expr, Void params) {
+    if (!isAffected(expr)) {
+      return expr;
+    }
     return new NewExpression(visitClassCall(expr.getExpression(), null));
   }
 
   @Override
   public LetExpression visitLet(LetExpression letExpression, Void params) {
+    if (!isAffected(letExpression)) {
+      return letExpression;
+    }
     List<LetClause> clauses = new ArrayList<>(letExpression.getClauses().size());
     for (LetClause clause : letExpression.getClauses()) {
       LetClause newClause = new LetClause(clause.getName(), clause.getExpression().accept(this, null));
@@ -162,6 +213,9 @@ public class SubstVisitor extends BaseExpressionVisitor<Void, Expression> {
 
   @Override
   public Expression visitCase(CaseExpression expr, Void params) {
+    if (!isAffected(expr)) {
+      return expr;
+    }
     List<Expression> arguments = new ArrayList<>(expr.getArguments().size());
     for (Expression arg : expr.getArguments()) {
       arguments.add(arg.accept(this, null));
@@ -190,6 +244,14 @@ public class SubstVisitor extends BaseExpressionVisitor<Void, Expression> {
 
   @Override
   public Expression visitOfType(OfTypeExpression expr, Void params) {
+    if (!isAffected(expr)) {
+      return expr;
+    }
     return new OfTypeExpression(expr.getExpression().accept(this, null), expr.getTypeOf().accept(this, null));
   }
+
+  @Override
+  public Expression visitInteger(IntegerExpression expr, Void params) {
+    return expr;
+  }
 }
@@ -268,6 +268,6 @@ public class AbstractCompareVisitor implements AbstractExpressionVisitor<Abstrac
 
   @Override
   public Boolean visitNumericLiteral(Abstract.NumericLiteral expr1, Abstract.Expression expr2) {
-    return expr2 instanceof Abstract.NumericLiteral && expr1.getNumber() == ((Abstract.NumericLiteral) expr2).getNumber();
+    return expr2 instanceof Abstract.NumericLiteral && expr1.getNumber().equals(((Abstract.NumericLiteral) expr2).getNumber());
   }
 }
@@ -1,6 +1,8 @@
 package com.jetbrains.jetpad.vclang.frontend;
 
 import com.jetbrains.jetpad.vclang.core.definition.Definition;
+import com.jetbrains.jetpad.vclang.core.expr.visitor.NormalizeVisitor;
+import com.jetbrains.jetpad.vclang.core.expr.visitor.WhnfCache;
 import com.jetbrains.jetpad.vclang.error.DummyErrorReporter;
 import com.jetbrains.jetpad.vclang.error.ErrorClassifier;
 import com.jetbrains.jetpad.vclang.error.GeneralError;
@@ -15,6 +17,7 @@ import com.jetbrains.jetpad.vclang.module.caching.*;
 import com.jetbrains.jetpad.vclang.module.source.SourceId;
 import com.jetbrains.jetpad.vclang.module.source.SourceSupplier;
 import com.jetbrains.jetpad.vclang.module.source.Storage;
+import com.jetbrains.jetpad.vclang.naming.scope.primitive.EmptyScope;
 import com.jetbrains.jetpad.vclang.naming.namespace.DynamicNamespaceProvider;
 import com.jetbrains.jetpad.vclang.naming.namespace.StaticNamespaceProvider;
 import com.jetbrains.jetpad.vclang.term.Abstract;
@@ -24,15 +27,25 @@ import com.jetbrains.jetpad.vclang.term.SourceInfoProvider;
 import com.jetbrains.jetpad.vclang.typechecking.TypecheckedReporter;
 import com.jetbrains.jetpad.vclang.typechecking.TypecheckerState;
 import com.jetbrains.jetpad.vclang.typechecking.Typechecking;
+import com.jetbrains.jetpad.vclang.typechecking.TypecheckingProfiler;
 import com.jetbrains.jetpad.vclang.typechecking.error.TypeCheckingError;
 import com.jetbrains.jetpad.vclang.typechecking.error.local.TerminationCheckError;
+import com.jetbrains.jetpad.vclang.typechecking.order.DefinitionGetDepsVisitor;
 import com.jetbrains.jetpad.vclang.typechecking.order.DependencyListener;
+import com.jetbrains.jetpad.vclang.typechecking.typeclass.DefinitionResolveInstanceVisitor;
+import com.jetbrains.jetpad.vclang.typechecking.typeclass.provider.SimpleClassViewInstanceProvider;
+import com.jetbrains.jetpad.vclang.typechecking.typeclass.scope.InstanceScopeProvider;
 
 import javax.annotation.Nonnull;
 import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 
 public abstract class BaseCliFrontend<SourceIdT extends SourceId> {
   protected final Map<SourceIdT, Map<String, Abstract.Definition>> definitionIds = new HashMap<>();
@@ -50,8 +63,15 @@ public abstract class BaseCliFrontend<SourceIdT extends SourceId> {
   // Typechecking
   private final boolean useCache;
   private final TypecheckerState state;
+  private int typecheckingThreads = 1;
+  private NormalizeVisitor.Engine normalizationEngine = NormalizeVisitor.Engine.SUBSTITUTION;
+  private boolean useWhnfCache = false;
   Map<SourceIdT, ModuleResult> moduleResults = new LinkedHashMap<>();
 
+  // Watch mode
+  private static final long WATCH_DELAY = 50;
+  private final Map<SourceIdT, Set<SourceIdT>> moduleDependencies = new HashMap<>();
+
 
   public BaseCliFrontend(Storage<SourceIdT> storage, boolean recompile) {
     useCache = !recompile;
@@ -60,9 +80,63 @@ public abstract class BaseCliFrontend<SourceIdT extends SourceId> {
     srcInfoProvider = moduleTracker.sourceInfoCollector.sourceInfoProvider;
 
     cacheManager = new CacheManager<>(createPersistenceProvider(), storage, moduleTracker, srcInfoProvider);
+    cacheManager.setModuleProvider(source -> {
+      SourceSupplier.LoadResult result = loadedSources.get(source);
+      return result != null ? result.definition : null;
+    });
     state = cacheManager.getTypecheckerState();
   }
 
+  /**
+   * Sets the number of threads for typechecking.
+   * If it is greater than 1, independent definitions are typechecked in parallel
+   * and caches of different modules are read and written in parallel.
+   */
+  public void setTypecheckingThreads(int threads) {
+    typecheckingThreads = threads;
+    cacheManager.setThreads(threads);
+  }
+
+  /**
+   * Sets the engine that computes weak head normal forms while modules are typechecked.
+   */
+  public void setNormalizationEngine(NormalizeVisitor.Engine engine) {
+    normalizationEngine = engine;
+  }
+
+  /**
+   * Makes typechecking memoize weak head normal forms of expressions, see {@link WhnfCache}.
+   * Every run of typechecking gets a new cache.
+   */
+  public void setWhnfCacheEnabled(boolean enabled) {
+    useWhnfCache = enabled;
+  }
+
+  /**
+   * Sets the codec of cache files that are written.
+   */
+  public void setCacheCodec(CacheCodec codec) {
+    cacheManager.setCodec(codec);
+  }
+
+  /**
+   * Called before the requested sources are loaded.
+   * An implementation may start loading them in the background.
+   */
+  protected void prefetchSources(Collection<SourceIdT> sources) {}
+
+  /**
+   * Called when a loaded module is unloaded in the watch mode before it is loaded again.
+   * An implementation should unregister the module.
+   */
+  protected void moduleUnloaded(SourceIdT source) {}
+
+  /**
+   * Called when a module was built from the interface of its cache, but the cache could not be loaded.
+   * An implementation should make the storage parse the module when it is loaded again.
+   */
+  protected void sourceRequired(SourceIdT source) {}
+
   class ModuleTracker extends BaseModuleLoader<SourceIdT> implements SourceVersionTracker<SourceIdT> {
     private final DefinitionIdsCollector defIdCollector = new DefinitionIdsCollector();
     private final OneshotSourceInfoCollector<SourceIdT> sourceInfoCollector = new OneshotSourceInfoCollector<>();
@@ -114,6 +188,11 @@ public abstract class BaseCliFrontend<SourceIdT extends SourceId> {
       return myStorage.isAvailable(sourceId);
     }
 
+    public boolean isChanged(SourceIdT sourceId) {
+      SourceSupplier.LoadResult result = loadedSources.get(sourceId);
+      return result == null || myStorage.getAvailableVersion(sourceId) != result.version;
+    }
+
     @Override
     public long getCurrentVersion(@Nonnull SourceIdT sourceId) {
       return loadedSources.get(sourceId).version;
@@ -234,28 +313,34 @@ public abstract class BaseCliFrontend<SourceIdT extends SourceId> {
   protected abstract String displaySource(SourceIdT source, boolean modulePathOnly);
 
 
-  private void requestFileTypechecking(Path path) {
+  private static ModulePath modulePathOf(Path path) {
     String fileName = path.getFileName().toString();
-    if (!fileName.endsWith(FileStorage.EXTENSION)) return;
+    return FileStorage.modulePath(path.resolveSibling(fileName.substring(0, fileName.length() - FileStorage.EXTENSION.length())));
+  }
+
+  private SourceIdT requestFileTypechecking(Path path) {
+    if (!path.getFileName().toString().endsWith(FileStorage.EXTENSION)) return null;
 
-    Path sourcePath = path.resolveSibling(fileName.substring(0, fileName.length() - FileStorage.EXTENSION.length()));
-    ModulePath modulePath = FileStorage.modulePath(sourcePath);
+    ModulePath modulePath = modulePathOf(path);
     if (modulePath == null) {
       System.err.println("[Not found] " + path + " is an illegal module path");
-      return;
+      return null;
     }
     SourceIdT sourceId = moduleTracker.locateModule(modulePath);
     if (sourceId == null || !moduleTracker.isAvailable(sourceId)) {
       System.err.println("[Not found] " + path + " is not available");
-      return;
+      return null;
     }
     requestedSources.add(sourceId);
+    return sourceId;
   }
 
-  private enum ModuleResult { UNKNOWN, OK, GOALS, NOT_LOADED, ERRORS }
+  enum ModuleResult { UNKNOWN, OK, GOALS, NOT_LOADED, ERRORS }
 
   private void typeCheckSources(Set<SourceIdT> sources) {
     final Set<Abstract.ClassDefinition> modulesToTypeCheck = new LinkedHashSet<>();
+    final Map<SourceIdT, DependencyCacheLoadingException> dependentCaches = new LinkedHashMap<>();
+    final Set<SourceIdT> previouslyLoaded = new HashSet<>(loadedSources.keySet());
     for (SourceIdT source : sources) {
       final Abstract.ClassDefinition definition;
       SourceSupplier.LoadResult result = loadedSources.get(source);
@@ -264,15 +349,6 @@ public abstract class BaseCliFrontend<SourceIdT extends SourceId> {
         if (definition == null) {
           continue;
         }
-
-        if (useCache) {
-          try {
-            cacheManager.loadCache(source, definition);
-          } catch (CacheLoadingException e) {
-            //e.printStackTrace();
-          }
-        }
-
         flushErrors();
       } else {
         definition = result.definition;
@@ -280,6 +356,40 @@ public abstract class BaseCliFrontend<SourceIdT extends SourceId> {
       modulesToTypeCheck.add(definition);
     }
 
+    // Caches of imported modules are loaded too since modules built from interfaces of their caches cannot be typechecked
+    final List<SourceIdT> newSources = new ArrayList<>();
+    for (SourceIdT source : loadedSources.keySet()) {
+      if (!previouslyLoaded.contains(source)) {
+        newSources.add(source);
+      }
+    }
+
+    if (useCache) {
+      for (Map.Entry<SourceIdT, CacheLoadingException> entry : cacheManager.loadAll(newSources).failed.entrySet()) {
+        if (entry.getValue() instanceof DependencyCacheLoadingException) {
+          dependentCaches.put(entry.getKey(), (DependencyCacheLoadingException) entry.getValue());
+        }
+      }
+      flushErrors();
+    }
+
+    // If the cache of a module built from its interface was not loaded, the module is parsed and everything that was loaded with it is loaded again,
+    // so that other modules do not refer to its stubs
+    boolean sourceRequired = false;
+    for (SourceIdT source : newSources) {
+      if (loadedSources.get(source).fromInterface && !cacheManager.isCacheLoaded(source)) {
+        sourceRequired(source);
+        sourceRequired = true;
+      }
+    }
+    if (sourceRequired) {
+      for (SourceIdT source : newSources) {
+        unload(source);
+      }
+      typeCheckSources(sources);
+      return;
+    }
+
     System.out.println("--- Checking ---");
 
     class ResultTracker extends ErrorClassifier implements DependencyListener, TypecheckedReporter {
@@ -329,7 +439,66 @@ public abstract class BaseCliFrontend<SourceIdT extends SourceId> {
     }
     ResultTracker resultTracker = new ResultTracker();
 
-    new Typechecking(state, getStaticNsProvider(), getDynamicNsProvider(), HasOpens.GET, resultTracker, resultTracker, resultTracker).typecheckModules(modulesToTypeCheck);
+    Typechecking typechecking = new Typechecking(state, getStaticNsProvider(), getDynamicNsProvider(), HasOpens.GET, resultTracker, resultTracker, resultTracker);
+    typechecking.setNormalizationEngine(normalizationEngine);
+    if (useWhnfCache) {
+      typechecking.setWhnfCache(new WhnfCache());
+    }
+
+    try {
+      typecheckWithCaches(typechecking, dependentCaches, modulesToTypeCheck);
+    } catch (LazyCacheLoadingException e) {
+      // A definition of a loaded cache turned out to be corrupted, so the module and everything that refers to it is loaded again from source
+      @SuppressWarnings("unchecked")
+      SourceIdT corrupted = (SourceIdT) e.sourceId;
+      System.err.println("[Cache] " + displaySource(corrupted, true) + ": " + e.getMessage());
+      sourceRequired(corrupted);
+      Set<SourceIdT> toUnload = new LinkedHashSet<>(newSources);
+      toUnload.add(corrupted);
+      for (SourceIdT source : withDependents(toUnload)) {
+        unload(source);
+      }
+      typeCheckSources(sources);
+    }
+  }
+
+  private void typecheckWithCaches(Typechecking typechecking, Map<SourceIdT, DependencyCacheLoadingException> dependentCaches, Collection<? extends Abstract.ClassDefinition> modulesToTypeCheck) {
+    // A cache can still be used if its dependency was changed without changing interfaces of definitions it refers to
+    for (Map.Entry<SourceIdT, DependencyCacheLoadingException> entry : dependentCaches.entrySet()) {
+      Set<SourceId> typecheckedDependencies = new HashSet<>();
+      DependencyCacheLoadingException exception = entry.getValue();
+      while (exception != null && typecheckedDependencies.add(exception.dependency)) {
+        SourceSupplier.LoadResult dependency = loadedSources.get(exception.dependency);
+        if (dependency == null || dependency.definition == null) {
+          break;
+        }
+        typecheckModules(typechecking, Collections.singletonList(dependency.definition));
+
+        exception = null;
+        try {
+          cacheManager.loadCache(entry.getKey(), loadedSources.get(entry.getKey()).definition);
+        } catch (DependencyCacheLoadingException e) {
+          exception = e;
+        } catch (CacheLoadingException ignored) {
+        }
+      }
+    }
+
+    typecheckModules(typechecking, modulesToTypeCheck);
+  }
+
+  private void typecheckModules(Typechecking typechecking, Collection<? extends Abstract.ClassDefinition> modules) {
+    if (typecheckingThreads > 1) {
+      ForkJoinPool pool = new ForkJoinPool(typecheckingThreads);
+      typechecking.setForkJoinPool(pool);
+      try {
+        typechecking.typecheckModules(modules);
+      } finally {
+        pool.shutdown();
+      }
+    } else {
+      typechecking.typecheckModules(modules);
+    }
   }
 
 
@@ -386,14 +555,21 @@ public abstract class BaseCliFrontend<SourceIdT extends SourceId> {
       }
     }
 
+    prefetchSources(requestedSources);
+
     // Typecheck those sources
     typeCheckSources(requestedSources);
     flushErrors();
 
+    reportTypeCheckResults(source -> true);
+    persistCaches();
+  }
+
+  private void reportTypeCheckResults(Predicate<SourceIdT> filter) {
     // Output nice per-module typechecking results
     int numWithErrors = 0;
     for (Map.Entry<SourceIdT, ModuleResult> entry : moduleResults.entrySet()) {
-      if (!requestedSources.contains(entry.getKey())) {
+      if (!requestedSources.contains(entry.getKey()) && filter.test(entry.getKey())) {
         ModuleResult result = entry.getValue();
         reportTypeCheckResult(entry.getKey(), result == ModuleResult.OK ? ModuleResult.UNKNOWN : result);
         if (result == ModuleResult.ERRORS) numWithErrors += 1;
@@ -401,6 +577,7 @@ public abstract class BaseCliFrontend<SourceIdT extends SourceId> {
     }
     // Explicitly requested sources go last
     for (SourceIdT source : requestedSources) {
+      if (!filter.test(source)) continue;
       ModuleResult result = moduleResults.get(source);
       reportTypeCheckResult(source, result == null ? ModuleResult.OK : result);
       if (result == ModuleResult.ERRORS) numWithErrors += 1;
@@ -409,15 +586,235 @@ public abstract class BaseCliFrontend<SourceIdT extends SourceId> {
     if (numWithErrors > 0) {
       System.out.println("Number of modules with errors: " + numWithErrors);
     }
+  }
 
-    // Persist cache
-    for (SourceIdT module : cacheManager.getCachedModules()) {
-      try {
-        cacheManager.persistCache(module);
-      } catch (CachePersistenceException e) {
-        e.printStackTrace();
+  /**
+   * Writes the report of {@link TypecheckingProfiler} to {@code file}.
+   * Does nothing if profiling is disabled.
+   */
+  public void writeProfile(Path file) {
+    TypecheckingProfiler profiler = TypecheckingProfiler.getInstance();
+    if (profiler == null) return;
+
+    try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+      profiler.writeReport(writer, srcInfoProvider::nameFor, definition -> {
+        SourceIdT source = srcInfoProvider.sourceOf(definition);
+        return source != null ? displaySource(source, true) : null;
+      });
+    } catch (IOException e) {
+      System.err.println(e.getMessage());
+    }
+  }
+
+  private void persistCaches() {
+    CacheManager.BatchResult<SourceIdT, CachePersistenceException> result = cacheManager.persistAll(new ArrayList<>(cacheManager.getCachedModules()));
+    for (CachePersistenceException e : result.failed.values()) {
+      e.printStackTrace();
+    }
+    if (!result.succeeded.isEmpty()) {
+      System.out.println(String.format("[Cache] Persisted %d modules (%.1f MB/s)", result.succeeded.size(), result.getThroughput()));
+    }
+  }
+
+  /**
+   * Watches {@code sourceDir} and typechecks modules again when their sources change.
+   * Typechecking results of other modules are kept in memory.
+   * This method returns only if the thread is interrupted.
+   *
+   * @param watchNewFiles  if true, new files in {@code sourceDir} are typechecked too;
+   *                       otherwise, only the requested files and the modules they depend on are.
+   */
+  public void watch(final Path sourceDir, boolean watchNewFiles) {
+    try (WatchService watchService = sourceDir.getFileSystem().newWatchService()) {
+      registerDirectories(watchService, sourceDir);
+      System.out.println("--- Watching " + sourceDir + " ---");
+
+      while (true) {
+        Set<Path> changedFiles = new LinkedHashSet<>();
+        WatchKey key = watchService.take();
+        // An editor usually produces several events when a file is saved, so they are collected until they stop coming
+        do {
+          Path dir = (Path) key.watchable();
+          for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) continue;
+            Path path = dir.resolve((Path) event.context());
+            if (Files.isDirectory(path)) {
+              if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                registerDirectories(watchService, path);
+              }
+            } else if (path.getFileName().toString().endsWith(FileStorage.EXTENSION)) {
+              changedFiles.add(sourceDir.relativize(path));
+            }
+          }
+          key.reset();
+        } while ((key = watchService.poll(WATCH_DELAY, TimeUnit.MILLISECONDS)) != null);
+
+        List<SourceIdT> changed = new ArrayList<>();
+        for (Path file : changedFiles) {
+          ModulePath modulePath = modulePathOf(file);
+          if (modulePath == null) continue;
+          // The file of a loaded module may also have been deleted
+          SourceIdT sourceId = loadedSourceOf(modulePath);
+          if (sourceId != null) {
+            changed.add(sourceId);
+          } else if (watchNewFiles && Files.exists(sourceDir.resolve(file))) {
+            sourceId = requestFileTypechecking(file);
+            if (sourceId != null) {
+              changed.add(sourceId);
+            }
+          }
+        }
+        if (!changed.isEmpty()) {
+          recheck(changed);
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (IOException e) {
+      System.err.println(e.getMessage());
+    }
+  }
+
+  private SourceIdT loadedSourceOf(ModulePath modulePath) {
+    for (SourceIdT source : loadedSources.keySet()) {
+      if (source.getModulePath().equals(modulePath)) {
+        return source;
+      }
+    }
+    for (SourceIdT source : requestedSources) {
+      if (source.getModulePath().equals(modulePath)) {
+        return source;
+      }
+    }
+    return null;
+  }
+
+  private static void registerDirectories(WatchService watchService, Path root) throws IOException {
+    Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+        dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+
+  /**
+   * Typechecks modules again after their sources have changed.
+   * Changed modules and all modules that depend on them are unloaded together with their typechecked definitions,
+   * and then they are loaded and typechecked again; caches of dependent modules are used if they are still valid.
+   * Modules whose sources were removed are only unloaded.
+   * Definitions of other modules remain typechecked.
+   */
+  public void recheck(Collection<SourceIdT> sources) {
+    Set<SourceIdT> affected = new LinkedHashSet<>();
+    Set<SourceIdT> removed = new LinkedHashSet<>();
+    for (SourceIdT source : sources) {
+      if (!moduleTracker.isAvailable(source)) {
+        removed.add(source);
+        affected.add(source);
+      } else if (moduleTracker.isChanged(source)) {
+        affected.add(source);
+      }
+    }
+    if (affected.isEmpty()) {
+      return;
+    }
+
+    // Modules that failed to load might have failed because of changed modules
+    for (Map.Entry<SourceIdT, ModuleResult> entry : moduleResults.entrySet()) {
+      if (entry.getValue() == ModuleResult.NOT_LOADED) {
+        affected.add(entry.getKey());
+      }
+    }
+    affected = withDependents(affected);
+
+    for (SourceIdT source : affected) {
+      unload(source);
+    }
+    for (SourceIdT source : removed) {
+      requestedSources.remove(source);
+      System.out.println("[Removed] " + displaySource(source, true));
+    }
+    affected.removeAll(removed);
+    typeCheckSources(affected);
+    flushErrors();
+
+    reportTypeCheckResults(affected::contains);
+    persistCaches();
+  }
+
+  /**
+   * @return {@code sources} together with all loaded modules that depend on them transitively.
+   */
+  private Set<SourceIdT> withDependents(Collection<SourceIdT> sources) {
+    Map<SourceIdT, Set<SourceIdT>> reverseDependencies = new HashMap<>();
+    for (SourceIdT source : loadedSources.keySet()) {
+      for (SourceIdT dependency : dependenciesOf(source)) {
+        reverseDependencies.computeIfAbsent(dependency, k -> new HashSet<>()).add(source);
+      }
+    }
+
+    Set<SourceIdT> result = new LinkedHashSet<>(sources);
+    Deque<SourceIdT> toVisit = new ArrayDeque<>(result);
+    while (!toVisit.isEmpty()) {
+      for (SourceIdT dependent : reverseDependencies.getOrDefault(toVisit.pop(), Collections.emptySet())) {
+        if (result.add(dependent)) {
+          toVisit.push(dependent);
+        }
       }
     }
+    return result;
+  }
+
+  private void unload(SourceIdT source) {
+    definitionIds.remove(source);
+    moduleDependencies.remove(source);
+    moduleResults.remove(source);
+    cacheManager.unloadCache(source);
+
+    SourceSupplier.LoadResult result = loadedSources.remove(source);
+    if (result != null && result.definition != null) {
+      moduleUnloaded(source);
+    }
+  }
+
+  /**
+   * @return modules that definitions of {@code source} refer to.
+   */
+  private Set<SourceIdT> dependenciesOf(SourceIdT source) {
+    return moduleDependencies.computeIfAbsent(source, k -> {
+      SourceSupplier.LoadResult loaded = loadedSources.get(source);
+      if (loaded != null && loaded.fromInterface) {
+        return new HashSet<>(cacheManager.getCacheDependencies(source));
+      }
+
+      // Instances are resolved as in typechecking, so that modules on which the module depends only through instances are found too
+      SimpleClassViewInstanceProvider instanceProvider = new SimpleClassViewInstanceProvider();
+      if (loaded != null && loaded.definition != null) {
+        DummyErrorReporter dummyErrorReporter = new DummyErrorReporter();
+        loaded.definition.accept(new DefinitionResolveInstanceVisitor(new InstanceScopeProvider(dummyErrorReporter), instanceProvider, HasOpens.GET, dummyErrorReporter), new EmptyScope());
+      }
+
+      Set<Abstract.Definition> dependencies = new HashSet<>();
+      DefinitionGetDepsVisitor visitor = new DefinitionGetDepsVisitor(instanceProvider, dependencies);
+      Map<String, Abstract.Definition> definitions = definitionIds.get(source);
+      if (definitions != null) {
+        for (Abstract.Definition definition : definitions.values()) {
+          definition.accept(visitor, true);
+          definition.accept(visitor, false);
+        }
+      }
+
+      Set<SourceIdT> result = new HashSet<>();
+      for (Abstract.Definition dependency : dependencies) {
+        SourceIdT dependencySource = srcInfoProvider.sourceOf(dependency);
+        if (dependencySource != null && !dependencySource.equals(source)) {
+          result.add(dependencySource);
+        }
+      }
+      return result;
+    });
   }
 
   private void flushErrors() {
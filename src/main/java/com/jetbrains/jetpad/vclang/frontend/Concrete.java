@@ -19,6 +19,7 @@ import com.jetbrains.jetpad.vclang.term.prettyprint.PrettyPrintVisitor;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.math.BigInteger;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
@@ -811,15 +812,15 @@ public final class Concrete {
   }
 
   public static class NumericLiteral extends Expression implements Abstract.NumericLiteral {
-    private final int myNumber;
+    private final BigInteger myNumber;
 
-    public NumericLiteral(Position position, int number) {
+    public NumericLiteral(Position position, BigInteger number) {
       super(position);
       myNumber = number;
     }
 
     @Override
-    public int getNumber() {
+    public BigInteger getNumber() {
       return myNumber;
     }
 
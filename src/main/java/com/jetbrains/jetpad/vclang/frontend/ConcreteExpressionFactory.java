@@ -5,6 +5,7 @@ import com.jetbrains.jetpad.vclang.module.source.SourceId;
 import com.jetbrains.jetpad.vclang.term.Abstract;
 import com.jetbrains.jetpad.vclang.term.Prelude;
 
+import java.math.BigInteger;
 import java.util.Arrays;
 import java.util.List;
 
@@ -205,6 +206,10 @@ public class ConcreteExpressionFactory {
   }
 
   public static Concrete.NumericLiteral cNum(int num) {
+    return cNum(BigInteger.valueOf(num));
+  }
+
+  public static Concrete.NumericLiteral cNum(BigInteger num) {
     return new Concrete.NumericLiteral(POSITION, num);
   }
 
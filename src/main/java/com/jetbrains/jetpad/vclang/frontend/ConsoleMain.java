@@ -1,13 +1,19 @@
 package com.jetbrains.jetpad.vclang.frontend;
 
+import com.jetbrains.jetpad.vclang.core.expr.ExpressionInterner;
+import com.jetbrains.jetpad.vclang.core.expr.visitor.ConversionCache;
+import com.jetbrains.jetpad.vclang.core.expr.visitor.NormalizeVisitor;
+import com.jetbrains.jetpad.vclang.core.expr.visitor.ReductionBudget;
 import com.jetbrains.jetpad.vclang.frontend.namespace.SimpleDynamicNamespaceProvider;
 import com.jetbrains.jetpad.vclang.frontend.namespace.SimpleModuleNamespaceProvider;
 import com.jetbrains.jetpad.vclang.frontend.namespace.SimpleStaticNamespaceProvider;
 import com.jetbrains.jetpad.vclang.frontend.resolving.NamespaceProviders;
 import com.jetbrains.jetpad.vclang.frontend.storage.FileStorage;
 import com.jetbrains.jetpad.vclang.frontend.storage.LibStorage;
+import com.jetbrains.jetpad.vclang.frontend.storage.ModulePrefetcher;
 import com.jetbrains.jetpad.vclang.frontend.storage.PreludeStorage;
 import com.jetbrains.jetpad.vclang.module.ModulePath;
+import com.jetbrains.jetpad.vclang.module.caching.CacheCodec;
 import com.jetbrains.jetpad.vclang.module.caching.PersistenceProvider;
 import com.jetbrains.jetpad.vclang.module.source.CompositeSourceSupplier;
 import com.jetbrains.jetpad.vclang.module.source.CompositeStorage;
@@ -17,6 +23,7 @@ import com.jetbrains.jetpad.vclang.naming.namespace.DynamicNamespaceProvider;
 import com.jetbrains.jetpad.vclang.naming.namespace.Namespace;
 import com.jetbrains.jetpad.vclang.naming.namespace.StaticNamespaceProvider;
 import com.jetbrains.jetpad.vclang.term.Abstract;
+import com.jetbrains.jetpad.vclang.typechecking.TypecheckingProfiler;
 import org.apache.commons.cli.*;
 
 import java.io.IOException;
@@ -24,6 +31,7 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Collection;
 import java.util.Map;
 
 public class ConsoleMain extends BaseCliFrontend<CompositeStorage<FileStorage.SourceId, CompositeStorage<LibStorage.SourceId, PreludeStorage.SourceId>.SourceId>.SourceId> {
@@ -34,9 +42,20 @@ public class ConsoleMain extends BaseCliFrontend<CompositeStorage<FileStorage.So
     cmdOptions.addOption(Option.builder("s").longOpt("source").hasArg().argName("srcdir").desc("project source directory").build());
     cmdOptions.addOption(Option.builder("c").longOpt("cache").hasArg().argName("cachedir").desc("directory for project-specific cache files (relative to srcdir)").build());
     cmdOptions.addOption(Option.builder().longOpt("recompile").desc("recompile files").build());
+    cmdOptions.addOption(Option.builder().longOpt("cache-codec").hasArg().argName("codec").desc("compression of written cache files: none (default) or gzip").build());
+    cmdOptions.addOption(Option.builder("j").longOpt("threads").hasArg().argName("n").desc("number of threads for parsing and typechecking").build());
+    cmdOptions.addOption(Option.builder().longOpt("env-normalizer").desc("use the environment machine for normalization").build());
+    cmdOptions.addOption(Option.builder().longOpt("whnf-cache").desc("memoize weak head normal forms of expressions").build());
+    cmdOptions.addOption(Option.builder().longOpt("intern").desc("share structurally equal closed expressions").build());
+    cmdOptions.addOption(Option.builder().longOpt("conversion-cache").hasArg().argName("n").desc("maximal number of cached results of comparisons").build());
+    cmdOptions.addOption(Option.builder().longOpt("reduction-limit").hasArg().argName("n").desc("maximal number of reductions while typechecking a definition").build());
+    cmdOptions.addOption(Option.builder().longOpt("reduction-timeout").hasArg().argName("ms").desc("maximal time of normalization while typechecking a definition").build());
+    cmdOptions.addOption(Option.builder().longOpt("profile").hasArg().argName("file").desc("write timing and allocation of typechecking per definition to a JSON file").build());
+    cmdOptions.addOption(Option.builder("w").longOpt("watch").desc("watch the source directory and typecheck changed files").build());
   }
 
   private final StorageManager storageManager;
+  private ModulePrefetcher prefetcher;
 
   public ConsoleMain(Path libDir, Path sourceDir, Path cacheDir, boolean recompile) throws IOException {
     this(new StorageManager(libDir, sourceDir, cacheDir), recompile);
@@ -46,6 +65,61 @@ public class ConsoleMain extends BaseCliFrontend<CompositeStorage<FileStorage.So
     super(storageManager.storage, recompile);
     this.storageManager = storageManager;
     storageManager.nameResolver.setModuleResolver(moduleTracker);
+    if (!recompile) {
+      storageManager.projectStorage.setInterfacesEnabled(true);
+      if (storageManager.libStorage != null) storageManager.libStorage.setInterfacesEnabled(true);
+    }
+  }
+
+  /**
+   * Enables parsing of modules on {@code threads} worker threads.
+   */
+  public void setParsingThreads(int threads) {
+    prefetcher = new ModulePrefetcher(threads);
+    storageManager.projectStorage.setPrefetcher(prefetcher);
+    if (storageManager.libStorage != null) storageManager.libStorage.setPrefetcher(prefetcher);
+  }
+
+  private void stopPrefetching() {
+    if (prefetcher != null) {
+      prefetcher.shutdown();
+    }
+  }
+
+  @Override
+  protected void prefetchSources(Collection<CompositeStorage<FileStorage.SourceId, CompositeStorage<LibStorage.SourceId, PreludeStorage.SourceId>.SourceId>.SourceId> sources) {
+    if (prefetcher != null) {
+      for (CompositeStorage<FileStorage.SourceId, CompositeStorage<LibStorage.SourceId, PreludeStorage.SourceId>.SourceId>.SourceId source : sources) {
+        prefetcher.prefetch(source.getModulePath());
+      }
+    }
+  }
+
+  @Override
+  protected void moduleUnloaded(CompositeStorage<FileStorage.SourceId, CompositeStorage<LibStorage.SourceId, PreludeStorage.SourceId>.SourceId>.SourceId source) {
+    storageManager.moduleNsProvider.unregisterModule(source.getModulePath());
+  }
+
+  @Override
+  protected void sourceRequired(CompositeStorage<FileStorage.SourceId, CompositeStorage<LibStorage.SourceId, PreludeStorage.SourceId>.SourceId>.SourceId source) {
+    if (source.source1 != null) {
+      storageManager.projectStorage.requireSource(source.source1);
+    } else if (source.source2 != null && source.source2.source1 != null && storageManager.libStorage != null) {
+      storageManager.libStorage.requireSource(source.source2.source1);
+    }
+  }
+
+  /**
+   * Writes manifests of the libraries that were used, so that their modules are located faster next time.
+   */
+  public void saveLibraryManifests() {
+    if (storageManager.libStorage != null) {
+      try {
+        storageManager.libStorage.saveManifests();
+      } catch (IOException e) {
+        System.err.println("Cannot write library manifests: " + e.getMessage());
+      }
+    }
   }
 
   @Override
@@ -237,7 +311,87 @@ public class ConsoleMain extends BaseCliFrontend<CompositeStorage<FileStorage.So
 
         boolean recompile = cmdLine.hasOption("recompile");
 
-        new ConsoleMain(libDir, sourceDir, cacheDir, recompile).run(sourceDir, cmdLine.getArgList());
+        CacheCodec cacheCodec = CacheCodec.NONE;
+        String cacheCodecStr = cmdLine.getOptionValue("cache-codec");
+        if (cacheCodecStr != null) {
+          cacheCodec = CacheCodec.fromName(cacheCodecStr);
+          if (cacheCodec == null) {
+            System.err.println("Unknown cache codec: " + cacheCodecStr);
+            return;
+          }
+        }
+
+        if (cmdLine.hasOption("intern")) {
+          ExpressionInterner.setEnabled(true);
+        }
+        String conversionCacheStr = cmdLine.getOptionValue("conversion-cache");
+        if (conversionCacheStr != null) {
+          try {
+            ConversionCache.setMaximumSize(Long.parseLong(conversionCacheStr));
+          } catch (NumberFormatException e) {
+            System.err.println("Invalid size of conversion cache: " + e.getMessage());
+            return;
+          }
+        }
+        String profileStr = cmdLine.getOptionValue("profile");
+        if (profileStr != null) {
+          TypecheckingProfiler.setEnabled(true);
+        }
+
+        String reductionLimitStr = cmdLine.getOptionValue("reduction-limit");
+        String reductionTimeoutStr = cmdLine.getOptionValue("reduction-timeout");
+        if (reductionLimitStr != null || reductionTimeoutStr != null) {
+          long reductionLimit = 0;
+          long reductionTimeout = 0;
+          try {
+            if (reductionLimitStr != null) {
+              reductionLimit = Long.parseLong(reductionLimitStr);
+            }
+            if (reductionTimeoutStr != null) {
+              reductionTimeout = Long.parseLong(reductionTimeoutStr);
+            }
+          } catch (NumberFormatException e) {
+            System.err.println("Invalid reduction limit: " + e.getMessage());
+            return;
+          }
+          ReductionBudget.setLimits(reductionLimit, reductionTimeout);
+        }
+
+        String threadsStr = cmdLine.getOptionValue("j");
+        int threads = 1;
+        if (threadsStr != null) {
+          try {
+            threads = Integer.parseInt(threadsStr);
+          } catch (NumberFormatException e) {
+            System.err.println("Invalid number of threads: " + threadsStr);
+            return;
+          }
+        }
+
+        ConsoleMain console = new ConsoleMain(libDir, sourceDir, cacheDir, recompile);
+        console.setTypecheckingThreads(threads);
+        console.setCacheCodec(cacheCodec);
+        if (cmdLine.hasOption("env-normalizer")) {
+          console.setNormalizationEngine(NormalizeVisitor.Engine.ENVIRONMENT);
+        }
+        if (cmdLine.hasOption("whnf-cache")) {
+          console.setWhnfCacheEnabled(true);
+        }
+        if (threads > 1) {
+          console.setParsingThreads(threads);
+        }
+        try {
+          console.run(sourceDir, cmdLine.getArgList());
+          console.saveLibraryManifests();
+          if (profileStr != null) {
+            console.writeProfile(Paths.get(profileStr));
+          }
+          if (cmdLine.hasOption("w")) {
+            console.watch(sourceDir, cmdLine.getArgList().isEmpty());
+          }
+        } finally {
+          console.stopPrefetching();
+        }
       }
     } catch (ParseException e) {
       System.err.println(e.getMessage());
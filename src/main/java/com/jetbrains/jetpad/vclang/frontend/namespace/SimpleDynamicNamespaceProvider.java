@@ -12,7 +12,7 @@ public class SimpleDynamicNamespaceProvider implements DynamicNamespaceProvider
   private final Map<Abstract.ClassDefinition, SimpleNamespace> classCache = new HashMap<>();
 
   @Override
-  public SimpleNamespace forClass(final Abstract.ClassDefinition classDefinition) {
+  public synchronized SimpleNamespace forClass(final Abstract.ClassDefinition classDefinition) {
     SimpleNamespace ns = classCache.get(classDefinition);
     if (ns != null) return ns;
 
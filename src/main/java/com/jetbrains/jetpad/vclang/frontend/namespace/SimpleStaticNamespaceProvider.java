@@ -7,11 +7,11 @@ import com.jetbrains.jetpad.vclang.term.Abstract;
 import com.jetbrains.jetpad.vclang.term.BaseAbstractVisitor;
 
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class SimpleStaticNamespaceProvider implements StaticNamespaceProvider {
-  private final Map<Abstract.Definition, Namespace> cache = new HashMap<>();
+  private final Map<Abstract.Definition, Namespace> cache = new ConcurrentHashMap<>();
 
   public static SimpleNamespace forClass(Abstract.ClassDefinition def) {
     SimpleNamespace ns = new SimpleNamespace();
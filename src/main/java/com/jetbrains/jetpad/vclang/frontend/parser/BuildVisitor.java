@@ -3,6 +3,7 @@ package com.jetbrains.jetpad.vclang.frontend.parser;
 import com.jetbrains.jetpad.vclang.core.context.binding.LevelVariable;
 import com.jetbrains.jetpad.vclang.error.ErrorReporter;
 import com.jetbrains.jetpad.vclang.frontend.Concrete;
+import com.jetbrains.jetpad.vclang.module.ModulePath;
 import com.jetbrains.jetpad.vclang.module.source.SourceId;
 import com.jetbrains.jetpad.vclang.term.Abstract;
 import com.jetbrains.jetpad.vclang.term.AbstractLevelExpressionVisitor;
@@ -10,6 +11,7 @@ import com.jetbrains.jetpad.vclang.util.Pair;
 import org.antlr.v4.runtime.Token;
 import org.antlr.v4.runtime.tree.TerminalNode;
 
+import java.math.BigInteger;
 import java.util.*;
 
 import static com.jetbrains.jetpad.vclang.frontend.parser.VcgrammarParser.*;
@@ -17,12 +19,20 @@ import static com.jetbrains.jetpad.vclang.frontend.parser.VcgrammarParser.*;
 public class BuildVisitor extends VcgrammarBaseVisitor {
   private final SourceId myModule;
   private final ErrorReporter myErrorReporter;
+  private final Set<ModulePath> myReferredModules = new LinkedHashSet<>();
 
   public BuildVisitor(SourceId module, ErrorReporter errorReporter) {
     myModule = module;
     myErrorReporter = errorReporter;
   }
 
+  /**
+   * @return paths of modules that are referred to in namespace commands and module calls that were built so far.
+   */
+  public Set<ModulePath> getReferredModules() {
+    return myReferredModules;
+  }
+
   private Concrete.LocalVariable getVar(AtomFieldsAccContext ctx) {
     if (!ctx.fieldAcc().isEmpty() || !(ctx.atom() instanceof AtomLiteralContext)) {
       return null;
@@ -167,7 +177,9 @@ public class BuildVisitor extends VcgrammarBaseVisitor {
   private List<String> getModulePath(String module) {
     String[] modulePath = module.split("::");
     assert modulePath[0].isEmpty();
-    return Arrays.asList(modulePath).subList(1, modulePath.length);
+    List<String> result = Arrays.asList(modulePath).subList(1, modulePath.length);
+    myReferredModules.add(new ModulePath(result));
+    return result;
   }
 
   @Override
@@ -1073,7 +1085,7 @@ public class BuildVisitor extends VcgrammarBaseVisitor {
 
   @Override
   public Concrete.NumericLiteral visitAtomNumber(AtomNumberContext ctx) {
-    return new Concrete.NumericLiteral(tokenPosition(ctx.NUMBER().getSymbol()), Integer.parseInt(ctx.NUMBER().getText()));
+    return new Concrete.NumericLiteral(tokenPosition(ctx.NUMBER().getSymbol()), new BigInteger(ctx.NUMBER().getText()));
   }
 
   @Override
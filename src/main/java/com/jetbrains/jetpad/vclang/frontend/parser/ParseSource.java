@@ -7,6 +7,7 @@ import com.jetbrains.jetpad.vclang.frontend.Concrete;
 import com.jetbrains.jetpad.vclang.frontend.ConcreteResolveListener;
 import com.jetbrains.jetpad.vclang.frontend.namespace.ModuleRegistry;
 import com.jetbrains.jetpad.vclang.frontend.resolving.OneshotNameResolver;
+import com.jetbrains.jetpad.vclang.module.ModulePath;
 import com.jetbrains.jetpad.vclang.module.source.SourceId;
 import com.jetbrains.jetpad.vclang.naming.NameResolver;
 import com.jetbrains.jetpad.vclang.naming.scope.primitive.Scope;
@@ -15,6 +16,7 @@ import org.antlr.v4.runtime.*;
 import javax.annotation.Nullable;
 import java.io.IOException;
 import java.io.Reader;
+import java.util.Collection;
 import java.util.List;
 
 public abstract class ParseSource {
@@ -26,7 +28,18 @@ public abstract class ParseSource {
     myStream = stream;
   }
 
-  public @Nullable Concrete.ClassDefinition load(ErrorReporter errorReporter, ModuleRegistry moduleRegistry, Scope globalScope, NameResolver nameResolver) throws IOException {
+  public @Nullable Concrete.ClassDefinition parse(ErrorReporter errorReporter) throws IOException {
+    return parse(errorReporter, null);
+  }
+
+  /**
+   * Lexes and parses the source without touching any shared state, so it can be called on any thread.
+   *
+   * @param referredModules  if not null, paths of modules that the source refers to are added to it.
+   *
+   * @return the parsed module or null if there were syntax errors.
+   */
+  public @Nullable Concrete.ClassDefinition parse(ErrorReporter errorReporter, @Nullable Collection<ModulePath> referredModules) throws IOException {
     CountingErrorReporter countingErrorReporter = new CountingErrorReporter();
     final CompositeErrorReporter compositeErrorReporter = new CompositeErrorReporter(errorReporter, countingErrorReporter);
 
@@ -53,22 +66,45 @@ public abstract class ParseSource {
       return null;
     }
 
-    List<Concrete.Statement> statements = new BuildVisitor(mySourceId, compositeErrorReporter).visitStatements(tree);
+    BuildVisitor buildVisitor = new BuildVisitor(mySourceId, compositeErrorReporter);
+    List<Concrete.Statement> statements = buildVisitor.visitStatements(tree);
+    if (referredModules != null) {
+      referredModules.addAll(buildVisitor.getReferredModules());
+    }
+    return new Concrete.ClassDefinition(new Concrete.Position(mySourceId, 0, 0), mySourceId.getModulePath().getName(), statements);
+  }
 
-    Concrete.ClassDefinition result = new Concrete.ClassDefinition(new Concrete.Position(mySourceId, 0, 0), mySourceId.getModulePath().getName(), statements);
+  public @Nullable Concrete.ClassDefinition load(ErrorReporter errorReporter, ModuleRegistry moduleRegistry, Scope globalScope, NameResolver nameResolver) throws IOException {
+    CountingErrorReporter countingErrorReporter = new CountingErrorReporter();
+    Concrete.ClassDefinition result = parse(new CompositeErrorReporter(errorReporter, countingErrorReporter));
+    if (result == null) {
+      return null;
+    }
+    return resolve(mySourceId, result, countingErrorReporter.getErrorsNumber() > 0, errorReporter, moduleRegistry, globalScope, nameResolver);
+  }
+
+  /**
+   * Registers a parsed module and resolves names in it.
+   *
+   * @param hasErrors true if errors were reported while the module was parsed.
+   * @return the module or null if there were errors.
+   */
+  public static @Nullable Concrete.ClassDefinition resolve(SourceId sourceId, Concrete.ClassDefinition module, boolean hasErrors, ErrorReporter errorReporter, ModuleRegistry moduleRegistry, Scope globalScope, NameResolver nameResolver) {
+    CountingErrorReporter countingErrorReporter = new CountingErrorReporter();
+    final CompositeErrorReporter compositeErrorReporter = new CompositeErrorReporter(errorReporter, countingErrorReporter);
 
     if (moduleRegistry != null) {
-      moduleRegistry.registerModule(mySourceId.getModulePath(), result);
+      moduleRegistry.registerModule(sourceId.getModulePath(), module);
     }
     if (nameResolver != null) {
-      OneshotNameResolver.visitModule(result, globalScope, nameResolver, new ConcreteResolveListener(), compositeErrorReporter);
+      OneshotNameResolver.visitModule(module, globalScope, nameResolver, new ConcreteResolveListener(), compositeErrorReporter);
     }
-    if (countingErrorReporter.getErrorsNumber() > 0) {
+    if (hasErrors || countingErrorReporter.getErrorsNumber() > 0) {
       if (moduleRegistry != null) {
-        moduleRegistry.unregisterModule(mySourceId.getModulePath());
+        moduleRegistry.unregisterModule(sourceId.getModulePath());
       }
       return null;
     }
-    return result;
+    return module;
   }
 }
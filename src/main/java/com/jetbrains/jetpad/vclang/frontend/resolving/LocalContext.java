@@ -0,0 +1,74 @@
+package com.jetbrains.jetpad.vclang.frontend.resolving;
+
+import com.jetbrains.jetpad.vclang.term.Abstract;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A stack of local variables indexed by their names.
+ *
+ * Every element remembers the position of the element with the same name that it shadows,
+ * so both {@link #resolveName} and removing elements from the end take constant time.
+ * Elements can be added and removed only at the end of the list.
+ */
+public class LocalContext extends AbstractList<Abstract.ReferableSourceNode> {
+  private final ArrayList<Abstract.ReferableSourceNode> myElements = new ArrayList<>();
+  private final ArrayList<Integer> myShadowed = new ArrayList<>();
+  private final Map<String, Integer> myLast = new HashMap<>();
+
+  /**
+   * @return the last added element with the given name or null if there is no such element.
+   */
+  public Abstract.ReferableSourceNode resolveName(String name) {
+    Integer index = myLast.get(name);
+    return index == null ? null : myElements.get(index);
+  }
+
+  @Override
+  public Abstract.ReferableSourceNode get(int index) {
+    return myElements.get(index);
+  }
+
+  @Override
+  public int size() {
+    return myElements.size();
+  }
+
+  @Override
+  public boolean add(Abstract.ReferableSourceNode referable) {
+    myShadowed.add(myLast.put(referable.getName(), myElements.size()));
+    myElements.add(referable);
+    modCount++;
+    return true;
+  }
+
+  @Override
+  public Abstract.ReferableSourceNode remove(int index) {
+    if (index != myElements.size() - 1) {
+      throw new UnsupportedOperationException();
+    }
+
+    Abstract.ReferableSourceNode referable = myElements.remove(index);
+    Integer shadowed = myShadowed.remove(index);
+    if (shadowed == null) {
+      myLast.remove(referable.getName());
+    } else {
+      myLast.put(referable.getName(), shadowed);
+    }
+    modCount++;
+    return referable;
+  }
+
+  @Override
+  protected void removeRange(int fromIndex, int toIndex) {
+    if (toIndex != myElements.size()) {
+      throw new UnsupportedOperationException();
+    }
+    for (int i = toIndex - 1; i >= fromIndex; i--) {
+      remove(i);
+    }
+  }
+}
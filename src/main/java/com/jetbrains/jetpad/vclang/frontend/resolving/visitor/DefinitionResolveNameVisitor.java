@@ -5,6 +5,7 @@ import com.jetbrains.jetpad.vclang.error.Error;
 import com.jetbrains.jetpad.vclang.error.ErrorReporter;
 import com.jetbrains.jetpad.vclang.error.GeneralError;
 import com.jetbrains.jetpad.vclang.frontend.resolving.HasOpens;
+import com.jetbrains.jetpad.vclang.frontend.resolving.LocalContext;
 import com.jetbrains.jetpad.vclang.frontend.resolving.OpenCommand;
 import com.jetbrains.jetpad.vclang.frontend.resolving.ResolveListener;
 import com.jetbrains.jetpad.vclang.naming.NameResolver;
@@ -37,7 +38,7 @@ public class DefinitionResolveNameVisitor implements AbstractDefinitionVisitor<S
   private final ErrorReporter myErrorReporter;
 
   public DefinitionResolveNameVisitor(NameResolver nameResolver, ResolveListener resolveListener, ErrorReporter errorReporter) {
-    this(new ArrayList<>(), nameResolver, resolveListener, errorReporter);
+    this(new LocalContext(), nameResolver, resolveListener, errorReporter);
   }
 
   private DefinitionResolveNameVisitor(List<Abstract.ReferableSourceNode> context, NameResolver nameResolver,
@@ -3,6 +3,7 @@ package com.jetbrains.jetpad.vclang.frontend.resolving.visitor;
 import com.jetbrains.jetpad.vclang.core.context.Utils;
 import com.jetbrains.jetpad.vclang.error.ErrorReporter;
 import com.jetbrains.jetpad.vclang.frontend.parser.BinOpParser;
+import com.jetbrains.jetpad.vclang.frontend.resolving.LocalContext;
 import com.jetbrains.jetpad.vclang.frontend.resolving.ResolveListener;
 import com.jetbrains.jetpad.vclang.naming.NameResolver;
 import com.jetbrains.jetpad.vclang.naming.error.*;
@@ -36,6 +37,10 @@ public class ExpressionResolveNameVisitor implements AbstractExpressionVisitor<V
   }
 
   private Abstract.ReferableSourceNode resolveLocal(String name) {
+    if (myContext instanceof LocalContext) {
+      return ((LocalContext) myContext).resolveName(name);
+    }
+
     for (int i = myContext.size() - 1; i >= 0; i--) {
       if (Objects.equals(myContext.get(i).getName(), name)) {
         return myContext.get(i);
@@ -1,11 +1,17 @@
 package com.jetbrains.jetpad.vclang.frontend.storage;
 
+import com.google.common.hash.Hashing;
 import com.jetbrains.jetpad.vclang.error.ErrorReporter;
+import com.jetbrains.jetpad.vclang.error.GeneralError;
+import com.jetbrains.jetpad.vclang.error.ListErrorReporter;
 import com.jetbrains.jetpad.vclang.frontend.Concrete;
 import com.jetbrains.jetpad.vclang.frontend.namespace.ModuleRegistry;
 import com.jetbrains.jetpad.vclang.frontend.parser.ParseSource;
 import com.jetbrains.jetpad.vclang.module.ModulePath;
+import com.jetbrains.jetpad.vclang.module.caching.CacheLoadingException;
+import com.jetbrains.jetpad.vclang.module.caching.CacheManager;
 import com.jetbrains.jetpad.vclang.module.caching.CacheStorageSupplier;
+import com.jetbrains.jetpad.vclang.module.caching.serialization.ModuleProtos;
 import com.jetbrains.jetpad.vclang.module.source.SourceSupplier;
 import com.jetbrains.jetpad.vclang.module.source.Storage;
 import com.jetbrains.jetpad.vclang.naming.NameResolver;
@@ -15,9 +21,7 @@ import com.jetbrains.jetpad.vclang.naming.scope.primitive.NamespaceScope;
 import com.jetbrains.jetpad.vclang.naming.scope.primitive.Scope;
 
 import javax.annotation.Nonnull;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -25,6 +29,8 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class FileStorage implements Storage<FileStorage.SourceId> {
   public static final String EXTENSION = ".vc";
@@ -42,8 +48,11 @@ public class FileStorage implements Storage<FileStorage.SourceId> {
     return new ModulePath(names);
   }
 
-  private static long getLastModifiedTime(Path file) throws IOException {
-    return Files.getLastModifiedTime(file).toMillis();
+  /**
+   * Versions of sources are hashes of their contents, so a cache remains valid if a file is touched but not changed.
+   */
+  private static long getVersion(byte[] content) {
+    return Hashing.murmur3_128().hashBytes(content).asLong();
   }
 
   private static Path baseFile(Path root, ModulePath modulePath) {
@@ -63,6 +72,9 @@ public class FileStorage implements Storage<FileStorage.SourceId> {
   private final ModuleRegistry myModuleRegistry;
 
   private Scope myGlobalScope = new EmptyScope();
+  private ModulePrefetcher myPrefetcher;
+  private boolean myInterfacesEnabled = false;
+  private final Set<SourceId> mySourcesRequired = ConcurrentHashMap.newKeySet();
   private final FileSourceSupplier mySourceSupplier;
   private final FileCacheStorageSupplier myCacheStorageSupplier;
 
@@ -79,6 +91,27 @@ public class FileStorage implements Storage<FileStorage.SourceId> {
     myGlobalScope = new NamespaceScope(ns);
   }
 
+  public void setPrefetcher(ModulePrefetcher prefetcher) {
+    myPrefetcher = prefetcher;
+    prefetcher.addStorage(this);
+  }
+
+  /**
+   * If interfaces are enabled, a module whose cache was written for the current version of its source is not parsed;
+   * instead, it is built from the interface stored in the cache, see {@link ModuleInterfaceStubs}.
+   * Such a module can be used only if its cache is loaded; otherwise, {@link #requireSource} should be called and the module should be loaded again.
+   */
+  public void setInterfacesEnabled(boolean enabled) {
+    myInterfacesEnabled = enabled;
+  }
+
+  /**
+   * Makes the storage parse a module when it is loaded next time even if it has a valid cache.
+   */
+  public void requireSource(SourceId sourceId) {
+    mySourcesRequired.add(sourceId);
+  }
+
   private class FileSourceSupplier implements SourceSupplier<SourceId> {
     private final Path myRoot;
 
@@ -111,25 +144,72 @@ public class FileStorage implements Storage<FileStorage.SourceId> {
       try {
         if (!isAvailable(sourceId)) return null;
 
-        Path file = sourceFileForSource(sourceId);
-        long mtime = getLastModifiedTime(file);
+        byte[] content = Files.readAllBytes(sourceFileForSource(sourceId));
+        long version = getVersion(content);
 
-        FileSource fileSource = new FileSource(sourceId, file);
-        Concrete.ClassDefinition result = fileSource.load(errorReporter, myModuleRegistry, myGlobalScope, myNameResolver);
+        if (myInterfacesEnabled && !mySourcesRequired.contains(sourceId)) {
+          Concrete.ClassDefinition stubs = loadInterface(sourceId, version);
+          if (stubs != null) {
+            return new LoadResult(stubs, version, true);
+          }
+        }
 
-        // Make sure file did not change
-        if (getLastModifiedTime(file) != mtime) return null;
-        return LoadResult.make(result, mtime);
+        Concrete.ClassDefinition result;
+        ModulePrefetcher.ParsedSource parsed = myPrefetcher != null ? myPrefetcher.take(sourceId) : null;
+        if (parsed != null && parsed.version == version) {
+          for (GeneralError error : parsed.errors) {
+            errorReporter.report(error);
+          }
+          result = parsed.module != null ? ParseSource.resolve(sourceId, parsed.module, !parsed.errors.isEmpty(), errorReporter, myModuleRegistry, myGlobalScope, myNameResolver) : null;
+        } else {
+          FileSource fileSource = new FileSource(sourceId, content);
+          result = fileSource.load(errorReporter, myModuleRegistry, myGlobalScope, myNameResolver);
+        }
+
+        return LoadResult.make(result, version);
       } catch (IOException e) {
         throw new IllegalStateException(e);
       }
     }
 
+    private Concrete.ClassDefinition loadInterface(SourceId sourceId, long version) {
+      InputStream cacheStream = myCacheStorageSupplier.getCacheInputStream(sourceId);
+      if (cacheStream == null) return null;
+
+      ModuleProtos.ModuleInterface moduleInterface;
+      try {
+        moduleInterface = CacheManager.readInterface(sourceId, cacheStream, version);
+      } catch (CacheLoadingException e) {
+        return null;
+      }
+      if (moduleInterface == null) return null;
+
+      Concrete.ClassDefinition result = ModuleInterfaceStubs.build(sourceId, moduleInterface, myNameResolver);
+      if (result != null && myModuleRegistry != null) {
+        myModuleRegistry.registerModule(sourceId.getModulePath(), result);
+      }
+      return result;
+    }
+
+    ModulePrefetcher.ParsedSource parseSource(SourceId sourceId) {
+      try {
+        if (!isAvailable(sourceId)) return null;
+
+        byte[] content = Files.readAllBytes(sourceFileForSource(sourceId));
+        ListErrorReporter errorReporter = new ListErrorReporter();
+        List<ModulePath> referredModules = new ArrayList<>();
+        Concrete.ClassDefinition result = new FileSource(sourceId, content).parse(errorReporter, referredModules);
+        return new ModulePrefetcher.ParsedSource(getVersion(content), result, errorReporter.getErrorList(), referredModules);
+      } catch (IOException e) {
+        return null;
+      }
+    }
+
     @Override
     public long getAvailableVersion(@Nonnull SourceId sourceId) {
       if (!isAvailable(sourceId)) return 0;
       try {
-        return getLastModifiedTime(sourceFileForSource(sourceId));
+        return getVersion(Files.readAllBytes(sourceFileForSource(sourceId)));
       } catch (IOException e) {
         throw new IllegalStateException(e);
       }
@@ -154,7 +234,8 @@ public class FileStorage implements Storage<FileStorage.SourceId> {
       Path file = cacheFileForSource(sourceId);
       if (Files.isReadable(file)) {
         try {
-          return Files.newInputStream(file);
+          // CacheManager maps caches that are read from a FileInputStream into memory
+          return new FileInputStream(file.toFile());
         } catch (IOException ignored) {
         }
       }
@@ -205,6 +286,10 @@ public class FileStorage implements Storage<FileStorage.SourceId> {
     return mySourceSupplier.getAvailableVersion(sourceId);
   }
 
+  ModulePrefetcher.ParsedSource parseSource(SourceId sourceId) {
+    return mySourceSupplier.parseSource(sourceId);
+  }
+
 
   public class SourceId implements com.jetbrains.jetpad.vclang.module.source.SourceId {
     private final ModulePath myModulePath;
@@ -246,8 +331,8 @@ public class FileStorage implements Storage<FileStorage.SourceId> {
   }
 
   private static class FileSource extends ParseSource {
-    FileSource(com.jetbrains.jetpad.vclang.module.source.SourceId sourceId, Path file) throws IOException {
-      super(sourceId, Files.newBufferedReader(file, StandardCharsets.UTF_8));
+    FileSource(com.jetbrains.jetpad.vclang.module.source.SourceId sourceId, byte[] content) throws IOException {
+      super(sourceId, new InputStreamReader(new ByteArrayInputStream(content), StandardCharsets.UTF_8));
     }
   }
 }
@@ -19,26 +19,75 @@ import java.nio.file.Paths;
 import java.util.*;
 
 public class LibStorage implements Storage<LibStorage.SourceId> {
-  private final Map<String, FileStorage> myLibStorages;
+  private final Map<String, Library> myLibraries;
+  private Map<ModulePath, String> myModuleLibraries;
+  private final NameResolver myNameResolver;
+  private final ModuleRegistry myModuleRegistry;
+  private Namespace myPreludeNamespace;
+  private ModulePrefetcher myPrefetcher;
+  private boolean myInterfacesEnabled = false;
+
+  /**
+   * A library is opened when one of its modules is located for the first time.
+   */
+  private class Library {
+    private final Path mySourcePath;
+    private final Path myCachePath;
+    private LibraryManifest myManifest;
+    private FileStorage myFileStorage;
+
+    private Library(Path sourcePath, Path cachePath) {
+      mySourcePath = sourcePath;
+      myCachePath = cachePath;
+    }
+
+    private synchronized LibraryManifest getManifest() {
+      if (myManifest == null) {
+        try {
+          myManifest = LibraryManifest.load(mySourcePath, myCachePath.resolve(LibraryManifest.FILE_NAME));
+        } catch (IOException e) {
+          throw new IllegalStateException(e);
+        }
+      }
+      return myManifest;
+    }
+
+    private synchronized FileStorage getFileStorage() {
+      if (myFileStorage == null) {
+        myFileStorage = new FileStorage(mySourcePath, myCachePath, myNameResolver, myModuleRegistry);
+        if (myPreludeNamespace != null) {
+          myFileStorage.setPreludeNamespace(myPreludeNamespace);
+        }
+        if (myPrefetcher != null) {
+          myFileStorage.setPrefetcher(myPrefetcher);
+        }
+        myFileStorage.setInterfacesEnabled(myInterfacesEnabled);
+      }
+      return myFileStorage;
+    }
+  }
 
   private static Path findCacheDir() throws IOException {
     return Files.createDirectories(Paths.get(AppDirsFactory.getInstance().getUserCacheDir("vclang", null, "JetBrains")));
   }
 
   public LibStorage(Path libdir, Collection<String> libs, NameResolver nameResolver, ModuleRegistry moduleRegistry) throws IOException {
+    this(libdir, findCacheDir(), libs, nameResolver, moduleRegistry);
+  }
+
+  public LibStorage(Path libdir, Path cacheDir, Collection<String> libs, NameResolver nameResolver, ModuleRegistry moduleRegistry) {
     if (!Files.isDirectory(libdir)) {
       throw new IllegalArgumentException("libdir must be an existing directory");
     }
-    final Path cacheDir = findCacheDir();
     if (!Files.isWritable(cacheDir)) {
       throw new IllegalStateException("Cache directory is not writable");
     }
 
-    myLibStorages = new HashMap<>(libs.size());
+    myNameResolver = nameResolver;
+    myModuleRegistry = moduleRegistry;
+    myLibraries = new HashMap<>(libs.size());
     for (String lib : libs) {
-      Path sourcePath = libdir.resolve(lib);
-      Path cachePath = cacheDir.resolve(lib);
-      myLibStorages.put(lib, new FileStorage(sourcePath, cachePath, nameResolver, moduleRegistry));
+      myLibraries.put(lib, new Library(libdir.resolve(lib), cacheDir.resolve(lib)));
     }
   }
 
@@ -60,30 +109,105 @@ public class LibStorage implements Storage<LibStorage.SourceId> {
   }
 
   public void setPreludeNamespace(Namespace ns) {
-    for (FileStorage fileStorage : myLibStorages.values()) {
-      fileStorage.setPreludeNamespace(ns);
+    myPreludeNamespace = ns;
+    for (Library library : myLibraries.values()) {
+      synchronized (library) {
+        if (library.myFileStorage != null) {
+          library.myFileStorage.setPreludeNamespace(ns);
+        }
+      }
     }
   }
 
-  @Override
-  public SourceId locateModule(@Nonnull ModulePath modulePath) {
-    LibStorage.SourceId result = null;
-    for (Map.Entry<String, FileStorage> entry : myLibStorages.entrySet()) {
-      FileStorage.SourceId sourceId = entry.getValue().locateModule(modulePath);
-      if (sourceId == null) continue;
-      if (result == null) {
-        result = new SourceId(entry.getKey(), entry.getValue(), sourceId);
-      } else {
-        throw new ModuleInMultipleLibraries(modulePath);
+  public void setPrefetcher(ModulePrefetcher prefetcher) {
+    myPrefetcher = prefetcher;
+    for (Library library : myLibraries.values()) {
+      synchronized (library) {
+        if (library.myFileStorage != null) {
+          library.myFileStorage.setPrefetcher(prefetcher);
+        }
+      }
+    }
+  }
+
+  /**
+   * @see FileStorage#setInterfacesEnabled
+   */
+  public void setInterfacesEnabled(boolean enabled) {
+    myInterfacesEnabled = enabled;
+    for (Library library : myLibraries.values()) {
+      synchronized (library) {
+        if (library.myFileStorage != null) {
+          library.myFileStorage.setInterfacesEnabled(enabled);
+        }
       }
     }
+  }
+
+  /**
+   * @see FileStorage#requireSource
+   */
+  public void requireSource(SourceId sourceId) {
+    if (sourceId.getLibStorage() != this) return;
+    sourceId.myFileStorage.requireSource(sourceId.fileSourceId);
+  }
+
+  /**
+   * Maps every module of every library to the name of the library, or to null if several libraries provide it.
+   * It is built from the manifests on the first lookup.
+   */
+  private synchronized Map<ModulePath, String> getModuleLibraries() {
+    if (myModuleLibraries == null) {
+      myModuleLibraries = new HashMap<>();
+      for (Map.Entry<String, Library> entry : myLibraries.entrySet()) {
+        for (ModulePath modulePath : entry.getValue().getManifest().getModules()) {
+          if (myModuleLibraries.containsKey(modulePath)) {
+            myModuleLibraries.put(modulePath, null);
+          } else {
+            myModuleLibraries.put(modulePath, entry.getKey());
+          }
+        }
+      }
+    }
+    return myModuleLibraries;
+  }
+
+  private String findLibrary(ModulePath modulePath) {
+    Map<ModulePath, String> moduleLibraries = getModuleLibraries();
+    String result = moduleLibraries.get(modulePath);
+    if (result == null && moduleLibraries.containsKey(modulePath)) {
+      throw new ModuleInMultipleLibraries(modulePath);
+    }
     return result;
   }
 
+  /**
+   * Writes manifests of libraries that were opened.
+   */
+  public void saveManifests() throws IOException {
+    for (Library library : myLibraries.values()) {
+      LibraryManifest manifest;
+      synchronized (library) {
+        manifest = library.myManifest;
+      }
+      if (manifest != null) {
+        manifest.save(library.myCachePath.resolve(LibraryManifest.FILE_NAME));
+      }
+    }
+  }
+
+  @Override
+  public SourceId locateModule(@Nonnull ModulePath modulePath) {
+    String libName = findLibrary(modulePath);
+    return libName != null ? locateModule(libName, modulePath) : null;
+  }
+
   public SourceId locateModule(String libName, ModulePath modulePath) {
-    FileStorage fileStorage = myLibStorages.get(libName);
-    if (fileStorage == null) return null;
-    return new SourceId(libName, fileStorage, fileStorage.locateModule(modulePath));
+    Library library = myLibraries.get(libName);
+    if (library == null) return null;
+    FileStorage fileStorage = library.getFileStorage();
+    FileStorage.SourceId sourceId = fileStorage.locateModule(modulePath);
+    return sourceId != null ? new SourceId(libName, fileStorage, sourceId) : null;
   }
 
   @Override
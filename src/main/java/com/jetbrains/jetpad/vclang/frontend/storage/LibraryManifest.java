@@ -0,0 +1,142 @@
+package com.jetbrains.jetpad.vclang.frontend.storage;
+
+import com.jetbrains.jetpad.vclang.module.ModulePath;
+import com.jetbrains.jetpad.vclang.module.caching.serialization.LibraryProtos;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+
+/**
+ * An index of the modules of a library that is stored next to its caches,
+ * so a module is located without probing the file system.
+ *
+ * The manifest records modification times of the directories of the library.
+ * If one of them has changed, modules were added or removed, so the library is scanned again.
+ */
+public class LibraryManifest {
+  public static final String FILE_NAME = "library.vcm";
+
+  private final Path mySourceRoot;
+  private final Map<String, Long> myDirectories;
+  private final Set<ModulePath> myModules;
+  private boolean myChanged;
+
+  private LibraryManifest(Path sourceRoot, Map<String, Long> directories, Set<ModulePath> modules, boolean changed) {
+    mySourceRoot = sourceRoot;
+    myDirectories = directories;
+    myModules = modules;
+    myChanged = changed;
+  }
+
+  /**
+   * Reads the manifest of a library from {@code file}.
+   * If the file does not exist, cannot be read or is out of date, the library is scanned.
+   */
+  public static LibraryManifest load(Path sourceRoot, Path file) throws IOException {
+    if (Files.isReadable(file)) {
+      try (InputStream in = Files.newInputStream(file)) {
+        LibraryManifest manifest = read(sourceRoot, LibraryProtos.LibraryManifest.parseFrom(in));
+        if (manifest.isUpToDate()) {
+          return manifest;
+        }
+      } catch (IOException ignored) {
+      }
+    }
+    return scan(sourceRoot);
+  }
+
+  public static LibraryManifest scan(Path sourceRoot) throws IOException {
+    Map<String, Long> directories = new HashMap<>();
+    Set<ModulePath> modules = new HashSet<>();
+    if (!Files.isDirectory(sourceRoot)) {
+      return new LibraryManifest(sourceRoot, directories, modules, false);
+    }
+    Files.walkFileTree(sourceRoot, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+        directories.put(directoryKey(sourceRoot.relativize(dir)), attrs.lastModifiedTime().toMillis());
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+        String fileName = file.getFileName().toString();
+        if (attrs.isRegularFile() && fileName.endsWith(FileStorage.EXTENSION)) {
+          Path relative = sourceRoot.relativize(file);
+          relative = relative.resolveSibling(fileName.substring(0, fileName.length() - FileStorage.EXTENSION.length()));
+          ModulePath modulePath = FileStorage.modulePath(relative);
+          if (modulePath != null) {
+            modules.add(modulePath);
+          }
+        }
+        return FileVisitResult.CONTINUE;
+      }
+    });
+    return new LibraryManifest(sourceRoot, directories, modules, true);
+  }
+
+  private static String directoryKey(Path relative) {
+    StringJoiner joiner = new StringJoiner("/");
+    for (Path elem : relative) {
+      joiner.add(elem.toString());
+    }
+    return joiner.toString();
+  }
+
+  private static LibraryManifest read(Path sourceRoot, LibraryProtos.LibraryManifest proto) {
+    Set<ModulePath> modules = new HashSet<>();
+    for (LibraryProtos.LibraryManifest.Module moduleProto : proto.getModuleList()) {
+      modules.add(new ModulePath(new ArrayList<>(moduleProto.getPathList())));
+    }
+    return new LibraryManifest(sourceRoot, new HashMap<>(proto.getDirectoryMap()), modules, false);
+  }
+
+  private boolean isUpToDate() {
+    if (myDirectories.isEmpty()) {
+      return false;
+    }
+    for (Map.Entry<String, Long> entry : myDirectories.entrySet()) {
+      try {
+        if (Files.getLastModifiedTime(mySourceRoot.resolve(entry.getKey())).toMillis() != entry.getValue()) {
+          return false;
+        }
+      } catch (IOException e) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public boolean contains(ModulePath modulePath) {
+    return myModules.contains(modulePath);
+  }
+
+  public Set<ModulePath> getModules() {
+    return Collections.unmodifiableSet(myModules);
+  }
+
+  /**
+   * Writes the manifest to {@code file} if it was built by scanning the library.
+   */
+  public synchronized void save(Path file) throws IOException {
+    if (!myChanged) {
+      return;
+    }
+
+    LibraryProtos.LibraryManifest.Builder builder = LibraryProtos.LibraryManifest.newBuilder();
+    builder.putAllDirectory(myDirectories);
+    for (ModulePath modulePath : myModules) {
+      builder.addModule(LibraryProtos.LibraryManifest.Module.newBuilder().addAllPath(modulePath.toList()));
+    }
+
+    Files.createDirectories(file.getParent());
+    try (OutputStream out = Files.newOutputStream(file)) {
+      builder.build().writeTo(out);
+    }
+    myChanged = false;
+  }
+}
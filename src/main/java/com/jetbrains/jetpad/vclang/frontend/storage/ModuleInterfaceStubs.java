@@ -0,0 +1,308 @@
+package com.jetbrains.jetpad.vclang.frontend.storage;
+
+import com.jetbrains.jetpad.vclang.frontend.Concrete;
+import com.jetbrains.jetpad.vclang.module.ModulePath;
+import com.jetbrains.jetpad.vclang.module.caching.serialization.DeserializationError;
+import com.jetbrains.jetpad.vclang.module.caching.serialization.ModuleProtos;
+import com.jetbrains.jetpad.vclang.module.source.SourceId;
+import com.jetbrains.jetpad.vclang.naming.NameResolver;
+import com.jetbrains.jetpad.vclang.naming.namespace.ModuleNamespace;
+import com.jetbrains.jetpad.vclang.term.Abstract;
+
+import java.util.*;
+
+/**
+ * Builds a module from the interface stored in its cache instead of parsing it.
+ * Definitions of the module are stubs: they have the names, precedences, positions and nested definitions of the original ones
+ * and the resolved references that name resolution of other modules needs, but no bodies.
+ * Parameters keep their explicitness and names; their types are holes except for class views of instance parameters,
+ * so that instances are resolved in calls of stubs as in calls of the original definitions.
+ * Thus, such a module can be used only if typechecked definitions are loaded from the cache.
+ * <p>
+ * Positions of stubs are restored from their ids, so they get the same ids as the original definitions.
+ */
+public class ModuleInterfaceStubs {
+  private final SourceId mySourceId;
+  private final NameResolver myNameResolver;
+  private final Map<String, Concrete.Definition> myDefinitions = new HashMap<>();
+  private final Map<ModulePath, Map<String, Concrete.Definition>> myOtherModules = new HashMap<>();
+  private final List<Link> myLinks = new ArrayList<>();
+
+  private interface Link {
+    void resolve() throws DeserializationError;
+  }
+
+  private ModuleInterfaceStubs(SourceId sourceId, NameResolver nameResolver) {
+    mySourceId = sourceId;
+    myNameResolver = nameResolver;
+  }
+
+  /**
+   * Builds stubs of a module; modules that its class views and instances refer to are loaded by {@code nameResolver}.
+   * The module is not registered.
+   *
+   * @return the module or null if the interface is malformed or refers to definitions that cannot be found.
+   */
+  public static Concrete.ClassDefinition build(SourceId sourceId, ModuleProtos.ModuleInterface moduleInterface, NameResolver nameResolver) {
+    ModuleInterfaceStubs stubs = new ModuleInterfaceStubs(sourceId, nameResolver);
+    try {
+      Concrete.Position position = new Concrete.Position(sourceId, 0, 0);
+      Concrete.ClassDefinition module = new Concrete.ClassDefinition(position, sourceId.getModulePath().getName(), stubs.readStatements(moduleInterface.getDefinitionList(), null));
+      for (Link link : stubs.myLinks) {
+        link.resolve();
+      }
+      return module;
+    } catch (DeserializationError e) {
+      return null;
+    }
+  }
+
+  private List<Concrete.Statement> readStatements(List<ModuleProtos.ModuleInterface.Stub> stubs, Concrete.Definition parent) throws DeserializationError {
+    List<Concrete.Statement> statements = new ArrayList<>(stubs.size());
+    for (ModuleProtos.ModuleInterface.Stub stub : stubs) {
+      Concrete.Definition definition = readStub(stub);
+      if (parent != null) {
+        definition.setParent(parent);
+      }
+      statements.add(new Concrete.DefineStatement(definition.getPosition(), definition));
+    }
+    return statements;
+  }
+
+  private Concrete.Position readPosition(String id) throws DeserializationError {
+    int index = id.indexOf(';');
+    try {
+      if (index >= 0) {
+        return new Concrete.Position(mySourceId, Integer.parseInt(id.substring(0, index)), Integer.parseInt(id.substring(index + 1)) - 1);
+      }
+    } catch (NumberFormatException ignored) {
+    }
+    throw new DeserializationError("Malformed definition id: " + id);
+  }
+
+  private static Abstract.Precedence readPrecedence(ModuleProtos.ModuleInterface.Stub stub) throws DeserializationError {
+    switch (stub.getAssociativity()) {
+      case LEFT_ASSOC:
+        return new Abstract.Precedence(Abstract.Precedence.Associativity.LEFT_ASSOC, (byte) stub.getPriority());
+      case RIGHT_ASSOC:
+        return new Abstract.Precedence(Abstract.Precedence.Associativity.RIGHT_ASSOC, (byte) stub.getPriority());
+      case NON_ASSOC:
+        return new Abstract.Precedence(Abstract.Precedence.Associativity.NON_ASSOC, (byte) stub.getPriority());
+      default:
+        throw new DeserializationError("Unknown associativity: " + stub.getAssociativity());
+    }
+  }
+
+  private Concrete.Parameter readParameter(ModuleProtos.ModuleInterface.Parameter parameter, Concrete.Position position) throws DeserializationError {
+    if (!parameter.getHasType()) {
+      if (parameter.getNameCount() != 1) {
+        throw new DeserializationError("A parameter without a type must have a single name");
+      }
+      return new Concrete.NameParameter(position, parameter.getExplicit(), readName(parameter.getName(0)));
+    }
+
+    Concrete.Expression type;
+    if (parameter.hasClassView()) {
+      Concrete.ReferenceExpression reference = new Concrete.ReferenceExpression(position, null, parameter.getClassView().getName());
+      myLinks.add(() -> reference.setResolvedReferent(readReference(parameter.getClassView(), Abstract.ClassView.class)));
+      type = reference;
+    } else {
+      type = new Concrete.InferHoleExpression(position);
+    }
+
+    if (parameter.getNameCount() == 0) {
+      return new Concrete.TypeParameter(position, parameter.getExplicit(), type);
+    }
+    List<Concrete.LocalVariable> referables = new ArrayList<>(parameter.getNameCount());
+    for (String name : parameter.getNameList()) {
+      referables.add(new Concrete.LocalVariable(position, readName(name)));
+    }
+    return new Concrete.TelescopeParameter(position, parameter.getExplicit(), referables, type);
+  }
+
+  private static String readName(String name) {
+    return name.isEmpty() ? null : name;
+  }
+
+  private List<Concrete.Parameter> readParameters(ModuleProtos.ModuleInterface.Stub stub, Concrete.Position position) throws DeserializationError {
+    List<Concrete.Parameter> parameters = new ArrayList<>(stub.getParameterCount());
+    for (ModuleProtos.ModuleInterface.Parameter parameter : stub.getParameterList()) {
+      parameters.add(readParameter(parameter, position));
+    }
+    return parameters;
+  }
+
+  private List<Concrete.TypeParameter> readTypeParameters(ModuleProtos.ModuleInterface.Stub stub, Concrete.Position position) throws DeserializationError {
+    List<Concrete.TypeParameter> parameters = new ArrayList<>(stub.getParameterCount());
+    for (ModuleProtos.ModuleInterface.Parameter parameter : stub.getParameterList()) {
+      if (!parameter.getHasType()) {
+        throw new DeserializationError("Expected a typed parameter");
+      }
+      parameters.add((Concrete.TypeParameter) readParameter(parameter, position));
+    }
+    return parameters;
+  }
+
+  private Concrete.Definition readStub(ModuleProtos.ModuleInterface.Stub stub) throws DeserializationError {
+    Concrete.Position position = readPosition(stub.getId());
+    Concrete.Definition result;
+    switch (stub.getKind()) {
+      case FUNCTION:
+        List<Concrete.Statement> statements = new ArrayList<>();
+        result = new Concrete.FunctionDefinition(position, stub.getName(), readPrecedence(stub), readParameters(stub, position), null, new Concrete.ElimFunctionBody(position, Collections.emptyList(), Collections.emptyList()), statements);
+        statements.addAll(readStatements(stub.getGlobalDefinitionList(), result));
+        break;
+      case DATA:
+        result = readData(stub, position);
+        break;
+      case CLASS:
+        result = readClass(stub, position);
+        break;
+      case CLASS_VIEW:
+        result = readClassView(stub, position);
+        break;
+      case INSTANCE:
+        result = readInstance(stub, position);
+        break;
+      default:
+        throw new DeserializationError("Unexpected definition kind: " + stub.getKind());
+    }
+    myDefinitions.put(stub.getId(), result);
+    return result;
+  }
+
+  private Concrete.DataDefinition readData(ModuleProtos.ModuleInterface.Stub stub, Concrete.Position position) throws DeserializationError {
+    Concrete.DataDefinition result = new Concrete.DataDefinition(position, stub.getName(), readPrecedence(stub), readTypeParameters(stub, position), null, false, null, new ArrayList<>());
+    List<Concrete.Constructor> constructors = new ArrayList<>(stub.getConstructorCount());
+    for (ModuleProtos.ModuleInterface.Stub conStub : stub.getConstructorList()) {
+      if (conStub.getKind() != ModuleProtos.ModuleInterface.Stub.Kind.CONSTRUCTOR) {
+        throw new DeserializationError("Expected a constructor");
+      }
+      Concrete.Position conPosition = readPosition(conStub.getId());
+      Concrete.Constructor constructor = new Concrete.Constructor(conPosition, conStub.getName(), readPrecedence(conStub), result, readTypeParameters(conStub, conPosition), Collections.emptyList(), Collections.emptyList());
+      myDefinitions.put(conStub.getId(), constructor);
+      constructors.add(constructor);
+    }
+    result.getConstructorClauses().add(new Concrete.ConstructorClause(position, null, constructors));
+    return result;
+  }
+
+  private Concrete.ClassDefinition readClass(ModuleProtos.ModuleInterface.Stub stub, Concrete.Position position) throws DeserializationError {
+    List<Concrete.SuperClass> superClasses = new ArrayList<>(stub.getSuperClassCount());
+    List<Concrete.ClassField> fields = new ArrayList<>(stub.getFieldCount());
+    List<Concrete.Statement> globalStatements = new ArrayList<>();
+    List<Concrete.Definition> instanceDefinitions = new ArrayList<>(stub.getInstanceDefinitionCount());
+    Concrete.ClassDefinition result = new Concrete.ClassDefinition(position, stub.getName(), Collections.emptyList(), superClasses, fields, Collections.emptyList(), globalStatements, instanceDefinitions);
+
+    for (ModuleProtos.ModuleInterface.Reference superClass : stub.getSuperClassList()) {
+      Concrete.ReferenceExpression reference = new Concrete.ReferenceExpression(position, null, superClass.getName());
+      myLinks.add(() -> reference.setResolvedReferent(readReference(superClass, Abstract.ClassDefinition.class)));
+      superClasses.add(new Concrete.SuperClass(position, reference));
+    }
+    for (ModuleProtos.ModuleInterface.Stub fieldStub : stub.getFieldList()) {
+      if (fieldStub.getKind() != ModuleProtos.ModuleInterface.Stub.Kind.FIELD) {
+        throw new DeserializationError("Expected a field");
+      }
+      Concrete.Position fieldPosition = readPosition(fieldStub.getId());
+      Concrete.ClassField field = new Concrete.ClassField(fieldPosition, fieldStub.getName(), readPrecedence(fieldStub), new Concrete.InferHoleExpression(fieldPosition));
+      field.setParent(result);
+      myDefinitions.put(fieldStub.getId(), field);
+      fields.add(field);
+    }
+    globalStatements.addAll(readStatements(stub.getGlobalDefinitionList(), result));
+    for (ModuleProtos.ModuleInterface.Stub instanceStub : stub.getInstanceDefinitionList()) {
+      Concrete.Definition definition = readStub(instanceStub);
+      definition.setParent(result);
+      definition.setNotStatic();
+      instanceDefinitions.add(definition);
+    }
+    return result;
+  }
+
+  private Concrete.ClassView readClassView(ModuleProtos.ModuleInterface.Stub stub, Concrete.Position position) throws DeserializationError {
+    List<Concrete.ClassViewField> fields = new ArrayList<>(stub.getFieldCount());
+    Concrete.ReferenceExpression underlyingClass = new Concrete.ReferenceExpression(position, null, stub.getUnderlying().getName());
+    Concrete.ClassView result = new Concrete.ClassView(position, stub.getName(), underlyingClass, stub.getUnderlyingName(), fields);
+    myLinks.add(() -> {
+      underlyingClass.setResolvedReferent(readReference(stub.getUnderlying(), Abstract.ClassDefinition.class));
+      result.setClassifyingField(readReference(stub.getClassifying(), Abstract.ClassField.class));
+    });
+
+    for (ModuleProtos.ModuleInterface.Stub fieldStub : stub.getFieldList()) {
+      if (fieldStub.getKind() != ModuleProtos.ModuleInterface.Stub.Kind.CLASS_VIEW_FIELD) {
+        throw new DeserializationError("Expected a class view field");
+      }
+      Concrete.ClassViewField field = new Concrete.ClassViewField(readPosition(fieldStub.getId()), fieldStub.getName(), readPrecedence(fieldStub), fieldStub.getUnderlyingName(), result);
+      myLinks.add(() -> field.setUnderlyingField(readReference(fieldStub.getUnderlying(), Abstract.ClassField.class)));
+      myDefinitions.put(fieldStub.getId(), field);
+      fields.add(field);
+    }
+    return result;
+  }
+
+  private Concrete.ClassViewInstance readInstance(ModuleProtos.ModuleInterface.Stub stub, Concrete.Position position) throws DeserializationError {
+    Concrete.ReferenceExpression classView = new Concrete.ReferenceExpression(position, null, stub.getUnderlying().getName());
+    Concrete.ClassViewInstance result = new Concrete.ClassViewInstance(position, stub.getIsDefault(), stub.getName(), readPrecedence(stub), readParameters(stub, position), classView, Collections.emptyList());
+    myLinks.add(() -> {
+      classView.setResolvedReferent(readReference(stub.getUnderlying(), Abstract.ClassView.class));
+      result.setClassifyingDefinition(readReference(stub.getClassifying(), Abstract.Definition.class));
+    });
+    return result;
+  }
+
+  private <T extends Abstract.Definition> T readReference(ModuleProtos.ModuleInterface.Reference reference, Class<T> kind) throws DeserializationError {
+    Map<String, Concrete.Definition> definitions;
+    if (reference.getModulePathCount() == 0) {
+      definitions = myDefinitions;
+    } else {
+      ModulePath modulePath = new ModulePath(reference.getModulePathList());
+      definitions = myOtherModules.get(modulePath);
+      if (definitions == null) {
+        ModuleNamespace ns = myNameResolver.resolveModuleNamespace(modulePath);
+        if (ns == null || !(ns.getRegisteredClass() instanceof Concrete.ClassDefinition)) {
+          throw new DeserializationError("Cannot load module " + modulePath);
+        }
+        definitions = new HashMap<>();
+        collectDefinitions((Concrete.ClassDefinition) ns.getRegisteredClass(), definitions);
+        myOtherModules.put(modulePath, definitions);
+      }
+    }
+
+    Concrete.Definition definition = definitions.get(reference.getDefinitionId());
+    if (!kind.isInstance(definition)) {
+      throw new DeserializationError("Cannot find definition " + reference.getDefinitionId());
+    }
+    return kind.cast(definition);
+  }
+
+  private static String getId(Concrete.Definition definition) {
+    return definition.getPosition().line + ";" + definition.getPosition().column;
+  }
+
+  private static void collectDefinitions(Concrete.Definition definition, Map<String, Concrete.Definition> definitions) {
+    definitions.put(getId(definition), definition);
+    if (definition instanceof Abstract.DefinitionCollection) {
+      for (Abstract.Definition child : ((Abstract.DefinitionCollection) definition).getGlobalDefinitions()) {
+        collectDefinitions((Concrete.Definition) child, definitions);
+      }
+    }
+    if (definition instanceof Concrete.ClassDefinition) {
+      for (Concrete.Definition child : ((Concrete.ClassDefinition) definition).getInstanceDefinitions()) {
+        collectDefinitions(child, definitions);
+      }
+      for (Concrete.ClassField field : ((Concrete.ClassDefinition) definition).getFields()) {
+        collectDefinitions(field, definitions);
+      }
+    } else if (definition instanceof Concrete.DataDefinition) {
+      for (Concrete.ConstructorClause clause : ((Concrete.DataDefinition) definition).getConstructorClauses()) {
+        for (Concrete.Constructor constructor : clause.getConstructors()) {
+          collectDefinitions(constructor, definitions);
+        }
+      }
+    } else if (definition instanceof Concrete.ClassView) {
+      for (Concrete.ClassViewField field : ((Concrete.ClassView) definition).getFields()) {
+        collectDefinitions(field, definitions);
+      }
+    }
+  }
+}
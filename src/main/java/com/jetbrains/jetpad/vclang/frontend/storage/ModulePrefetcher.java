@@ -0,0 +1,125 @@
+package com.jetbrains.jetpad.vclang.frontend.storage;
+
+import com.jetbrains.jetpad.vclang.error.GeneralError;
+import com.jetbrains.jetpad.vclang.frontend.Concrete;
+import com.jetbrains.jetpad.vclang.module.ModulePath;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lexes and parses modules of {@link FileStorage}s on a pool of worker threads ahead of time.
+ * When a module is parsed, modules that it refers to in namespace commands and module calls are prefetched too.
+ *
+ * Only parsing is done on the workers.
+ * Registration of modules and name resolution are still done by {@link FileStorage#loadSource} on the thread that loads a module.
+ */
+public class ModulePrefetcher {
+  private final ExecutorService myExecutor;
+  private final List<FileStorage> myStorages = new CopyOnWriteArrayList<>();
+  private final Map<FileStorage.SourceId, Future<ParsedSource>> myParsed = new ConcurrentHashMap<>();
+  private final Set<FileStorage.SourceId> myTaken = ConcurrentHashMap.newKeySet();
+  private final AtomicInteger myHits = new AtomicInteger();
+
+  static class ParsedSource {
+    final long version;
+    final Concrete.ClassDefinition module;
+    final Collection<? extends GeneralError> errors;
+    final Collection<ModulePath> referredModules;
+
+    ParsedSource(long version, Concrete.ClassDefinition module, Collection<? extends GeneralError> errors, Collection<ModulePath> referredModules) {
+      this.version = version;
+      this.module = module;
+      this.errors = errors;
+      this.referredModules = referredModules;
+    }
+  }
+
+  public ModulePrefetcher(int threads) {
+    myExecutor = Executors.newFixedThreadPool(threads, runnable -> {
+      Thread thread = new Thread(runnable, "vclang-parser");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  void addStorage(FileStorage storage) {
+    myStorages.add(storage);
+  }
+
+  /**
+   * Schedules parsing of a module and of everything it refers to.
+   * The module is looked up in storages in the order in which they were added.
+   * Modules that it refers to are not prefetched if they were already taken, unless they are requested by this method again.
+   */
+  public void prefetch(ModulePath modulePath) {
+    prefetch(modulePath, true);
+  }
+
+  private void prefetch(ModulePath modulePath, boolean requested) {
+    for (FileStorage storage : myStorages) {
+      FileStorage.SourceId sourceId = storage.locateModule(modulePath);
+      if (sourceId != null) {
+        if (requested) {
+          myTaken.remove(sourceId);
+        } else if (myTaken.contains(sourceId)) {
+          return;
+        }
+        myParsed.computeIfAbsent(sourceId, id -> myExecutor.submit(() -> parse(storage, id)));
+        return;
+      }
+    }
+  }
+
+  private ParsedSource parse(FileStorage storage, FileStorage.SourceId sourceId) {
+    ParsedSource result = storage.parseSource(sourceId);
+    if (result != null && result.module != null) {
+      for (ModulePath modulePath : result.referredModules) {
+        prefetch(modulePath, false);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Waits until a prefetched module is parsed.
+   * The result is handed out only once; after that, the module can be prefetched again.
+   *
+   * @return the parsed module or null if it was not prefetched or parsing failed.
+   */
+  ParsedSource take(FileStorage.SourceId sourceId) {
+    Future<ParsedSource> future = myParsed.remove(sourceId);
+    if (future == null) {
+      return null;
+    }
+    myTaken.add(sourceId);
+
+    try {
+      ParsedSource result = future.get();
+      if (result != null) {
+        myHits.incrementAndGet();
+      }
+      return result;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return null;
+    } catch (ExecutionException e) {
+      return null;
+    }
+  }
+
+  /**
+   * @return the number of modules that were taken parsed from the prefetcher.
+   */
+  public int getHits() {
+    return myHits.get();
+  }
+
+  public void shutdown() {
+    myExecutor.shutdownNow();
+  }
+}
@@ -0,0 +1,121 @@
+package com.jetbrains.jetpad.vclang.module.caching;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compression of caches.
+ * The codec of a cache is recorded in its header, so caches written with different codecs can be read regardless of the current one.
+ */
+public enum CacheCodec {
+  /**
+   * Caches are not compressed; they are read directly from memory mapped files.
+   */
+  NONE(0, "none") {
+    @Override
+    byte[] encode(byte[] data) {
+      return data;
+    }
+
+    @Override
+    ByteBuffer decode(ByteBuffer data, int size) throws IOException {
+      if (data.remaining() != size) {
+        throw new IOException("Wrong size of cache");
+      }
+      return data;
+    }
+  },
+
+  GZIP(1, "gzip") {
+    @Override
+    byte[] encode(byte[] data) throws IOException {
+      ByteArrayOutputStream result = new ByteArrayOutputStream();
+      try (GZIPOutputStream out = new GZIPOutputStream(result)) {
+        out.write(data);
+      }
+      return result.toByteArray();
+    }
+
+    @Override
+    ByteBuffer decode(ByteBuffer data, int size) throws IOException {
+      // Deflate does not compress data more than 1032 times, so a larger size means that the header is corrupted
+      if (size < 0 || size > MAX_SIZE || (long) size > (long) data.remaining() * 1032) {
+        throw new IOException("Wrong size of decompressed cache");
+      }
+      try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(getBytes(data)))) {
+        byte[] result = new byte[size];
+        int offset = 0;
+        for (int read; offset < size && (read = in.read(result, offset, size - offset)) != -1; ) {
+          offset += read;
+        }
+        if (offset != size || in.read() != -1) {
+          throw new IOException("Wrong size of decompressed cache");
+        }
+        return ByteBuffer.wrap(result);
+      }
+    }
+  };
+
+  /**
+   * The maximal size of decoded data; a larger size in a header is not trusted.
+   */
+  private static final int MAX_SIZE = 1 << 30;
+
+  private final int myId;
+  private final String myName;
+
+  CacheCodec(int id, String name) {
+    myId = id;
+    myName = name;
+  }
+
+  /**
+   * @return the identifier of this codec in headers of caches.
+   */
+  int getId() {
+    return myId;
+  }
+
+  public String getName() {
+    return myName;
+  }
+
+  static CacheCodec fromId(int id) {
+    for (CacheCodec codec : values()) {
+      if (codec.myId == id) {
+        return codec;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return the codec with the given name or null if there is no such codec.
+   */
+  public static CacheCodec fromName(String name) {
+    for (CacheCodec codec : values()) {
+      if (codec.myName.equals(name)) {
+        return codec;
+      }
+    }
+    return null;
+  }
+
+  abstract byte[] encode(byte[] data) throws IOException;
+
+  /**
+   * @param size  the size of the decoded data that is recorded in the header; it is validated before anything is allocated.
+   */
+  abstract ByteBuffer decode(ByteBuffer data, int size) throws IOException;
+
+  private static byte[] getBytes(ByteBuffer buffer) {
+    byte[] result = new byte[buffer.remaining()];
+    buffer.duplicate().get(result);
+    return result;
+  }
+}
@@ -1,22 +1,35 @@
 package com.jetbrains.jetpad.vclang.module.caching;
 
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.jetbrains.jetpad.vclang.core.definition.ClassField;
+import com.jetbrains.jetpad.vclang.core.definition.Constructor;
 import com.jetbrains.jetpad.vclang.core.definition.Definition;
 import com.jetbrains.jetpad.vclang.module.caching.serialization.*;
 import com.jetbrains.jetpad.vclang.module.source.SourceId;
 import com.jetbrains.jetpad.vclang.term.Abstract;
 import com.jetbrains.jetpad.vclang.term.DefinitionLocator;
 import com.jetbrains.jetpad.vclang.typechecking.TypecheckerState;
+import com.jetbrains.jetpad.vclang.typechecking.TypecheckingProfiler;
 
 import javax.annotation.Nonnull;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.io.*;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
 import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
 
 public class CacheManager<SourceIdT extends SourceId> {
+  private static final int INDEXED_CACHE_MAGIC = 0x56434331;  // VCC1
+  private static final int CACHE_MAGIC = 0x56434332;  // VCC2
+  private static final int HEADER_SIZE = 12;
+
   private final PersistenceProvider<SourceIdT> myPersistenceProvider;
   private final CacheStorageSupplier<SourceIdT> myCacheSupplier;
   private final SourceVersionTracker<SourceIdT> myVersionTracker;
@@ -24,6 +37,14 @@ public class CacheManager<SourceIdT extends SourceId> {
 
   private final LocalizedTypecheckerState<SourceIdT> myTcState;
   private final Set<SourceIdT> myStubsLoaded = new HashSet<>();
+  private final Map<Abstract.Definition, Long> myInterfaceHashes = new HashMap<>();
+  private final Map<SourceIdT, PrefetchedCache> myPrefetchedCaches = new HashMap<>();
+  private final Map<SourceIdT, Set<SourceIdT>> myCacheDependencies = new HashMap<>();
+  // Definitions can be filled in on typechecking threads
+  private final Set<SourceIdT> myCorruptedCaches = Collections.synchronizedSet(new HashSet<>());
+  private int myThreads = 1;
+  private CacheCodec myCodec = CacheCodec.NONE;
+  private Function<SourceIdT, Abstract.ClassDefinition> myModuleProvider;
 
   public CacheManager(PersistenceProvider<SourceIdT> persistenceProvider, CacheStorageSupplier<SourceIdT> cacheSupplier,
                       SourceVersionTracker<SourceIdT> versionTracker, DefinitionLocator<SourceIdT> defLocator) {
@@ -42,6 +63,116 @@ public class CacheManager<SourceIdT extends SourceId> {
     return myTcState.getCachedModules();
   }
 
+  /**
+   * Sets the number of threads used by {@link #loadAll} and {@link #persistAll}.
+   * If it is greater than 1, the persistence provider and the definition locator must be safe to use from several threads.
+   */
+  public void setThreads(int threads) {
+    myThreads = threads;
+  }
+
+  /**
+   * Sets the codec of caches that are written; caches written with any codec can be read.
+   */
+  public void setCodec(@Nonnull CacheCodec codec) {
+    myCodec = codec;
+  }
+
+  /**
+   * Makes written caches include interfaces of modules, so that a module with a valid cache can be loaded without parsing.
+   *
+   * @param moduleProvider  returns the abstract source of a module or null if it is not available.
+   */
+  public void setModuleProvider(Function<SourceIdT, Abstract.ClassDefinition> moduleProvider) {
+    myModuleProvider = moduleProvider;
+  }
+
+  /**
+   * @return true if the cache of a source was loaded and has not been unloaded since then.
+   */
+  public boolean isCacheLoaded(@Nonnull SourceIdT sourceId) {
+    return myStubsLoaded.contains(sourceId);
+  }
+
+  /**
+   * @return sources that definitions of a loaded cache refer to.
+   */
+  public Set<SourceIdT> getCacheDependencies(@Nonnull SourceIdT sourceId) {
+    return myCacheDependencies.getOrDefault(sourceId, Collections.emptySet());
+  }
+
+  /**
+   * Reads the interface of a module from its cache without loading the cache.
+   * It does not access the typechecker state, so it can be called from any thread.
+   *
+   * @param version  the current version of the source
+   *
+   * @return the interface or null if the cache was written for another version of the source or does not contain an interface.
+   * @throws CacheLoadingException if the cache cannot be read or does not contain some of the definitions of the interface,
+   *                               so that stubs built from it would be typechecked.
+   */
+  public static ModuleProtos.ModuleInterface readInterface(@Nonnull SourceId sourceId, @Nonnull InputStream cacheStream, long version) throws CacheLoadingException {
+    ModuleProtos.ModuleIndex index = parseCache(sourceId, cacheStream).index;
+    if (index == null || index.getVersion() != version || !index.hasModuleInterface()) {
+      return null;
+    }
+    String missing = findMissingDefinition(index.getModuleInterface().getDefinitionList(), index.getDefinitionMap().keySet());
+    if (missing != null) {
+      throw new CacheLoadingException(sourceId, "Definition " + missing + " is missing from the cache");
+    }
+    return index.getModuleInterface();
+  }
+
+  /**
+   * @return the id of a definition of {@code stubs} that is typechecked on its own but is not in {@code ids} or null if there is no such definition.
+   *         Fields, constructors and class views are not checked since they are not typechecked on their own.
+   */
+  private static String findMissingDefinition(List<ModuleProtos.ModuleInterface.Stub> stubs, Set<String> ids) {
+    for (ModuleProtos.ModuleInterface.Stub stub : stubs) {
+      switch (stub.getKind()) {
+        case FUNCTION:
+        case DATA:
+        case CLASS:
+        case INSTANCE:
+          if (!ids.contains(stub.getId())) {
+            return stub.getId();
+          }
+      }
+      String missing = findMissingDefinition(stub.getGlobalDefinitionList(), ids);
+      if (missing == null) {
+        missing = findMissingDefinition(stub.getInstanceDefinitionList(), ids);
+      }
+      if (missing != null) {
+        return missing;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * The outcome of {@link #loadAll} or {@link #persistAll}.
+   */
+  public static class BatchResult<SourceIdT extends SourceId, E extends Exception> {
+    public final Set<SourceIdT> succeeded;
+    public final Map<SourceIdT, E> failed;
+    public final long bytes;
+    public final long nanos;
+
+    BatchResult(Set<SourceIdT> succeeded, Map<SourceIdT, E> failed, long bytes, long nanos) {
+      this.succeeded = succeeded;
+      this.failed = failed;
+      this.bytes = bytes;
+      this.nanos = nanos;
+    }
+
+    /**
+     * @return the number of megabytes of caches read or written per second.
+     */
+    public double getThroughput() {
+      return nanos == 0 ? 0 : bytes * 1000.0 / nanos;
+    }
+  }
+
   /**
    * Load persisted cache for a source.
    * <p>
@@ -50,6 +181,7 @@ public class CacheManager<SourceIdT extends SourceId> {
    * It is assumed that abstract source of this module is available, as well as abstract sources of all the modules
    * that this one refers to (which is probably automatically true by the time you have the source of this module
    * loaded as all the references will have been resolved).
+   * The abstract source may consist of stubs that were built from the interface of the cache, see {@link #readInterface}.
    *
    * @param sourceId  ID of the source to load cache of
    * @param module    root class (module) loaded from the provided source
@@ -65,30 +197,327 @@ public class CacheManager<SourceIdT extends SourceId> {
 
   private boolean loadCache(@Nonnull SourceIdT sourceId) throws CacheLoadingException {
     if (myStubsLoaded.contains(sourceId)) return true;
+    if (myCorruptedCaches.contains(sourceId)) {
+      TypecheckingProfiler.count(TypecheckingProfiler.Counter.CACHE_MISSES);
+      throw new CacheLoadingException(sourceId, "Corrupted cache");
+    }
 
     LocalizedTypecheckerState<SourceIdT>.LocalTypecheckerState localState = myTcState.getLocal(sourceId);
 
-    InputStream cacheStream = myCacheSupplier.getCacheInputStream(sourceId);
-    if (cacheStream == null) return false;
-
     try {
-      try {
-        GZIPInputStream compressedCacheStream = new GZIPInputStream(cacheStream);
-        readModule(sourceId, localState, ModuleProtos.Module.parseFrom(compressedCacheStream));
-        compressedCacheStream.close();
-      } catch (IOException e) {
-        throw new CacheLoadingException(sourceId, e);
+      ParsedCache cache = null;
+      PrefetchedCache prefetched = myPrefetchedCaches.remove(sourceId);
+      if (prefetched != null) {
+        if (prefetched.error != null) {
+          throw prefetched.error;
+        }
+        cache = prefetched.cache;
+      } else {
+        InputStream cacheStream = myCacheSupplier.getCacheInputStream(sourceId);
+        if (cacheStream != null) {
+          cache = parseCache(sourceId, cacheStream);
+        }
+      }
+      if (cache == null) {
+        TypecheckingProfiler.count(TypecheckingProfiler.Counter.CACHE_MISSES);
+        return false;
+      }
+
+      if (cache.index != null) {
+        readIndexedModule(sourceId, localState, cache.index, cache.data, cache.hasChecksums);
+      } else {
+        readModule(sourceId, localState, cache.module);
       }
     } catch (CacheLoadingException e) {
       myStubsLoaded.remove(sourceId);
       // TODO: is this enough?
       myTcState.wipe(sourceId);
+      TypecheckingProfiler.count(TypecheckingProfiler.Counter.CACHE_MISSES);
       throw e;
     }
     localState.sync();
+    TypecheckingProfiler.count(TypecheckingProfiler.Counter.CACHE_HITS);
     return true;
   }
 
+  /**
+   * Loads persisted caches for several sources.
+   * <p>
+   * Caches are read and parsed on {@link #setThreads worker threads};
+   * then they are loaded one by one as if by {@link #loadCache}, so dependencies are loaded before modules that refer to them.
+   *
+   * @param sourceIds  IDs of the sources to load caches of; it is assumed that their abstract sources are available.
+   *
+   * @return sources whose caches were loaded and exceptions for those whose caches could not be loaded.
+   *         Sources without a cache are in neither of them.
+   */
+  public BatchResult<SourceIdT, CacheLoadingException> loadAll(@Nonnull Collection<SourceIdT> sourceIds) {
+    long start = System.nanoTime();
+    List<SourceIdT> toLoad = new ArrayList<>();
+    List<InputStream> streams = new ArrayList<>();
+    for (SourceIdT sourceId : new LinkedHashSet<>(sourceIds)) {
+      if (!myStubsLoaded.contains(sourceId)) {
+        toLoad.add(sourceId);
+        streams.add(myCacheSupplier.getCacheInputStream(sourceId));
+      }
+    }
+
+    List<PrefetchedCache> prefetched = runAll(toLoad.size(), i -> {
+      if (streams.get(i) == null) {
+        return new PrefetchedCache(null, null);
+      }
+      try {
+        return new PrefetchedCache(parseCache(toLoad.get(i), streams.get(i)), null);
+      } catch (CacheLoadingException e) {
+        return new PrefetchedCache(null, e);
+      }
+    });
+    long bytes = 0;
+    for (int i = 0; i < toLoad.size(); i++) {
+      myPrefetchedCaches.put(toLoad.get(i), prefetched.get(i));
+      if (prefetched.get(i).cache != null) {
+        bytes += prefetched.get(i).cache.size;
+      }
+    }
+
+    Set<SourceIdT> succeeded = new LinkedHashSet<>();
+    Map<SourceIdT, CacheLoadingException> failed = new LinkedHashMap<>();
+    try {
+      for (SourceIdT sourceId : toLoad) {
+        try {
+          if (loadCache(sourceId)) {
+            succeeded.add(sourceId);
+          }
+        } catch (CacheLoadingException e) {
+          failed.put(sourceId, e);
+        }
+      }
+    } finally {
+      myPrefetchedCaches.clear();
+    }
+    return new BatchResult<>(succeeded, failed, bytes, System.nanoTime() - start);
+  }
+
+  /**
+   * A cache that was read and parsed, but not loaded into the typechecker state yet.
+   * Either the index and the data of a cache in the indexed format or a module in the old format are specified.
+   */
+  private static class ParsedCache {
+    final ModuleProtos.ModuleIndex index;
+    final ByteBuffer data;
+    final ModuleProtos.Module module;
+    final long size;
+    // Caches without the header were written before definitions had checksums
+    final boolean hasChecksums;
+
+    ParsedCache(ModuleProtos.ModuleIndex index, ByteBuffer data, ModuleProtos.Module module, long size, boolean hasChecksums) {
+      this.index = index;
+      this.data = data;
+      this.module = module;
+      this.size = size;
+      this.hasChecksums = hasChecksums;
+    }
+  }
+
+  /**
+   * A result of {@link #parseCache} that was obtained by {@link #loadAll} in advance;
+   * both fields are null if there is no cache.
+   */
+  private static class PrefetchedCache {
+    final ParsedCache cache;
+    final CacheLoadingException error;
+
+    PrefetchedCache(ParsedCache cache, CacheLoadingException error) {
+      this.cache = cache;
+      this.error = error;
+    }
+  }
+
+  /**
+   * Reads and parses a cache; it does not access the typechecker state, so it can be called from any thread.
+   */
+  private static ParsedCache parseCache(SourceId sourceId, InputStream cacheStream) throws CacheLoadingException {
+    try {
+      ByteBuffer cache = readCache(cacheStream);
+      ByteBuffer content;
+      if (hasMagic(cache, CACHE_MAGIC)) {
+        if (cache.limit() < HEADER_SIZE) {
+          throw new CacheLoadingException(sourceId, "Corrupted cache: wrong header");
+        }
+        CacheCodec codec = CacheCodec.fromId(cache.getInt(4));
+        if (codec == null) {
+          throw new CacheLoadingException(sourceId, "Unknown cache codec: " + cache.getInt(4));
+        }
+        int size = cache.getInt(8);
+        if (size < 0) {
+          throw new CacheLoadingException(sourceId, "Corrupted cache: wrong size");
+        }
+        content = codec.decode(slice(cache, HEADER_SIZE, cache.limit() - HEADER_SIZE), size);
+      } else if (hasMagic(cache, INDEXED_CACHE_MAGIC)) {
+        content = slice(cache, 4, cache.limit() - 4);
+      } else {
+        try (GZIPInputStream compressedCacheStream = new GZIPInputStream(new ByteArrayInputStream(getBytes(cache)))) {
+          return new ParsedCache(null, null, ModuleProtos.Module.parseFrom(compressedCacheStream), cache.limit(), false);
+        }
+      }
+
+      int indexSize = content.limit() >= 4 ? content.getInt(0) : -1;
+      if (indexSize < 0 || indexSize > content.limit() - 4) {
+        throw new CacheLoadingException(sourceId, "Corrupted cache: wrong index size");
+      }
+      ModuleProtos.ModuleIndex index = ModuleProtos.ModuleIndex.parseFrom(getBytes(slice(content, 4, indexSize)));
+      ByteBuffer data = slice(content, 4 + indexSize, content.limit() - 4 - indexSize);
+      checkBounds(sourceId, index, data);
+      return new ParsedCache(index, data, null, cache.limit(), hasMagic(cache, CACHE_MAGIC));
+    } catch (IOException e) {
+      throw new CacheLoadingException(sourceId, e);
+    }
+  }
+
+  /**
+   * Applies {@code task} to 0, ..., {@code size - 1} on {@link #setThreads worker threads}.
+   * Tasks must not access the typechecker state unless it cannot be modified while they run.
+   */
+  private <R> List<R> runAll(int size, Function<Integer, R> task) {
+    if (myThreads <= 1 || size <= 1) {
+      List<R> results = new ArrayList<>(size);
+      for (int i = 0; i < size; i++) {
+        results.add(task.apply(i));
+      }
+      return results;
+    }
+
+    ForkJoinPool pool = new ForkJoinPool(Math.min(myThreads, size));
+    try {
+      List<ForkJoinTask<R>> tasks = new ArrayList<>(size);
+      for (int i = 0; i < size; i++) {
+        int index = i;
+        tasks.add(pool.submit(() -> task.apply(index)));
+      }
+      return tasks.stream().map(ForkJoinTask::join).collect(Collectors.toList());
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * Reads the whole cache; a cache that is stored in a file is mapped into memory instead.
+   */
+  private static ByteBuffer readCache(InputStream cacheStream) throws IOException {
+    try (InputStream stream = cacheStream) {
+      if (stream instanceof FileInputStream) {
+        FileChannel channel = ((FileInputStream) stream).getChannel();
+        return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      }
+
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buffer = new byte[8192];
+      for (int read; (read = stream.read(buffer)) != -1; ) {
+        out.write(buffer, 0, read);
+      }
+      return ByteBuffer.wrap(out.toByteArray());
+    }
+  }
+
+  private static boolean hasMagic(ByteBuffer cache, int magic) {
+    return cache.limit() >= 4 && cache.getInt(0) == magic;
+  }
+
+  private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+    ByteBuffer result = buffer.duplicate();
+    result.position(offset);
+    result.limit(offset + length);
+    return result.slice();
+  }
+
+  // Messages are parsed from a copy since protobuf cannot reliably read direct buffers
+  private static byte[] getBytes(ByteBuffer buffer) {
+    byte[] result = new byte[buffer.remaining()];
+    buffer.duplicate().get(result);
+    return result;
+  }
+
+  /**
+   * Reads the index of a cache in the indexed format and records stubs of all definitions.
+   * A definition is deserialized only when it is requested from the typechecker state for the first time.
+   * The checksum of a definition is verified before it is deserialized;
+   * if it does not match or the definition cannot be read, {@link LazyCacheLoadingException} is thrown.
+   */
+  private void readIndexedModule(SourceIdT sourceId, LocalizedTypecheckerState<SourceIdT>.LocalTypecheckerState localState, ModuleProtos.ModuleIndex index, ByteBuffer data, boolean hasChecksums) throws CacheLoadingException {
+    if (!myVersionTracker.ensureLoaded(sourceId, index.getVersion())) {
+      throw new CacheLoadingException(sourceId, "Source has changed");
+    }
+
+    try {
+      DefinitionStateDeserialization<SourceIdT> defStateDeserialization = new DefinitionStateDeserialization<>(sourceId, myPersistenceProvider);
+      Map<String, List<Abstract.Definition>> stubs = new HashMap<>();
+      for (Map.Entry<String, ModuleProtos.ModuleIndex.Entry> entry : index.getDefinitionMap().entrySet()) {
+        ModuleProtos.ModuleIndex.Entry indexEntry = entry.getValue();
+        List<Abstract.Definition> definitions = defStateDeserialization.readStub(entry.getKey(), indexEntry.getStub(), localState);
+        stubs.put(entry.getKey(), definitions);
+        for (Abstract.Definition definition : definitions) {
+          myInterfaceHashes.put(definition, indexEntry.getInterfaceHash());
+        }
+      }
+      myStubsLoaded.add(sourceId);
+
+      ReadCalltargets readCalltargets = new ReadCalltargets(sourceId, index.getReferredDefinitionList());
+      myCacheDependencies.put(sourceId, readCalltargets.getDependencies());
+      CalltargetProvider.Typed calltargets = new CalltargetProvider.Typed(readCalltargets);
+      for (Map.Entry<String, ModuleProtos.ModuleIndex.Entry> entry : index.getDefinitionMap().entrySet()) {
+        String id = entry.getKey();
+        long checksum = entry.getValue().getChecksum();
+        ByteBuffer defData = slice(data, entry.getValue().getOffset(), entry.getValue().getLength());
+        localState.recordLazily(stubs.get(id), () -> {
+          String error;
+          try {
+            byte[] bytes = getBytes(defData);
+            if (hasChecksums && checksum(bytes) != checksum) {
+              error = "wrong checksum of " + id;
+            } else {
+              DefinitionProtos.Definition defProto = DefinitionProtos.Definition.parseFrom(bytes);
+              defStateDeserialization.fillInDefinition(id, defProto, localState, calltargets);
+              return;
+            }
+          } catch (LazyCacheLoadingException e) {
+            throw e;
+          } catch (IOException | DeserializationError | RuntimeException e) {
+            error = e.getMessage();
+          }
+          myCorruptedCaches.add(sourceId);
+          throw new LazyCacheLoadingException(new CacheLoadingException(sourceId, "Corrupted cache: " + error));
+        });
+      }
+    } catch (DeserializationError deserializationError) {
+      throw new CacheLoadingException(sourceId, deserializationError);
+    }
+  }
+
+  /**
+   * Checks that definitions of an index do not overlap and cover the whole data section,
+   * so that a corrupted index is detected when the cache is loaded rather than when its definitions are filled in.
+   */
+  private static void checkBounds(SourceId sourceId, ModuleProtos.ModuleIndex index, ByteBuffer data) throws CacheLoadingException {
+    List<ModuleProtos.ModuleIndex.Entry> entries = new ArrayList<>(index.getDefinitionMap().values());
+    entries.sort(Comparator.comparingInt(ModuleProtos.ModuleIndex.Entry::getOffset));
+    long end = 0;
+    for (ModuleProtos.ModuleIndex.Entry entry : entries) {
+      if (entry.getOffset() != end || entry.getLength() < 0) {
+        throw new CacheLoadingException(sourceId, "Corrupted cache: definition is out of bounds");
+      }
+      end += entry.getLength();
+    }
+    if (end != data.limit()) {
+      throw new CacheLoadingException(sourceId, "Corrupted cache: definitions do not match the data");
+    }
+  }
+
+  private static long checksum(byte[] bytes) {
+    CRC32 crc = new CRC32();
+    crc.update(bytes);
+    return crc.getValue();
+  }
+
   private void readModule(SourceIdT sourceId, LocalizedTypecheckerState<SourceIdT>.LocalTypecheckerState localState, ModuleProtos.Module moduleProto) throws CacheLoadingException {
     if (!myVersionTracker.ensureLoaded(sourceId, moduleProto.getVersion())) {
       throw new CacheLoadingException(sourceId, "Source has changed");
@@ -99,16 +528,36 @@ public class CacheManager<SourceIdT extends SourceId> {
       defStateDeserialization.readStubs(moduleProto.getDefinitionState(), localState);
       myStubsLoaded.add(sourceId);
       ReadCalltargets calltargets = new ReadCalltargets(sourceId, moduleProto.getReferredDefinitionList());
+      myCacheDependencies.put(sourceId, calltargets.getDependencies());
       defStateDeserialization.fillInDefinitions(moduleProto.getDefinitionState(), localState, calltargets);
     } catch (DeserializationError deserializationError) {
       throw new CacheLoadingException(sourceId, deserializationError);
     }
   }
 
+  /**
+   * Forgets typechecked definitions of a source and whether its cache was loaded.
+   * This should be called before a source is reloaded.
+   */
+  public void unloadCache(@Nonnull SourceIdT sourceId) {
+    myStubsLoaded.remove(sourceId);
+    myCacheDependencies.remove(sourceId);
+    myTcState.wipe(sourceId);
+  }
+
+  /**
+   * Resolves call-targets when they are requested, so that definitions of other modules are filled in only if they are used.
+   */
   class ReadCalltargets implements CalltargetProvider {
-    private final List<Definition> myCalltargets = new ArrayList<>();
+    private final SourceIdT mySourceId;
+    private final List<SourceIdT> mySourceIds = new ArrayList<>();
+    private final List<Abstract.Definition> myAbstractCalltargets = new ArrayList<>();
+    private final Definition[] myCalltargets;
+    private final InterfaceHasher myInterfaceHasher = new InterfaceHasher();
 
     ReadCalltargets(SourceIdT sourceId, List<ModuleProtos.Module.DefinitionReference> refDefProtos) throws CacheLoadingException {
+      mySourceId = sourceId;
+      myCalltargets = new Definition[refDefProtos.size()];
       for (ModuleProtos.Module.DefinitionReference proto : refDefProtos) {
         final SourceIdT targetSourceId;
         if (!proto.getSourceUrl().isEmpty()) {
@@ -117,29 +566,209 @@ public class CacheManager<SourceIdT extends SourceId> {
           if (targetSourceId == null) {
             throw new CacheLoadingException(sourceId, "Unresolvable source URI: " + uri);
           }
-          boolean targetLoaded = loadCache(targetSourceId);
-          if (!targetLoaded) {
-            throw new CacheLoadingException(sourceId, "Dependency does not support persistence: ");
+          Abstract.Definition absDef = myPersistenceProvider.getFromId(targetSourceId, proto.getDefinitionId());
+          if (absDef != null && !myStubsLoaded.contains(targetSourceId) && myTcState.getLocal(targetSourceId).isRecorded(absDef)) {
+            // The dependency was typechecked from source, so its interface is compared with the one this cache was built against
+            Definition definition = myTcState.getLocal(targetSourceId).getTypechecked(absDef);
+            if (proto.getInterfaceHash() == 0 || definition == null || myInterfaceHasher.hash(definition) != proto.getInterfaceHash()) {
+              throw new CacheLoadingException(sourceId, "Interface of a dependency has changed");
+            }
+          } else {
+            boolean targetLoaded;
+            try {
+              targetLoaded = loadCache(targetSourceId);
+            } catch (CacheLoadingException e) {
+              throw new DependencyCacheLoadingException(sourceId, targetSourceId, e.getMessage());
+            }
+            if (!targetLoaded) {
+              throw new DependencyCacheLoadingException(sourceId, targetSourceId, "Dependency does not support persistence: ");
+            }
+            Long interfaceHash = absDef != null ? myInterfaceHashes.get(absDef) : null;
+            if (interfaceHash != null && interfaceHash != 0 && proto.getInterfaceHash() != 0 && interfaceHash != proto.getInterfaceHash()) {
+              throw new CacheLoadingException(sourceId, "Interface of a dependency has changed");
+            }
           }
         } else {
           targetSourceId = sourceId;
         }
         Abstract.Definition absDef = myPersistenceProvider.getFromId(targetSourceId, proto.getDefinitionId());
-        Definition typechecked = myTcState.getLocal(targetSourceId).getTypechecked(absDef);
-        if (typechecked == null) {
+        if (absDef == null || !myTcState.getLocal(targetSourceId).isRecorded(absDef)) {
           throw new CacheLoadingException(sourceId, "Referred definition was not in cache");
         }
-        myCalltargets.add(typechecked);
+        mySourceIds.add(targetSourceId);
+        myAbstractCalltargets.add(absDef);
       }
     }
 
+    Set<SourceIdT> getDependencies() {
+      Set<SourceIdT> dependencies = new HashSet<>(mySourceIds);
+      dependencies.remove(mySourceId);
+      return dependencies;
+    }
+
     @Override
     public Definition getCalltarget(int index) {
-      return myCalltargets.get(index);
+      if (myCalltargets[index] == null) {
+        myCalltargets[index] = myTcState.getLocal(mySourceIds.get(index)).getTypechecked(myAbstractCalltargets.get(index));
+      }
+      return myCalltargets[index];
     }
   }
 
 
+  /**
+   * Computes hashes of everything that definitions of other modules can depend on.
+   * Since functions are unfolded during typechecking, the hash of a definition covers its body
+   * and the hashes of all definitions it refers to, so a dependent cache is rejected whenever anything it may unfold changes.
+   * Definitions that refer to each other are hashed together.
+   * <p>
+   * Hashes are memoized, so a hasher must not be used after definitions are typechecked again.
+   */
+  private class InterfaceHasher {
+    private final Map<Definition, Long> myHashes = new HashMap<>();
+
+    private class Node {
+      final Definition definition;
+      final int index;
+      int lowLink;
+      boolean onStack = true;
+      byte[] proto;
+      final List<Definition> calltargets = new ArrayList<>();
+      int nextCalltarget = 0;
+
+      Node(Definition definition, int index) {
+        this.definition = definition;
+        this.index = index;
+        lowLink = index;
+      }
+    }
+
+    long hash(Definition definition) {
+      definition = ownerOf(definition);
+      Long hash = getKnownHash(definition);
+      if (hash == null) {
+        hashReachable(definition);
+        hash = myHashes.get(definition);
+      }
+      return hash;
+    }
+
+    private Definition ownerOf(Definition definition) {
+      if (definition instanceof Constructor) {
+        return ((Constructor) definition).getDataType();
+      } else if (definition instanceof ClassField) {
+        return definition.getThisClass();
+      } else {
+        return definition;
+      }
+    }
+
+    /**
+     * @return the hash of a definition if it was already computed or if it was read from the cache of its module
+     *         and nothing in that module was typechecked since then.
+     */
+    private Long getKnownHash(Definition definition) {
+      Long hash = myHashes.get(definition);
+      SourceIdT sourceId = myDefLocator.sourceOf(definition.getAbstractDefinition());
+      if (hash == null && myStubsLoaded.contains(sourceId) && !myTcState.getLocal(sourceId).isOutOfSync()) {
+        hash = myInterfaceHashes.get(definition.getAbstractDefinition());
+        if (hash != null && hash != 0) {
+          myHashes.put(definition, hash);
+        } else {
+          hash = null;
+        }
+      }
+      return hash;
+    }
+
+    private String referenceOf(Definition definition) {
+      return myPersistenceProvider.getUri(myDefLocator.sourceOf(definition.getAbstractDefinition())) + "#" + myPersistenceProvider.getIdFor(definition.getAbstractDefinition());
+    }
+
+    private Node visit(Definition definition, Map<Definition, Node> nodes, Deque<Node> stack) {
+      Node node = new Node(definition, nodes.size());
+      nodes.put(definition, node);
+      stack.push(node);
+
+      LinkedHashMap<Definition, Integer> calltargets = new LinkedHashMap<>();
+      DefinitionStateSerialization defStateSerialization = new DefinitionStateSerialization(myPersistenceProvider, def -> calltargets.computeIfAbsent(def, k -> calltargets.size()));
+      LocalizedTypecheckerState<SourceIdT>.LocalTypecheckerState localState = myTcState.getLocal(myDefLocator.sourceOf(definition.getAbstractDefinition()));
+      // The definition is filled in if it was recorded lazily
+      localState.getTypechecked(definition.getAbstractDefinition());
+      node.proto = defStateSerialization.writeInterface(definition, localState).toByteArray();
+      node.calltargets.addAll(calltargets.keySet());
+      return node;
+    }
+
+    /**
+     * Hashes all definitions reachable from {@code root} whose hashes are not known yet.
+     * Strongly connected components are found with Tarjan's algorithm; the stack is explicit, so long chains of references do not exhaust it.
+     */
+    private void hashReachable(Definition root) {
+      Map<Definition, Node> nodes = new HashMap<>();
+      Deque<Node> stack = new ArrayDeque<>();
+      Deque<Node> path = new ArrayDeque<>();
+      path.push(visit(root, nodes, stack));
+      while (!path.isEmpty()) {
+        Node node = path.peek();
+        if (node.nextCalltarget < node.calltargets.size()) {
+          Definition target = ownerOf(node.calltargets.get(node.nextCalltarget++));
+          if (getKnownHash(target) != null) {
+            continue;
+          }
+          Node targetNode = nodes.get(target);
+          if (targetNode == null) {
+            path.push(visit(target, nodes, stack));
+          } else if (targetNode.onStack) {
+            node.lowLink = Math.min(node.lowLink, targetNode.index);
+          }
+          continue;
+        }
+
+        path.pop();
+        if (!path.isEmpty()) {
+          path.peek().lowLink = Math.min(path.peek().lowLink, node.lowLink);
+        }
+        if (node.lowLink == node.index) {
+          List<Node> component = new ArrayList<>();
+          Node member;
+          do {
+            member = stack.pop();
+            member.onStack = false;
+            component.add(member);
+          } while (member != node);
+          hashComponent(component, nodes);
+        }
+      }
+    }
+
+    private void hashComponent(List<Node> component, Map<Definition, Node> nodes) {
+      Map<Node, String> references = new HashMap<>();
+      for (Node member : component) {
+        references.put(member, referenceOf(member.definition));
+      }
+      component.sort(Comparator.comparing(references::get));
+
+      Hasher hasher = Hashing.murmur3_128().newHasher();
+      for (Node member : component) {
+        hasher.putUnencodedChars(references.get(member));
+        hasher.putBytes(member.proto);
+        for (Definition calltarget : member.calltargets) {
+          hasher.putUnencodedChars(referenceOf(calltarget));
+          Node targetNode = nodes.get(ownerOf(calltarget));
+          if (targetNode == null || !references.containsKey(targetNode)) {
+            hasher.putLong(myHashes.get(ownerOf(calltarget)));
+          }
+        }
+      }
+      long componentHash = hasher.hash().asLong();
+
+      for (Node member : component) {
+        myHashes.put(member.definition, Hashing.murmur3_128().newHasher().putLong(componentHash).putUnencodedChars(references.get(member)).hash().asLong());
+      }
+    }
+  }
+
   /**
    * Persist cache for a source.
    * <p>
@@ -158,6 +787,12 @@ public class CacheManager<SourceIdT extends SourceId> {
     if (!localState.isOutOfSync()) {
       return true;
     }
+    // The old cache may still be mapped into memory
+    try {
+      loadLazyDefinitions(sourceId, localState);
+    } catch (LazyCacheLoadingException e) {
+      throw new CachePersistenceException(sourceId, e.getMessage());
+    }
 
     OutputStream cacheStream = myCacheSupplier.getCacheOutputStream(sourceId);
     if (cacheStream == null) {
@@ -165,10 +800,14 @@ public class CacheManager<SourceIdT extends SourceId> {
     }
 
     try {
-      try {
-        GZIPOutputStream compressedCacheStream = new GZIPOutputStream(cacheStream);
-        writeModule(sourceId, localState).writeTo(compressedCacheStream);
-        compressedCacheStream.close();
+      try (OutputStream out = cacheStream) {
+        ModuleWriter writer = new ModuleWriter(sourceId, localState);
+        writer.serializeDefinitions();
+        localState.sync();
+        writer.writeReferences(Collections.emptySet(), new InterfaceHasher());
+        writer.encode(myCodec);
+        out.write(writer.encoded);
+        myCorruptedCaches.remove(sourceId);
       } catch (IOException e) {
         throw new CachePersistenceException(sourceId, e);
       }
@@ -179,22 +818,322 @@ public class CacheManager<SourceIdT extends SourceId> {
     return true;
   }
 
-  private ModuleProtos.Module writeModule(SourceIdT sourceId, LocalizedTypecheckerState<SourceIdT>.LocalTypecheckerState localState) throws CachePersistenceException {
-    ModuleProtos.Module.Builder out = ModuleProtos.Module.newBuilder();
-    final WriteCalltargets calltargets = new WriteCalltargets(sourceId);
-    // Serialize the module first in order to populate the call-target registry
-    DefinitionStateSerialization defStateSerialization = new DefinitionStateSerialization(myPersistenceProvider, calltargets);
-    out.setDefinitionState(defStateSerialization.writeDefinitionState(localState));
-    localState.sync();
-    // now write the call-target registry
-    out.addAllReferredDefinition(calltargets.write());
+  /**
+   * Fills in definitions of a source before it is persisted.
+   * A state that was loaded from a corrupted cache is never persisted since some of its definitions are not filled in.
+   */
+  private void loadLazyDefinitions(SourceIdT sourceId, LocalizedTypecheckerState<SourceIdT>.LocalTypecheckerState localState) {
+    localState.loadLazyDefinitions();
+    if (myCorruptedCaches.contains(sourceId) && isCacheLoaded(sourceId)) {
+      throw new LazyCacheLoadingException(new CacheLoadingException(sourceId, "Corrupted cache"));
+    }
+  }
+
+  /**
+   * Persists caches for several sources.
+   * <p>
+   * Definitions of the sources are serialized and encoded on {@link #setThreads worker threads}.
+   * Caches are written in the order of dependencies between the sources and
+   * a cache is not written if a cache of one of its dependencies could not be written.
+   * Sources that refer to each other are persisted as a unit: if a cache of one of them cannot be written, all of them fail.
+   * Caches of the unit that were written before the failure record interface hashes of the source that failed,
+   * so they are rejected when they are loaded with its old cache.
+   * Dependencies that are not in {@code sourceIds} are persisted as if by {@link #persistCache}.
+   *
+   * @param sourceIds  IDs of the sources to persist caches of
+   *
+   * @return sources whose caches were written and exceptions for those whose caches could not be written.
+   *         Sources that are up to date or do not support persistence are in neither of them.
+   */
+  public BatchResult<SourceIdT, CachePersistenceException> persistAll(@Nonnull Collection<SourceIdT> sourceIds) {
+    long start = System.nanoTime();
+    Map<SourceIdT, ModuleWriter> writers = new LinkedHashMap<>();
+    for (SourceIdT sourceId : sourceIds) {
+      LocalizedTypecheckerState<SourceIdT>.LocalTypecheckerState localState = myTcState.getLocal(sourceId);
+      if (localState.isOutOfSync() && !writers.containsKey(sourceId)) {
+        writers.put(sourceId, new ModuleWriter(sourceId, localState));
+      }
+    }
+    // Definitions are filled in beforehand, so the serialization of a module does not modify the typechecker state
+    Map<SourceIdT, CachePersistenceException> failed = new LinkedHashMap<>();
+    for (Iterator<ModuleWriter> iterator = writers.values().iterator(); iterator.hasNext(); ) {
+      ModuleWriter writer = iterator.next();
+      try {
+        loadLazyDefinitions(writer.sourceId, writer.localState);
+      } catch (LazyCacheLoadingException e) {
+        failed.put(writer.sourceId, new CachePersistenceException(writer.sourceId, e.getMessage()));
+        iterator.remove();
+      }
+    }
 
-    out.setVersion(myVersionTracker.getCurrentVersion(sourceId));
-    return out.build();
+    List<ModuleWriter> writerList = new ArrayList<>(writers.values());
+    runAll(writerList.size(), i -> {
+      writerList.get(i).serializeDefinitions();
+      return null;
+    });
+
+    for (ModuleWriter writer : writerList) {
+      writer.localState.sync();
+    }
+    InterfaceHasher interfaceHasher = new InterfaceHasher();
+    for (ModuleWriter writer : writerList) {
+      try {
+        writer.writeReferences(writers.keySet(), interfaceHasher);
+      } catch (CachePersistenceException e) {
+        failed.put(writer.sourceId, e);
+      }
+    }
+
+    runAll(writerList.size(), i -> {
+      if (!failed.containsKey(writerList.get(i).sourceId)) {
+        writerList.get(i).encode(myCodec);
+      }
+      return null;
+    });
+
+    Set<SourceIdT> succeeded = new LinkedHashSet<>();
+    long bytes = 0;
+    for (List<ModuleWriter> component : sortByDependencies(writerList)) {
+      Set<SourceIdT> members = new HashSet<>();
+      for (ModuleWriter writer : component) {
+        members.add(writer.sourceId);
+      }
+
+      SourceIdT notPersisted = null;
+      for (ModuleWriter writer : component) {
+        if (failed.containsKey(writer.sourceId)) {
+          notPersisted = writer.sourceId;
+          break;
+        }
+        for (SourceIdT dependency : writer.calltargets.myDependencies) {
+          if (writers.containsKey(dependency) && !members.contains(dependency) && !succeeded.contains(dependency)) {
+            notPersisted = dependency;
+            break;
+          }
+        }
+        if (notPersisted != null) {
+          break;
+        }
+      }
+
+      long componentBytes = 0;
+      if (notPersisted == null) {
+        for (ModuleWriter writer : component) {
+          SourceIdT sourceId = writer.sourceId;
+          OutputStream cacheStream = myCacheSupplier.getCacheOutputStream(sourceId);
+          if (cacheStream == null) {
+            notPersisted = sourceId;
+            break;
+          }
+          try (OutputStream out = cacheStream) {
+            out.write(writer.encoded);
+          } catch (IOException e) {
+            failed.put(sourceId, new CachePersistenceException(sourceId, e));
+            notPersisted = sourceId;
+            break;
+          }
+          componentBytes += writer.encoded.length;
+        }
+      }
+
+      if (notPersisted == null) {
+        for (ModuleWriter writer : component) {
+          succeeded.add(writer.sourceId);
+          myCorruptedCaches.remove(writer.sourceId);
+        }
+        bytes += componentBytes;
+      } else {
+        for (ModuleWriter writer : component) {
+          // A source that does not support persistence fails only the sources that refer to it
+          if (!writer.sourceId.equals(notPersisted) && !failed.containsKey(writer.sourceId)) {
+            failed.put(writer.sourceId, new CachePersistenceException(writer.sourceId, "Dependency was not persisted " + notPersisted));
+          }
+          writer.localState.unsync();
+        }
+      }
+    }
+
+    return new BatchResult<>(succeeded, failed, bytes, System.nanoTime() - start);
+  }
+
+  private class WriterNode {
+    final ModuleWriter writer;
+    final Iterator<SourceIdT> dependencies;
+    final int index;
+    int lowLink;
+    boolean onStack = true;
+
+    WriterNode(ModuleWriter writer, int index) {
+      this.writer = writer;
+      this.index = index;
+      dependencies = writer.calltargets.myDependencies.iterator();
+      lowLink = index;
+    }
+  }
+
+  /**
+   * Groups modules that refer to each other and orders the groups so that each group goes after the groups it refers to.
+   * Groups are strongly connected components found with Tarjan's algorithm.
+   */
+  private List<List<ModuleWriter>> sortByDependencies(List<ModuleWriter> writers) {
+    Map<SourceIdT, ModuleWriter> writerMap = new HashMap<>();
+    for (ModuleWriter writer : writers) {
+      writerMap.put(writer.sourceId, writer);
+    }
+
+    List<List<ModuleWriter>> result = new ArrayList<>();
+    Map<SourceIdT, WriterNode> nodes = new HashMap<>();
+    Deque<WriterNode> stack = new ArrayDeque<>();
+    for (ModuleWriter writer : writers) {
+      if (nodes.containsKey(writer.sourceId)) {
+        continue;
+      }
+
+      Deque<WriterNode> path = new ArrayDeque<>();
+      path.push(visitWriter(writer, nodes, stack));
+      while (!path.isEmpty()) {
+        WriterNode node = path.peek();
+        if (node.dependencies.hasNext()) {
+          ModuleWriter dependency = writerMap.get(node.dependencies.next());
+          if (dependency == null) {
+            continue;
+          }
+          WriterNode dependencyNode = nodes.get(dependency.sourceId);
+          if (dependencyNode == null) {
+            path.push(visitWriter(dependency, nodes, stack));
+          } else if (dependencyNode.onStack) {
+            node.lowLink = Math.min(node.lowLink, dependencyNode.index);
+          }
+          continue;
+        }
+
+        path.pop();
+        if (!path.isEmpty()) {
+          path.peek().lowLink = Math.min(path.peek().lowLink, node.lowLink);
+        }
+        if (node.lowLink == node.index) {
+          List<ModuleWriter> component = new ArrayList<>();
+          WriterNode member;
+          do {
+            member = stack.pop();
+            member.onStack = false;
+            component.add(member.writer);
+          } while (member != node);
+          result.add(component);
+        }
+      }
+    }
+    return result;
+  }
+
+  private WriterNode visitWriter(ModuleWriter writer, Map<SourceIdT, WriterNode> nodes, Deque<WriterNode> stack) {
+    WriterNode node = new WriterNode(writer, nodes.size());
+    nodes.put(writer.sourceId, node);
+    stack.push(node);
+    return node;
+  }
+
+  /**
+   * Serializes a module in the indexed format.
+   */
+  private class ModuleWriter {
+    final SourceIdT sourceId;
+    final LocalizedTypecheckerState<SourceIdT>.LocalTypecheckerState localState;
+    final WriteCalltargets calltargets;
+    final ModuleProtos.ModuleIndex.Builder index = ModuleProtos.ModuleIndex.newBuilder();
+    final List<byte[]> definitions = new ArrayList<>();
+    final Map<String, Definition> typechecked = new HashMap<>();
+    ModuleProtos.ModuleIndex indexProto;
+    byte[] encoded;
+
+    ModuleWriter(SourceIdT sourceId, LocalizedTypecheckerState<SourceIdT>.LocalTypecheckerState localState) {
+      this.sourceId = sourceId;
+      this.localState = localState;
+      calltargets = new WriteCalltargets(sourceId);
+    }
+
+    /**
+     * Serializes definitions of the module and populates the call-target registry.
+     * Only the state of this module is accessed, so modules can be serialized in parallel.
+     */
+    void serializeDefinitions() {
+      DefinitionStateSerialization defStateSerialization = new DefinitionStateSerialization(myPersistenceProvider, calltargets);
+      ModuleProtos.Module.DefinitionState definitionState = defStateSerialization.writeDefinitionState(localState);
+
+      for (Abstract.Definition definition : localState.getTypecheckedDefinitions()) {
+        typechecked.put(myPersistenceProvider.getIdFor(definition), localState.getTypechecked(definition));
+      }
+
+      int offset = 0;
+      for (Map.Entry<String, DefinitionProtos.Definition> entry : definitionState.getDefinitionMap().entrySet()) {
+        DefinitionProtos.Definition definition = entry.getValue();
+        byte[] bytes = definition.toByteArray();
+        index.putDefinition(entry.getKey(), ModuleProtos.ModuleIndex.Entry.newBuilder()
+          .setStub(DefinitionStateSerialization.writeStub(definition))
+          .setOffset(offset)
+          .setLength(bytes.length)
+          .setChecksum(checksum(bytes))
+          .build());
+        definitions.add(bytes);
+        offset += bytes.length;
+      }
+    }
+
+    /**
+     * Writes interface hashes, the call-target registry and the interface of the module if its abstract source is available and all its definitions are typechecked.
+     * Hashes depend on definitions of other modules, so this is not done in parallel.
+     *
+     * @param deferred  modules that are persisted together with this one; other dependencies are persisted immediately.
+     */
+    void writeReferences(Set<SourceIdT> deferred, InterfaceHasher interfaceHasher) throws CachePersistenceException {
+      for (Map.Entry<String, ModuleProtos.ModuleIndex.Entry> entry : new ArrayList<>(index.getDefinitionMap().entrySet())) {
+        index.putDefinition(entry.getKey(), entry.getValue().toBuilder().setInterfaceHash(interfaceHasher.hash(typechecked.get(entry.getKey()))).build());
+      }
+      index.addAllReferredDefinition(calltargets.write(deferred, interfaceHasher));
+      index.setVersion(myVersionTracker.getCurrentVersion(sourceId));
+      Abstract.ClassDefinition module = myModuleProvider != null ? myModuleProvider.apply(sourceId) : null;
+      if (module != null) {
+        ModuleProtos.ModuleInterface moduleInterface = new ModuleInterfaceSerialization<>(sourceId, myPersistenceProvider, myDefLocator).writeInterface(module);
+        // A module whose definitions are not all typechecked is parsed when it is loaded next time
+        if (moduleInterface != null && findMissingDefinition(moduleInterface.getDefinitionList(), index.getDefinitionMap().keySet()) == null) {
+          index.setModuleInterface(moduleInterface);
+        }
+      }
+      indexProto = index.build();
+    }
+
+    /**
+     * Encodes the module with {@code codec}.
+     * The header consists of the magic number, the identifier of the codec and the size of the content before encoding.
+     * The content is the size of the index, the index and serialized definitions.
+     */
+    void encode(CacheCodec codec) {
+      ByteArrayOutputStream content = new ByteArrayOutputStream();
+      ByteArrayOutputStream result = new ByteArrayOutputStream();
+      try {
+        try (DataOutputStream out = new DataOutputStream(content)) {
+          out.writeInt(indexProto.getSerializedSize());
+          indexProto.writeTo(out);
+          for (byte[] definition : definitions) {
+            out.write(definition);
+          }
+        }
+        try (DataOutputStream out = new DataOutputStream(result)) {
+          out.writeInt(CACHE_MAGIC);
+          out.writeInt(codec.getId());
+          out.writeInt(content.size());
+          out.write(codec.encode(content.toByteArray()));
+        }
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+      encoded = result.toByteArray();
+    }
   }
 
   class WriteCalltargets implements CalltargetIndexProvider {
     private final LinkedHashMap<Definition, Integer> myCalltargets = new LinkedHashMap<>();
+    private final Set<SourceIdT> myDependencies = new LinkedHashSet<>();
     private final SourceId mySourceId;
 
     WriteCalltargets(SourceId sourceId) {
@@ -206,17 +1145,21 @@ public class CacheManager<SourceIdT extends SourceId> {
       return myCalltargets.computeIfAbsent(definition, k -> myCalltargets.size());
     }
 
-    private List<ModuleProtos.Module.DefinitionReference> write() throws CachePersistenceException {
+    private List<ModuleProtos.Module.DefinitionReference> write(Set<SourceIdT> deferred, InterfaceHasher interfaceHasher) throws CachePersistenceException {
       List<ModuleProtos.Module.DefinitionReference> out = new ArrayList<>();
       for (Definition calltarget : myCalltargets.keySet()) {
         ModuleProtos.Module.DefinitionReference.Builder entry = ModuleProtos.Module.DefinitionReference.newBuilder();
         SourceIdT targetSourceId = myDefLocator.sourceOf(calltarget.getAbstractDefinition());
         if (!mySourceId.equals(targetSourceId)) {
-          boolean targetPersisted = persistCache(targetSourceId);
-          if (!targetPersisted) {
-            throw new CachePersistenceException(mySourceId, "Dependency does not support persistence " + targetSourceId);
+          myDependencies.add(targetSourceId);
+          if (!deferred.contains(targetSourceId)) {
+            boolean targetPersisted = persistCache(targetSourceId);
+            if (!targetPersisted) {
+              throw new CachePersistenceException(mySourceId, "Dependency does not support persistence " + targetSourceId);
+            }
           }
           entry.setSourceUrl(myPersistenceProvider.getUri(targetSourceId).toString());
+          entry.setInterfaceHash(interfaceHasher.hash(calltarget));
         }
         entry.setDefinitionId(myPersistenceProvider.getIdFor(calltarget.getAbstractDefinition()));
         out.add(entry.build());
@@ -0,0 +1,17 @@
+package com.jetbrains.jetpad.vclang.module.caching;
+
+import com.jetbrains.jetpad.vclang.module.source.SourceId;
+
+/**
+ * Thrown if a cache cannot be loaded because the cache of a module it refers to cannot be loaded.
+ * The cache may still be loaded after {@link #dependency} is typechecked
+ * if interfaces of definitions that it refers to did not change.
+ */
+public class DependencyCacheLoadingException extends CacheLoadingException {
+  public final SourceId dependency;
+
+  public DependencyCacheLoadingException(SourceId module, SourceId dependency, String message) {
+    super(module, message);
+    this.dependency = dependency;
+  }
+}
@@ -0,0 +1,22 @@
+package com.jetbrains.jetpad.vclang.module.caching;
+
+import com.jetbrains.jetpad.vclang.module.source.SourceId;
+
+/**
+ * Thrown when a lazily loaded definition cannot be filled in because its cache is corrupted.
+ * Since definitions are filled in when they are requested, this may happen at any point of typechecking.
+ * The cache of {@link #sourceId} is not loaded again until it is persisted.
+ */
+public class LazyCacheLoadingException extends RuntimeException {
+  public final SourceId sourceId;
+
+  public LazyCacheLoadingException(CacheLoadingException cause) {
+    super(cause.getMessage(), cause);
+    sourceId = cause.sourceId;
+  }
+
+  @Override
+  public String toString() {
+    return getCause().toString();
+  }
+}
@@ -7,9 +7,7 @@ import com.jetbrains.jetpad.vclang.term.DefinitionLocator;
 import com.jetbrains.jetpad.vclang.typechecking.TypecheckerState;
 
 import javax.annotation.Nonnull;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Set;
+import java.util.*;
 
 public class LocalizedTypecheckerState<SourceIdT extends SourceId> implements TypecheckerState {
   private final DefinitionLocator<SourceIdT> myDefLocator;
@@ -63,14 +61,74 @@ public class LocalizedTypecheckerState<SourceIdT extends SourceId> implements Ty
   public class LocalTypecheckerState {
     private boolean myIsOutOfSync = false;
     private final Map<Abstract.Definition, Definition> myDefinitions = new HashMap<>();
+    private final Map<Abstract.Definition, LazyDefinition> myLazyDefinitions = new HashMap<>();
+    private final Deque<LazyDefinition> myPendingDefinitions = new ArrayDeque<>();
+    private boolean myLoading = false;
+
+    private class LazyDefinition {
+      private final Collection<? extends Abstract.Definition> myDefinitions;
+      private final Runnable myLoader;
+
+      private LazyDefinition(Collection<? extends Abstract.Definition> definitions, Runnable loader) {
+        myDefinitions = definitions;
+        myLoader = loader;
+      }
+
+      void load() {
+        for (Abstract.Definition definition : myDefinitions) {
+          myLazyDefinitions.remove(definition);
+        }
+        myPendingDefinitions.add(this);
+        if (myLoading) {
+          return;
+        }
+
+        // Definitions requested by a loader are filled in after it finishes, so long chains of references do not exhaust the stack
+        myLoading = true;
+        try {
+          while (!myPendingDefinitions.isEmpty()) {
+            myPendingDefinitions.remove().myLoader.run();
+          }
+        } finally {
+          myPendingDefinitions.clear();
+          myLoading = false;
+        }
+      }
+    }
 
     public void record(Abstract.Definition def, Definition res) {
+      myLazyDefinitions.remove(def);
       if (myDefinitions.put(def, res) != res) {
         myIsOutOfSync = true;
       }
     }
 
+    /**
+     * Postpones filling in of already recorded definitions until one of them is requested for the first time.
+     *
+     * @param defs    definitions that are filled in by {@code loader}.
+     * @param loader  fills in {@code defs}; it can request other definitions, but it is not invoked recursively.
+     *                Definitions requested by a loader may be returned before they are filled in;
+     *                all of them are filled in before the outermost request returns.
+     */
+    public void recordLazily(Collection<? extends Abstract.Definition> defs, Runnable loader) {
+      LazyDefinition lazyDefinition = new LazyDefinition(defs, loader);
+      for (Abstract.Definition def : defs) {
+        myLazyDefinitions.put(def, lazyDefinition);
+      }
+    }
+
+    /**
+     * Fills in all definitions that were recorded lazily.
+     */
+    public void loadLazyDefinitions() {
+      while (!myLazyDefinitions.isEmpty()) {
+        myLazyDefinitions.values().iterator().next().load();
+      }
+    }
+
     public void reset(Abstract.Definition def) {
+      myLazyDefinitions.remove(def);
       if (myDefinitions.remove(def) != null) {
         myIsOutOfSync = true;
       }
@@ -78,9 +136,20 @@ public class LocalizedTypecheckerState<SourceIdT extends SourceId> implements Ty
 
     public Definition getTypechecked(Abstract.Definition def) {
       assert def != null;
+      LazyDefinition lazyDefinition = myLazyDefinitions.get(def);
+      if (lazyDefinition != null) {
+        lazyDefinition.load();
+      }
       return myDefinitions.get(def);
     }
 
+    /**
+     * @return true if {@code def} is recorded in this state; in contrast to {@link #getTypechecked}, it is not filled in.
+     */
+    public boolean isRecorded(Abstract.Definition def) {
+      return myDefinitions.containsKey(def);
+    }
+
     public Set<Abstract.Definition> getTypecheckedDefinitions() {
       return myDefinitions.keySet();
     }
@@ -15,6 +15,7 @@ import com.jetbrains.jetpad.vclang.core.expr.type.TypeExpression;
 import com.jetbrains.jetpad.vclang.core.sort.Level;
 import com.jetbrains.jetpad.vclang.core.sort.Sort;
 
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -92,12 +93,16 @@ class DefinitionDeserialization {
     if (var == null && constant == -10) {
       return Level.INFINITY;
     } else {
-      return new Level((LevelVariable) var, constant, proto.getMaxConstant());
+      return ExpressionInterner.intern(new Level((LevelVariable) var, constant, proto.getMaxConstant()));
     }
   }
 
   Sort readSort(LevelProtos.Sort proto) throws DeserializationError {
-    return new Sort(readLevel(proto.getPLevel()), readLevel(proto.getHLevel()));
+    return readSort(proto.getPLevel(), proto.getHLevel());
+  }
+
+  private Sort readSort(LevelProtos.Level pLevel, LevelProtos.Level hLevel) throws DeserializationError {
+    return ExpressionInterner.intern(new Sort(readLevel(pLevel), readLevel(hLevel)));
   }
 
 
@@ -201,6 +206,8 @@ class DefinitionDeserialization {
         return readCase(proto.getCase());
       case FIELD_CALL:
         return readFieldCall(proto.getFieldCall());
+      case INTEGER:
+        return readInteger(proto.getInteger());
       default:
         throw new DeserializationError("Unknown Expression kind: " + proto.getKindCase());
     }
@@ -220,16 +227,27 @@ class DefinitionDeserialization {
   }
 
   private FunCallExpression readFunCall(ExpressionProtos.Expression.FunCall proto) throws DeserializationError {
-    return new FunCallExpression(myCalltargetProvider.getCalltarget(proto.getFunRef(), FunctionDefinition.class), new Sort(readLevel(proto.getPLevel()), readLevel(proto.getHLevel())), readExprList(proto.getArgumentList()));
+    return new FunCallExpression(myCalltargetProvider.getCalltarget(proto.getFunRef(), FunctionDefinition.class), readSort(proto.getPLevel(), proto.getHLevel()), readExprList(proto.getArgumentList()));
   }
 
   private ConCallExpression readConCall(ExpressionProtos.Expression.ConCall proto) throws DeserializationError {
-    return new ConCallExpression(myCalltargetProvider.getCalltarget(proto.getConstructorRef(), Constructor.class), new Sort(readLevel(proto.getPLevel()), readLevel(proto.getHLevel())),
-        readExprList(proto.getDatatypeArgumentList()), readExprList(proto.getArgumentList()));
+    return ExpressionInterner.intern(new ConCallExpression(myCalltargetProvider.getCalltarget(proto.getConstructorRef(), Constructor.class), readSort(proto.getPLevel(), proto.getHLevel()),
+        readExprList(proto.getDatatypeArgumentList()), readExprList(proto.getArgumentList())));
+  }
+
+  private IntegerExpression readInteger(ExpressionProtos.Expression.Integer proto) throws DeserializationError {
+    if (proto.getValue().isEmpty()) {
+      throw new DeserializationError("Empty integer literal");
+    }
+    BigInteger integer = new BigInteger(proto.getValue().toByteArray());
+    if (integer.signum() < 0) {
+      throw new DeserializationError("Negative integer literal");
+    }
+    return new IntegerExpression(integer);
   }
 
   private DataCallExpression readDataCall(ExpressionProtos.Expression.DataCall proto) throws DeserializationError {
-    return new DataCallExpression(myCalltargetProvider.getCalltarget(proto.getDataRef(), DataDefinition.class), new Sort(readLevel(proto.getPLevel()), readLevel(proto.getHLevel())), readExprList(proto.getArgumentList()));
+    return ExpressionInterner.intern(new DataCallExpression(myCalltargetProvider.getCalltarget(proto.getDataRef(), DataDefinition.class), readSort(proto.getPLevel(), proto.getHLevel()), readExprList(proto.getArgumentList())));
   }
 
   private ClassCallExpression readClassCall(ExpressionProtos.Expression.ClassCall proto) throws DeserializationError {
@@ -237,7 +255,7 @@ class DefinitionDeserialization {
     for (Map.Entry<Integer, ExpressionProtos.Expression> entry : proto.getFieldSetMap().entrySet()) {
       fieldSet.put(myCalltargetProvider.getCalltarget(entry.getKey(), ClassField.class), readExpr(entry.getValue()));
     }
-    return new ClassCallExpression(myCalltargetProvider.getCalltarget(proto.getClassRef(), ClassDefinition.class), new Sort(readLevel(proto.getPLevel()), readLevel(proto.getHLevel())), fieldSet, readSort(proto.getSort()));
+    return new ClassCallExpression(myCalltargetProvider.getCalltarget(proto.getClassRef(), ClassDefinition.class), readSort(proto.getPLevel(), proto.getHLevel()), fieldSet, readSort(proto.getSort()));
   }
 
   private ReferenceExpression readReference(ExpressionProtos.Expression.Reference proto) throws DeserializationError {
@@ -253,7 +271,7 @@ class DefinitionDeserialization {
   }
 
   private UniverseExpression readUniverse(ExpressionProtos.Expression.Universe proto) throws DeserializationError {
-    return new UniverseExpression(readSort(proto.getSort()));
+    return ExpressionInterner.intern(new UniverseExpression(readSort(proto.getSort())));
   }
 
   private ErrorExpression readError(ExpressionProtos.Expression.Error proto) throws DeserializationError {
@@ -271,7 +289,7 @@ class DefinitionDeserialization {
   }
 
   private SigmaExpression readSigma(ExpressionProtos.Expression.Sigma proto) throws DeserializationError {
-    return new SigmaExpression(new Sort(readLevel(proto.getPLevel()), readLevel(proto.getHLevel())), readParameters(proto.getParamList()));
+    return new SigmaExpression(readSort(proto.getPLevel(), proto.getHLevel()), readParameters(proto.getParamList()));
   }
 
   private Expression readProj(ExpressionProtos.Expression.Proj proto) throws DeserializationError {
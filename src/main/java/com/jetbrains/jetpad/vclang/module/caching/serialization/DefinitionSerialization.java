@@ -1,5 +1,6 @@
 package com.jetbrains.jetpad.vclang.module.caching.serialization;
 
+import com.google.protobuf.ByteString;
 import com.jetbrains.jetpad.vclang.core.context.binding.Binding;
 import com.jetbrains.jetpad.vclang.core.context.binding.LevelVariable;
 import com.jetbrains.jetpad.vclang.core.context.param.DependentLink;
@@ -216,6 +217,13 @@ class DefinitionSerialization {
       return ExpressionProtos.Expression.newBuilder().setConCall(builder).build();
     }
 
+    @Override
+    public ExpressionProtos.Expression visitInteger(IntegerExpression expr, Void params) {
+      ExpressionProtos.Expression.Integer.Builder builder = ExpressionProtos.Expression.Integer.newBuilder();
+      builder.setValue(ByteString.copyFrom(expr.getInteger().toByteArray()));
+      return ExpressionProtos.Expression.newBuilder().setInteger(builder).build();
+    }
+
     @Override
     public ExpressionProtos.Expression visitDataCall(DataCallExpression expr, Void params) {
       ExpressionProtos.Expression.DataCall.Builder builder = ExpressionProtos.Expression.DataCall.newBuilder();
@@ -33,98 +33,115 @@ public class DefinitionStateDeserialization<SourceIdT extends SourceId> {
 
   public void readStubs(ModuleProtos.Module.DefinitionState in, LocalizedTypecheckerState<SourceIdT>.LocalTypecheckerState state) throws DeserializationError {
     for (Map.Entry<String, DefinitionProtos.Definition> entry : in.getDefinitionMap().entrySet()) {
-      String id = entry.getKey();
-      DefinitionProtos.Definition defProto = entry.getValue();
-      final Definition def;
-      final Abstract.Definition abstractDef = getAbstract(id);
-      switch (defProto.getDefinitionDataCase()) {
-        case CLASS:
-          ClassDefinition classDef = new ClassDefinition((Abstract.ClassDefinition) abstractDef);
-          for (String constructorId : defProto.getClass_().getFieldsMap().keySet()) {
-            Abstract.ClassField absField = (Abstract.ClassField) getAbstract(constructorId);
-            ClassField res = new ClassField(absField, classDef);
-            res.setStatus(Definition.TypeCheckingStatus.NO_ERRORS);
-            state.record(absField, res);
-          }
-          def = classDef;
-          break;
-        case DATA:
-          DataDefinition dataDef = new DataDefinition((Abstract.DataDefinition) abstractDef);
-          for (String constructorId : defProto.getData().getConstructorsMap().keySet()) {
-            Abstract.Constructor absConstructor = (Abstract.Constructor) getAbstract(constructorId);
-            Constructor res = new Constructor(absConstructor, dataDef);
-            res.setStatus(Definition.TypeCheckingStatus.NO_ERRORS);
-            state.record(absConstructor, res);
-          }
-          def = dataDef;
-          break;
-        case FUNCTION:
-          def = new FunctionDefinition(getAbstract(id));
-          break;
-        default:
-          throw new DeserializationError("Unknown Definition kind: " + defProto.getDefinitionDataCase());
-      }
+      readStub(entry.getKey(), entry.getValue(), state);
+    }
+  }
 
-      switch (defProto.getStatus()) {
-        case HEADER_HAS_ERRORS:
-          def.setStatus(Definition.TypeCheckingStatus.HEADER_HAS_ERRORS);
-          break;
-        case BODY_HAS_ERRORS:
-          def.setStatus(Definition.TypeCheckingStatus.BODY_HAS_ERRORS);
-          break;
-        case HEADER_NEEDS_TYPE_CHECKING:
-          def.setStatus(Definition.TypeCheckingStatus.HEADER_NEEDS_TYPE_CHECKING);
-          break;
-        case BODY_NEEDS_TYPE_CHECKING:
-          def.setStatus(Definition.TypeCheckingStatus.BODY_NEEDS_TYPE_CHECKING);
-          break;
-        case HAS_ERRORS:
-          def.setStatus(Definition.TypeCheckingStatus.HAS_ERRORS);
-          break;
-        case NO_ERRORS:
-          def.setStatus(Definition.TypeCheckingStatus.NO_ERRORS);
-          break;
-        default:
-          throw new IllegalStateException("Unknown typechecking state");
-      }
+  /**
+   * Records an empty definition with the status of {@code defProto} together with its constructors or fields.
+   * Only the status, the kind and the ids of members of {@code defProto} are used, see {@link DefinitionStateSerialization#writeStub}.
+   *
+   * @return abstract definitions of the definition itself and of its members.
+   */
+  public List<Abstract.Definition> readStub(String id, DefinitionProtos.Definition defProto, LocalizedTypecheckerState<SourceIdT>.LocalTypecheckerState state) throws DeserializationError {
+    List<Abstract.Definition> result = new ArrayList<>();
+    final Definition def;
+    final Abstract.Definition abstractDef = getAbstract(id);
+    switch (defProto.getDefinitionDataCase()) {
+      case CLASS:
+        ClassDefinition classDef = new ClassDefinition((Abstract.ClassDefinition) abstractDef);
+        for (String constructorId : defProto.getClass_().getFieldsMap().keySet()) {
+          Abstract.ClassField absField = (Abstract.ClassField) getAbstract(constructorId);
+          ClassField res = new ClassField(absField, classDef);
+          res.setStatus(Definition.TypeCheckingStatus.NO_ERRORS);
+          state.record(absField, res);
+          result.add(absField);
+        }
+        def = classDef;
+        break;
+      case DATA:
+        DataDefinition dataDef = new DataDefinition((Abstract.DataDefinition) abstractDef);
+        for (String constructorId : defProto.getData().getConstructorsMap().keySet()) {
+          Abstract.Constructor absConstructor = (Abstract.Constructor) getAbstract(constructorId);
+          Constructor res = new Constructor(absConstructor, dataDef);
+          res.setStatus(Definition.TypeCheckingStatus.NO_ERRORS);
+          state.record(absConstructor, res);
+          result.add(absConstructor);
+        }
+        def = dataDef;
+        break;
+      case FUNCTION:
+        def = new FunctionDefinition(getAbstract(id));
+        break;
+      default:
+        throw new DeserializationError("Unknown Definition kind: " + defProto.getDefinitionDataCase());
+    }
 
-      state.record(abstractDef, def);
+    switch (defProto.getStatus()) {
+      case HEADER_HAS_ERRORS:
+        def.setStatus(Definition.TypeCheckingStatus.HEADER_HAS_ERRORS);
+        break;
+      case BODY_HAS_ERRORS:
+        def.setStatus(Definition.TypeCheckingStatus.BODY_HAS_ERRORS);
+        break;
+      case HEADER_NEEDS_TYPE_CHECKING:
+        def.setStatus(Definition.TypeCheckingStatus.HEADER_NEEDS_TYPE_CHECKING);
+        break;
+      case BODY_NEEDS_TYPE_CHECKING:
+        def.setStatus(Definition.TypeCheckingStatus.BODY_NEEDS_TYPE_CHECKING);
+        break;
+      case HAS_ERRORS:
+        def.setStatus(Definition.TypeCheckingStatus.HAS_ERRORS);
+        break;
+      case NO_ERRORS:
+        def.setStatus(Definition.TypeCheckingStatus.NO_ERRORS);
+        break;
+      default:
+        throw new IllegalStateException("Unknown typechecking state");
     }
+
+    state.record(abstractDef, def);
+    result.add(abstractDef);
+    return result;
   }
 
   public void fillInDefinitions(ModuleProtos.Module.DefinitionState in, LocalizedTypecheckerState<SourceIdT>.LocalTypecheckerState state, CalltargetProvider calltargetProvider) throws DeserializationError {
     CalltargetProvider.Typed typedCalltargetProvider = new CalltargetProvider.Typed(calltargetProvider);
 
     for (Map.Entry<String, DefinitionProtos.Definition> entry : in.getDefinitionMap().entrySet()) {
-      String id = entry.getKey();
-      DefinitionProtos.Definition defProto = entry.getValue();
+      fillInDefinition(entry.getKey(), entry.getValue(), state, typedCalltargetProvider);
+    }
+  }
 
-      final Definition def = getTypechecked(state, id);
+  /**
+   * Fills in the stub of a single definition that was recorded by {@link #readStub}.
+   */
+  public void fillInDefinition(String id, DefinitionProtos.Definition defProto, LocalizedTypecheckerState<SourceIdT>.LocalTypecheckerState state, CalltargetProvider.Typed typedCalltargetProvider) throws DeserializationError {
+    final Definition def = getTypechecked(state, id);
 
-      final DefinitionDeserialization defDeserializer = new DefinitionDeserialization(typedCalltargetProvider);
+    final DefinitionDeserialization defDeserializer = new DefinitionDeserialization(typedCalltargetProvider);
 
-      readClassifyingFields(def, typedCalltargetProvider, defProto.getClassifyingFieldList());
+    readClassifyingFields(def, typedCalltargetProvider, defProto.getClassifyingFieldList());
 
-      if (defProto.getThisClassRef() != 0) {
-        def.setThisClass(typedCalltargetProvider.getCalltarget(defProto.getThisClassRef(), ClassDefinition.class));
-      }
+    if (defProto.getThisClassRef() != 0) {
+      def.setThisClass(typedCalltargetProvider.getCalltarget(defProto.getThisClassRef(), ClassDefinition.class));
+    }
 
-      switch (defProto.getDefinitionDataCase()) {
-        case CLASS:
-          ClassDefinition classDef = (ClassDefinition) def;
-          fillInClassDefinition(defDeserializer, typedCalltargetProvider, defProto.getClass_(), classDef, state);
-          break;
-        case DATA:
-          DataDefinition dataDef = (DataDefinition) def;
-          fillInDataDefinition(defDeserializer, typedCalltargetProvider, defProto.getData(), dataDef, state);
-          break;
-        case FUNCTION:
-          FunctionDefinition functionDef = (FunctionDefinition) def;
-          fillInFunctionDefinition(defDeserializer, defProto.getFunction(), functionDef);
-          break;
-        default:
-          throw new DeserializationError("Unknown Definition kind: " + defProto.getDefinitionDataCase());
-      }
+    switch (defProto.getDefinitionDataCase()) {
+      case CLASS:
+        ClassDefinition classDef = (ClassDefinition) def;
+        fillInClassDefinition(defDeserializer, typedCalltargetProvider, defProto.getClass_(), classDef, state);
+        break;
+      case DATA:
+        DataDefinition dataDef = (DataDefinition) def;
+        fillInDataDefinition(defDeserializer, typedCalltargetProvider, defProto.getData(), dataDef, state);
+        break;
+      case FUNCTION:
+        FunctionDefinition functionDef = (FunctionDefinition) def;
+        fillInFunctionDefinition(defDeserializer, defProto.getFunction(), functionDef);
+        break;
+      default:
+        throw new DeserializationError("Unknown Definition kind: " + defProto.getDefinitionDataCase());
     }
   }
 
@@ -248,6 +265,7 @@ public class DefinitionStateDeserialization<SourceIdT extends SourceId> {
   private void fillInFunctionDefinition(DefinitionDeserialization defDeserializer, DefinitionProtos.Definition.FunctionData functionProto, FunctionDefinition functionDef) throws DeserializationError {
     functionDef.setParameters(defDeserializer.readParameters(functionProto.getParamList()));
     functionDef.setResultType(defDeserializer.readExpr(functionProto.getType()));
+    functionDef.setHeight(functionProto.getHeight());
     if (functionProto.hasBody()) {
       functionDef.setBody(readBody(defDeserializer, functionProto.getBody()));
     }
@@ -44,6 +44,45 @@ public class DefinitionStateSerialization {
     return builder.build();
   }
 
+  /**
+   * Serializes everything that other definitions can depend on.
+   * Since functions are unfolded and conditions of constructors are evaluated during typechecking,
+   * this is the whole definition including bodies of functions and clauses and conditions of constructors.
+   */
+  public DefinitionProtos.Definition writeInterface(Definition definition, LocalizedTypecheckerState<? extends SourceId>.LocalTypecheckerState state) {
+    return writeDefinition(definition, state);
+  }
+
+  /**
+   * @return a copy of {@code definition} that contains only what is needed to read its stub.
+   */
+  public static DefinitionProtos.Definition writeStub(DefinitionProtos.Definition definition) {
+    DefinitionProtos.Definition.Builder out = DefinitionProtos.Definition.newBuilder();
+    out.setStatus(definition.getStatus());
+    switch (definition.getDefinitionDataCase()) {
+      case CLASS:
+        DefinitionProtos.Definition.ClassData.Builder classBuilder = DefinitionProtos.Definition.ClassData.newBuilder();
+        for (String fieldId : definition.getClass_().getFieldsMap().keySet()) {
+          classBuilder.putFields(fieldId, DefinitionProtos.Definition.ClassData.Field.getDefaultInstance());
+        }
+        out.setClass_(classBuilder);
+        break;
+      case DATA:
+        DefinitionProtos.Definition.DataData.Builder dataBuilder = DefinitionProtos.Definition.DataData.newBuilder();
+        for (String constructorId : definition.getData().getConstructorsMap().keySet()) {
+          dataBuilder.putConstructors(constructorId, DefinitionProtos.Definition.DataData.Constructor.getDefaultInstance());
+        }
+        out.setData(dataBuilder);
+        break;
+      case FUNCTION:
+        out.setFunction(DefinitionProtos.Definition.FunctionData.getDefaultInstance());
+        break;
+      default:
+        throw new IllegalStateException();
+    }
+    return out.build();
+  }
+
   private boolean canBeReferred(Definition typechecked) {
     return typechecked.status().headerIsOK();
   }
@@ -197,6 +236,7 @@ public class DefinitionStateSerialization {
 
     builder.addAllParam(defSerializer.writeParameters(definition.getParameters()));
     builder.setType(defSerializer.writeExpr(definition.getResultType()));
+    builder.setHeight(definition.getHeight());
     if (definition.getBody() != null) {
       builder.setBody(writeBody(defSerializer, definition.getBody()));
     }
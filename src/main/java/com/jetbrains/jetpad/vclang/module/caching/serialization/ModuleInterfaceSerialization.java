@@ -0,0 +1,209 @@
+package com.jetbrains.jetpad.vclang.module.caching.serialization;
+
+import com.jetbrains.jetpad.vclang.module.caching.PersistenceProvider;
+import com.jetbrains.jetpad.vclang.module.source.SourceId;
+import com.jetbrains.jetpad.vclang.term.Abstract;
+import com.jetbrains.jetpad.vclang.term.AbstractDefinitionVisitor;
+import com.jetbrains.jetpad.vclang.term.DefinitionLocator;
+
+import java.util.List;
+
+/**
+ * Writes names, precedences and ids of definitions of a module together with references that name resolution of other modules needs:
+ * super classes, underlying classes and fields of class views and class views and classifying definitions of instances.
+ * Parameters are written without their types except for class views of instance parameters, which resolution of instances needs.
+ */
+public class ModuleInterfaceSerialization<SourceIdT extends SourceId> implements AbstractDefinitionVisitor<Void, ModuleProtos.ModuleInterface.Stub.Builder> {
+  private final SourceIdT mySourceId;
+  private final PersistenceProvider<SourceIdT> myPersistenceProvider;
+  private final DefinitionLocator<SourceIdT> myDefLocator;
+  private boolean myComplete = true;
+
+  public ModuleInterfaceSerialization(SourceIdT sourceId, PersistenceProvider<SourceIdT> persistenceProvider, DefinitionLocator<SourceIdT> defLocator) {
+    mySourceId = sourceId;
+    myPersistenceProvider = persistenceProvider;
+    myDefLocator = defLocator;
+  }
+
+  /**
+   * @return the interface of {@code module} or null if some of its definitions or references cannot be identified.
+   */
+  public ModuleProtos.ModuleInterface writeInterface(Abstract.ClassDefinition module) {
+    ModuleProtos.ModuleInterface.Builder out = ModuleProtos.ModuleInterface.newBuilder();
+    for (Abstract.Definition definition : module.getGlobalDefinitions()) {
+      ModuleProtos.ModuleInterface.Stub.Builder stub = definition.accept(this, null);
+      if (stub != null) {
+        out.addDefinition(stub);
+      }
+    }
+    return myComplete ? out.build() : null;
+  }
+
+  private ModuleProtos.ModuleInterface.Stub.Builder writeStub(Abstract.Definition definition, ModuleProtos.ModuleInterface.Stub.Kind kind) {
+    ModuleProtos.ModuleInterface.Stub.Builder out = ModuleProtos.ModuleInterface.Stub.newBuilder();
+    String id = myPersistenceProvider.getIdFor(definition);
+    if (id == null) {
+      myComplete = false;
+    } else {
+      out.setId(id);
+    }
+    out.setKind(kind);
+    out.setName(definition.getName());
+
+    Abstract.Precedence precedence = definition.getPrecedence();
+    switch (precedence.associativity) {
+      case LEFT_ASSOC:
+        out.setAssociativity(ModuleProtos.ModuleInterface.Stub.Associativity.LEFT_ASSOC);
+        break;
+      case RIGHT_ASSOC:
+        out.setAssociativity(ModuleProtos.ModuleInterface.Stub.Associativity.RIGHT_ASSOC);
+        break;
+      case NON_ASSOC:
+        out.setAssociativity(ModuleProtos.ModuleInterface.Stub.Associativity.NON_ASSOC);
+        break;
+    }
+    out.setPriority(precedence.priority);
+    return out;
+  }
+
+  private ModuleProtos.ModuleInterface.Reference writeReference(Abstract.ReferableSourceNode referable) {
+    ModuleProtos.ModuleInterface.Reference.Builder out = ModuleProtos.ModuleInterface.Reference.newBuilder();
+    SourceIdT sourceId = referable instanceof Abstract.Definition ? myDefLocator.sourceOf((Abstract.Definition) referable) : null;
+    String id = sourceId != null ? myPersistenceProvider.getIdFor((Abstract.Definition) referable) : null;
+    if (id == null) {
+      myComplete = false;
+      return out.build();
+    }
+
+    if (!sourceId.equals(mySourceId)) {
+      out.addAllModulePath(sourceId.getModulePath().toList());
+    }
+    out.setDefinitionId(id);
+    out.setName(referable.getName());
+    return out.build();
+  }
+
+  private void writeParameters(List<? extends Abstract.Parameter> parameters, ModuleProtos.ModuleInterface.Stub.Builder out) {
+    for (Abstract.Parameter parameter : parameters) {
+      ModuleProtos.ModuleInterface.Parameter.Builder paramOut = ModuleProtos.ModuleInterface.Parameter.newBuilder();
+      paramOut.setExplicit(parameter.getExplicit());
+      if (parameter instanceof Abstract.NameParameter) {
+        paramOut.addName(nameOf(((Abstract.NameParameter) parameter).getName()));
+      } else if (parameter instanceof Abstract.TypeParameter) {
+        paramOut.setHasType(true);
+        if (parameter instanceof Abstract.TelescopeParameter) {
+          for (Abstract.ReferableSourceNode referable : ((Abstract.TelescopeParameter) parameter).getReferableList()) {
+            paramOut.addName(nameOf(referable.getName()));
+          }
+        }
+        Abstract.ClassView classView = Abstract.getUnderlyingClassView(((Abstract.TypeParameter) parameter).getType());
+        if (classView != null) {
+          paramOut.setClassView(writeReference(classView));
+        }
+      }
+      out.addParameter(paramOut);
+    }
+  }
+
+  private static String nameOf(String name) {
+    return name == null ? "" : name;
+  }
+
+  private void writeGlobalDefinitions(Abstract.DefinitionCollection definitions, ModuleProtos.ModuleInterface.Stub.Builder out) {
+    for (Abstract.Definition definition : definitions.getGlobalDefinitions()) {
+      ModuleProtos.ModuleInterface.Stub.Builder stub = definition.accept(this, null);
+      if (stub != null) {
+        out.addGlobalDefinition(stub);
+      }
+    }
+  }
+
+  @Override
+  public ModuleProtos.ModuleInterface.Stub.Builder visitFunction(Abstract.FunctionDefinition def, Void params) {
+    ModuleProtos.ModuleInterface.Stub.Builder out = writeStub(def, ModuleProtos.ModuleInterface.Stub.Kind.FUNCTION);
+    writeParameters(def.getParameters(), out);
+    writeGlobalDefinitions(def, out);
+    return out;
+  }
+
+  @Override
+  public ModuleProtos.ModuleInterface.Stub.Builder visitClassField(Abstract.ClassField def, Void params) {
+    return writeStub(def, ModuleProtos.ModuleInterface.Stub.Kind.FIELD);
+  }
+
+  @Override
+  public ModuleProtos.ModuleInterface.Stub.Builder visitData(Abstract.DataDefinition def, Void params) {
+    ModuleProtos.ModuleInterface.Stub.Builder out = writeStub(def, ModuleProtos.ModuleInterface.Stub.Kind.DATA);
+    writeParameters(def.getParameters(), out);
+    for (Abstract.ConstructorClause clause : def.getConstructorClauses()) {
+      for (Abstract.Constructor constructor : clause.getConstructors()) {
+        out.addConstructor(visitConstructor(constructor, null));
+      }
+    }
+    return out;
+  }
+
+  @Override
+  public ModuleProtos.ModuleInterface.Stub.Builder visitConstructor(Abstract.Constructor def, Void params) {
+    ModuleProtos.ModuleInterface.Stub.Builder out = writeStub(def, ModuleProtos.ModuleInterface.Stub.Kind.CONSTRUCTOR);
+    writeParameters(def.getParameters(), out);
+    return out;
+  }
+
+  @Override
+  public ModuleProtos.ModuleInterface.Stub.Builder visitClass(Abstract.ClassDefinition def, Void params) {
+    ModuleProtos.ModuleInterface.Stub.Builder out = writeStub(def, ModuleProtos.ModuleInterface.Stub.Kind.CLASS);
+    for (Abstract.SuperClass superClass : def.getSuperClasses()) {
+      Abstract.ClassDefinition superDef = Abstract.getUnderlyingClassDef(superClass.getSuperClass());
+      if (superDef != null) {
+        out.addSuperClass(writeReference(superDef));
+      }
+    }
+    writeGlobalDefinitions(def, out);
+    for (Abstract.Definition definition : def.getInstanceDefinitions()) {
+      ModuleProtos.ModuleInterface.Stub.Builder stub = definition.accept(this, null);
+      if (stub != null) {
+        out.addInstanceDefinition(stub);
+      }
+    }
+    for (Abstract.ClassField field : def.getFields()) {
+      out.addField(visitClassField(field, null));
+    }
+    return out;
+  }
+
+  @Override
+  public ModuleProtos.ModuleInterface.Stub.Builder visitImplement(Abstract.Implementation def, Void params) {
+    return null;
+  }
+
+  @Override
+  public ModuleProtos.ModuleInterface.Stub.Builder visitClassView(Abstract.ClassView def, Void params) {
+    ModuleProtos.ModuleInterface.Stub.Builder out = writeStub(def, ModuleProtos.ModuleInterface.Stub.Kind.CLASS_VIEW);
+    out.setUnderlying(writeReference(def.getUnderlyingClassReference().getReferent()));
+    out.setUnderlyingName(def.getClassifyingFieldName());
+    out.setClassifying(writeReference(def.getClassifyingField()));
+    for (Abstract.ClassViewField field : def.getFields()) {
+      out.addField(visitClassViewField(field, null));
+    }
+    return out;
+  }
+
+  @Override
+  public ModuleProtos.ModuleInterface.Stub.Builder visitClassViewField(Abstract.ClassViewField def, Void params) {
+    ModuleProtos.ModuleInterface.Stub.Builder out = writeStub(def, ModuleProtos.ModuleInterface.Stub.Kind.CLASS_VIEW_FIELD);
+    out.setUnderlying(writeReference(def.getUnderlyingField()));
+    out.setUnderlyingName(def.getUnderlyingFieldName());
+    return out;
+  }
+
+  @Override
+  public ModuleProtos.ModuleInterface.Stub.Builder visitClassViewInstance(Abstract.ClassViewInstance def, Void params) {
+    ModuleProtos.ModuleInterface.Stub.Builder out = writeStub(def, ModuleProtos.ModuleInterface.Stub.Kind.INSTANCE);
+    out.setIsDefault(def.isDefault());
+    writeParameters(def.getParameters(), out);
+    out.setUnderlying(writeReference(def.getClassView().getReferent()));
+    out.setClassifying(writeReference(def.getClassifyingDefinition()));
+    return out;
+  }
+}
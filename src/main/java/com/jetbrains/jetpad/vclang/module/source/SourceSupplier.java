@@ -16,10 +16,20 @@ public interface SourceSupplier<SourceIdT extends SourceId> {
   class LoadResult {
     public final @Nonnull Abstract.ClassDefinition definition;
     public final long version;
+    /**
+     * True if the module consists of stubs that were built from the interface of its cache instead of parsing it.
+     * Such a module can be used only if its cache is loaded.
+     */
+    public final boolean fromInterface;
 
-    public LoadResult(@Nonnull Abstract.ClassDefinition definition, long version) {
+    public LoadResult(@Nonnull Abstract.ClassDefinition definition, long version, boolean fromInterface) {
       this.definition = definition;
       this.version = version;
+      this.fromInterface = fromInterface;
+    }
+
+    public LoadResult(@Nonnull Abstract.ClassDefinition definition, long version) {
+      this(definition, version, false);
     }
 
     public static LoadResult make(@Nullable Abstract.ClassDefinition result, long version) {
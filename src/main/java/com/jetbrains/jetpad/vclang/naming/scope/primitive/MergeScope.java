@@ -1,28 +1,69 @@
 package com.jetbrains.jetpad.vclang.naming.scope.primitive;
 
 import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Multimap;
 import com.jetbrains.jetpad.vclang.error.GeneralError;
 import com.jetbrains.jetpad.vclang.naming.error.DuplicateDefinitionError;
 import com.jetbrains.jetpad.vclang.term.Abstract;
 import com.jetbrains.jetpad.vclang.util.Pair;
 
-import java.util.Collection;
-import java.util.Set;
+import java.util.*;
 import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
 
+/**
+ * A union of scopes; a name that is defined in several of them is ambiguous.
+ *
+ * Names of the merged scopes are indexed in a hash table when the scope is queried for the first time,
+ * so merged scopes should not change after that.
+ * A merge of a single scope delegates to it.
+ */
 public class MergeScope implements MergingScope {
-  private final Iterable<Scope> myScopes;
+  private final List<Scope> myScopes;
+  private volatile Map<String, Object> myTable;
 
   public MergeScope(Iterable<Scope> scopes) {
-    myScopes = scopes;
+    myScopes = new ArrayList<>();
+    Iterables.addAll(myScopes, scopes);
+  }
+
+  /**
+   * @return a table that maps a name either to a definition or to an {@link InvalidScopeException} if the name is ambiguous.
+   */
+  private Map<String, Object> getTable() {
+    Map<String, Object> table = myTable;
+    if (table == null) {
+      table = new HashMap<>();
+      for (Scope scope : myScopes) {
+        for (String name : scope.getNames()) {
+          Object ref;
+          try {
+            ref = scope.resolveName(name);
+          } catch (InvalidScopeException e) {
+            ref = e;
+          }
+          if (ref == null) {
+            continue;
+          }
+
+          Object prev = table.putIfAbsent(name, ref);
+          if (prev instanceof Abstract.Definition) {
+            table.put(name, ref instanceof Abstract.Definition ? createException((Abstract.Definition) prev, (Abstract.Definition) ref) : ref);
+          }
+        }
+      }
+      myTable = table;
+    }
+    return table;
   }
 
   @Override
   public Set<String> getNames() {
-    return StreamSupport.stream(myScopes.spliterator(), false).flatMap(s -> s.getNames().stream()).collect(Collectors.toSet());
+    if (myScopes.size() == 1) {
+      return myScopes.get(0).getNames();
+    }
+    return Collections.unmodifiableSet(getTable().keySet());
   }
 
   private InvalidScopeException createException(final Abstract.Definition ref1, final Abstract.Definition ref2) {
@@ -37,18 +78,15 @@ public class MergeScope implements MergingScope {
 
   @Override
   public Abstract.Definition resolveName(String name) {
-    Abstract.Definition resolved = null;
-    for (Scope scope : myScopes) {
-      Abstract.Definition ref = scope.resolveName(name);
-      if (ref != null) {
-        if (resolved == null) {
-          resolved = ref;
-        } else {
-          throw createException(resolved, ref);
-        }
-      }
+    if (myScopes.size() == 1) {
+      return myScopes.get(0).resolveName(name);
+    }
+
+    Object ref = getTable().get(name);
+    if (ref instanceof InvalidScopeException) {
+      throw (InvalidScopeException) ref;
     }
-    return resolved;
+    return (Abstract.Definition) ref;
   }
 
   @Override
@@ -90,6 +128,6 @@ public class MergeScope implements MergingScope {
 
   @Override
   public Collection<? extends Abstract.ClassViewInstance> getInstances() {
-    return StreamSupport.stream(myScopes.spliterator(), false).flatMap(s -> s.getInstances().stream()).collect(Collectors.toSet());
+    return myScopes.stream().flatMap(s -> s.getInstances().stream()).collect(Collectors.toSet());
   }
 }
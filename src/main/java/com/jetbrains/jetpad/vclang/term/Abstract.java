@@ -7,6 +7,7 @@ import com.jetbrains.jetpad.vclang.module.ModulePath;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.math.BigInteger;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
@@ -231,7 +232,7 @@ public final class Abstract {
   }
 
   public interface NumericLiteral extends Expression {
-    int getNumber();
+    BigInteger getNumber();
   }
 
   // Level expressions
@@ -41,6 +41,7 @@ import com.jetbrains.jetpad.vclang.typechecking.typeclass.pool.CompositeInstance
 import com.jetbrains.jetpad.vclang.typechecking.typeclass.pool.GlobalInstancePool;
 import com.jetbrains.jetpad.vclang.typechecking.typeclass.pool.LocalInstancePool;
 import com.jetbrains.jetpad.vclang.typechecking.visitor.CheckTypeVisitor;
+import com.jetbrains.jetpad.vclang.typechecking.visitor.DefinitionHeightVisitor;
 import com.jetbrains.jetpad.vclang.util.Pair;
 
 import java.util.*;
@@ -332,6 +333,7 @@ class DefinitionTypechecking {
       }
     }
 
+    typedDef.setHeight(DefinitionHeightVisitor.getHeight(typedDef));
     typedDef.setStatus(typedDef.getResultType() == null ? Definition.TypeCheckingStatus.HEADER_HAS_ERRORS : typedDef.getBody() == null ? Definition.TypeCheckingStatus.BODY_HAS_ERRORS : Definition.TypeCheckingStatus.NO_ERRORS);
     return clauses;
   }
@@ -819,6 +821,7 @@ class DefinitionTypechecking {
 
     typedDef.setResultType(term);
     typedDef.setBody(new LeafElimTree(list.getFirst(), new NewExpression(term)));
+    typedDef.setHeight(DefinitionHeightVisitor.getHeight(typedDef));
     typedDef.setStatus(Definition.TypeCheckingStatus.NO_ERRORS);
   }
 }
@@ -0,0 +1,228 @@
+package com.jetbrains.jetpad.vclang.typechecking;
+
+import com.jetbrains.jetpad.vclang.core.expr.visitor.NormalizeVisitor;
+import com.jetbrains.jetpad.vclang.core.expr.visitor.WhnfCache;
+import com.jetbrains.jetpad.vclang.error.ErrorReporter;
+import com.jetbrains.jetpad.vclang.error.GeneralError;
+import com.jetbrains.jetpad.vclang.term.Abstract;
+import com.jetbrains.jetpad.vclang.typechecking.order.DependencyListener;
+import com.jetbrains.jetpad.vclang.typechecking.order.SCC;
+import com.jetbrains.jetpad.vclang.typechecking.order.SCCGraph;
+import com.jetbrains.jetpad.vclang.util.ComputationInterruptedException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Typechecks the nodes of an {@link SCCGraph} on a {@link ForkJoinPool}.
+ * A node is submitted as soon as all of its dependencies are typechecked.
+ *
+ * Everything that is reported while a node is typechecked is buffered and passed to the underlying reporters and listener
+ * in the order of the nodes in the graph, that is, in the same order as in the sequential mode.
+ * The underlying reporters are never called concurrently.
+ *
+ * If a cache of weak head normal forms is given, every worker thread gets its own cache for the duration of a run.
+ */
+class ParallelTypechecking {
+  private final ForkJoinPool myPool;
+  private final NormalizeVisitor.Engine myEngine;
+  private final WhnfCache myWhnfCache;
+  private final ErrorReporter myErrorReporter;
+  private final TypecheckedReporter myTypecheckedReporter;
+  private final DependencyListener myDependencyListener;
+  private final ThreadLocal<List<Runnable>> myOutput = new ThreadLocal<>();
+
+  final ErrorReporter errorReporter = new ErrorReporter() {
+    @Override
+    public void report(GeneralError error) {
+      output(() -> myErrorReporter.report(error));
+    }
+  };
+
+  final TypecheckedReporter typecheckedReporter = new TypecheckedReporter() {
+    @Override
+    public void typecheckingSucceeded(Abstract.Definition definition) {
+      output(() -> myTypecheckedReporter.typecheckingSucceeded(definition));
+    }
+
+    @Override
+    public void typecheckingFailed(Abstract.Definition definition) {
+      output(() -> myTypecheckedReporter.typecheckingFailed(definition));
+    }
+  };
+
+  final DependencyListener dependencyListener = new DependencyListener() {
+    @Override
+    public void sccFound(SCC scc) {
+      output(() -> myDependencyListener.sccFound(scc));
+    }
+
+    @Override
+    public void unitFound(TypecheckingUnit unit, Recursion recursion) {
+      output(() -> myDependencyListener.unitFound(unit, recursion));
+    }
+
+    @Override
+    public boolean needsOrdering(Abstract.Definition definition) {
+      synchronized (ParallelTypechecking.this) {
+        return myDependencyListener.needsOrdering(definition);
+      }
+    }
+
+    @Override
+    public void alreadyTypechecked(Abstract.Definition definition) {
+      output(() -> myDependencyListener.alreadyTypechecked(definition));
+    }
+
+    @Override
+    public void dependsOn(Typecheckable unit, Abstract.Definition def) {
+      output(() -> myDependencyListener.dependsOn(unit, def));
+    }
+  };
+
+  ParallelTypechecking(ForkJoinPool pool, NormalizeVisitor.Engine engine, WhnfCache whnfCache, ErrorReporter errorReporter, TypecheckedReporter typecheckedReporter, DependencyListener dependencyListener) {
+    myPool = pool;
+    myEngine = engine;
+    myWhnfCache = whnfCache;
+    myErrorReporter = errorReporter;
+    myTypecheckedReporter = typecheckedReporter;
+    myDependencyListener = dependencyListener;
+  }
+
+  private void output(Runnable action) {
+    List<Runnable> output = myOutput.get();
+    if (output != null) {
+      output.add(action);
+    } else {
+      synchronized (this) {
+        action.run();
+      }
+    }
+  }
+
+  void typecheck(List<SCCGraph.Node> nodes, DependencyListener listener) {
+    new Run(nodes, listener).run();
+  }
+
+  private class Run {
+    private final List<SCCGraph.Node> myNodes;
+    private final DependencyListener myListener;
+    private final List<List<SCCGraph.Node>> myDependents;
+    private final AtomicInteger[] myPending;
+    private final List<List<Runnable>> myOutputs;
+    private int myNextToFlush = 0;
+    private final CountDownLatch myLatch;
+    private final AtomicReference<Throwable> myFailure = new AtomicReference<>();
+    private final Map<Thread, WhnfCache> myWhnfCaches = new ConcurrentHashMap<>();
+
+    Run(List<SCCGraph.Node> nodes, DependencyListener listener) {
+      myNodes = nodes;
+      myListener = listener;
+      myDependents = new ArrayList<>(nodes.size());
+      myPending = new AtomicInteger[nodes.size()];
+      myOutputs = new ArrayList<>(nodes.size());
+      for (SCCGraph.Node node : nodes) {
+        myDependents.add(new ArrayList<>());
+        myPending[node.getIndex()] = new AtomicInteger(node.getDependencies().size());
+        myOutputs.add(null);
+      }
+      for (SCCGraph.Node node : nodes) {
+        for (SCCGraph.Node dependency : node.getDependencies()) {
+          myDependents.get(dependency.getIndex()).add(node);
+        }
+      }
+      myLatch = new CountDownLatch(nodes.size());
+    }
+
+    void run() {
+      // Roots must be collected before anything is submitted since pending counters are decremented concurrently
+      List<SCCGraph.Node> roots = new ArrayList<>();
+      for (SCCGraph.Node node : myNodes) {
+        if (node.getDependencies().isEmpty()) {
+          roots.add(node);
+        }
+      }
+      for (SCCGraph.Node root : roots) {
+        submit(root);
+      }
+
+      try {
+        myLatch.await();
+      } catch (InterruptedException e) {
+        myFailure.compareAndSet(null, new ComputationInterruptedException());
+        Thread.currentThread().interrupt();
+      }
+
+      if (myWhnfCache != null) {
+        for (WhnfCache cache : myWhnfCaches.values()) {
+          myWhnfCache.addStatistics(cache);
+        }
+      }
+
+      Throwable failure = myFailure.get();
+      if (failure instanceof RuntimeException) {
+        throw (RuntimeException) failure;
+      }
+      if (failure instanceof Error) {
+        throw (Error) failure;
+      }
+      if (failure != null) {
+        throw new IllegalStateException(failure);
+      }
+    }
+
+    private void submit(SCCGraph.Node node) {
+      myPool.execute(() -> typecheck(node));
+    }
+
+    private void typecheck(SCCGraph.Node node) {
+      List<Runnable> output = new ArrayList<>();
+      try {
+        if (myFailure.get() == null) {
+          myOutput.set(output);
+          NormalizeVisitor.Engine previousEngine = NormalizeVisitor.setCurrentEngine(myEngine);
+          WhnfCache whnfCache = myWhnfCache != null ? myWhnfCaches.computeIfAbsent(Thread.currentThread(), thread -> new WhnfCache()) : null;
+          WhnfCache previousCache = whnfCache != null ? WhnfCache.setCurrent(whnfCache) : null;
+          try {
+            node.notify(myListener);
+          } finally {
+            if (whnfCache != null) {
+              WhnfCache.setCurrent(previousCache);
+            }
+            NormalizeVisitor.setCurrentEngine(previousEngine);
+            myOutput.remove();
+          }
+        }
+        flush(node, output);
+      } catch (Throwable e) {
+        myFailure.compareAndSet(null, e);
+      } finally {
+        for (SCCGraph.Node dependent : myDependents.get(node.getIndex())) {
+          if (myPending[dependent.getIndex()].decrementAndGet() == 0) {
+            submit(dependent);
+          }
+        }
+        myLatch.countDown();
+      }
+    }
+
+    private void flush(SCCGraph.Node node, List<Runnable> output) {
+      synchronized (ParallelTypechecking.this) {
+        myOutputs.set(node.getIndex(), output);
+        while (myNextToFlush < myOutputs.size() && myOutputs.get(myNextToFlush) != null) {
+          List<Runnable> actions = myOutputs.get(myNextToFlush);
+          myOutputs.set(myNextToFlush++, null);
+          for (Runnable action : actions) {
+            action.run();
+          }
+        }
+      }
+    }
+  }
+}
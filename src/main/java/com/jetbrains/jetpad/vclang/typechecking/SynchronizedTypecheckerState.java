@@ -0,0 +1,32 @@
+package com.jetbrains.jetpad.vclang.typechecking;
+
+import com.jetbrains.jetpad.vclang.core.definition.Definition;
+import com.jetbrains.jetpad.vclang.term.Abstract;
+
+public class SynchronizedTypecheckerState implements TypecheckerState {
+  private final TypecheckerState myState;
+
+  public SynchronizedTypecheckerState(TypecheckerState state) {
+    myState = state;
+  }
+
+  @Override
+  public synchronized void record(Abstract.Definition def, Definition res) {
+    myState.record(def, res);
+  }
+
+  @Override
+  public synchronized Definition getTypechecked(Abstract.Definition def) {
+    return myState.getTypechecked(def);
+  }
+
+  @Override
+  public synchronized void reset(Abstract.Definition def) {
+    myState.reset(def);
+  }
+
+  @Override
+  public synchronized void reset() {
+    myState.reset();
+  }
+}
@@ -1,5 +1,7 @@
 package com.jetbrains.jetpad.vclang.typechecking;
 
+import com.jetbrains.jetpad.vclang.core.expr.visitor.NormalizeVisitor;
+import com.jetbrains.jetpad.vclang.core.expr.visitor.WhnfCache;
 import com.jetbrains.jetpad.vclang.error.ErrorReporter;
 import com.jetbrains.jetpad.vclang.frontend.resolving.OpenCommand;
 import com.jetbrains.jetpad.vclang.naming.namespace.DynamicNamespaceProvider;
@@ -12,6 +14,7 @@ import com.jetbrains.jetpad.vclang.term.Abstract;
 import com.jetbrains.jetpad.vclang.term.BaseAbstractVisitor;
 import com.jetbrains.jetpad.vclang.typechecking.order.DependencyListener;
 import com.jetbrains.jetpad.vclang.typechecking.order.Ordering;
+import com.jetbrains.jetpad.vclang.typechecking.order.SCCGraph;
 import com.jetbrains.jetpad.vclang.typechecking.typeclass.DefinitionResolveInstanceVisitor;
 import com.jetbrains.jetpad.vclang.typechecking.typeclass.provider.ClassViewInstanceProvider;
 import com.jetbrains.jetpad.vclang.typechecking.typeclass.provider.SimpleClassViewInstanceProvider;
@@ -19,27 +22,87 @@ import com.jetbrains.jetpad.vclang.typechecking.typeclass.scope.InstanceScopePro
 import com.jetbrains.jetpad.vclang.util.ComputationInterruptedException;
 
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 public class Typechecking {
   private final InstanceScopeProvider myScopeProvider;
   private final TypecheckingDependencyListener myDependencyListener;
+  private final TypecheckerState myState;
   private final StaticNamespaceProvider myStaticNsProvider;
+  private final DynamicNamespaceProvider myDynamicNsProvider;
   private final Function<Abstract.Definition, Iterable<OpenCommand>> myOpens;
   private final ErrorReporter myErrorReporter;
+  private final TypecheckedReporter myTypecheckedReporter;
+  private final DependencyListener myExternalDependencyListener;
+  private WhnfCache myWhnfCache;
+  private NormalizeVisitor.Engine myEngine = NormalizeVisitor.Engine.SUBSTITUTION;
+  private ForkJoinPool myPool;
 
   public Typechecking(TypecheckerState state, StaticNamespaceProvider staticNsProvider, DynamicNamespaceProvider dynamicNsProvider, Function<Abstract.Definition, Iterable<OpenCommand>> opens, ErrorReporter errorReporter, TypecheckedReporter typecheckedReporter, DependencyListener dependencyListener) {
     myOpens = opens;
     myDependencyListener = new TypecheckingDependencyListener(state, staticNsProvider, dynamicNsProvider, errorReporter, typecheckedReporter, dependencyListener);
     myScopeProvider = new InstanceScopeProvider(errorReporter);
+    myState = state;
     myStaticNsProvider = staticNsProvider;
+    myDynamicNsProvider = dynamicNsProvider;
     myErrorReporter = errorReporter;
+    myTypecheckedReporter = typecheckedReporter;
+    myExternalDependencyListener = dependencyListener;
+  }
+
+  /**
+   * Sets a cache of weak head normal forms that is used during typechecking.
+   * The same cache can be passed to several instances to share it between typechecking sessions.
+   * In the parallel mode, every worker thread uses its own cache during a run, since caches are not thread-safe;
+   * their statistics are added to this cache when the run is finished.
+   */
+  public void setWhnfCache(WhnfCache whnfCache) {
+    myWhnfCache = whnfCache;
+  }
+
+  public WhnfCache getWhnfCache() {
+    return myWhnfCache;
+  }
+
+  /**
+   * Sets the engine that computes weak head normal forms during typechecking.
+   * It is installed only on threads that typecheck definitions of this instance and only while they do so.
+   */
+  public void setNormalizationEngine(NormalizeVisitor.Engine engine) {
+    myEngine = engine;
+  }
+
+  public NormalizeVisitor.Engine getNormalizationEngine() {
+    return myEngine;
+  }
+
+  /**
+   * Enables the parallel mode.
+   * In this mode, the whole graph of strongly connected components is built first,
+   * and then every component is typechecked on {@code pool} as soon as its dependencies are typechecked.
+   * Errors and typechecking results are reported in the same order as in the sequential mode.
+   *
+   * @param pool a pool for typechecking or null to typecheck sequentially.
+   */
+  public void setForkJoinPool(ForkJoinPool pool) {
+    myPool = pool;
+  }
+
+  public ForkJoinPool getForkJoinPool() {
+    return myPool;
   }
 
   public void typecheckDefinitions(final Collection<? extends Abstract.Definition> definitions) {
     SimpleClassViewInstanceProvider instanceProvider = new SimpleClassViewInstanceProvider();
+    // Scopes of enclosing definitions are shared by their children, so they are created once per call;
+    // they are not kept between calls, since namespaces change when modules are reloaded
+    Map<Abstract.Definition, Scope> scopes = new HashMap<>();
     for (Abstract.Definition definition : definitions) {
-      definition.accept(new DefinitionResolveInstanceVisitor(myScopeProvider, instanceProvider, myOpens, myErrorReporter), getDefinitionScope(definition));
+      definition.accept(new DefinitionResolveInstanceVisitor(myScopeProvider, instanceProvider, myOpens, myErrorReporter), getDefinitionScope(definition, scopes));
     }
     typecheckDefinitions(definitions, instanceProvider);
   }
@@ -59,33 +122,70 @@ public class Typechecking {
       classDef.accept(new DefinitionResolveInstanceVisitor(myScopeProvider, instanceProvider, myOpens, myErrorReporter), new EmptyScope());
     }
 
-    myDependencyListener.setInstanceProvider(instanceProvider);
-    Ordering ordering = new Ordering(instanceProvider, myDependencyListener, false);
-
-    try {
+    order(ordering -> {
       for (Abstract.ClassDefinition classDef : classDefs) {
         new OrderDefinitionVisitor(ordering).orderDefinition(classDef);
       }
-    } catch (ComputationInterruptedException ignored) { }
+    }, instanceProvider);
   }
 
-
   private void typecheckDefinitions(final Collection<? extends Abstract.Definition> definitions, ClassViewInstanceProvider instanceProvider) {
+    order(ordering -> {
+      for (Abstract.Definition definition : definitions) {
+        ordering.doOrder(definition);
+      }
+    }, instanceProvider);
+  }
+
+  private void order(Consumer<Ordering> orderer, ClassViewInstanceProvider instanceProvider) {
+    if (myPool != null) {
+      orderInParallel(orderer, instanceProvider);
+      return;
+    }
+
     myDependencyListener.setInstanceProvider(instanceProvider);
     Ordering ordering = new Ordering(instanceProvider, myDependencyListener, false);
 
+    WhnfCache previousCache = myWhnfCache != null ? WhnfCache.setCurrent(myWhnfCache) : null;
+    NormalizeVisitor.Engine previousEngine = NormalizeVisitor.setCurrentEngine(myEngine);
     try {
-      for (Abstract.Definition definition : definitions) {
-        ordering.doOrder(definition);
+      orderer.accept(ordering);
+    } catch (ComputationInterruptedException ignored) {
+    } finally {
+      NormalizeVisitor.setCurrentEngine(previousEngine);
+      if (myWhnfCache != null) {
+        WhnfCache.setCurrent(previousCache);
       }
-    } catch (ComputationInterruptedException ignored) { }
+    }
   }
 
-  private Scope getDefinitionScope(Abstract.Definition definition) {
+  private void orderInParallel(Consumer<Ordering> orderer, ClassViewInstanceProvider instanceProvider) {
+    ParallelTypechecking parallelTypechecking = new ParallelTypechecking(myPool, myEngine, myWhnfCache, myErrorReporter, myTypecheckedReporter, myExternalDependencyListener);
+    TypecheckingDependencyListener listener = new TypecheckingDependencyListener(new SynchronizedTypecheckerState(myState), myStaticNsProvider, myDynamicNsProvider, parallelTypechecking.errorReporter, parallelTypechecking.typecheckedReporter, parallelTypechecking.dependencyListener);
+    listener.setInstanceProvider(instanceProvider);
+
+    SCCGraph graph = new SCCGraph(listener);
+    try {
+      orderer.accept(new Ordering(instanceProvider, graph, false));
+      parallelTypechecking.typecheck(graph.getNodes(), listener);
+    } catch (ComputationInterruptedException ignored) {
+    }
+  }
+
+  private Scope getDefinitionScope(Abstract.Definition definition, Map<Abstract.Definition, Scope> scopes) {
     if (definition == null) {
       return new EmptyScope();
     }
 
+    Scope scope = scopes.get(definition);
+    if (scope == null) {
+      scope = createDefinitionScope(definition, scopes);
+      scopes.put(definition, scope);
+    }
+    return scope;
+  }
+
+  private Scope createDefinitionScope(Abstract.Definition definition, Map<Abstract.Definition, Scope> scopes) {
     return definition.accept(new BaseAbstractVisitor<Scope, Scope>() {
       @Override
       public Scope visitFunction(Abstract.FunctionDefinition def, Scope parentScope) {
@@ -101,7 +201,7 @@ public class Typechecking {
       public Scope visitClass(Abstract.ClassDefinition def, Scope parentScope) {
         return new StaticClassScope(parentScope, new NamespaceScope(myStaticNsProvider.forDefinition(def)));
       }
-    }, getDefinitionScope(definition.getParentDefinition()));
+    }, getDefinitionScope(definition.getParentDefinition(), scopes));
   }
 
   private static class OrderDefinitionVisitor extends BaseAbstractVisitor<Void, Void> {
@@ -4,6 +4,9 @@ import com.jetbrains.jetpad.vclang.core.definition.DataDefinition;
 import com.jetbrains.jetpad.vclang.core.definition.Definition;
 import com.jetbrains.jetpad.vclang.core.definition.FunctionDefinition;
 import com.jetbrains.jetpad.vclang.core.elimtree.Clause;
+import com.jetbrains.jetpad.vclang.core.expr.visitor.ReductionBudget;
+import com.jetbrains.jetpad.vclang.core.expr.visitor.ReductionLimitExceededException;
+import com.jetbrains.jetpad.vclang.core.expr.visitor.TypeCache;
 import com.jetbrains.jetpad.vclang.error.CompositeErrorReporter;
 import com.jetbrains.jetpad.vclang.error.CountingErrorReporter;
 import com.jetbrains.jetpad.vclang.error.ErrorReporter;
@@ -13,6 +16,7 @@ import com.jetbrains.jetpad.vclang.term.Abstract;
 import com.jetbrains.jetpad.vclang.typechecking.error.LocalErrorReporter;
 import com.jetbrains.jetpad.vclang.typechecking.error.local.CycleError;
 import com.jetbrains.jetpad.vclang.typechecking.error.local.ProxyErrorReporter;
+import com.jetbrains.jetpad.vclang.typechecking.error.local.ReductionLimitError;
 import com.jetbrains.jetpad.vclang.typechecking.error.local.TerminationCheckError;
 import com.jetbrains.jetpad.vclang.typechecking.order.DependencyListener;
 import com.jetbrains.jetpad.vclang.typechecking.order.Ordering;
@@ -25,6 +29,8 @@ import com.jetbrains.jetpad.vclang.typechecking.visitor.CheckTypeVisitor;
 import com.jetbrains.jetpad.vclang.util.Pair;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 class TypecheckingDependencyListener implements DependencyListener {
   private final TypecheckerState myState;
@@ -33,9 +39,9 @@ class TypecheckingDependencyListener implements DependencyListener {
   private final ErrorReporter myErrorReporter;
   private final TypecheckedReporter myTypecheckedReporter;
   private final DependencyListener myDependencyListener;
-  private final Map<Abstract.Definition, Suspension> mySuspensions = new HashMap<>();
+  private final Map<Abstract.Definition, Suspension> mySuspensions;
   private ClassViewInstanceProvider myInstanceProvider;
-  private boolean myTypecheckingHeaders = false;
+  private final boolean myTypecheckingHeaders;
 
   private static class Suspension {
     public final CheckTypeVisitor visitor;
@@ -54,6 +60,20 @@ class TypecheckingDependencyListener implements DependencyListener {
     myErrorReporter = errorReporter;
     myTypecheckedReporter = typecheckedReporter;
     myDependencyListener = dependencyListener;
+    mySuspensions = new ConcurrentHashMap<>();
+    myTypecheckingHeaders = false;
+  }
+
+  private TypecheckingDependencyListener(TypecheckingDependencyListener listener, boolean typecheckingHeaders) {
+    myState = listener.myState;
+    myStaticNsProvider = listener.myStaticNsProvider;
+    myDynamicNsProvider = listener.myDynamicNsProvider;
+    myErrorReporter = listener.myErrorReporter;
+    myTypecheckedReporter = listener.myTypecheckedReporter;
+    myDependencyListener = listener.myDependencyListener;
+    mySuspensions = listener.mySuspensions;
+    myInstanceProvider = listener.myInstanceProvider;
+    myTypecheckingHeaders = typecheckingHeaders;
   }
 
   void setInstanceProvider(ClassViewInstanceProvider instanceProvider) {
@@ -149,7 +169,12 @@ class TypecheckingDependencyListener implements DependencyListener {
       CountingErrorReporter countingErrorReporter = new CountingErrorReporter();
       LocalErrorReporter localErrorReporter = new ProxyErrorReporter(unit.getDefinition(), new CompositeErrorReporter(myErrorReporter, countingErrorReporter));
       CheckTypeVisitor visitor = new CheckTypeVisitor(myState, myStaticNsProvider, myDynamicNsProvider, new LinkedHashMap<>(), localErrorReporter, null);
-      Definition typechecked = DefinitionTypechecking.typecheckHeader(visitor, new GlobalInstancePool(myState, myInstanceProvider), unit.getDefinition(), unit.getEnclosingClass());
+      Abstract.Definition definition = unit.getDefinition();
+      Abstract.ClassDefinition enclosingClass = unit.getEnclosingClass();
+      Definition typechecked = typecheckDefinition(definition, localErrorReporter, () -> DefinitionTypechecking.typecheckHeader(visitor, new GlobalInstancePool(myState, myInstanceProvider), definition, enclosingClass));
+      if (typechecked == null) {
+        typechecked = myState.getTypechecked(definition);
+      }
       if (typechecked.status() == Definition.TypeCheckingStatus.BODY_NEEDS_TYPE_CHECKING) {
         mySuspensions.put(unit.getDefinition(), new Suspension(visitor, countingErrorReporter));
       }
@@ -169,8 +194,7 @@ class TypecheckingDependencyListener implements DependencyListener {
       return false;
     }
 
-    myTypecheckingHeaders = true;
-    Ordering ordering = new Ordering(myInstanceProvider, this, true);
+    Ordering ordering = new Ordering(myInstanceProvider, new TypecheckingDependencyListener(this, true), true);
     boolean ok = true;
     for (TypecheckingUnit unit1 : scc.getUnits()) {
       if (unit1.isHeader()) {
@@ -181,7 +205,6 @@ class TypecheckingDependencyListener implements DependencyListener {
         }
       }
     }
-    myTypecheckingHeaders = false;
     return ok;
   }
 
@@ -201,7 +224,7 @@ class TypecheckingDependencyListener implements DependencyListener {
       Suspension suspension = mySuspensions.remove(definition);
       if (headersAreOK && suspension != null) {
         Definition def = myState.getTypechecked(definition);
-        List<Clause> clauses = DefinitionTypechecking.typecheckBody(def, suspension.visitor, dataDefinitions);
+        List<Clause> clauses = typecheckDefinition(definition, suspension.visitor.getErrorReporter(), () -> DefinitionTypechecking.typecheckBody(def, suspension.visitor, dataDefinitions));
         if (clauses != null) {
           functionDefinitions.add((FunctionDefinition) def);
           clausesMap.put((FunctionDefinition) def, clauses);
@@ -246,19 +269,25 @@ class TypecheckingDependencyListener implements DependencyListener {
     CountingErrorReporter countingErrorReporter = new CountingErrorReporter();
     CompositeErrorReporter compositeErrorReporter = new CompositeErrorReporter(myErrorReporter, countingErrorReporter);
     LocalErrorReporter localErrorReporter = new ProxyErrorReporter(unit.getDefinition(), compositeErrorReporter);
-    List<Clause> clauses = DefinitionTypechecking.typecheck(myState, new GlobalInstancePool(myState, myInstanceProvider), myStaticNsProvider, myDynamicNsProvider, unit, recursive, localErrorReporter);
-    Definition typechecked = myState.getTypechecked(unit.getDefinition());
-
-    if (recursive && clauses != null) {
-      DefinitionCallGraph definitionCallGraph = new DefinitionCallGraph();
-      definitionCallGraph.add((FunctionDefinition) typechecked, clauses, Collections.singleton(typechecked));
-      DefinitionCallGraph callCategory = new DefinitionCallGraph(definitionCallGraph);
-      if (!callCategory.checkTermination()) {
-        typechecked.setStatus(Definition.TypeCheckingStatus.BODY_HAS_ERRORS);
-        for (Map.Entry<Definition, Set<RecursiveBehavior<Definition>>> entry : callCategory.myErrorInfo.entrySet()) {
-          compositeErrorReporter.report(new TerminationCheckError(entry.getKey(), entry.getValue()));
+    Definition typechecked = typecheckDefinition(unit.getDefinition(), localErrorReporter, () -> {
+      List<Clause> clauses = DefinitionTypechecking.typecheck(myState, new GlobalInstancePool(myState, myInstanceProvider), myStaticNsProvider, myDynamicNsProvider, unit, recursive, localErrorReporter);
+      Definition def = myState.getTypechecked(unit.getDefinition());
+
+      if (recursive && clauses != null) {
+        DefinitionCallGraph definitionCallGraph = new DefinitionCallGraph();
+        definitionCallGraph.add((FunctionDefinition) def, clauses, Collections.singleton(def));
+        DefinitionCallGraph callCategory = new DefinitionCallGraph(definitionCallGraph);
+        if (!callCategory.checkTermination()) {
+          def.setStatus(Definition.TypeCheckingStatus.BODY_HAS_ERRORS);
+          for (Map.Entry<Definition, Set<RecursiveBehavior<Definition>>> entry : callCategory.myErrorInfo.entrySet()) {
+            compositeErrorReporter.report(new TerminationCheckError(entry.getKey(), entry.getValue()));
+          }
         }
       }
+      return def;
+    });
+    if (typechecked == null) {
+      typechecked = myState.getTypechecked(unit.getDefinition());
     }
 
     if (countingErrorReporter.getErrorsNumber() == 0) {
@@ -270,4 +299,39 @@ class TypecheckingDependencyListener implements DependencyListener {
       myTypecheckedReporter.typecheckingFailed(unit.getDefinition());
     }
   }
+
+  /**
+   * Runs {@code typechecking} of a part of {@code definition} with its own profiler frame, reduction budget and type cache,
+   * and restores the previous ones afterwards.
+   * Returns {@code null} if normalization exhausted the budget.
+   */
+  private <T> T typecheckDefinition(Abstract.Definition definition, LocalErrorReporter errorReporter, Supplier<T> typechecking) {
+    TypecheckingProfiler.Frame frame = TypecheckingProfiler.start(definition);
+    ReductionBudget previousBudget = ReductionBudget.setCurrent(ReductionBudget.create());
+    TypeCache previousTypeCache = TypeCache.setCurrent(new TypeCache());
+    try {
+      return typechecking.get();
+    } catch (ReductionLimitExceededException e) {
+      reductionLimitExceeded(definition, e, errorReporter);
+      return null;
+    } finally {
+      ReductionBudget.setCurrent(previousBudget);
+      TypeCache.setCurrent(previousTypeCache);
+      TypecheckingProfiler.finish(frame);
+    }
+  }
+
+  /**
+   * Reports that normalization exhausted its budget while {@code definition} was typechecked
+   * and marks the part of the definition that was being typechecked as erroneous.
+   */
+  private void reductionLimitExceeded(Abstract.Definition definition, ReductionLimitExceededException exception, LocalErrorReporter errorReporter) {
+    errorReporter.report(new ReductionLimitError(exception, definition));
+    Definition typechecked = myState.getTypechecked(definition);
+    if (typechecked == null) {
+      typechecked = Definition.newDefinition(definition);
+      myState.record(definition, typechecked);
+    }
+    typechecked.setStatus(typechecked.status().headerIsOK() ? Definition.TypeCheckingStatus.BODY_HAS_ERRORS : Definition.TypeCheckingStatus.HEADER_HAS_ERRORS);
+  }
 }
@@ -0,0 +1,359 @@
+package com.jetbrains.jetpad.vclang.typechecking;
+
+import com.jetbrains.jetpad.vclang.term.Abstract;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Collects wall time, allocated memory and counts of events of typechecking per definition.
+ * Profiling is disabled by default; if it is disabled, every method does nothing.
+ *
+ * Time and memory are measured in frames that are started by {@link #start} and finished by {@link #finish}.
+ * Frames of a thread form a stack; the self time of a frame does not include the time of frames nested in it.
+ * Events are counted by {@link #count} and attributed to the innermost frame of the current thread.
+ * Allocated memory is measured only if the JVM supports it, otherwise it is 0.
+ */
+public class TypecheckingProfiler {
+  public enum Counter { REDUCTIONS, ENVIRONMENT_NORMALIZATIONS, COMPARISONS, EQUATIONS, CACHE_HITS, CACHE_MISSES, INSTANCE_LOOKUPS, INSTANCE_HITS, INSTANCE_NEGATIVE_HITS, STRUCTURAL_MATCHES, CONVERSION_CACHE_HITS, CONVERSION_CACHE_MISSES, WHNF_CACHE_HITS, WHNF_CACHE_MISSES }
+
+  private static final Counter[] COUNTERS = Counter.values();
+
+  private static volatile TypecheckingProfiler ourInstance = null;
+
+  private final com.sun.management.ThreadMXBean myThreadBean;
+  private final ThreadLocal<Frame> myCurrentFrame = new ThreadLocal<>();
+  private final Map<Abstract.Definition, Stats> myDefinitions = new ConcurrentHashMap<>();
+  private final Map<List<Abstract.Definition>, Stats> myStacks = new ConcurrentHashMap<>();
+  private final LongAdder[] myCounters = new LongAdder[COUNTERS.length];
+  private final long myStartTime = System.nanoTime();
+
+  private TypecheckingProfiler() {
+    ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (bean instanceof com.sun.management.ThreadMXBean && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+      myThreadBean = (com.sun.management.ThreadMXBean) bean;
+      myThreadBean.setThreadAllocatedMemoryEnabled(true);
+    } else {
+      myThreadBean = null;
+    }
+    for (int i = 0; i < myCounters.length; i++) {
+      myCounters[i] = new LongAdder();
+    }
+  }
+
+  /**
+   * Enables or disables profiling.
+   * If it is enabled again, collected results are discarded.
+   */
+  public static void setEnabled(boolean enabled) {
+    ourInstance = enabled ? new TypecheckingProfiler() : null;
+  }
+
+  public static boolean isEnabled() {
+    return ourInstance != null;
+  }
+
+  /**
+   * @return the profiler that collects results or null if profiling is disabled.
+   */
+  public static TypecheckingProfiler getInstance() {
+    return ourInstance;
+  }
+
+  public static void count(Counter counter) {
+    TypecheckingProfiler profiler = ourInstance;
+    if (profiler != null) {
+      profiler.myCounters[counter.ordinal()].increment();
+      Frame frame = profiler.myCurrentFrame.get();
+      if (frame != null) {
+        frame.myCounters[counter.ordinal()]++;
+      }
+    }
+  }
+
+  /**
+   * Starts a frame of {@code definition} on the current thread.
+   *
+   * @return the started frame or null if profiling is disabled.
+   */
+  public static Frame start(Abstract.Definition definition) {
+    TypecheckingProfiler profiler = ourInstance;
+    return profiler == null ? null : profiler.startFrame(definition);
+  }
+
+  /**
+   * Finishes a frame returned by {@link #start}; does nothing if it is null.
+   */
+  public static void finish(Frame frame) {
+    if (frame != null) {
+      frame.myProfiler.finishFrame(frame);
+    }
+  }
+
+  public static final class Frame {
+    private final TypecheckingProfiler myProfiler;
+    private final Frame myParent;
+    private final Abstract.Definition myDefinition;
+    private final long myStartTime;
+    private final long myStartAllocated;
+    private long myNestedTime;
+    private long myNestedAllocated;
+    private final long[] myCounters = new long[COUNTERS.length];
+
+    private Frame(TypecheckingProfiler profiler, Frame parent, Abstract.Definition definition, long startTime, long startAllocated) {
+      myProfiler = profiler;
+      myParent = parent;
+      myDefinition = definition;
+      myStartTime = startTime;
+      myStartAllocated = startAllocated;
+    }
+  }
+
+  public static class Stats {
+    private long myFrames;
+    private long myTime;
+    private long mySelfTime;
+    private long myAllocated;
+    private long mySelfAllocated;
+    private final long[] myCounters = new long[COUNTERS.length];
+
+    private synchronized void add(long time, long selfTime, long allocated, long selfAllocated, long[] counters) {
+      myFrames++;
+      myTime += time;
+      mySelfTime += selfTime;
+      myAllocated += allocated;
+      mySelfAllocated += selfAllocated;
+      for (int i = 0; i < counters.length; i++) {
+        myCounters[i] += counters[i];
+      }
+    }
+
+    private synchronized void add(Stats stats) {
+      myFrames += stats.myFrames;
+      myTime += stats.myTime;
+      mySelfTime += stats.mySelfTime;
+      myAllocated += stats.myAllocated;
+      mySelfAllocated += stats.mySelfAllocated;
+      for (int i = 0; i < myCounters.length; i++) {
+        myCounters[i] += stats.myCounters[i];
+      }
+    }
+
+    public synchronized long getFrames() {
+      return myFrames;
+    }
+
+    public synchronized long getTime() {
+      return myTime;
+    }
+
+    public synchronized long getSelfTime() {
+      return mySelfTime;
+    }
+
+    public synchronized long getAllocated() {
+      return myAllocated;
+    }
+
+    public synchronized long getSelfAllocated() {
+      return mySelfAllocated;
+    }
+
+    public synchronized long getCount(Counter counter) {
+      return myCounters[counter.ordinal()];
+    }
+  }
+
+  private long allocatedBytes() {
+    return myThreadBean == null ? 0 : myThreadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  private Frame startFrame(Abstract.Definition definition) {
+    Frame frame = new Frame(this, myCurrentFrame.get(), definition, System.nanoTime(), allocatedBytes());
+    myCurrentFrame.set(frame);
+    return frame;
+  }
+
+  private void finishFrame(Frame frame) {
+    long time = System.nanoTime() - frame.myStartTime;
+    long allocated = allocatedBytes() - frame.myStartAllocated;
+    myCurrentFrame.set(frame.myParent);
+    if (frame.myParent != null) {
+      frame.myParent.myNestedTime += time;
+      frame.myParent.myNestedAllocated += allocated;
+    }
+
+    long selfTime = time - frame.myNestedTime;
+    long selfAllocated = allocated - frame.myNestedAllocated;
+    myDefinitions.computeIfAbsent(frame.myDefinition, k -> new Stats()).add(time, selfTime, allocated, selfAllocated, frame.myCounters);
+
+    List<Abstract.Definition> stack = new ArrayList<>();
+    for (Frame f = frame; f != null; f = f.myParent) {
+      stack.add(f.myDefinition);
+    }
+    Collections.reverse(stack);
+    myStacks.computeIfAbsent(stack, k -> new Stats()).add(time, selfTime, allocated, selfAllocated, frame.myCounters);
+  }
+
+  public Map<Abstract.Definition, Stats> getDefinitionStats() {
+    return Collections.unmodifiableMap(myDefinitions);
+  }
+
+  /**
+   * @return the number of events of the given kind counted on all threads, both inside and outside of frames.
+   */
+  public long getCount(Counter counter) {
+    return myCounters[counter.ordinal()].sum();
+  }
+
+  /**
+   * Writes collected results as a JSON object.
+   * It contains overall counters, statistics of modules and definitions sorted by their self time,
+   * and a tree of frames that can be rendered by d3-flame-graph; its top level nodes are modules.
+   * Time is measured in nanoseconds.
+   */
+  public void writeReport(Appendable out, Function<Abstract.Definition, String> nameOf, Function<Abstract.Definition, String> moduleNameOf) throws IOException {
+    Function<Abstract.Definition, String> moduleOf = definition -> Objects.toString(moduleNameOf.apply(definition), "");
+    Map<String, Stats> modules = new TreeMap<>();
+    List<Map.Entry<Abstract.Definition, Stats>> definitions = new ArrayList<>(myDefinitions.entrySet());
+    definitions.sort((e1, e2) -> Long.compare(e2.getValue().getSelfTime(), e1.getValue().getSelfTime()));
+    for (Map.Entry<Abstract.Definition, Stats> entry : definitions) {
+      modules.computeIfAbsent(moduleOf.apply(entry.getKey()), k -> new Stats()).add(entry.getValue());
+    }
+
+    out.append("{\n  \"wall_time_ns\": ").append(Long.toString(System.nanoTime() - myStartTime));
+    out.append(",\n  \"counters\": {");
+    for (Counter counter : COUNTERS) {
+      out.append(counter.ordinal() == 0 ? "" : ", ").append(quote(counterName(counter))).append(": ").append(Long.toString(getCount(counter)));
+    }
+
+    out.append("},\n  \"modules\": [");
+    boolean first = true;
+    for (Map.Entry<String, Stats> entry : modules.entrySet()) {
+      out.append(first ? "\n    " : ",\n    ").append("{\"name\": ").append(quote(entry.getKey()));
+      // Frames of different modules may be nested, so only self time is summed
+      out.append(", \"time_ns\": ").append(Long.toString(entry.getValue().getSelfTime()));
+      out.append(", \"allocated_bytes\": ").append(Long.toString(entry.getValue().getSelfAllocated()));
+      writeCounters(out, entry.getValue());
+      out.append("}");
+      first = false;
+    }
+
+    out.append("\n  ],\n  \"definitions\": [");
+    first = true;
+    for (Map.Entry<Abstract.Definition, Stats> entry : definitions) {
+      Stats stats = entry.getValue();
+      out.append(first ? "\n    " : ",\n    ").append("{\"name\": ").append(quote(nameOf.apply(entry.getKey())));
+      out.append(", \"module\": ").append(quote(moduleOf.apply(entry.getKey())));
+      out.append(", \"frames\": ").append(Long.toString(stats.getFrames()));
+      out.append(", \"time_ns\": ").append(Long.toString(stats.getTime()));
+      out.append(", \"self_time_ns\": ").append(Long.toString(stats.getSelfTime()));
+      out.append(", \"allocated_bytes\": ").append(Long.toString(stats.getAllocated()));
+      out.append(", \"self_allocated_bytes\": ").append(Long.toString(stats.getSelfAllocated()));
+      writeCounters(out, stats);
+      out.append("}");
+      first = false;
+    }
+
+    FlameNode root = new FlameNode("typechecking");
+    for (Map.Entry<List<Abstract.Definition>, Stats> entry : myStacks.entrySet()) {
+      List<Abstract.Definition> stack = entry.getKey();
+      FlameNode node = root.child(moduleOf.apply(stack.get(0)));
+      for (Abstract.Definition definition : stack) {
+        node = node.child(nameOf.apply(definition));
+      }
+      node.mySelfValue += entry.getValue().getSelfTime();
+    }
+    out.append("\n  ],\n  \"flamegraph\": ");
+    root.computeValue();
+    root.write(out);
+    out.append("\n}\n");
+  }
+
+  private static void writeCounters(Appendable out, Stats stats) throws IOException {
+    for (Counter counter : COUNTERS) {
+      out.append(", ").append(quote(counterName(counter))).append(": ").append(Long.toString(stats.getCount(counter)));
+    }
+  }
+
+  private static String counterName(Counter counter) {
+    return counter.name().toLowerCase(Locale.ROOT);
+  }
+
+  private static class FlameNode {
+    private final String myName;
+    private final Map<String, FlameNode> myChildren = new LinkedHashMap<>();
+    private long mySelfValue;
+    private long myValue;
+
+    private FlameNode(String name) {
+      myName = name;
+    }
+
+    private FlameNode child(String name) {
+      return myChildren.computeIfAbsent(name, FlameNode::new);
+    }
+
+    private long computeValue() {
+      myValue = mySelfValue;
+      for (FlameNode child : myChildren.values()) {
+        myValue += child.computeValue();
+      }
+      return myValue;
+    }
+
+    private void write(Appendable out) throws IOException {
+      out.append("{\"name\": ").append(quote(myName)).append(", \"value\": ").append(Long.toString(myValue)).append(", \"children\": [");
+      boolean first = true;
+      for (FlameNode child : myChildren.values()) {
+        if (!first) {
+          out.append(", ");
+        }
+        child.write(out);
+        first = false;
+      }
+      out.append("]}");
+    }
+  }
+
+  private static String quote(String string) {
+    if (string == null) {
+      return "null";
+    }
+
+    StringBuilder builder = new StringBuilder(string.length() + 2);
+    builder.append('"');
+    for (int i = 0; i < string.length(); i++) {
+      char c = string.charAt(i);
+      switch (c) {
+        case '"':
+          builder.append("\\\"");
+          break;
+        case '\\':
+          builder.append("\\\\");
+          break;
+        case '\n':
+          builder.append("\\n");
+          break;
+        case '\r':
+          builder.append("\\r");
+          break;
+        case '\t':
+          builder.append("\\t");
+          break;
+        default:
+          if (c < 0x20) {
+            builder.append(String.format("\\u%04x", (int) c));
+          } else {
+            builder.append(c);
+          }
+      }
+    }
+    return builder.append('"').toString();
+  }
+}
@@ -0,0 +1,22 @@
+package com.jetbrains.jetpad.vclang.typechecking.error.local;
+
+import com.jetbrains.jetpad.vclang.core.expr.visitor.ReductionLimitExceededException;
+import com.jetbrains.jetpad.vclang.error.doc.Doc;
+import com.jetbrains.jetpad.vclang.term.Abstract;
+import com.jetbrains.jetpad.vclang.term.SourceInfoProvider;
+
+import static com.jetbrains.jetpad.vclang.error.doc.DocFactory.*;
+
+public class ReductionLimitError extends LocalTypeCheckingError {
+  public final Abstract.Definition unfolded;
+
+  public ReductionLimitError(ReductionLimitExceededException exception, Abstract.SourceNode cause) {
+    super(exception.getMessage(), cause);
+    unfolded = exception.definition == null ? null : exception.definition.getAbstractDefinition();
+  }
+
+  @Override
+  public Doc getBodyDoc(SourceInfoProvider src) {
+    return unfolded == null ? nullDoc() : hList(text("While unfolding '"), refDoc(unfolded), text("'"));
+  }
+}
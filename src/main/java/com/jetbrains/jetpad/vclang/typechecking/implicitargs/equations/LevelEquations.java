@@ -1,9 +1,6 @@
 package com.jetbrains.jetpad.vclang.typechecking.implicitargs.equations;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 
 public class LevelEquations<Var> {
   private final List<Var> myVariables = new ArrayList<>();
@@ -39,47 +36,148 @@ public class LevelEquations<Var> {
     return myVariables.isEmpty() && myEquations.isEmpty();
   }
 
+  /**
+   * Every variable starts at 0 and is decreased while it violates an equation, that is, a constraint {@code var2 <= var1 + c},
+   * which is ignored if {@code var1 + maxConstant >= 0}.
+   * A variable that is decreased unboundedly is mapped to {@code null}.
+   * Variables are numbered densely and relaxed in the queue-based Bellman-Ford order.
+   *
+   * @return null if the equations are solvable; otherwise, a path of equations that cannot be satisfied.
+   */
   public List<LevelEquation<Var>> solve(Map<Var, Integer> solution) {
-    Map<Var, List<LevelEquation<Var>>> paths = new HashMap<>();
-
-    solution.put(null, 0);
-    paths.put(null, new ArrayList<>());
+    // The constant 0 has index 0
+    Map<Var, Integer> indices = new HashMap<>();
+    List<Var> variables = new ArrayList<>(myVariables.size() + 1);
+    indices.put(null, 0);
+    variables.add(null);
     for (Var var : myVariables) {
-      solution.put(var, 0);
-      paths.put(var, new ArrayList<>());
+      getIndex(var, indices, variables);
+    }
+    int numberOfVariables = variables.size();
+
+    int numberOfEquations = myEquations.size();
+    int[] from = new int[numberOfEquations];
+    int[] to = new int[numberOfEquations];
+    for (int i = 0; i < numberOfEquations; i++) {
+      LevelEquation<Var> equation = myEquations.get(i);
+      if (equation.isInfinity()) {
+        from[i] = -1;
+        to[i] = getIndex(equation.getVariable(), indices, variables);
+      } else {
+        from[i] = getIndex(equation.getVariable1(), indices, variables);
+        to[i] = getIndex(equation.getVariable2(), indices, variables);
+      }
+    }
+
+    // Variables that occur only in equations keep their current values
+    int size = variables.size();
+    int[] distances = new int[size];
+    boolean[] infinite = new boolean[size];
+    boolean[] changed = new boolean[size];
+    for (int i = numberOfVariables; i < size; i++) {
+      Integer value = solution.get(variables.get(i));
+      if (value == null) {
+        infinite[i] = true;
+      } else {
+        distances[i] = value;
+      }
     }
 
-    for (int i = myVariables.size(); i >= 0; i--) {
-      boolean updated = false;
-      for (LevelEquation<Var> equation : myEquations) {
-        if (equation.isInfinity()) {
-          solution.put(equation.getVariable(), null);
+    int[] firstEquation = new int[size];
+    int[] nextEquation = new int[numberOfEquations];
+    Arrays.fill(firstEquation, -1);
+    for (int i = numberOfEquations - 1; i >= 0; i--) {
+      if (from[i] == -1) {
+        infinite[to[i]] = true;
+        changed[to[i]] = true;
+      } else {
+        nextEquation[i] = firstEquation[from[i]];
+        firstEquation[from[i]] = i;
+      }
+    }
+
+    int[] predecessors = new int[size];
+    int[] lengths = new int[size];
+    Arrays.fill(predecessors, -1);
+
+    int[] queue = new int[size];
+    boolean[] queued = new boolean[size];
+    for (int i = 0; i < size; i++) {
+      queue[i] = i;
+      queued[i] = true;
+    }
+    int head = 0;
+    int queueSize = size;
+
+    List<LevelEquation<Var>> path = null;
+    loop:
+    while (queueSize > 0) {
+      int var1 = queue[head];
+      head = head + 1 == size ? 0 : head + 1;
+      queueSize--;
+      queued[var1] = false;
+
+      for (int i = firstEquation[var1]; i != -1; i = nextEquation[i]) {
+        int var2 = to[i];
+        if (infinite[var2]) {
+          continue;
+        }
+
+        if (infinite[var1]) {
+          infinite[var2] = true;
         } else {
-          Integer a = solution.get(equation.getVariable1());
-          Integer b = solution.get(equation.getVariable2());
-          Integer m = equation.getMaxConstant();
-          if (b != null && (a == null || (m == null || a + m < 0) && b > a + equation.getConstant())) {
-            if (a != null) {
-              List<LevelEquation<Var>> newPath = new ArrayList<>(paths.get(equation.getVariable1()));
-              newPath.add(equation);
-              paths.put(equation.getVariable2(), newPath);
-            }
-            if (i == 0 || equation.getVariable2() == null && a != null) {
-              solution.remove(null);
-              return paths.get(equation.getVariable2());
-            }
-
-            solution.put(equation.getVariable2(), a == null ? null : a + equation.getConstant());
-            updated = true;
+          LevelEquation<Var> equation = myEquations.get(i);
+          Integer maxConstant = equation.getMaxConstant();
+          int distance = distances[var1] + equation.getConstant();
+          if (maxConstant != null && distances[var1] + maxConstant >= 0 || distances[var2] <= distance) {
+            continue;
+          }
+
+          predecessors[var2] = i;
+          lengths[var2] = lengths[var1] + 1;
+          // Either the constant 0 must be less than 0 or there is a negative cycle
+          if (var2 == 0 || lengths[var2] >= size) {
+            path = getPath(var2, predecessors, from);
+            break loop;
           }
+          distances[var2] = distance;
+        }
+
+        changed[var2] = true;
+        if (!queued[var2]) {
+          queue[(head + queueSize) % size] = var2;
+          queueSize++;
+          queued[var2] = true;
         }
       }
-      if (!updated) {
-        break;
+    }
+
+    for (int i = 1; i < size; i++) {
+      if (i < numberOfVariables || changed[i]) {
+        solution.put(variables.get(i), infinite[i] ? null : distances[i]);
       }
     }
+    return path;
+  }
+
+  private static <Var> int getIndex(Var var, Map<Var, Integer> indices, List<Var> variables) {
+    Integer index = indices.putIfAbsent(var, variables.size());
+    if (index == null) {
+      variables.add(var);
+      return variables.size() - 1;
+    }
+    return index;
+  }
 
-    solution.remove(null);
-    return null;
+  private List<LevelEquation<Var>> getPath(int var, int[] predecessors, int[] from) {
+    List<LevelEquation<Var>> path = new ArrayList<>();
+    boolean[] visited = new boolean[predecessors.length];
+    while (predecessors[var] != -1 && !visited[var]) {
+      visited[var] = true;
+      path.add(myEquations.get(predecessors[var]));
+      var = from[predecessors[var]];
+    }
+    Collections.reverse(path);
+    return path;
   }
 }
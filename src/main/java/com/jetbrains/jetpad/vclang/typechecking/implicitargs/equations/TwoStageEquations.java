@@ -18,6 +18,7 @@ import com.jetbrains.jetpad.vclang.core.subst.LevelSubstitution;
 import com.jetbrains.jetpad.vclang.core.subst.SimpleLevelSubstitution;
 import com.jetbrains.jetpad.vclang.error.doc.DocFactory;
 import com.jetbrains.jetpad.vclang.term.Abstract;
+import com.jetbrains.jetpad.vclang.typechecking.TypecheckingProfiler;
 import com.jetbrains.jetpad.vclang.typechecking.error.local.*;
 import com.jetbrains.jetpad.vclang.typechecking.visitor.CheckTypeVisitor;
 import com.jetbrains.jetpad.vclang.util.Pair;
@@ -606,6 +607,7 @@ public class TwoStageEquations implements Equations {
 
   @SuppressWarnings("UnusedReturnValue")
   private boolean solve(InferenceVariable var, Expression expr) {
+    TypecheckingProfiler.count(TypecheckingProfiler.Counter.EQUATIONS);
     expr = expr.normalize(NormalizeVisitor.Mode.WHNF);
     if (expr.isInstance(InferenceReferenceExpression.class) && expr.cast(InferenceReferenceExpression.class).getVariable() == var) {
       return true;
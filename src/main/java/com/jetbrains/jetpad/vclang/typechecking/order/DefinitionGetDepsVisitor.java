@@ -11,7 +11,7 @@ public class DefinitionGetDepsVisitor implements AbstractDefinitionVisitor<Boole
   private final ClassViewInstanceProvider myInstanceProvider;
   private final Set<Abstract.Definition> myDependencies;
 
-  DefinitionGetDepsVisitor(ClassViewInstanceProvider instanceProvider, Set<Abstract.Definition> dependencies) {
+  public DefinitionGetDepsVisitor(ClassViewInstanceProvider instanceProvider, Set<Abstract.Definition> dependencies) {
     myInstanceProvider = instanceProvider;
     myDependencies = dependencies;
   }
@@ -0,0 +1,138 @@
+package com.jetbrains.jetpad.vclang.typechecking.order;
+
+import com.jetbrains.jetpad.vclang.term.Abstract;
+import com.jetbrains.jetpad.vclang.typechecking.Typecheckable;
+import com.jetbrains.jetpad.vclang.typechecking.TypecheckingUnit;
+
+import java.util.*;
+
+/**
+ * Records the components found by {@link Ordering} instead of typechecking them.
+ * Nodes are stored in the order in which they were found, so every node comes after the nodes it depends on.
+ */
+public class SCCGraph implements DependencyListener {
+  private final DependencyListener myListener;
+  private final List<Node> myNodes = new ArrayList<>();
+  private final Map<Typecheckable, Node> myUnitNodes = new HashMap<>();
+  private final Map<Typecheckable, Set<Abstract.Definition>> myDependencies = new HashMap<>();
+  private boolean myBuilt = false;
+
+  public static class Node {
+    private final int myIndex;
+    private final SCC mySCC;
+    private final TypecheckingUnit myUnit;
+    private final Recursion myRecursion;
+    private final Abstract.Definition myTypecheckedDefinition;
+    private final Set<Node> myDependencies = new LinkedHashSet<>();
+
+    private Node(int index, SCC scc, TypecheckingUnit unit, Recursion recursion, Abstract.Definition typecheckedDefinition) {
+      myIndex = index;
+      mySCC = scc;
+      myUnit = unit;
+      myRecursion = recursion;
+      myTypecheckedDefinition = typecheckedDefinition;
+    }
+
+    public int getIndex() {
+      return myIndex;
+    }
+
+    public Collection<? extends Node> getDependencies() {
+      return myDependencies;
+    }
+
+    private Collection<? extends TypecheckingUnit> getUnits() {
+      return mySCC != null ? mySCC.getUnits() : myUnit != null ? Collections.singletonList(myUnit) : Collections.emptyList();
+    }
+
+    /**
+     * Passes this node to {@code listener} in the same way {@link Ordering} would have passed it.
+     */
+    public void notify(DependencyListener listener) {
+      if (mySCC != null) {
+        listener.sccFound(mySCC);
+      } else if (myUnit != null) {
+        listener.unitFound(myUnit, myRecursion);
+      } else {
+        listener.alreadyTypechecked(myTypecheckedDefinition);
+      }
+    }
+  }
+
+  public SCCGraph(DependencyListener listener) {
+    myListener = listener;
+  }
+
+  private void addNode(SCC scc, TypecheckingUnit unit, Recursion recursion, Abstract.Definition typecheckedDefinition) {
+    Node node = new Node(myNodes.size(), scc, unit, recursion, typecheckedDefinition);
+    myNodes.add(node);
+    for (TypecheckingUnit unit1 : node.getUnits()) {
+      myUnitNodes.put(unit1.getTypecheckable(), node);
+    }
+    myBuilt = false;
+  }
+
+  @Override
+  public void sccFound(SCC scc) {
+    addNode(scc, null, null, null);
+  }
+
+  @Override
+  public void unitFound(TypecheckingUnit unit, Recursion recursion) {
+    addNode(null, unit, recursion, null);
+  }
+
+  @Override
+  public boolean needsOrdering(Abstract.Definition definition) {
+    return myListener.needsOrdering(definition);
+  }
+
+  @Override
+  public void alreadyTypechecked(Abstract.Definition definition) {
+    addNode(null, null, null, definition);
+  }
+
+  @Override
+  public void dependsOn(Typecheckable unit, Abstract.Definition def) {
+    myDependencies.computeIfAbsent(unit, k -> new LinkedHashSet<>()).add(def);
+    myListener.dependsOn(unit, def);
+  }
+
+  /**
+   * @return the nodes in the order in which they were found with dependencies between them.
+   *         A body depends on its header and on every definition referred to from the unit.
+   */
+  public List<Node> getNodes() {
+    if (!myBuilt) {
+      for (Node node : myNodes) {
+        for (TypecheckingUnit unit : node.getUnits()) {
+          addDependencies(node, unit.getTypecheckable());
+          if (!unit.isHeader() && Typecheckable.hasHeader(unit.getDefinition())) {
+            // The header is either a separate node or it is typechecked together with the body
+            Typecheckable header = new Typecheckable(unit.getDefinition(), true);
+            addDependency(node, myUnitNodes.get(header));
+            addDependencies(node, header);
+          }
+        }
+      }
+      myBuilt = true;
+    }
+    return myNodes;
+  }
+
+  private void addDependencies(Node node, Typecheckable typecheckable) {
+    Set<Abstract.Definition> dependencies = myDependencies.get(typecheckable);
+    if (dependencies != null) {
+      for (Abstract.Definition dependency : dependencies) {
+        addDependency(node, myUnitNodes.get(new Typecheckable(dependency, false)));
+      }
+    }
+  }
+
+  private static void addDependency(Node node, Node dependency) {
+    if (dependency != null && dependency != node) {
+      assert dependency.myIndex < node.myIndex;
+      node.myDependencies.add(dependency);
+    }
+  }
+}
@@ -12,47 +12,48 @@ public abstract class BaseCallGraph<T> {
   }
 
   BaseCallGraph(BaseCallGraph<T> g) {
-    HashMap<T, HashMap<T, HashSet<BaseCallMatrix<T>>>> newGraph;
-    HashMap<T, HashMap<T, HashSet<BaseCallMatrix<T>>>> oldGraph = g.myGraph;
-    int myNewEdges;
-
-    do {
-      myNewEdges = 0;
-      newGraph = new HashMap<>();
-
-      for (T vDom : oldGraph.keySet()) {
-        HashMap<T, HashSet<BaseCallMatrix<T>>> outboundEdges = oldGraph.get(vDom);
-        for (T vCodom : outboundEdges.keySet()) {
-          for (BaseCallMatrix<T> edge : outboundEdges.get(vCodom)) {
-            append(edge, newGraph);
-          }
+    // Computes the composition closure semi-naively: every edge is composed only with the edges that are already in the graph when it is taken from the queue
+    Map<T, List<BaseCallMatrix<T>>> outboundEdges = new HashMap<>();
+    Map<T, List<BaseCallMatrix<T>>> inboundEdges = new HashMap<>();
+    Deque<BaseCallMatrix<T>> newEdges = new ArrayDeque<>();
+
+    for (HashMap<T, HashSet<BaseCallMatrix<T>>> edges : g.myGraph.values()) {
+      for (HashSet<BaseCallMatrix<T>> edgesSheaf : edges.values()) {
+        for (BaseCallMatrix<T> edge : edgesSheaf) {
+          addNewEdge(edge, outboundEdges, inboundEdges, newEdges);
         }
       }
+    }
 
-      for (T vDom : oldGraph.keySet()) {
-        HashMap<T, HashSet<BaseCallMatrix<T>>> outboundEdges = oldGraph.get(vDom);
-        for (T vCodom : outboundEdges.keySet()) {
-          for (BaseCallMatrix<T> edge : outboundEdges.get(vCodom)) {
-            HashMap<T, HashSet<BaseCallMatrix<T>>> outboundEdges2 = oldGraph.get(edge.getCodomain());
-            if (outboundEdges2 != null) {
-              for (HashSet<BaseCallMatrix<T>> edgesSheaf : outboundEdges2.values()) {
-                for (BaseCallMatrix<T> edge2 : edgesSheaf) {
-                  if (append(new CompositeCallMatrix<>(edge, edge2), newGraph)) {
-                    myNewEdges++;
-                  }
-                }
-              }
-            }
-          }
+    while (!newEdges.isEmpty()) {
+      BaseCallMatrix<T> edge = newEdges.poll();
+
+      List<BaseCallMatrix<T>> nextEdges = outboundEdges.get(edge.getCodomain());
+      if (nextEdges != null) {
+        for (int i = 0, size = nextEdges.size(); i < size; i++) {
+          addNewEdge(new CompositeCallMatrix<>(edge, nextEdges.get(i)), outboundEdges, inboundEdges, newEdges);
         }
       }
-      oldGraph = newGraph;
-    } while (myNewEdges > 0);
 
-    myGraph = newGraph;
+      List<BaseCallMatrix<T>> prevEdges = inboundEdges.get(edge.getDomain());
+      if (prevEdges != null) {
+        for (int i = 0, size = prevEdges.size(); i < size; i++) {
+          addNewEdge(new CompositeCallMatrix<>(prevEdges.get(i), edge), outboundEdges, inboundEdges, newEdges);
+        }
+      }
+    }
+
     isCompositionClosed = true;
   }
 
+  private void addNewEdge(BaseCallMatrix<T> edge, Map<T, List<BaseCallMatrix<T>>> outboundEdges, Map<T, List<BaseCallMatrix<T>>> inboundEdges, Deque<BaseCallMatrix<T>> newEdges) {
+    if (append(edge, myGraph)) {
+      outboundEdges.computeIfAbsent(edge.getDomain(), k -> new ArrayList<>()).add(edge);
+      inboundEdges.computeIfAbsent(edge.getCodomain(), k -> new ArrayList<>()).add(edge);
+      newEdges.add(edge);
+    }
+  }
+
   public void add(Set<BaseCallMatrix<T>> set) {
     for (BaseCallMatrix<T> cm : set) {
       append(cm, myGraph);
@@ -78,39 +79,7 @@ public abstract class BaseCallGraph<T> {
   }
 
   private static <T> boolean append(BaseCallMatrix<T> cm, HashMap<T, HashMap<T, HashSet<BaseCallMatrix<T>>>> graph) {
-    HashSet<BaseCallMatrix<T>> set;
-    HashMap<T, HashSet<BaseCallMatrix<T>>> map;
-    if (!(graph.containsKey(cm.getDomain()))) {
-      map = new HashMap<>();
-      set = new HashSet<>();
-      set.add(cm);
-      map.put(cm.getCodomain(), set);
-      graph.put(cm.getDomain(), map);
-      return true;
-    } else {
-      map = graph.get(cm.getDomain());
-      if (!(map.containsKey(cm.getCodomain()))) {
-        set = new HashSet<>();
-        set.add(cm);
-        map.put(cm.getCodomain(), set);
-        return true;
-      } else {
-        set = map.get(cm.getCodomain());
-        boolean alreadyContainsEqual = false;
-
-        for (BaseCallMatrix c : set) {
-          if (cm.equals(c)) {
-            alreadyContainsEqual = true;
-          }
-        }
-
-        if (!(alreadyContainsEqual)) {
-          set.add(cm);
-        }
-
-        return !alreadyContainsEqual;
-      }
-    }
+    return graph.computeIfAbsent(cm.getDomain(), k -> new HashMap<>()).computeIfAbsent(cm.getCodomain(), k -> new HashSet<>()).add(cm);
   }
 
   public boolean checkTermination() {
@@ -8,7 +8,6 @@ import com.jetbrains.jetpad.vclang.error.doc.DocStringBuilder;
 import com.jetbrains.jetpad.vclang.util.StringFormat;
 
 import java.util.Arrays;
-import java.util.HashMap;
 
 public abstract class BaseCallMatrix<T> {
   public enum R {
@@ -17,98 +16,78 @@ public abstract class BaseCallMatrix<T> {
     LessThan()
   }
 
-  private static BaseCallMatrix.R rmul(BaseCallMatrix.R a, BaseCallMatrix.R b) {
-    switch (a) {
+  /*
+   * Every relation is encoded in two bits: Unknown is 00, Equal is 01 and LessThan is 11.
+   * Then a <= b iff (a & ~b) == 0 and the sum of relations is their bitwise or.
+   * The product of nonzero relations is also their bitwise or.
+   */
+  private static final long EQUAL = 1;
+  private static final long LESS_THAN = 3;
+  private static final long LOW_BITS = 0x5555555555555555L;
+  private static final int ENTRIES_PER_WORD = 32;
+
+  private static long encode(BaseCallMatrix.R r) {
+    switch (r) {
       case Equal:
-        switch (b) {
-          case Equal:
-            return BaseCallMatrix.R.Equal;
-          case LessThan:
-            return BaseCallMatrix.R.LessThan;
-          default:
-            return BaseCallMatrix.R.Unknown;
-        }
+        return EQUAL;
       case LessThan:
-        switch (b) {
-          case Equal:
-          case LessThan:
-            return BaseCallMatrix.R.LessThan;
-          default:
-            return BaseCallMatrix.R.Unknown;
-        }
+        return LESS_THAN;
       default:
-        return BaseCallMatrix.R.Unknown;
+        return 0;
     }
   }
 
-  private static BaseCallMatrix.R radd(BaseCallMatrix.R a, BaseCallMatrix.R b) {
-    if (a == R.LessThan || b == R.LessThan) return R.LessThan;
-    if (a == R.Equal || b == R.Equal) return R.Equal;
-    return R.Unknown;
+  private static BaseCallMatrix.R decode(long code) {
+    return code == 0 ? R.Unknown : code == EQUAL ? R.Equal : R.LessThan;
   }
 
   static boolean rleq(BaseCallMatrix.R a, BaseCallMatrix.R b) {
-    switch (a) {
-      case LessThan:
-        return (b == BaseCallMatrix.R.LessThan);
-      case Equal:
-        return (b == BaseCallMatrix.R.LessThan || b == BaseCallMatrix.R.Equal);
-      default:
-        return true;
-    }
+    return (encode(a) & ~encode(b)) == 0;
   }
 
-  private HashMap<Integer, BaseCallMatrix.CallMatrixEntry> myMatrixMap = new HashMap<>();
-  private BaseCallMatrix.R[][] fallbackMatrix = null;
+  // Rows are packed into consecutive words, myWordsPerRow words per row
+  private final long[] myMatrix;
+  private final int myWordsPerRow;
 
-  private int myWidth;
-  private int myHeight;
+  private final int myWidth;
+  private final int myHeight;
 
   BaseCallMatrix(int width, int height) {
     myWidth = width;
     myHeight = height;
+    myWordsPerRow = (width + ENTRIES_PER_WORD - 1) / ENTRIES_PER_WORD;
+    myMatrix = new long[height * myWordsPerRow];
   }
 
   BaseCallMatrix(BaseCallMatrix<T> m) {
-    // copy constructor 
+    // copy constructor
     myWidth = m.myWidth;
     myHeight = m.myHeight;
-    if (myMatrixMap != null) {
-      for (Integer j : m.myMatrixMap.keySet()) {
-        BaseCallMatrix.CallMatrixEntry cme = m.myMatrixMap.get(j);
-        myMatrixMap.put(j, new BaseCallMatrix.CallMatrixEntry(cme.myIndex, cme.myRel));
-      }
-    } else {
-      fallbackMatrix = new BaseCallMatrix.R[myHeight][myWidth];
-      for (int i = 0; i < myHeight; i++) System.arraycopy(fallbackMatrix[i], 0, fallbackMatrix[i], 0, myWidth);
-    }
+    myWordsPerRow = m.myWordsPerRow;
+    myMatrix = m.myMatrix.clone();
   }
 
   BaseCallMatrix(BaseCallMatrix<T> m1, BaseCallMatrix<T> m2) {
-    // multiplication constructor 
+    // multiplication constructor
+    this(m2.myWidth, m1.myHeight);
     if (m1.myWidth != m2.myHeight) {
       throw new IllegalArgumentException();
     }
-    myHeight = m1.myHeight;
-    myWidth = m2.myWidth;
 
-    if (m1.myMatrixMap != null && m2.myMatrixMap != null) {
-      for (int j = 0; j < myWidth; j++) {
-        BaseCallMatrix.CallMatrixEntry cme2 = m2.myMatrixMap.get(j);
-        if (cme2 != null) {
-          BaseCallMatrix.CallMatrixEntry cme = m1.myMatrixMap.get(cme2.myIndex);
-          if (cme != null) {
-            myMatrixMap.put(j, new BaseCallMatrix.CallMatrixEntry(cme.myIndex, rmul(cme.myRel, cme2.myRel)));
-          }
+    for (int i = 0; i < myHeight; i++) {
+      int row = i * myWordsPerRow;
+      for (int k = 0; k < m1.myWidth; k++) {
+        long a = m1.getCode(i, k);
+        if (a == 0) {
+          continue;
         }
-      }
-    } else {
-      for (int i = 0; i < myHeight; i++)
-        for (int j = 0; j < myWidth; j++) {
-          BaseCallMatrix.R s = R.Unknown;
-          for (int k = 0; k < m1.myWidth; k++) s = radd(s, rmul(m1.getValue(i, k), m2.getValue(k, j)));
-          set(i, j, s);
+        // Equal * b = b and LessThan * b = LessThan if b is not Unknown
+        int row2 = k * m2.myWordsPerRow;
+        for (int w = 0; w < myWordsPerRow; w++) {
+          long b = m2.myMatrix[row2 + w];
+          myMatrix[row + w] |= a == EQUAL ? b : (b & LOW_BITS) * 3;
         }
+      }
     }
   }
 
@@ -126,62 +105,29 @@ public abstract class BaseCallMatrix<T> {
 
   public abstract int getCompositeLength();
 
-  public void set(int i, int j, BaseCallMatrix.R v) {
-    if (myMatrixMap != null) {
-      BaseCallMatrix.CallMatrixEntry cm = myMatrixMap.get(j);
-      if (cm != null) {
-        if (cm.myIndex != i && v != R.Unknown) {
-          enterFallBackMode();
-          fallbackMatrix[i][j] = v;
-        } else if (cm.myIndex == i) {
-          if (v == R.Unknown) myMatrixMap.put(j, null);
-          else cm.myRel = v;
-        }
-      } else if (v != R.Unknown) {
-        myMatrixMap.put(j, new BaseCallMatrix.CallMatrixEntry(i, v));
-      }
-    } else {
-      fallbackMatrix[i][j] = v;
-    }
+  private long getCode(int i, int j) {
+    return (myMatrix[i * myWordsPerRow + j / ENTRIES_PER_WORD] >>> (2 * (j % ENTRIES_PER_WORD))) & 3;
   }
 
-  public BaseCallMatrix.R getValue(int i, int j) {
-    if (myMatrixMap != null) {
-      BaseCallMatrix.CallMatrixEntry cme = myMatrixMap.get(j);
-      BaseCallMatrix.R result2 = BaseCallMatrix.R.Unknown;
-      if (cme != null && cme.myIndex == i) {
-        result2 = cme.myRel;
-      }
-      return result2;
-    } else {
-      return fallbackMatrix[i][j];
-    }
+  public void set(int i, int j, BaseCallMatrix.R v) {
+    int index = i * myWordsPerRow + j / ENTRIES_PER_WORD;
+    int shift = 2 * (j % ENTRIES_PER_WORD);
+    myMatrix[index] = myMatrix[index] & ~(3L << shift) | encode(v) << shift;
   }
 
-  private void enterFallBackMode() {
-    fallbackMatrix = new BaseCallMatrix.R[myHeight][myWidth];
-    for (int i = 0; i < myHeight; i++) for (int j = 0; j < myWidth; j++) fallbackMatrix[i][j] = getValue(i, j);
-    myMatrixMap = null;
+  public BaseCallMatrix.R getValue(int i, int j) {
+    return decode(getCode(i, j));
   }
 
   public final boolean leq(BaseCallMatrix<T> cm) {
     if (getCodomain() != cm.getCodomain() || getDomain() != cm.getDomain()) {
       return false;
     }
-    if (myMatrixMap != null && cm.myMatrixMap != null) {
-      for (int k : myMatrixMap.keySet()) {
-        BaseCallMatrix.CallMatrixEntry cme = cm.myMatrixMap.get(k);
-        BaseCallMatrix.CallMatrixEntry mme = myMatrixMap.get(k);
-        if (cme == null || cme.myIndex != mme.myIndex || !(BaseCallMatrix.rleq(mme.myRel, cme.myRel))) {
-          return false;
-        }
+    for (int i = 0; i < myMatrix.length; i++) {
+      if ((myMatrix[i] & ~cm.myMatrix[i]) != 0) {
+        return false;
       }
-    } else {
-      for (int i = 0; i < myHeight; i++)
-        for (int j = 0; j < myWidth; j++)
-          if (!rleq(getValue(i, j), cm.getValue(i, j))) return false;
     }
-
     return true;
   }
 
@@ -189,12 +135,7 @@ public abstract class BaseCallMatrix<T> {
   public final boolean equals(Object object) {
     if (object instanceof BaseCallMatrix) {
       BaseCallMatrix cm = (BaseCallMatrix) object;
-      if (getCodomain() != cm.getCodomain() || getDomain() != cm.getDomain()) return false;
-      if (myMatrixMap != null && cm.myMatrixMap != null) return myMatrixMap.equals(cm.myMatrixMap);
-      for (int i = 0; i < myHeight; i++)
-        for (int j = 0; j < myWidth; j++)
-          if (getValue(i, j) != cm.getValue(i, j)) return false;
-      return true;
+      return getCodomain() == cm.getCodomain() && getDomain() == cm.getDomain() && Arrays.equals(myMatrix, cm.myMatrix);
     } else {
       return false;
     }
@@ -203,7 +144,7 @@ public abstract class BaseCallMatrix<T> {
   @Override
   public final int hashCode() {
     int result = getCodomain().hashCode() * 31 + getDomain().hashCode();
-    return result * 31 + (myMatrixMap != null ? myMatrixMap.hashCode() : Arrays.deepHashCode(fallbackMatrix));
+    return result * 31 + Arrays.hashCode(myMatrix);
   }
 
   protected String[] getColumnLabels() {
@@ -265,28 +206,4 @@ public abstract class BaseCallMatrix<T> {
 
     return result.toString();
   }
-
-  private static class CallMatrixEntry {
-    int myIndex;
-    BaseCallMatrix.R myRel;
-
-    CallMatrixEntry(int index, BaseCallMatrix.R rel) {
-      myIndex = index;
-      myRel = rel;
-    }
-
-    @Override
-    public int hashCode() {
-      return myIndex * 31 + myRel.hashCode();
-    }
-
-    @Override
-    public boolean equals(Object object) {
-      if (object instanceof BaseCallMatrix.CallMatrixEntry) {
-        BaseCallMatrix.CallMatrixEntry cm = (BaseCallMatrix.CallMatrixEntry) object;
-        return cm.myIndex == myIndex && cm.myRel == myRel;
-      }
-      return false;
-    }
-  }
 }
@@ -5,13 +5,14 @@ import com.jetbrains.jetpad.vclang.term.Abstract;
 import com.jetbrains.jetpad.vclang.term.AbstractExpressionVisitor;
 import com.jetbrains.jetpad.vclang.typechecking.typeclass.provider.SimpleClassViewInstanceProvider;
 
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.List;
+import java.util.*;
 
 public class ExpressionResolveInstanceVisitor implements AbstractExpressionVisitor<Void, Void> {
   private final Scope myParentScope;
   private final SimpleClassViewInstanceProvider myInstanceProvider;
+  // Instances of the scope are filtered once for each class view and each class, so that they are indexed once
+  private final Map<Abstract.ClassView, List<Abstract.ClassViewInstance>> myViewInstances = new HashMap<>();
+  private final Map<Abstract.ReferableSourceNode, List<Abstract.ClassViewInstance>> myDefaultInstances = new HashMap<>();
 
   public ExpressionResolveInstanceVisitor(Scope parentScope, SimpleClassViewInstanceProvider instanceProvider) {
     myParentScope = parentScope;
@@ -35,13 +36,15 @@ public class ExpressionResolveInstanceVisitor implements AbstractExpressionVisit
     Abstract.ReferableSourceNode definition = expr.getReferent();
     if (definition instanceof Abstract.ClassViewField) {
       Abstract.ClassView classView = ((Abstract.ClassViewField) definition).getOwnView();
-      Collection<? extends Abstract.ClassViewInstance> instances = myParentScope.getInstances();
-      List<Abstract.ClassViewInstance> filteredInstances = new ArrayList<>();
-      for (Abstract.ClassViewInstance instance : instances) {
-        if (instance.getClassView().getReferent() == classView) {
-          filteredInstances.add(instance);
+      List<Abstract.ClassViewInstance> filteredInstances = myViewInstances.computeIfAbsent(classView, k -> {
+        List<Abstract.ClassViewInstance> result = new ArrayList<>();
+        for (Abstract.ClassViewInstance instance : myParentScope.getInstances()) {
+          if (instance.getClassView().getReferent() == classView) {
+            result.add(instance);
+          }
         }
-      }
+        return result;
+      });
       myInstanceProvider.addInstances(expr, 0, filteredInstances);
     } else if (definition instanceof Abstract.Definition) {
       Collection<? extends Abstract.Parameter> arguments = Abstract.getParameters((Abstract.Definition) definition);
@@ -67,17 +70,19 @@ public class ExpressionResolveInstanceVisitor implements AbstractExpressionVisit
         int size = i + (parameter instanceof Abstract.TelescopeParameter ? ((Abstract.TelescopeParameter) parameter).getReferableList().size() : 1);
         Abstract.ClassView classView = Abstract.getUnderlyingClassView(((Abstract.TypeParameter) parameter).getType());
         if (classView != null) {
-          Collection<? extends Abstract.ClassViewInstance> instances = myParentScope.getInstances();
-          List<Abstract.ClassViewInstance> filteredInstances = new ArrayList<>();
-          for (Abstract.ClassViewInstance instance : instances) {
-            if (instance.isDefault()) {
-              Abstract.ClassView classView1 = (Abstract.ClassView) instance.getClassView().getReferent();
-              assert classView1 != null;
-              if (classView1.getUnderlyingClassReference().getReferent() == classView.getUnderlyingClassReference().getReferent()) {
-                filteredInstances.add(instance);
+          List<Abstract.ClassViewInstance> filteredInstances = myDefaultInstances.computeIfAbsent(classView.getUnderlyingClassReference().getReferent(), classDef -> {
+            List<Abstract.ClassViewInstance> result = new ArrayList<>();
+            for (Abstract.ClassViewInstance instance : myParentScope.getInstances()) {
+              if (instance.isDefault()) {
+                Abstract.ClassView classView1 = (Abstract.ClassView) instance.getClassView().getReferent();
+                assert classView1 != null;
+                if (classView1.getUnderlyingClassReference().getReferent() == classDef) {
+                  result.add(instance);
+                }
               }
             }
-          }
+            return result;
+          });
 
           for (; i < size; i++) {
             myInstanceProvider.addInstances(defCall, i, filteredInstances);
@@ -9,9 +9,10 @@ import com.jetbrains.jetpad.vclang.core.expr.visitor.NormalizeVisitor;
 import com.jetbrains.jetpad.vclang.core.sort.Sort;
 import com.jetbrains.jetpad.vclang.term.Abstract;
 import com.jetbrains.jetpad.vclang.typechecking.TypecheckerState;
+import com.jetbrains.jetpad.vclang.typechecking.TypecheckingProfiler;
 import com.jetbrains.jetpad.vclang.typechecking.typeclass.provider.ClassViewInstanceProvider;
+import com.jetbrains.jetpad.vclang.typechecking.typeclass.provider.InstanceIndex;
 
-import java.util.Collection;
 import java.util.Collections;
 
 public class GlobalInstancePool implements ClassViewInstancePool {
@@ -29,18 +30,43 @@ public class GlobalInstancePool implements ClassViewInstancePool {
       return null;
     }
 
-    Collection<? extends Abstract.ClassViewInstance> instances = myInstanceProvider.getInstances(defCall, paramIndex);
-    for (Abstract.ClassViewInstance instance : instances) {
-      if ((classView instanceof Abstract.ClassView && instance.getClassView().getReferent() == classView ||
-           classView instanceof Abstract.ClassDefinition &&
-             ((Abstract.ClassView) instance.getClassView().getReferent()).getUnderlyingClassReference().getReferent() == classView) &&
-          instance.getClassifyingDefinition() == classifyingDefCall.getDefinition().getAbstractDefinition()) {
-        Definition definition = myTypecheckerState.getTypechecked(instance);
-        if (definition.status().headerIsOK()) {
-          return new FunCallExpression((FunctionDefinition) definition, Sort.PROP /* TODO[classes] */, Collections.emptyList());
+    TypecheckingProfiler.count(TypecheckingProfiler.Counter.INSTANCE_LOOKUPS);
+    Abstract.Definition classifyingDefinition = classifyingDefCall.getDefinition().getAbstractDefinition();
+    InstanceIndex index = myInstanceProvider.getInstanceIndex(defCall, paramIndex);
+    FunctionDefinition resolved = index.getResolved(classView, classifyingDefinition);
+    if (resolved == null) {
+      if (index.isMissing(classView, classifyingDefinition)) {
+        TypecheckingProfiler.count(TypecheckingProfiler.Counter.INSTANCE_NEGATIVE_HITS);
+        return null;
+      }
+      resolved = resolveInstance(index, classView, classifyingDefinition);
+      if (resolved == null) {
+        return null;
+      }
+    } else {
+      TypecheckingProfiler.count(TypecheckingProfiler.Counter.INSTANCE_HITS);
+    }
+    return new FunCallExpression(resolved, Sort.PROP /* TODO[classes] */, Collections.emptyList());
+  }
+
+  private FunctionDefinition resolveInstance(InstanceIndex index, Abstract.Definition classView, Abstract.Definition classifyingDefinition) {
+    // The result is remembered only if it cannot change, that is, if every instance is typechecked
+    boolean isFinal = true;
+    for (Abstract.ClassViewInstance instance : index.getInstances(classView, classifyingDefinition)) {
+      Definition definition = myTypecheckerState.getTypechecked(instance);
+      if (definition == null || definition.status() == Definition.TypeCheckingStatus.HEADER_NEEDS_TYPE_CHECKING) {
+        isFinal = false;
+      } else if (definition.status().headerIsOK()) {
+        FunctionDefinition result = (FunctionDefinition) definition;
+        if (isFinal) {
+          index.setResolved(classView, classifyingDefinition, result);
         }
+        return result;
       }
     }
+    if (isFinal) {
+      index.setMissing(classView, classifyingDefinition);
+    }
     return null;
   }
 
@@ -6,4 +6,11 @@ import java.util.Collection;
 
 public interface ClassViewInstanceProvider {
   Collection<? extends Abstract.ClassViewInstance> getInstances(Abstract.ReferenceExpression defCall, int paramIndex);
+
+  /**
+   * @return the index of {@link #getInstances}; an implementation should build it once for the same collection of instances.
+   */
+  default InstanceIndex getInstanceIndex(Abstract.ReferenceExpression defCall, int paramIndex) {
+    return new InstanceIndex(getInstances(defCall, paramIndex));
+  }
 }
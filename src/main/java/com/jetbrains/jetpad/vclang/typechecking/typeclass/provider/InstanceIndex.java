@@ -0,0 +1,72 @@
+package com.jetbrains.jetpad.vclang.typechecking.typeclass.provider;
+
+import com.jetbrains.jetpad.vclang.core.definition.FunctionDefinition;
+import com.jetbrains.jetpad.vclang.term.Abstract;
+import com.jetbrains.jetpad.vclang.util.Pair;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Instances of a scope indexed by their class view and by the classifying definition.
+ * Every instance is also indexed by the underlying class of its view.
+ *
+ * The index also remembers which instance was chosen for a key and for which keys there are no usable instances.
+ * These results can be recorded from several threads.
+ */
+public class InstanceIndex {
+  private final Map<Pair<Abstract.ReferableSourceNode, Abstract.Definition>, List<Abstract.ClassViewInstance>> myInstances = new HashMap<>();
+  private final Map<Pair<Abstract.ReferableSourceNode, Abstract.Definition>, FunctionDefinition> myResolved = new ConcurrentHashMap<>();
+  private final Set<Pair<Abstract.ReferableSourceNode, Abstract.Definition>> myMissing = ConcurrentHashMap.newKeySet();
+
+  public InstanceIndex(Collection<? extends Abstract.ClassViewInstance> instances) {
+    for (Abstract.ClassViewInstance instance : instances) {
+      Abstract.ReferableSourceNode classView = instance.getClassView().getReferent();
+      add(classView, instance);
+      if (classView instanceof Abstract.ClassView) {
+        Abstract.ReferableSourceNode classDefinition = ((Abstract.ClassView) classView).getUnderlyingClassReference().getReferent();
+        if (classDefinition != classView) {
+          add(classDefinition, instance);
+        }
+      }
+    }
+  }
+
+  private void add(Abstract.ReferableSourceNode classView, Abstract.ClassViewInstance instance) {
+    if (classView != null) {
+      myInstances.computeIfAbsent(new Pair<>(classView, instance.getClassifyingDefinition()), k -> new ArrayList<>()).add(instance);
+    }
+  }
+
+  /**
+   * @param classView  either a class view or a class definition.
+   *
+   * @return instances of {@code classView} for {@code classifyingDefinition} in the order in which they are declared.
+   */
+  public List<Abstract.ClassViewInstance> getInstances(Abstract.Definition classView, Abstract.Definition classifyingDefinition) {
+    List<Abstract.ClassViewInstance> instances = myInstances.get(new Pair<Abstract.ReferableSourceNode, Abstract.Definition>(classView, classifyingDefinition));
+    return instances == null ? Collections.emptyList() : instances;
+  }
+
+  /**
+   * @return the instance that was chosen for {@code classView} and {@code classifyingDefinition} or null if there is no such instance.
+   */
+  public FunctionDefinition getResolved(Abstract.Definition classView, Abstract.Definition classifyingDefinition) {
+    return myResolved.get(new Pair<Abstract.ReferableSourceNode, Abstract.Definition>(classView, classifyingDefinition));
+  }
+
+  public void setResolved(Abstract.Definition classView, Abstract.Definition classifyingDefinition, FunctionDefinition instance) {
+    myResolved.put(new Pair<>(classView, classifyingDefinition), instance);
+  }
+
+  /**
+   * @return true if it is known that none of the instances of {@code classView} for {@code classifyingDefinition} can be used.
+   */
+  public boolean isMissing(Abstract.Definition classView, Abstract.Definition classifyingDefinition) {
+    return myMissing.contains(new Pair<Abstract.ReferableSourceNode, Abstract.Definition>(classView, classifyingDefinition));
+  }
+
+  public void setMissing(Abstract.Definition classView, Abstract.Definition classifyingDefinition) {
+    myMissing.add(new Pair<>(classView, classifyingDefinition));
+  }
+}
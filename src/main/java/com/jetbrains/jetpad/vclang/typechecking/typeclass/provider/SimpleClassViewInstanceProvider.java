@@ -3,13 +3,15 @@ package com.jetbrains.jetpad.vclang.typechecking.typeclass.provider;
 import com.jetbrains.jetpad.vclang.term.Abstract;
 import com.jetbrains.jetpad.vclang.util.Pair;
 
-import java.util.Collection;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
 
+/**
+ * Instances are added before typechecking; after that, the provider can be used from several threads.
+ */
 public class SimpleClassViewInstanceProvider implements ClassViewInstanceProvider {
   private final Map<Pair<Abstract.ReferenceExpression, Integer>, Collection<? extends Abstract.ClassViewInstance>> myInstances = new HashMap<>();
+  private final Map<Pair<Abstract.ReferenceExpression, Integer>, InstanceIndex> myIndices = new HashMap<>();
+  private final Map<Collection<? extends Abstract.ClassViewInstance>, InstanceIndex> myIndexOfInstances = new IdentityHashMap<>();
 
   @Override
   public Collection<? extends Abstract.ClassViewInstance> getInstances(Abstract.ReferenceExpression defCall, int paramIndex) {
@@ -17,7 +19,19 @@ public class SimpleClassViewInstanceProvider implements ClassViewInstanceProvide
     return instances == null ? Collections.emptyList() : instances;
   }
 
+  @Override
+  public InstanceIndex getInstanceIndex(Abstract.ReferenceExpression defCall, int paramIndex) {
+    InstanceIndex index = myIndices.get(new Pair<>(defCall, paramIndex));
+    return index == null ? new InstanceIndex(Collections.emptyList()) : index;
+  }
+
+  /**
+   * Adds instances that are available for a parameter of a definition.
+   * The same collection can be added for several parameters; then it is indexed only once.
+   */
   public void addInstances(Abstract.ReferenceExpression defCall, int paramIndex, Collection<? extends Abstract.ClassViewInstance> instances) {
-    myInstances.put(new Pair<>(defCall, paramIndex), instances);
+    Pair<Abstract.ReferenceExpression, Integer> key = new Pair<>(defCall, paramIndex);
+    myInstances.put(key, instances);
+    myIndices.put(key, myIndexOfInstances.computeIfAbsent(instances, InstanceIndex::new));
   }
 }
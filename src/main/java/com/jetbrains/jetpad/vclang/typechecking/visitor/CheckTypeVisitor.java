@@ -1291,11 +1291,6 @@ public class CheckTypeVisitor implements AbstractExpressionVisitor<ExpectedType,
 
   @Override
   public Result visitNumericLiteral(Abstract.NumericLiteral expr, ExpectedType expectedType) {
-    int number = expr.getNumber();
-    Expression expression = ExpressionFactory.Zero();
-    for (int i = 0; i < number; ++i) {
-      expression = ExpressionFactory.Suc(expression);
-    }
-    return checkResult(expectedType, new Result(expression, ExpressionFactory.Nat()), expr);
+    return checkResult(expectedType, new Result(new IntegerExpression(expr.getNumber()), ExpressionFactory.Nat()), expr);
   }
 }
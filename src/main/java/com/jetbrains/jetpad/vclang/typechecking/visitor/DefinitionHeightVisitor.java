@@ -0,0 +1,63 @@
+package com.jetbrains.jetpad.vclang.typechecking.visitor;
+
+import com.jetbrains.jetpad.vclang.core.definition.Constructor;
+import com.jetbrains.jetpad.vclang.core.definition.FunctionDefinition;
+import com.jetbrains.jetpad.vclang.core.elimtree.*;
+import com.jetbrains.jetpad.vclang.core.expr.DefCallExpression;
+import com.jetbrains.jetpad.vclang.core.expr.Expression;
+import com.jetbrains.jetpad.vclang.util.Pair;
+
+import java.util.Map;
+
+public class DefinitionHeightVisitor extends ProcessDefCallsVisitor<Void> {
+  private final FunctionDefinition myDefinition;
+  private int myMaxHeight;
+
+  private DefinitionHeightVisitor(FunctionDefinition definition) {
+    myDefinition = definition;
+  }
+
+  /**
+   * @return 1 + the maximal height of functions that occur in the body of {@code definition} or 0 if it does not have a body.
+   */
+  public static int getHeight(FunctionDefinition definition) {
+    Body body = definition.getBody();
+    if (body == null) {
+      return 0;
+    }
+
+    DefinitionHeightVisitor visitor = new DefinitionHeightVisitor(definition);
+    if (body instanceof IntervalElim) {
+      for (Pair<Expression, Expression> pair : ((IntervalElim) body).getCases()) {
+        if (pair.proj1 != null) {
+          pair.proj1.accept(visitor, null);
+        }
+        if (pair.proj2 != null) {
+          pair.proj2.accept(visitor, null);
+        }
+      }
+      visitor.visitBody(((IntervalElim) body).getOtherwise());
+    } else {
+      visitor.visitBody((ElimTree) body);
+    }
+    return visitor.myMaxHeight + 1;
+  }
+
+  private void visitBody(ElimTree elimTree) {
+    if (elimTree instanceof LeafElimTree) {
+      ((LeafElimTree) elimTree).getExpression().accept(this, null);
+    } else if (elimTree instanceof BranchElimTree) {
+      for (Map.Entry<Constructor, ElimTree> entry : ((BranchElimTree) elimTree).getChildren()) {
+        visitBody(entry.getValue());
+      }
+    }
+  }
+
+  @Override
+  protected boolean processDefCall(DefCallExpression expression, Void param) {
+    if (expression.getDefinition() instanceof FunctionDefinition && expression.getDefinition() != myDefinition) {
+      myMaxHeight = Math.max(myMaxHeight, ((FunctionDefinition) expression.getDefinition()).getHeight());
+    }
+    return false;
+  }
+}
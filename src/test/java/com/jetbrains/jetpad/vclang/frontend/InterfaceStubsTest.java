@@ -0,0 +1,70 @@
+package com.jetbrains.jetpad.vclang.frontend;
+
+import com.jetbrains.jetpad.vclang.frontend.storage.FileStorage;
+import com.jetbrains.jetpad.vclang.module.ModulePath;
+import com.jetbrains.jetpad.vclang.module.source.SourceId;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class InterfaceStubsTest {
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  private Path sourceDir;
+  private Path cacheDir;
+
+  @Before
+  public void initialize() throws IOException {
+    sourceDir = folder.newFolder("src").toPath();
+    cacheDir = folder.newFolder("cache").toPath();
+  }
+
+  private void write(String module, String text) throws IOException {
+    Files.write(FileStorage.sourceFile(sourceDir.resolve(module)), text.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static <SourceIdT extends SourceId> boolean isFromInterface(BaseCliFrontend<SourceIdT> frontend, String module) {
+    return frontend.loadedSources.get(frontend.moduleTracker.locateModule(ModulePath.moduleName(module))).fromInterface;
+  }
+
+  private static <SourceIdT extends SourceId> BaseCliFrontend.ModuleResult resultOf(BaseCliFrontend<SourceIdT> frontend, String module) {
+    return frontend.moduleResults.get(frontend.moduleTracker.locateModule(ModulePath.moduleName(module)));
+  }
+
+  @Test
+  public void instanceArgumentOfStub() throws IOException {
+    write("V", "" +
+        "\\class X {\n" +
+        "  | A : \\Type0\n" +
+        "  | B : A -> Nat\n" +
+        "}\n" +
+        "\\view X' \\on X \\by A { B }\n" +
+        "\\default \\instance Nat-X => \\new X' { A => Nat | B => \\lam x => x }");
+    write("L", "" +
+        "\\open ::V\n" +
+        "\\function f {x : X'} (a : x.A) : Nat => B a");
+    new ConsoleMain(null, sourceDir, cacheDir, false).run(sourceDir, Collections.singletonList("L.vc"));
+
+    // The instance of the implicit argument of f is found through the parameters of its stub
+    write("D", "" +
+        "\\open ::V\n" +
+        "\\open ::L\n" +
+        "\\function d : f 3 = 3 => path (\\lam _ => 3)");
+    ConsoleMain console = new ConsoleMain(null, sourceDir, cacheDir, false);
+    console.run(sourceDir, Collections.singletonList("D.vc"));
+    assertThat(isFromInterface(console, "L"), is(true));
+    assertThat(isFromInterface(console, "V"), is(true));
+    assertThat(resultOf(console, "D"), is(nullValue()));
+  }
+}
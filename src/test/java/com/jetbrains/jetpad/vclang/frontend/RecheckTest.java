@@ -0,0 +1,107 @@
+package com.jetbrains.jetpad.vclang.frontend;
+
+import com.jetbrains.jetpad.vclang.frontend.storage.FileStorage;
+import com.jetbrains.jetpad.vclang.module.ModulePath;
+import com.jetbrains.jetpad.vclang.module.source.SourceId;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class RecheckTest {
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  private Path sourceDir;
+  private ConsoleMain console;
+
+  @Before
+  public void initialize() throws IOException {
+    sourceDir = folder.newFolder("src").toPath();
+    console = new ConsoleMain(null, sourceDir, folder.newFolder("cache").toPath(), false);
+  }
+
+  private void write(String module, String text) throws IOException {
+    Files.write(FileStorage.sourceFile(sourceDir.resolve(module)), text.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static <SourceIdT extends SourceId> void recheck(BaseCliFrontend<SourceIdT> frontend, String... modules) {
+    List<SourceIdT> sources = new ArrayList<>();
+    for (String module : modules) {
+      sources.add(frontend.moduleTracker.locateModule(ModulePath.moduleName(module)));
+    }
+    frontend.recheck(sources);
+  }
+
+  private static <SourceIdT extends SourceId> BaseCliFrontend.ModuleResult resultOf(BaseCliFrontend<SourceIdT> frontend, String module) {
+    return frontend.moduleResults.get(frontend.moduleTracker.locateModule(ModulePath.moduleName(module)));
+  }
+
+  private static <SourceIdT extends SourceId> Object loadedModule(BaseCliFrontend<SourceIdT> frontend, String module) {
+    return frontend.loadedSources.get(frontend.moduleTracker.locateModule(ModulePath.moduleName(module))).definition;
+  }
+
+  @Test
+  public void dependentIsRechecked() throws IOException {
+    write("A", "\\function a : Nat => 0");
+    write("B", "\\function b : ::A.a = 0 => path (\\lam _ => 0)");
+    console.run(sourceDir, Collections.singletonList("B.vc"));
+    assertThat(resultOf(console, "B"), is(nullValue()));
+
+    write("A", "\\function a : Nat => 1");
+    recheck(console, "A");
+    assertThat(resultOf(console, "B"), is(BaseCliFrontend.ModuleResult.ERRORS));
+
+    write("A", "\\function a : Nat => 0");
+    recheck(console, "A");
+    assertThat(resultOf(console, "B"), is(nullValue()));
+  }
+
+  @Test
+  public void dependentOnInstanceIsRechecked() throws IOException {
+    write("V", "" +
+        "\\class X {\n" +
+        "  | A : \\Type0\n" +
+        "  | B : A -> Nat\n" +
+        "}\n" +
+        "\\view X' \\on X \\by A { B }");
+    write("I", "" +
+        "\\open ::V\n" +
+        "\\instance Nat-X => \\new X' { A => Nat | B => \\lam x => x }");
+    // Neither D nor E refers to a definition of I; only the instance used in D does
+    write("D", "" +
+        "\\open ::V\n" +
+        "\\open ::I\n" +
+        "\\function f : B 0 = 0 => path (\\lam _ => 0)");
+    write("E", "" +
+        "\\open ::V\n" +
+        "\\open ::I\n" +
+        "\\function g : Nat => 0");
+    console.run(sourceDir, Arrays.asList("D.vc", "E.vc"));
+    assertThat(resultOf(console, "D"), is(nullValue()));
+    assertThat(resultOf(console, "E"), is(nullValue()));
+    Object moduleD = loadedModule(console, "D");
+    Object moduleE = loadedModule(console, "E");
+
+    write("I", "" +
+        "\\open ::V\n" +
+        "\\instance Nat-X => \\new X' { A => Nat | B => \\lam x => suc x }");
+    recheck(console, "I");
+    // Opening I is not a dependency by itself, so E is not reloaded
+    assertThat(loadedModule(console, "E"), is(sameInstance(moduleE)));
+    assertThat(loadedModule(console, "D"), is(not(sameInstance(moduleD))));
+    assertThat(resultOf(console, "D"), is(BaseCliFrontend.ModuleResult.ERRORS));
+  }
+}
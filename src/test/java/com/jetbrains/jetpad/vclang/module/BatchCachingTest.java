@@ -0,0 +1,107 @@
+package com.jetbrains.jetpad.vclang.module;
+
+import com.jetbrains.jetpad.vclang.core.definition.FunctionDefinition;
+import com.jetbrains.jetpad.vclang.core.elimtree.LeafElimTree;
+import com.jetbrains.jetpad.vclang.core.expr.FunCallExpression;
+import com.jetbrains.jetpad.vclang.module.caching.CacheLoadingException;
+import com.jetbrains.jetpad.vclang.module.caching.CacheManager;
+import com.jetbrains.jetpad.vclang.module.caching.CachePersistenceException;
+import com.jetbrains.jetpad.vclang.module.caching.DependencyCacheLoadingException;
+import com.jetbrains.jetpad.vclang.term.Abstract;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class BatchCachingTest extends CachingTestCase {
+  private MemoryStorage.SourceId a, b, c;
+  private Abstract.ClassDefinition aClass, bClass, cClass;
+
+  @Before
+  public void initializeModules() {
+    cacheManager.setThreads(4);
+    a = storage.add(ModulePath.moduleName("A"), "\\data D | con\n\\function a : D => con");
+    b = storage.add(ModulePath.moduleName("B"), "\\function b : ::A.D => ::A.a");
+    c = storage.add(ModulePath.moduleName("C"), "\\function c : ::A.D => ::B.b");
+    cClass = moduleLoader.load(c);
+    bClass = nameResolver.resolveModuleNamespace(ModulePath.moduleName("B")).getRegisteredClass();
+    aClass = nameResolver.resolveModuleNamespace(ModulePath.moduleName("A")).getRegisteredClass();
+    typecheck(cClass);
+  }
+
+  @Test
+  public void persistAndLoadAll() {
+    CacheManager.BatchResult<MemoryStorage.SourceId, CachePersistenceException> persisted = cacheManager.persistAll(Arrays.asList(c, b, a));
+    assertThat(persisted.failed.entrySet(), is(empty()));
+    assertThat(persisted.succeeded, containsInAnyOrder(a, b, c));
+    assertThat(persisted.bytes, is(greaterThan(0L)));
+    tcState.reset();
+
+    CacheManager.BatchResult<MemoryStorage.SourceId, CacheLoadingException> loaded = cacheManager.loadAll(Arrays.asList(c, b, a));
+    assertThat(loaded.failed.entrySet(), is(empty()));
+    assertThat(loaded.succeeded, containsInAnyOrder(a, b, c));
+    assertThat(loaded.bytes, is(equalTo(persisted.bytes)));
+
+    FunctionDefinition cDef = (FunctionDefinition) tcState.getTypechecked(get(cClass, "c"));
+    FunCallExpression bCall = (FunCallExpression) ((LeafElimTree) cDef.getBody()).getExpression();
+    assertThat(bCall.getDefinition(), is(tcState.getTypechecked(get(bClass, "b"))));
+    FunCallExpression aCall = (FunCallExpression) ((LeafElimTree) ((FunctionDefinition) bCall.getDefinition()).getBody()).getExpression();
+    assertThat(aCall.getDefinition(), is(tcState.getTypechecked(get(aClass, "a"))));
+  }
+
+  @Test
+  public void upToDateModulesAreSkipped() {
+    assertThat(cacheManager.persistAll(Arrays.asList(a, b, c)).succeeded, hasSize(3));
+    assertThat(cacheManager.persistAll(Arrays.asList(a, b, c)).succeeded, is(empty()));
+  }
+
+  @Test
+  public void dependenciesOutsideOfBatch() {
+    CacheManager.BatchResult<MemoryStorage.SourceId, CachePersistenceException> persisted = cacheManager.persistAll(Arrays.asList(c));
+    assertThat(persisted.succeeded, contains(c));
+    tcState.reset();
+
+    assertThat(cacheManager.loadAll(Arrays.asList(c)).succeeded, contains(c));
+    assertThat(tcState.getTypechecked(get(aClass, "a")), is(notNullValue()));
+  }
+
+  @Test
+  public void mutuallyReferringModules() {
+    MemoryStorage.SourceId x = storage.add(ModulePath.moduleName("X"), "\\data U | u\n\\function x : U => u\n\\function x' : U => ::Y.y");
+    MemoryStorage.SourceId y = storage.add(ModulePath.moduleName("Y"), "\\function y : ::X.U => ::X.x");
+    Abstract.ClassDefinition xClass = moduleLoader.load(x);
+    Abstract.ClassDefinition yClass = nameResolver.resolveModuleNamespace(ModulePath.moduleName("Y")).getRegisteredClass();
+    typecheck(xClass);
+
+    CacheManager.BatchResult<MemoryStorage.SourceId, CachePersistenceException> persisted = cacheManager.persistAll(Arrays.asList(x, y));
+    assertThat(persisted.failed.entrySet(), is(empty()));
+    assertThat(persisted.succeeded, containsInAnyOrder(x, y));
+    tcState.reset();
+
+    CacheManager.BatchResult<MemoryStorage.SourceId, CacheLoadingException> loaded = cacheManager.loadAll(Arrays.asList(x, y));
+    assertThat(loaded.failed.entrySet(), is(empty()));
+    assertThat(loaded.succeeded, containsInAnyOrder(x, y));
+
+    FunctionDefinition xDef = (FunctionDefinition) tcState.getTypechecked(get(xClass, "x'"));
+    FunCallExpression yCall = (FunCallExpression) ((LeafElimTree) xDef.getBody()).getExpression();
+    assertThat(yCall.getDefinition(), is(tcState.getTypechecked(get(yClass, "y"))));
+    FunCallExpression xCall = (FunCallExpression) ((LeafElimTree) ((FunctionDefinition) yCall.getDefinition()).getBody()).getExpression();
+    assertThat(xCall.getDefinition(), is(tcState.getTypechecked(get(xClass, "x"))));
+  }
+
+  @Test
+  public void loadingFailures() {
+    cacheManager.persistAll(Arrays.asList(a, b, c));
+    tcState.reset();
+
+    storage.incVersion(ModulePath.moduleName("A"));
+    CacheManager.BatchResult<MemoryStorage.SourceId, CacheLoadingException> loaded = cacheManager.loadAll(Arrays.asList(a, b, c));
+    assertThat(loaded.succeeded, is(empty()));
+    assertThat(loaded.failed.keySet(), contains(a, b, c));
+    assertThat(loaded.failed.get(a).getMessage(), is(equalTo("Source has changed")));
+    assertThat(loaded.failed.get(b), is(instanceOf(DependencyCacheLoadingException.class)));
+  }
+}
@@ -0,0 +1,244 @@
+package com.jetbrains.jetpad.vclang.module;
+
+import com.jetbrains.jetpad.vclang.core.definition.DataDefinition;
+import com.jetbrains.jetpad.vclang.core.definition.FunctionDefinition;
+import com.jetbrains.jetpad.vclang.module.caching.CacheCodec;
+import com.jetbrains.jetpad.vclang.module.caching.CacheLoadingException;
+import com.jetbrains.jetpad.vclang.module.caching.LazyCacheLoadingException;
+import com.jetbrains.jetpad.vclang.module.caching.serialization.ModuleProtos;
+import com.jetbrains.jetpad.vclang.term.Abstract;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class CacheCodecTest extends CachingTestCase {
+  private MemoryStorage.SourceId a;
+  private Abstract.ClassDefinition aClass;
+
+  @Before
+  public void initializeModule() {
+    StringBuilder text = new StringBuilder("\\data D | con1 | con2 D\n\\function f0 : D => con1\n");
+    for (int i = 1; i < 100; i++) {
+      text.append("\\function f").append(i).append(" : D => con2 f").append(i - 1).append("\n");
+    }
+    a = storage.add(ModulePath.moduleName("A"), text.toString());
+    aClass = moduleLoader.load(a);
+    typecheck(aClass);
+  }
+
+  private byte[] readCache() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[8192];
+    try (DataInputStream in = new DataInputStream(storage.getCacheInputStream(a))) {
+      for (int read; (read = in.read(buffer)) != -1; ) {
+        out.write(buffer, 0, read);
+      }
+    }
+    return out.toByteArray();
+  }
+
+  private void writeCache(byte[] cache) throws IOException {
+    try (DataOutputStream out = new DataOutputStream(storage.getCacheOutputStream(a))) {
+      out.write(cache);
+    }
+  }
+
+  private void checkLoaded() {
+    FunctionDefinition f = (FunctionDefinition) tcState.getTypechecked(get(aClass, "f99"));
+    assertThat(f.getBody(), is(notNullValue()));
+    assertThat(((DataDefinition) tcState.getTypechecked(get(aClass, "D"))).getConstructors(), hasSize(2));
+  }
+
+  @Test
+  public void allCodecs() throws IOException {
+    for (CacheCodec codec : CacheCodec.values()) {
+      cacheManager.setCodec(codec);
+      tcState.reset();
+      typecheck(aClass);
+      persist(a);
+      tcState.reset();
+      cacheManager.unloadCache(a);
+
+      load(a, aClass);
+      checkLoaded();
+    }
+  }
+
+  @Test
+  public void compressedCachesAreSmaller() throws IOException {
+    persist(a);
+    int size = readCache().length;
+
+    cacheManager.setCodec(CacheCodec.GZIP);
+    tcState.reset();
+    typecheck(aClass);
+    persist(a);
+    assertThat(readCache().length, is(lessThan(size)));
+  }
+
+  @Test
+  public void readCacheOfOtherCodec() {
+    cacheManager.setCodec(CacheCodec.GZIP);
+    persist(a);
+    tcState.reset();
+
+    cacheManager.setCodec(CacheCodec.NONE);
+    load(a, aClass);
+    checkLoaded();
+  }
+
+  @Test
+  public void readIndexedCacheWithoutHeader() throws IOException {
+    persist(a);
+    tcState.reset();
+
+    // Caches in the indexed format were written without the codec and the size of the content
+    byte[] cache = readCache();
+    ByteArrayOutputStream oldCache = new ByteArrayOutputStream();
+    new DataOutputStream(oldCache).writeInt(0x56434331);
+    oldCache.write(cache, 12, cache.length - 12);
+    writeCache(oldCache.toByteArray());
+
+    load(a, aClass);
+    checkLoaded();
+  }
+
+  @Test
+  public void truncatedCache() throws IOException {
+    cacheManager.setCodec(CacheCodec.GZIP);
+    persist(a);
+    tcState.reset();
+
+    byte[] cache = readCache();
+    writeCache(Arrays.copyOf(cache, cache.length / 2));
+    try {
+      tryLoad(a, aClass, false);
+      fail("Exception expected");
+    } catch (CacheLoadingException ignored) {
+    }
+  }
+
+  @Test
+  public void wrongDecodedSize() throws IOException {
+    cacheManager.setCodec(CacheCodec.GZIP);
+    persist(a);
+    tcState.reset();
+
+    // The size in the header is not trusted, so nothing of that size is allocated
+    byte[] cache = readCache();
+    for (int size : new int[] { Integer.MAX_VALUE, cache.length * 2000, -1 }) {
+      ByteBuffer.wrap(cache).putInt(8, size);
+      writeCache(cache);
+      try {
+        tryLoad(a, aClass, false);
+        fail("Exception expected");
+      } catch (CacheLoadingException ignored) {
+      }
+    }
+  }
+
+  @Test
+  public void unknownCodec() throws IOException {
+    persist(a);
+    tcState.reset();
+
+    byte[] cache = readCache();
+    ByteBuffer.wrap(cache).putInt(4, 42);
+    writeCache(cache);
+    try {
+      tryLoad(a, aClass, false);
+      fail("Exception expected");
+    } catch (CacheLoadingException e) {
+      assertThat(e.getMessage(), containsString("Unknown cache codec"));
+    }
+  }
+
+  @Test
+  public void corruptedDefinition() throws IOException {
+    persist(a);
+    tcState.reset();
+    cacheManager.unloadCache(a);
+
+    // The last byte belongs to the data of some definition, so the cache is loaded, but that definition cannot be filled in
+    byte[] cache = readCache();
+    cache[cache.length - 1] ^= 0x55;
+    writeCache(cache);
+    load(a, aClass);
+
+    boolean failed = false;
+    for (Abstract.Definition definition : aClass.getGlobalDefinitions()) {
+      try {
+        tcState.getTypechecked(definition);
+      } catch (LazyCacheLoadingException e) {
+        assertThat(e.sourceId, is(equalTo(a)));
+        failed = true;
+        break;
+      }
+    }
+    assertThat(failed, is(true));
+
+    cacheManager.unloadCache(a);
+    try {
+      tryLoad(a, aClass, false);
+      fail("Exception expected");
+    } catch (CacheLoadingException ignored) {
+    }
+
+    // The cache can be loaded again after it is persisted
+    typecheck(aClass);
+    persist(a);
+    tcState.reset();
+    cacheManager.unloadCache(a);
+    load(a, aClass);
+    checkLoaded();
+  }
+
+  @Test
+  public void overlappingDefinitions() throws IOException {
+    persist(a);
+    tcState.reset();
+    cacheManager.unloadCache(a);
+
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(readCache()));
+    int magic = in.readInt();
+    int codec = in.readInt();
+    in.readInt();
+    byte[] indexBytes = new byte[in.readInt()];
+    in.readFully(indexBytes);
+    byte[] data = new byte[in.available()];
+    in.readFully(data);
+
+    ModuleProtos.ModuleIndex.Builder index = ModuleProtos.ModuleIndex.parseFrom(indexBytes).toBuilder();
+    String id = index.getDefinitionMap().keySet().iterator().next();
+    ModuleProtos.ModuleIndex.Entry entry = index.getDefinitionMap().get(id);
+    index.putDefinition(id, entry.toBuilder().setLength(entry.getLength() + 1).build());
+    indexBytes = index.build().toByteArray();
+
+    ByteArrayOutputStream corrupted = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(corrupted);
+    out.writeInt(magic);
+    out.writeInt(codec);
+    out.writeInt(4 + indexBytes.length + data.length);
+    out.writeInt(indexBytes.length);
+    out.write(indexBytes);
+    out.write(data);
+    writeCache(corrupted.toByteArray());
+
+    try {
+      tryLoad(a, aClass, false);
+      fail("Exception expected");
+    } catch (CacheLoadingException ignored) {
+    }
+  }
+}
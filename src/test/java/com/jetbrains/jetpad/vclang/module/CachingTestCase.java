@@ -26,6 +26,7 @@ import java.io.InputStreamReader;
 import java.io.Reader;
 import java.net.URI;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.assertThat;
@@ -132,7 +133,7 @@ public class CachingTestCase extends NameResolverTestCase {
 
 
   public class MemoryPersistenceProvider<SourceIdT extends SourceId> implements PersistenceProvider<SourceIdT> {
-    private final Map<String, Object> memMap = new HashMap<>();
+    private final Map<String, Object> memMap = new ConcurrentHashMap<>();
 
     @Override
     public URI getUri(SourceIdT sourceId) {
@@ -0,0 +1,111 @@
+package com.jetbrains.jetpad.vclang.module;
+
+import com.jetbrains.jetpad.vclang.frontend.BaseModuleLoader;
+import com.jetbrains.jetpad.vclang.frontend.storage.FileStorage;
+import com.jetbrains.jetpad.vclang.frontend.storage.LibStorage;
+import com.jetbrains.jetpad.vclang.frontend.storage.LibraryManifest;
+import com.jetbrains.jetpad.vclang.naming.ModuleResolver;
+import com.jetbrains.jetpad.vclang.naming.NameResolverTestCase;
+import com.jetbrains.jetpad.vclang.term.Abstract;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+
+import static com.jetbrains.jetpad.vclang.module.ModulePath.moduleName;
+import static org.junit.Assert.*;
+
+public class LibStorageTest extends NameResolverTestCase {
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  private Path libDir;
+  private Path cacheDir;
+
+  @Before
+  public void initialize() throws IOException {
+    libDir = folder.newFolder("lib").toPath();
+    cacheDir = folder.newFolder("cache").toPath();
+  }
+
+  private void write(String text, String lib, String... path) throws IOException {
+    Path file = libDir.resolve(lib);
+    for (int i = 0; i < path.length - 1; i++) {
+      file = file.resolve(path[i]);
+    }
+    Files.createDirectories(file);
+    Files.write(FileStorage.sourceFile(file.resolve(path[path.length - 1])), text.getBytes(StandardCharsets.UTF_8));
+    // The modification time of a directory may not change if a file is added in the same millisecond
+    Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 1000));
+  }
+
+  private LibStorage createStorage() {
+    LibStorage storage = new LibStorage(libDir, cacheDir, Arrays.asList("lib1", "lib2"), nameResolver, moduleNsProvider);
+    BaseModuleLoader<LibStorage.SourceId> moduleLoader = new BaseModuleLoader<>(storage, errorReporter);
+    nameResolver.setModuleResolver(new ModuleResolver() {
+      @Override
+      public Abstract.ClassDefinition load(ModulePath modulePath) {
+        LibStorage.SourceId sourceId = storage.locateModule(modulePath);
+        return sourceId != null ? moduleLoader.load(sourceId) : null;
+      }
+    });
+    return storage;
+  }
+
+  @Test
+  public void locateModules() throws IOException {
+    write("\\function a => 0", "lib1", "A");
+    write("\\function c => 0", "lib2", "B", "C");
+
+    LibStorage storage = createStorage();
+    assertEquals("lib1", storage.locateModule(moduleName("A")).getLibraryName());
+    assertEquals("lib2", storage.locateModule(moduleName("B", "C")).getLibraryName());
+    assertNull(storage.locateModule(moduleName("B")));
+    assertNull(storage.locateModule(moduleName("D")));
+    assertNull(storage.locateModule("lib1", moduleName("B", "C")));
+  }
+
+  @Test(expected = LibStorage.ModuleInMultipleLibraries.class)
+  public void moduleInMultipleLibraries() throws IOException {
+    write("\\function a => 0", "lib1", "A");
+    write("\\function a => 0", "lib2", "A");
+    createStorage().locateModule(moduleName("A"));
+  }
+
+  @Test
+  public void manifestSaved() throws IOException {
+    write("\\function a => 0", "lib1", "A");
+    write("\\function c => 0", "lib2", "B", "C");
+
+    LibStorage storage = createStorage();
+    assertNotNull(storage.locateModule(moduleName("A")));
+    storage.saveManifests();
+    assertTrue(Files.exists(cacheDir.resolve("lib1").resolve(LibraryManifest.FILE_NAME)));
+    assertTrue(Files.exists(cacheDir.resolve("lib2").resolve(LibraryManifest.FILE_NAME)));
+
+    storage = createStorage();
+    assertEquals("lib1", storage.locateModule(moduleName("A")).getLibraryName());
+    assertEquals("lib2", storage.locateModule(moduleName("B", "C")).getLibraryName());
+    assertNotNull(nameResolver.resolveModuleNamespace(moduleName("A")).getRegisteredClass());
+  }
+
+  @Test
+  public void changedLibrary() throws IOException {
+    write("\\function a => 0", "lib1", "A");
+    LibStorage storage = createStorage();
+    assertNull(storage.locateModule(moduleName("D")));
+    storage.saveManifests();
+
+    write("\\function d => 0", "lib1", "D");
+    storage = createStorage();
+    assertNotNull(storage.locateModule(moduleName("A")));
+    assertNotNull(storage.locateModule(moduleName("D")));
+  }
+}
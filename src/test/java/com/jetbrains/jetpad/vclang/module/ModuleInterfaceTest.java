@@ -0,0 +1,147 @@
+package com.jetbrains.jetpad.vclang.module;
+
+import com.jetbrains.jetpad.vclang.frontend.Concrete;
+import com.jetbrains.jetpad.vclang.frontend.storage.ModuleInterfaceStubs;
+import com.jetbrains.jetpad.vclang.module.caching.PersistenceProvider;
+import com.jetbrains.jetpad.vclang.module.caching.serialization.ModuleInterfaceSerialization;
+import com.jetbrains.jetpad.vclang.module.caching.serialization.ModuleProtos;
+import com.jetbrains.jetpad.vclang.module.source.SourceId;
+import com.jetbrains.jetpad.vclang.naming.NameResolverTestCase;
+import com.jetbrains.jetpad.vclang.term.Abstract;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.List;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class ModuleInterfaceTest extends NameResolverTestCase {
+  private static final PersistenceProvider<SourceId> POSITION_PERSISTENCE_PROVIDER = new PersistenceProvider<SourceId>() {
+    @Override
+    public URI getUri(SourceId sourceId) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public SourceId getModuleId(URI sourceUrl) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String getIdFor(Abstract.Definition definition) {
+      Concrete.Position position = ((Concrete.Definition) definition).getPosition();
+      return position.line + ";" + position.column;
+    }
+
+    @Override
+    public Abstract.Definition getFromId(SourceId sourceId, String id) {
+      throw new UnsupportedOperationException();
+    }
+  };
+
+  private Concrete.ClassDefinition rebuild(Concrete.ClassDefinition module) {
+    SourceId sourceId = ((Concrete.Definition) module.getGlobalDefinitions().iterator().next()).getPosition().module;
+    ModuleProtos.ModuleInterface moduleInterface = new ModuleInterfaceSerialization<>(sourceId, POSITION_PERSISTENCE_PROVIDER, definition -> sourceId).writeInterface(module);
+    assertThat(moduleInterface, is(notNullValue()));
+    Concrete.ClassDefinition stubs = ModuleInterfaceStubs.build(sourceId, moduleInterface, nameResolver);
+    assertThat(stubs, is(notNullValue()));
+    return stubs;
+  }
+
+  private void assertSameStub(Abstract.Definition stub, Abstract.Definition definition) {
+    assertThat(stub, is(notNullValue()));
+    assertThat(stub.getClass(), is(equalTo(definition.getClass())));
+    assertThat(stub.getName(), is(equalTo(definition.getName())));
+    assertThat(stub.getPrecedence().associativity, is(equalTo(definition.getPrecedence().associativity)));
+    assertThat(stub.getPrecedence().priority, is(equalTo(definition.getPrecedence().priority)));
+    assertThat(POSITION_PERSISTENCE_PROVIDER.getIdFor(stub), is(equalTo(POSITION_PERSISTENCE_PROVIDER.getIdFor(definition))));
+  }
+
+  @Test
+  public void definitions() {
+    Concrete.ClassDefinition module = resolveNamesClass(
+        "\\function \\infixl 5 $ (A B : \\Prop) => A \\where \\function g => \\Prop\n" +
+        "\\data D | con1 | \\infixr 3 con2\n" +
+        "\\class C {\n" +
+        "  | F : \\Type0\n" +
+        "  \\function h => \\Prop\n" +
+        "}");
+    Concrete.ClassDefinition stubs = rebuild(module);
+
+    for (String path : new String[] { "$", "$.g", "D", "D.con1", "D.con2", "C", "C.F", "C.h" }) {
+      assertSameStub(get(stubs, path), get(module, path));
+    }
+    assertThat(((Abstract.ClassField) get(stubs, "C.F")).getParentDefinition(), is(sameInstance(get(stubs, "C"))));
+  }
+
+  @Test
+  public void superClasses() {
+    Concrete.ClassDefinition module = resolveNamesClass(
+        "\\class A {\n" +
+        "  | x : \\Type0\n" +
+        "}\n" +
+        "\\class B \\extends A");
+    Concrete.ClassDefinition stubs = rebuild(module);
+
+    Abstract.ClassDefinition stubB = (Abstract.ClassDefinition) get(stubs, "B");
+    assertThat(stubB.getSuperClasses(), hasSize(1));
+    assertThat(Abstract.getUnderlyingClassDef(stubB.getSuperClasses().iterator().next().getSuperClass()), is(sameInstance(get(stubs, "A"))));
+    assertSameStub(get(stubs, "B.x"), get(module, "A.x"));
+  }
+
+  @Test
+  public void classViewsAndInstances() {
+    Concrete.ClassDefinition module = resolveNamesClass(
+        "\\class X {\n" +
+        "  | A : \\Type0\n" +
+        "  | B : A -> \\Type0\n" +
+        "}\n" +
+        "\\view X' \\on X \\by A { B }\n" +
+        "\\data D | c\n" +
+        "\\default \\instance D-X => \\new X' { A => D | B => \\lam _ => D }");
+    Concrete.ClassDefinition stubs = rebuild(module);
+
+    assertSameStub(get(stubs, "X'"), get(module, "X'"));
+    assertSameStub(get(stubs, "B"), get(module, "B"));
+    assertSameStub(get(stubs, "D-X"), get(module, "D-X"));
+
+    Abstract.ClassView view = (Abstract.ClassView) get(stubs, "X'");
+    assertThat(view.getUnderlyingClassReference().getReferent(), is(sameInstance(get(stubs, "X"))));
+    assertThat(view.getClassifyingField(), is(sameInstance(get(stubs, "X.A"))));
+    assertThat(((Abstract.ClassViewField) get(stubs, "B")).getUnderlyingField(), is(sameInstance(get(stubs, "X.B"))));
+
+    Abstract.ClassViewInstance instance = (Abstract.ClassViewInstance) get(stubs, "D-X");
+    assertThat(instance.isDefault(), is(true));
+    assertThat(instance.getClassView().getReferent(), is(sameInstance(view)));
+    assertThat(instance.getClassifyingDefinition(), is(sameInstance(get(stubs, "D"))));
+  }
+
+  @Test
+  public void parameters() {
+    Concrete.ClassDefinition module = resolveNamesClass(
+        "\\class X {\n" +
+        "  | A : \\Type0\n" +
+        "}\n" +
+        "\\view X' \\on X \\by A { }\n" +
+        "\\function f {x : X'} (a b : x.A) => a\n" +
+        "\\data D (T : \\Type0) | con {x : X'} (a : x.A)");
+    Concrete.ClassDefinition stubs = rebuild(module);
+
+    List<? extends Abstract.Parameter> parameters = ((Abstract.FunctionDefinition) get(stubs, "f")).getParameters();
+    assertThat(parameters, hasSize(2));
+    assertThat(parameters.get(0).getExplicit(), is(false));
+    assertThat(((Abstract.TelescopeParameter) parameters.get(0)).getReferableList(), hasSize(1));
+    assertThat(Abstract.getUnderlyingClassView(((Abstract.TypeParameter) parameters.get(0)).getType()), is(sameInstance(get(stubs, "X'"))));
+    assertThat(parameters.get(1).getExplicit(), is(true));
+    assertThat(((Abstract.TelescopeParameter) parameters.get(1)).getReferableList(), hasSize(2));
+    assertThat(Abstract.getUnderlyingClassView(((Abstract.TypeParameter) parameters.get(1)).getType()), is(nullValue()));
+
+    assertThat(((Abstract.DataDefinition) get(stubs, "D")).getParameters(), hasSize(1));
+    List<? extends Abstract.TypeParameter> conParameters = ((Abstract.Constructor) get(stubs, "D.con")).getParameters();
+    assertThat(conParameters, hasSize(2));
+    assertThat(conParameters.get(0).getExplicit(), is(false));
+    assertThat(Abstract.getUnderlyingClassView(conParameters.get(0).getType()), is(sameInstance(get(stubs, "X'"))));
+    assertThat(conParameters.get(1).getExplicit(), is(true));
+  }
+}
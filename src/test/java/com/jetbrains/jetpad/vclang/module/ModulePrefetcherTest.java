@@ -0,0 +1,114 @@
+package com.jetbrains.jetpad.vclang.module;
+
+import com.jetbrains.jetpad.vclang.frontend.BaseModuleLoader;
+import com.jetbrains.jetpad.vclang.frontend.storage.FileStorage;
+import com.jetbrains.jetpad.vclang.frontend.storage.ModulePrefetcher;
+import com.jetbrains.jetpad.vclang.naming.NameResolverTestCase;
+import com.jetbrains.jetpad.vclang.naming.namespace.ModuleNamespace;
+import com.jetbrains.jetpad.vclang.term.Abstract;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static com.jetbrains.jetpad.vclang.module.ModulePath.moduleName;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class ModulePrefetcherTest extends NameResolverTestCase {
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  private final ModulePrefetcher prefetcher = new ModulePrefetcher(2);
+  private FileStorage storage;
+  private BaseModuleLoader<FileStorage.SourceId> moduleLoader;
+
+  @Before
+  public void initialize() {
+    storage = new FileStorage(folder.getRoot().toPath(), null, nameResolver, moduleNsProvider);
+    storage.setPrefetcher(prefetcher);
+    moduleLoader = new BaseModuleLoader<>(storage, errorReporter);
+    nameResolver.setModuleResolver(moduleLoader);
+  }
+
+  @After
+  public void shutdown() {
+    prefetcher.shutdown();
+  }
+
+  private void write(String text, String... path) throws IOException {
+    Path file = folder.getRoot().toPath();
+    for (int i = 0; i < path.length - 1; i++) {
+      file = file.resolve(path[i]);
+    }
+    Files.createDirectories(file);
+    Files.write(FileStorage.sourceFile(file.resolve(path[path.length - 1])), text.getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void prefetchedImports() throws IOException {
+    write("\\function a => ::B.b", "A");
+    write("\\function b => x\n \\function x => ::B::C.c", "B");
+    write("\\function c => 0", "B", "C");
+
+    prefetcher.prefetch(moduleName("A"));
+    Abstract.ClassDefinition moduleA = moduleLoader.load(storage.locateModule(moduleName("A")));
+    assertThat(moduleA, is(notNullValue()));
+    assertThat(errorList, containsErrors(0));
+    // A, B and B.C are referred to only in module calls and all of them are parsed by the prefetcher
+    assertThat(prefetcher.getHits(), is(3));
+
+    ModuleNamespace moduleBNs = nameResolver.resolveModuleNamespace(moduleName("B"));
+    Abstract.ClassDefinition moduleB = moduleBNs.getRegisteredClass();
+    Abstract.ClassDefinition moduleC = nameResolver.resolveModuleNamespace(moduleName("B", "C")).getRegisteredClass();
+
+    Abstract.ReferenceExpression defCall1 = (Abstract.ReferenceExpression) ((Abstract.TermFunctionBody) ((Abstract.FunctionDefinition) get(moduleA, "a")).getBody()).getTerm();
+    assertThat(defCall1.getReferent(), is(get(moduleB, "b")));
+    Abstract.ReferenceExpression defCall2 = (Abstract.ReferenceExpression) ((Abstract.TermFunctionBody) ((Abstract.FunctionDefinition) get(moduleB, "x")).getBody()).getTerm();
+    assertThat(defCall2.getReferent(), is(get(moduleC, "c")));
+  }
+
+  @Test
+  public void parseErrors() throws IOException {
+    write("\\function a => ::B.b", "A");
+    write("\\function b =>", "B");
+
+    prefetcher.prefetch(moduleName("A"));
+    assertThat(moduleLoader.load(storage.locateModule(moduleName("A"))), is(nullValue()));
+    assertThat(errorList, containsErrors(-1));
+  }
+
+  @Test
+  public void notPrefetched() throws IOException {
+    write("\\function a => 0", "A");
+    write("\\function b => ::A.a", "B");
+
+    prefetcher.prefetch(moduleName("A"));
+    Abstract.ClassDefinition moduleB = moduleLoader.load(storage.locateModule(moduleName("B")));
+    assertThat(moduleB, is(notNullValue()));
+    assertThat(errorList, containsErrors(0));
+    assertThat(prefetcher.getHits(), is(1));
+  }
+
+  @Test
+  public void prefetchedAgain() throws IOException {
+    write("\\function a => 0", "A");
+
+    prefetcher.prefetch(moduleName("A"));
+    assertThat(moduleLoader.load(storage.locateModule(moduleName("A"))), is(notNullValue()));
+    moduleNsProvider.unregisterModule(moduleName("A"));
+
+    prefetcher.prefetch(moduleName("A"));
+    assertThat(moduleLoader.load(storage.locateModule(moduleName("A"))), is(notNullValue()));
+    assertThat(errorList, containsErrors(0));
+    assertThat(prefetcher.getHits(), is(2));
+  }
+}
@@ -1,10 +1,19 @@
 package com.jetbrains.jetpad.vclang.module;
 
+import com.jetbrains.jetpad.vclang.core.definition.Constructor;
+import com.jetbrains.jetpad.vclang.core.definition.DataDefinition;
 import com.jetbrains.jetpad.vclang.core.definition.Definition;
+import com.jetbrains.jetpad.vclang.core.definition.FunctionDefinition;
+import com.jetbrains.jetpad.vclang.core.elimtree.LeafElimTree;
+import com.jetbrains.jetpad.vclang.core.expr.DataCallExpression;
+import com.jetbrains.jetpad.vclang.core.expr.FunCallExpression;
 import com.jetbrains.jetpad.vclang.module.caching.CacheLoadingException;
+import com.jetbrains.jetpad.vclang.module.caching.DependencyCacheLoadingException;
 import com.jetbrains.jetpad.vclang.term.Abstract;
 import org.junit.Test;
 
+import static com.jetbrains.jetpad.vclang.core.expr.ExpressionFactory.Suc;
+import static com.jetbrains.jetpad.vclang.core.expr.ExpressionFactory.Zero;
 import static com.jetbrains.jetpad.vclang.typechecking.Matchers.*;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.Matchers.*;
@@ -161,4 +170,124 @@ public class SimpleCachingTest extends CachingTestCase {
       assertThat(e.getMessage(), is(equalTo("Source has changed")));
     }
   }
+
+  @Test
+  public void dependencyTypecheckedWithSameInterface() {
+    storage.add(ModulePath.moduleName("A"), "" +
+        "\\data D | con\n" +
+        "\\function a : D => con");
+    MemoryStorage.SourceId b = storage.add(ModulePath.moduleName("B"), "\\function b : ::A.D => ::A.a");
+    Abstract.ClassDefinition bClass = moduleLoader.load(b);
+    typecheck(bClass);
+    persist(b);
+    tcState.reset();
+
+    storage.incVersion(ModulePath.moduleName("A"));
+    try {
+      tryLoad(b, bClass, false);
+      fail("Exception expected");
+    } catch (DependencyCacheLoadingException e) {
+      assertThat(e.getMessage(), is(equalTo("Source has changed")));
+    } catch (CacheLoadingException e) {
+      fail(e.toString());
+    }
+
+    Abstract.ClassDefinition aClass = nameResolver.resolveModuleNamespace(ModulePath.moduleName("A")).getRegisteredClass();
+    typecheck(aClass);
+    load(b, bClass);
+
+    FunctionDefinition bDef = (FunctionDefinition) tcState.getTypechecked(get(bClass, "b"));
+    assertThat(((DataCallExpression) bDef.getResultType()).getDefinition(), is(tcState.getTypechecked(get(aClass, "D"))));
+    FunCallExpression aCall = (FunCallExpression) ((LeafElimTree) bDef.getBody()).getExpression();
+    assertThat(aCall.getDefinition(), is(tcState.getTypechecked(get(aClass, "a"))));
+  }
+
+  @Test
+  public void dependencyBodyChanged() {
+    loadPrelude();
+
+    storage.add(ModulePath.moduleName("A"), "\\function f : Nat => 0");
+    MemoryStorage.SourceId b = storage.add(ModulePath.moduleName("B"), "\\function p : ::A.f = 0 => path (\\lam _ => 0)");
+    Abstract.ClassDefinition bClass = moduleLoader.load(b);
+    typecheck(bClass);
+    persist(b);
+    cacheManager.unloadCache(b);
+    load(b, bClass);
+    cacheManager.unloadCache(b);
+
+    // The type of p is correct only as long as f unfolds to 0
+    Abstract.ClassDefinition aClass = nameResolver.resolveModuleNamespace(ModulePath.moduleName("A")).getRegisteredClass();
+    FunctionDefinition f = (FunctionDefinition) tcState.getTypechecked(get(aClass, "f"));
+    f.setBody(new LeafElimTree(f.getParameters(), Suc(Zero())));
+    try {
+      tryLoad(b, bClass, false);
+      fail("Exception expected");
+    } catch (CacheLoadingException e) {
+      assertThat(e.getMessage(), is(equalTo("Interface of a dependency has changed")));
+    }
+  }
+
+  @Test
+  public void lazyDefinitions() {
+    MemoryStorage.SourceId a = storage.add(ModulePath.moduleName("A"), "" +
+        "\\data D | con1 | con2 D\n" +
+        "\\function f (d : D) : D => \\elim d | con1 => con1 | con2 d => f d");
+    Abstract.ClassDefinition aClass = moduleLoader.load(a);
+    typecheck(aClass);
+
+    persist(a);
+    tcState.reset();
+
+    load(a, aClass);
+    Constructor con2 = (Constructor) tcState.getTypechecked(get(aClass, "D.con2"));
+    assertThat(con2.getParameters().hasNext(), is(true));
+    assertThat(con2.getDataType().getConstructors(), hasSize(2));
+    FunctionDefinition f = (FunctionDefinition) tcState.getTypechecked(get(aClass, "f"));
+    assertThat(f.getBody(), is(notNullValue()));
+    assertThat(f.getResultType(), is(instanceOf(DataCallExpression.class)));
+  }
+
+  @Test
+  public void lazyDependency() {
+    storage.add(ModulePath.moduleName("A"), "" +
+        "\\data D | con\n" +
+        "\\function a : D => con");
+    MemoryStorage.SourceId b = storage.add(ModulePath.moduleName("B"), "\\function b : ::A.D => ::A.a");
+    Abstract.ClassDefinition bClass = moduleLoader.load(b);
+    typecheck(bClass);
+
+    persist(b);
+    tcState.reset();
+
+    load(b, bClass);
+    FunctionDefinition bDef = (FunctionDefinition) tcState.getTypechecked(get(bClass, "b"));
+    DataDefinition dDef = ((DataCallExpression) bDef.getResultType()).getDefinition();
+    assertThat(dDef.getConstructors(), hasSize(1));
+    FunctionDefinition aDef = (FunctionDefinition) ((FunCallExpression) ((LeafElimTree) bDef.getBody()).getExpression()).getDefinition();
+    assertThat(aDef.getResultType(), is(instanceOf(DataCallExpression.class)));
+    assertThat(aDef.getBody(), is(notNullValue()));
+  }
+
+  @Test
+  public void longChainOfReferences() {
+    StringBuilder text = new StringBuilder("\\data D | con\n\\function f0 : D => con\n");
+    for (int i = 1; i < 2000; i++) {
+      text.append("\\function f").append(i).append(" : D => f").append(i - 1).append("\n");
+    }
+    MemoryStorage.SourceId a = storage.add(ModulePath.moduleName("A"), text.toString());
+    Abstract.ClassDefinition aClass = moduleLoader.load(a);
+    typecheck(aClass);
+
+    persist(a);
+    tcState.reset();
+
+    load(a, aClass);
+    FunctionDefinition f = (FunctionDefinition) tcState.getTypechecked(get(aClass, "f1999"));
+    for (int i = 1999; i > 0; i--) {
+      assertThat(f.getBody(), is(notNullValue()));
+      f = (FunctionDefinition) ((FunCallExpression) ((LeafElimTree) f.getBody()).getExpression()).getDefinition();
+    }
+    assertThat(f, is(tcState.getTypechecked(get(aClass, "f0"))));
+    assertThat(f.getBody(), is(notNullValue()));
+  }
 }
@@ -1,9 +1,24 @@
 package com.jetbrains.jetpad.vclang.naming;
 
+import com.jetbrains.jetpad.vclang.core.context.Utils;
+import com.jetbrains.jetpad.vclang.frontend.Concrete;
+import com.jetbrains.jetpad.vclang.frontend.resolving.LocalContext;
+import com.jetbrains.jetpad.vclang.naming.namespace.SimpleNamespace;
+import com.jetbrains.jetpad.vclang.naming.scope.primitive.MergeScope;
+import com.jetbrains.jetpad.vclang.naming.scope.primitive.NamespaceScope;
+import com.jetbrains.jetpad.vclang.naming.scope.primitive.Scope;
+import com.jetbrains.jetpad.vclang.term.Abstract;
 import com.jetbrains.jetpad.vclang.typechecking.TypeCheckingTestCase;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static com.jetbrains.jetpad.vclang.frontend.ConcreteExpressionFactory.POSITION;
+import static org.junit.Assert.*;
+
 public class ScopeTest extends TypeCheckingTestCase {
   @Test
   public void nameResolverLamOpenError() {
@@ -67,4 +82,45 @@ public class ScopeTest extends TypeCheckingTestCase {
   public void notInScopeTest() {
     resolveNamesClass("\\class A { \\function x => 0 } \\function y : Nat => x", 1);
   }
+
+  private static Abstract.Definition function(String name) {
+    return new Concrete.FunctionDefinition(POSITION, name, Abstract.Precedence.DEFAULT, Collections.emptyList(), null, null, Collections.emptyList());
+  }
+
+  @Test
+  public void mergeScopeTest() {
+    Abstract.Definition x1 = function("x");
+    Abstract.Definition x2 = function("x");
+    Abstract.Definition y = function("y");
+    SimpleNamespace namespace1 = new SimpleNamespace(x1);
+    namespace1.addDefinition(y);
+    MergeScope scope = new MergeScope(Arrays.asList(new NamespaceScope(namespace1), new NamespaceScope(new SimpleNamespace(x2))));
+
+    assertEquals(new HashSet<>(Arrays.asList("x", "y")), scope.getNames());
+    assertSame(y, scope.resolveName("y"));
+    assertNull(scope.resolveName("z"));
+    try {
+      scope.resolveName("x");
+      fail();
+    } catch (Scope.InvalidScopeException ignored) {
+    }
+  }
+
+  @Test
+  public void localContextTest() {
+    Abstract.ReferableSourceNode x1 = new Concrete.LocalVariable(POSITION, "x");
+    Abstract.ReferableSourceNode x2 = new Concrete.LocalVariable(POSITION, "x");
+    Abstract.ReferableSourceNode y = new Concrete.LocalVariable(POSITION, "y");
+    LocalContext context = new LocalContext();
+    context.add(x1);
+    try (Utils.ContextSaver ignored = new Utils.ContextSaver(context)) {
+      context.add(y);
+      context.add(x2);
+      assertSame(x2, context.resolveName("x"));
+      assertSame(y, context.resolveName("y"));
+    }
+    assertEquals(1, context.size());
+    assertSame(x1, context.resolveName("x"));
+    assertNull(context.resolveName("y"));
+  }
 }
@@ -9,6 +9,7 @@ import com.jetbrains.jetpad.vclang.core.expr.ClassCallExpression;
 import com.jetbrains.jetpad.vclang.core.expr.Expression;
 import com.jetbrains.jetpad.vclang.core.expr.SigmaExpression;
 import com.jetbrains.jetpad.vclang.core.expr.visitor.NormalizeVisitor;
+import com.jetbrains.jetpad.vclang.core.expr.visitor.TypeCache;
 import com.jetbrains.jetpad.vclang.core.sort.Level;
 import com.jetbrains.jetpad.vclang.core.sort.Sort;
 import com.jetbrains.jetpad.vclang.term.Prelude;
@@ -21,7 +22,7 @@ import java.util.List;
 
 import static com.jetbrains.jetpad.vclang.ExpressionFactory.*;
 import static com.jetbrains.jetpad.vclang.core.expr.ExpressionFactory.*;
-import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.*;
 
 public class GetTypeTest extends TypeCheckingTestCase {
   private static void testType(Expression expected, TypeCheckClassResult result) {
@@ -167,4 +168,31 @@ public class GetTypeTest extends TypeCheckingTestCase {
         fromPiParameters(dType, dParams)
     );
   }
+
+  @Test
+  public void typeCacheTest() {
+    TypeCheckClassResult result = typeCheckClass("\\function f (n : Nat) : Nat => n");
+    Expression call = FunCall((FunctionDefinition) result.getDefinition("f"), Sort.SET0, Zero());
+    TypeCache cache = new TypeCache();
+    TypeCache previous = TypeCache.setCurrent(cache);
+    try {
+      Expression type = call.getType();
+      assertSame(type, call.getType());
+      assertEquals(Nat(), type);
+      assertEquals(1, cache.getHits());
+      assertEquals(1, cache.getMisses());
+    } finally {
+      TypeCache.setCurrent(previous);
+    }
+  }
+
+  @Test
+  public void mayHaveUnitTypeTest() {
+    TypeCheckClassResult result = typeCheckClass("\\class C { | x : Nat } \\function f (n : Nat) : Nat => n \\function g (c : C) : C => c");
+    assertFalse(Zero().mayHaveUnitType());
+    assertFalse(Nat().mayHaveUnitType());
+    assertFalse(FunCall((FunctionDefinition) result.getDefinition("f"), Sort.SET0, Zero()).mayHaveUnitType());
+    FunctionDefinition g = (FunctionDefinition) result.getDefinition("g");
+    assertTrue(FunCall(g, Sort.SET0, Ref(g.getParameters())).mayHaveUnitType());
+  }
 }
@@ -0,0 +1,105 @@
+package com.jetbrains.jetpad.vclang.term.expr;
+
+import com.jetbrains.jetpad.vclang.core.context.param.DependentLink;
+import com.jetbrains.jetpad.vclang.core.context.param.EmptyDependentLink;
+import com.jetbrains.jetpad.vclang.core.definition.Constructor;
+import com.jetbrains.jetpad.vclang.core.definition.Definition;
+import com.jetbrains.jetpad.vclang.core.definition.FunctionDefinition;
+import com.jetbrains.jetpad.vclang.core.elimtree.BranchElimTree;
+import com.jetbrains.jetpad.vclang.core.elimtree.ElimTree;
+import com.jetbrains.jetpad.vclang.core.elimtree.LeafElimTree;
+import com.jetbrains.jetpad.vclang.core.expr.ConCallExpression;
+import com.jetbrains.jetpad.vclang.core.expr.Expression;
+import com.jetbrains.jetpad.vclang.core.expr.IntegerExpression;
+import com.jetbrains.jetpad.vclang.core.expr.visitor.NormalizeVisitor;
+import com.jetbrains.jetpad.vclang.core.sort.Sort;
+import com.jetbrains.jetpad.vclang.term.Prelude;
+import com.jetbrains.jetpad.vclang.typechecking.TypeCheckingTestCase;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.jetbrains.jetpad.vclang.ExpressionFactory.*;
+import static com.jetbrains.jetpad.vclang.core.expr.ExpressionFactory.*;
+import static org.junit.Assert.*;
+
+public class IntegerExpressionTest extends TypeCheckingTestCase {
+  private static final BigInteger BIG = BigInteger.TEN.pow(30);
+
+  // \function (+) (x y : Nat) : Nat => elim x | zero => y | suc x' => suc (x' + y)
+  private final FunctionDefinition plus;
+  // \function pred (x : Nat) : Nat => elim x | zero => zero | suc x' => x'
+  private final FunctionDefinition pred;
+
+  public IntegerExpressionTest() {
+    DependentLink xPlus = param("x", Nat());
+    DependentLink yPlus = param("y", Nat());
+    plus = new FunctionDefinition(null);
+    plus.setParameters(params(xPlus, yPlus));
+    plus.setResultType(Nat());
+    plus.setStatus(Definition.TypeCheckingStatus.NO_ERRORS);
+    Map<Constructor, ElimTree> plusChildren = new HashMap<>();
+    plusChildren.put(Prelude.ZERO, new LeafElimTree(yPlus, Ref(yPlus)));
+    plusChildren.put(Prelude.SUC, new LeafElimTree(xPlus, Suc(FunCall(plus, Sort.SET0, Ref(xPlus), Ref(yPlus)))));
+    plus.setBody(new BranchElimTree(EmptyDependentLink.getInstance(), plusChildren));
+    plus.setStatus(Definition.TypeCheckingStatus.NO_ERRORS);
+
+    DependentLink xPred = param("x", Nat());
+    pred = new FunctionDefinition(null);
+    pred.setParameters(xPred);
+    pred.setResultType(Nat());
+    pred.setStatus(Definition.TypeCheckingStatus.NO_ERRORS);
+    Map<Constructor, ElimTree> predChildren = new HashMap<>();
+    predChildren.put(Prelude.ZERO, new LeafElimTree(EmptyDependentLink.getInstance(), Zero()));
+    predChildren.put(Prelude.SUC, new LeafElimTree(xPred, Ref(xPred)));
+    pred.setBody(new BranchElimTree(EmptyDependentLink.getInstance(), predChildren));
+    pred.setStatus(Definition.TypeCheckingStatus.NO_ERRORS);
+  }
+
+  @Test
+  public void conCallView() {
+    Expression three = new IntegerExpression(3);
+    assertTrue(three.isInstance(ConCallExpression.class));
+    ConCallExpression conCall = three.cast(ConCallExpression.class);
+    assertEquals(Prelude.SUC, conCall.getDefinition());
+    assertEquals(BigInteger.valueOf(2), conCall.getDefCallArguments().get(0).cast(IntegerExpression.class).getInteger());
+    assertEquals(Prelude.ZERO, new IntegerExpression(0).cast(ConCallExpression.class).getDefinition());
+  }
+
+  @Test
+  public void compareWithConstructors() {
+    assertEquals(Suc(Suc(Zero())), new IntegerExpression(2));
+    assertEquals(new IntegerExpression(2), Suc(Suc(Zero())));
+    assertEquals(new IntegerExpression(2), Suc(new IntegerExpression(1)));
+    assertNotEquals(new IntegerExpression(3), new IntegerExpression(2));
+    assertNotEquals(new IntegerExpression(3), Suc(Zero()));
+  }
+
+  @Test
+  public void compareBig() {
+    assertEquals(new IntegerExpression(BIG), new IntegerExpression(BIG));
+    assertNotEquals(new IntegerExpression(BIG), new IntegerExpression(BIG.add(BigInteger.ONE)));
+  }
+
+  @Test
+  public void normalizeSucFolding() {
+    Expression result = FunCall(plus, Sort.SET0, new IntegerExpression(2), new IntegerExpression(3)).normalize(NormalizeVisitor.Mode.NF);
+    assertTrue(result instanceof IntegerExpression);
+    assertEquals(BigInteger.valueOf(5), ((IntegerExpression) result).getInteger());
+  }
+
+  @Test
+  public void matchBig() {
+    Expression result = FunCall(pred, Sort.SET0, new IntegerExpression(BIG)).normalize(NormalizeVisitor.Mode.NF);
+    assertTrue(result instanceof IntegerExpression);
+    assertEquals(BIG.subtract(BigInteger.ONE), ((IntegerExpression) result).getInteger());
+  }
+
+  @Test
+  public void prettyPrint() {
+    assertEquals(BIG.toString(), new IntegerExpression(BIG).toString());
+    assertEquals("3", Suc(new IntegerExpression(2)).toString());
+  }
+}
@@ -0,0 +1,73 @@
+package com.jetbrains.jetpad.vclang.term.expr.visitor;
+
+import com.jetbrains.jetpad.vclang.core.context.param.SingleDependentLink;
+import com.jetbrains.jetpad.vclang.core.definition.FunctionDefinition;
+import com.jetbrains.jetpad.vclang.core.expr.Expression;
+import com.jetbrains.jetpad.vclang.core.expr.FunCallExpression;
+import com.jetbrains.jetpad.vclang.core.expr.visitor.CompareVisitor;
+import com.jetbrains.jetpad.vclang.core.expr.visitor.ConversionCache;
+import com.jetbrains.jetpad.vclang.core.sort.Sort;
+import com.jetbrains.jetpad.vclang.typechecking.TypeCheckingTestCase;
+import com.jetbrains.jetpad.vclang.typechecking.TypecheckingProfiler;
+import com.jetbrains.jetpad.vclang.typechecking.implicitargs.equations.DummyEquations;
+import com.jetbrains.jetpad.vclang.typechecking.implicitargs.equations.Equations;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static com.jetbrains.jetpad.vclang.ExpressionFactory.*;
+import static com.jetbrains.jetpad.vclang.core.expr.ExpressionFactory.*;
+import static org.junit.Assert.*;
+
+public class ConversionCacheTest extends TypeCheckingTestCase {
+  @Before
+  public void enable() {
+    ConversionCache.setMaximumSize(16);
+    TypecheckingProfiler.setEnabled(true);
+  }
+
+  @After
+  public void disable() {
+    ConversionCache.setMaximumSize(0);
+    TypecheckingProfiler.setEnabled(false);
+  }
+
+  private static boolean compare(Expression expr1, Expression expr2) {
+    return CompareVisitor.compare(DummyEquations.getInstance(), Equations.CMP.EQ, expr1, expr2, null);
+  }
+
+  @Test
+  public void alphaEquivalentHashes() {
+    SingleDependentLink x = singleParam("x", Nat());
+    SingleDependentLink y = singleParam("y", Nat());
+    assertEquals(Lam(x, Suc(Ref(x))).getStructuralHash(), Lam(y, Suc(Ref(y))).getStructuralHash());
+    assertNotEquals(Suc(Zero()).getStructuralHash(), Suc(Suc(Zero())).getStructuralHash());
+  }
+
+  @Test
+  public void syntacticMatch() {
+    SingleDependentLink x = singleParam("x", Nat());
+    SingleDependentLink y = singleParam("y", Nat());
+    assertTrue(compare(Lam(x, Suc(Ref(x))), Lam(y, Suc(Ref(y)))));
+    assertEquals(1, TypecheckingProfiler.getInstance().getCount(TypecheckingProfiler.Counter.STRUCTURAL_MATCHES));
+    assertEquals(0, ConversionCache.getInstance().size());
+  }
+
+  @Test
+  public void positiveResultsCached() {
+    FunctionDefinition f = (FunctionDefinition) typeCheckDef("\\function f (n : Nat) : Nat => suc n");
+    Expression call1 = new FunCallExpression(f, Sort.SET0, Collections.singletonList(Zero()));
+    Expression call2 = new FunCallExpression(f, Sort.SET0, Collections.singletonList(Zero()));
+
+    assertTrue(compare(call1, Suc(Zero())));
+    assertEquals(1, ConversionCache.getInstance().size());
+    assertTrue(compare(call2, Suc(Zero())));
+    assertEquals(1, TypecheckingProfiler.getInstance().getCount(TypecheckingProfiler.Counter.CONVERSION_CACHE_HITS));
+    assertEquals(1, TypecheckingProfiler.getInstance().getCount(TypecheckingProfiler.Counter.CONVERSION_CACHE_MISSES));
+
+    assertFalse(compare(call1, Zero()));
+    assertEquals(1, ConversionCache.getInstance().size());
+  }
+}
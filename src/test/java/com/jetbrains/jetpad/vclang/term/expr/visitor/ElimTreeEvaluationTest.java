@@ -0,0 +1,120 @@
+package com.jetbrains.jetpad.vclang.term.expr.visitor;
+
+import com.jetbrains.jetpad.vclang.core.context.binding.TypedBinding;
+import com.jetbrains.jetpad.vclang.core.definition.Constructor;
+import com.jetbrains.jetpad.vclang.core.definition.FunctionDefinition;
+import com.jetbrains.jetpad.vclang.core.elimtree.ArgumentStack;
+import com.jetbrains.jetpad.vclang.core.elimtree.ElimTree;
+import com.jetbrains.jetpad.vclang.core.expr.Expression;
+import com.jetbrains.jetpad.vclang.core.expr.visitor.NormalizeVisitor;
+import com.jetbrains.jetpad.vclang.core.sort.Sort;
+import com.jetbrains.jetpad.vclang.typechecking.TypeCheckingTestCase;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static com.jetbrains.jetpad.vclang.ExpressionFactory.*;
+import static com.jetbrains.jetpad.vclang.core.expr.ExpressionFactory.*;
+import static org.junit.Assert.*;
+
+public class ElimTreeEvaluationTest extends TypeCheckingTestCase {
+  // f 0 y = 0, f 1 y = y, f (n + 2) 0 = n, f (n + 2) (m + 1) = f n m
+  private static final String NESTED =
+    "\\function f (x y : Nat) : Nat => \\elim x, y\n" +
+    "  | zero, _ => 0\n" +
+    "  | suc zero, y => y\n" +
+    "  | suc (suc x), zero => x\n" +
+    "  | suc (suc x), suc y => f x y";
+
+  private static Expression num(int n) {
+    Expression result = Zero();
+    for (int i = 0; i < n; i++) {
+      result = Suc(result);
+    }
+    return result;
+  }
+
+  @After
+  public void stackIsRestored() {
+    assertEquals(0, ArgumentStack.get().size());
+  }
+
+  @Test
+  public void nestedPatterns() {
+    FunctionDefinition f = (FunctionDefinition) typeCheckClass(NESTED).getDefinition("f");
+    assertEquals(num(0), FunCall(f, Sort.SET0, num(0), num(5)).normalize(NormalizeVisitor.Mode.NF));
+    assertEquals(num(5), FunCall(f, Sort.SET0, num(1), num(5)).normalize(NormalizeVisitor.Mode.NF));
+    assertEquals(num(2), FunCall(f, Sort.SET0, num(4), num(0)).normalize(NormalizeVisitor.Mode.NF));
+    assertEquals(num(2), FunCall(f, Sort.SET0, num(6), num(1)).normalize(NormalizeVisitor.Mode.NF));
+  }
+
+  @Test
+  public void nestedConstructorArguments() {
+    TypeCheckClassResult result = typeCheckClass(
+        "\\data Tree | leaf | node Tree Tree\n" +
+        "\\function left-depth (t : Tree) : Nat => \\elim t\n" +
+        "  | leaf => 0\n" +
+        "  | node leaf _ => 1\n" +
+        "  | node (node l _) _ => suc (suc (left-depth l))");
+    FunctionDefinition leftDepth = (FunctionDefinition) result.getDefinition("left-depth");
+    Constructor leaf = (Constructor) result.getDefinition("Tree.leaf");
+    Constructor node = (Constructor) result.getDefinition("Tree.node");
+
+    Expression tree = ConCall(leaf, Sort.SET0, Collections.emptyList());
+    for (int i = 0; i < 3; i++) {
+      tree = ConCall(node, Sort.SET0, Collections.emptyList(), tree, ConCall(leaf, Sort.SET0, Collections.emptyList()));
+    }
+    assertEquals(num(3), FunCall(leftDepth, Sort.SET0, tree).normalize(NormalizeVisitor.Mode.NF));
+  }
+
+  @Test
+  public void nestedEvaluationOfArguments() {
+    // Matching on an argument of the outer call evaluates the inner call on the same stack
+    FunctionDefinition f = (FunctionDefinition) typeCheckClass(NESTED).getDefinition("f");
+    Expression inner = FunCall(f, Sort.SET0, num(1), num(3));
+    // f (f 1 3) (f 7 2) = f 3 1 = f 1 0 = 0
+    assertEquals(num(0), FunCall(f, Sort.SET0, inner, FunCall(f, Sort.SET0, num(7), num(2))).normalize(NormalizeVisitor.Mode.NF));
+  }
+
+  @Test
+  public void stuckOnNestedArgument() {
+    FunctionDefinition f = (FunctionDefinition) typeCheckClass(NESTED).getDefinition("f");
+    TypedBinding n = new TypedBinding("n", Nat());
+
+    Expression stuck = FunCall(f, Sort.SET0, Suc(Ref(n)), num(0));
+    assertTrue(stuck.isWHNF());
+    assertEquals(Ref(n), stuck.getStuckExpression());
+    assertEquals(stuck, stuck.normalize(NormalizeVisitor.Mode.WHNF));
+
+    Expression reducible = FunCall(f, Sort.SET0, num(1), Ref(n));
+    assertFalse(reducible.isWHNF());
+    assertEquals(Ref(n), reducible.normalize(NormalizeVisitor.Mode.WHNF));
+  }
+
+  @Test
+  public void partialApplication() {
+    TypeCheckClassResult result = typeCheckClass(
+        NESTED + "\n" +
+        "\\function app (k : Nat -> Nat) (n : Nat) : Nat => k n\n" +
+        "\\function g : Nat => app (f 1) 7\n" +
+        "\\function h : Nat => app (f 6) 1");
+    assertEquals(num(7), FunCall((FunctionDefinition) result.getDefinition("g"), Sort.SET0).normalize(NormalizeVisitor.Mode.NF));
+    assertEquals(num(2), FunCall((FunctionDefinition) result.getDefinition("h"), Sort.SET0).normalize(NormalizeVisitor.Mode.NF));
+  }
+
+  @Test
+  public void doesEvaluatePartialArguments() {
+    FunctionDefinition f = (FunctionDefinition) typeCheckClass(NESTED).getDefinition("f");
+    ElimTree body = (ElimTree) f.getBody();
+    TypedBinding n = new TypedBinding("n", Nat());
+
+    assertTrue(NormalizeVisitor.INSTANCE.doesEvaluate(body, Collections.singletonList(num(0))));
+    assertTrue(NormalizeVisitor.INSTANCE.doesEvaluate(body, Collections.singletonList(num(1))));
+    assertTrue(NormalizeVisitor.INSTANCE.doesEvaluate(body, Collections.singletonList(num(3))));
+    assertFalse(NormalizeVisitor.INSTANCE.doesEvaluate(body, Collections.singletonList(Suc(Ref(n)))));
+    assertTrue(NormalizeVisitor.INSTANCE.doesEvaluate(body, Arrays.asList(num(3), num(0))));
+    assertFalse(NormalizeVisitor.INSTANCE.doesEvaluate(body, Arrays.asList(num(3), Ref(n))));
+  }
+}
@@ -0,0 +1,196 @@
+package com.jetbrains.jetpad.vclang.term.expr.visitor;
+
+import com.jetbrains.jetpad.vclang.core.context.param.DependentLink;
+import com.jetbrains.jetpad.vclang.core.context.param.EmptyDependentLink;
+import com.jetbrains.jetpad.vclang.core.context.param.SingleDependentLink;
+import com.jetbrains.jetpad.vclang.core.definition.Constructor;
+import com.jetbrains.jetpad.vclang.core.definition.Definition;
+import com.jetbrains.jetpad.vclang.core.definition.FunctionDefinition;
+import com.jetbrains.jetpad.vclang.core.elimtree.BranchElimTree;
+import com.jetbrains.jetpad.vclang.core.elimtree.ElimTree;
+import com.jetbrains.jetpad.vclang.core.elimtree.LeafElimTree;
+import com.jetbrains.jetpad.vclang.core.expr.Expression;
+import com.jetbrains.jetpad.vclang.core.expr.LetClause;
+import com.jetbrains.jetpad.vclang.core.expr.LetExpression;
+import com.jetbrains.jetpad.vclang.core.expr.visitor.EnvironmentNormalizer;
+import com.jetbrains.jetpad.vclang.core.expr.visitor.NormalizeVisitor;
+import com.jetbrains.jetpad.vclang.core.sort.Sort;
+import com.jetbrains.jetpad.vclang.term.Abstract;
+import com.jetbrains.jetpad.vclang.term.Prelude;
+import com.jetbrains.jetpad.vclang.typechecking.TypeCheckingTestCase;
+import com.jetbrains.jetpad.vclang.typechecking.TypecheckingProfiler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import static com.jetbrains.jetpad.vclang.ExpressionFactory.*;
+import static com.jetbrains.jetpad.vclang.core.expr.ExpressionFactory.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EnvironmentNormalizerTest extends TypeCheckingTestCase {
+  // \function (+) (x y : Nat) : Nat => elim x | zero => y | suc x' => suc (x' + y)
+  private final FunctionDefinition plus;
+  // \function (*) (x y : Nat) : Nat => elim x | zero => zero | suc x' => y + x' * y
+  private final FunctionDefinition mul;
+
+  private NormalizeVisitor.Engine previousEngine;
+
+  public EnvironmentNormalizerTest() {
+    DependentLink xPlus = param("x", Nat());
+    DependentLink yPlus = param("y", Nat());
+    plus = new FunctionDefinition(null);
+    plus.setParameters(params(xPlus, yPlus));
+    plus.setResultType(Nat());
+    plus.setStatus(Definition.TypeCheckingStatus.NO_ERRORS);
+    Map<Constructor, ElimTree> plusChildren = new HashMap<>();
+    plusChildren.put(Prelude.ZERO, new LeafElimTree(yPlus, Ref(yPlus)));
+    plusChildren.put(Prelude.SUC, new LeafElimTree(xPlus, Suc(FunCall(plus, Sort.SET0, Ref(xPlus), Ref(yPlus)))));
+    plus.setBody(new BranchElimTree(EmptyDependentLink.getInstance(), plusChildren));
+
+    DependentLink xMul = param("x", Nat());
+    DependentLink yMul = param("y", Nat());
+    mul = new FunctionDefinition(null);
+    mul.setParameters(params(xMul, yMul));
+    mul.setResultType(Nat());
+    mul.setStatus(Definition.TypeCheckingStatus.NO_ERRORS);
+    Map<Constructor, ElimTree> mulChildren = new HashMap<>();
+    mulChildren.put(Prelude.ZERO, new LeafElimTree(yMul, Zero()));
+    mulChildren.put(Prelude.SUC, new LeafElimTree(xMul, FunCall(plus, Sort.SET0, Ref(yMul), FunCall(mul, Sort.SET0, Ref(xMul), Ref(yMul)))));
+    mul.setBody(new BranchElimTree(EmptyDependentLink.getInstance(), mulChildren));
+  }
+
+  @Before
+  public void selectEngine() {
+    previousEngine = NormalizeVisitor.setCurrentEngine(NormalizeVisitor.Engine.ENVIRONMENT);
+  }
+
+  @After
+  public void restoreEngine() {
+    NormalizeVisitor.setCurrentEngine(previousEngine);
+  }
+
+  private static Expression number(int n) {
+    Expression result = Zero();
+    for (int i = 0; i < n; i++) {
+      result = Suc(result);
+    }
+    return result;
+  }
+
+  private void assertSameAsSubstitution(Expression expr) {
+    assertEquals(expr.accept(NormalizeVisitor.INSTANCE, NormalizeVisitor.Mode.WHNF), EnvironmentNormalizer.normalize(expr));
+  }
+
+  @Test
+  public void beta() {
+    // (\x y. x) (suc zero) = \z. suc zero
+    SingleDependentLink x = singleParam("x", Nat());
+    SingleDependentLink y = singleParam("y", Nat());
+    SingleDependentLink z = singleParam("z", Nat());
+    Expression expr = Apps(Lam(x, Lam(y, Ref(x))), Suc(Zero()));
+    assertEquals(Lam(z, Suc(Zero())), EnvironmentNormalizer.normalize(expr));
+    assertSameAsSubstitution(expr);
+  }
+
+  @Test
+  public void partialApplication() {
+    // (\x y. y x) (suc zero) (\z. suc z) = suc (suc zero)
+    SingleDependentLink x = singleParam("x", Nat());
+    SingleDependentLink y = singleParam("y", Pi(Nat(), Nat()));
+    SingleDependentLink z = singleParam("z", Nat());
+    Expression expr = Apps(Lam(x, Lam(y, Apps(Ref(y), Ref(x)))), Suc(Zero()), Lam(z, Suc(Ref(z))));
+    assertEquals(number(2), EnvironmentNormalizer.normalize(expr).normalize(NormalizeVisitor.Mode.NF));
+  }
+
+  @Test
+  public void letClause() {
+    // \let x => suc zero \in x + x = 2
+    LetClause x = let("x", Suc(Zero()));
+    Expression expr = new LetExpression(lets(x), FunCall(plus, Sort.SET0, Ref(x), Ref(x)));
+    assertEquals(number(2), expr.normalize(NormalizeVisitor.Mode.NF));
+  }
+
+  @Test
+  public void stuck() {
+    // x + 3 is stuck
+    DependentLink x = param("x", Nat());
+    Expression expr = FunCall(plus, Sort.SET0, Ref(x), number(3));
+    assertSameAsSubstitution(expr);
+  }
+
+  @Test
+  public void arithmetic() {
+    // 3 * (2 + 2) = 12
+    Expression expr = FunCall(mul, Sort.SET0, number(3), FunCall(plus, Sort.SET0, number(2), number(2)));
+    assertSameAsSubstitution(expr);
+    assertEquals(number(12), expr.normalize(NormalizeVisitor.Mode.NF));
+  }
+
+  private static long environmentNormalizations(String name) {
+    for (Map.Entry<Abstract.Definition, TypecheckingProfiler.Stats> entry : TypecheckingProfiler.getInstance().getDefinitionStats().entrySet()) {
+      if (name.equals(entry.getKey().getName())) {
+        return entry.getValue().getCount(TypecheckingProfiler.Counter.ENVIRONMENT_NORMALIZATIONS);
+      }
+    }
+    return 0;
+  }
+
+  // Counts of the profiler are attributed to the definition that is typechecked on the thread that counts them,
+  // so a count of a definition shows that the engine was installed on the thread that typechecked it
+  @Test
+  public void engineOfTypechecking() {
+    NormalizeVisitor.setCurrentEngine(NormalizeVisitor.Engine.SUBSTITUTION);
+    setNormalizationEngine(NormalizeVisitor.Engine.ENVIRONMENT);
+    TypecheckingProfiler.setEnabled(true);
+    try {
+      typeCheckClass(
+          "\\function + (x y : Nat) : Nat => \\elim x | zero => y | suc x' => suc (x' + y)\n" +
+          "\\function p : 2 + 2 = 4 => path (\\lam _ => 4)");
+      assertTrue(environmentNormalizations("p") > 0);
+    } finally {
+      TypecheckingProfiler.setEnabled(false);
+    }
+    assertEquals(NormalizeVisitor.Engine.SUBSTITUTION, NormalizeVisitor.getCurrentEngine());
+  }
+
+  @Test
+  public void engineOfParallelTypechecking() {
+    NormalizeVisitor.setCurrentEngine(NormalizeVisitor.Engine.SUBSTITUTION);
+    setNormalizationEngine(NormalizeVisitor.Engine.ENVIRONMENT);
+    ForkJoinPool pool = new ForkJoinPool(2);
+    setTypecheckingPool(pool);
+    TypecheckingProfiler.setEnabled(true);
+    try {
+      typeCheckClass(
+          "\\function + (x y : Nat) : Nat => \\elim x | zero => y | suc x' => suc (x' + y)\n" +
+          "\\function p : 2 + 2 = 4 => path (\\lam _ => 4)\n" +
+          "\\function q : 3 + 1 = 4 => path (\\lam _ => 4)");
+      // p and q are typechecked by workers of the pool
+      assertTrue(environmentNormalizations("p") > 0);
+      assertTrue(environmentNormalizations("q") > 0);
+    } finally {
+      TypecheckingProfiler.setEnabled(false);
+      pool.shutdown();
+    }
+    assertEquals(NormalizeVisitor.Engine.SUBSTITUTION, NormalizeVisitor.getCurrentEngine());
+  }
+
+  @Test
+  public void substitutionEngineOfTypechecking() {
+    setNormalizationEngine(NormalizeVisitor.Engine.SUBSTITUTION);
+    TypecheckingProfiler.setEnabled(true);
+    try {
+      typeCheckClass(
+          "\\function + (x y : Nat) : Nat => \\elim x | zero => y | suc x' => suc (x' + y)\n" +
+          "\\function p : 2 + 2 = 4 => path (\\lam _ => 4)");
+      assertEquals(0, environmentNormalizations("p"));
+    } finally {
+      TypecheckingProfiler.setEnabled(false);
+    }
+  }
+}
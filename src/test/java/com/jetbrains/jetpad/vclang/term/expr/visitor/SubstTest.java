@@ -4,14 +4,16 @@ import com.jetbrains.jetpad.vclang.core.context.binding.Binding;
 import com.jetbrains.jetpad.vclang.core.context.binding.TypedBinding;
 import com.jetbrains.jetpad.vclang.core.context.param.DependentLink;
 import com.jetbrains.jetpad.vclang.core.context.param.SingleDependentLink;
+import com.jetbrains.jetpad.vclang.core.expr.AppExpression;
 import com.jetbrains.jetpad.vclang.core.expr.Expression;
 import com.jetbrains.jetpad.vclang.core.expr.LetExpression;
+import com.jetbrains.jetpad.vclang.core.expr.VariableSummary;
 import com.jetbrains.jetpad.vclang.typechecking.TypeCheckingTestCase;
 import org.junit.Test;
 
 import static com.jetbrains.jetpad.vclang.ExpressionFactory.*;
 import static com.jetbrains.jetpad.vclang.core.expr.ExpressionFactory.*;
-import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.*;
 
 public class SubstTest extends TypeCheckingTestCase {
   @Test
@@ -119,4 +121,31 @@ public class SubstTest extends TypeCheckingTestCase {
     Expression expr2 = new LetExpression(lets(let("x", Lam(z, Ref(z))), let("y", Lam(w, Zero()))), Zero());
     assertEquals(expr2, expr1.subst(a, Zero()));
   }
+
+  @Test
+  public void substSharesUnaffectedSubterms() {
+    // \lam (y : Nat) => A y [x := zero] is returned as is
+    Binding A = new TypedBinding("A", Pi(Nat(), Nat()));
+    SingleDependentLink y = singleParam("y", Nat());
+    Expression lam = Lam(y, Apps(Ref(A), Ref(y)));
+    // Summaries are bloom filters, so x must not collide with the variables of lam
+    Binding x;
+    do {
+      x = new TypedBinding("x", Nat());
+    } while ((VariableSummary.of(x) & lam.getVariableSummary()) != 0);
+    Expression expr = Apps(Ref(A), Apps(lam, Ref(x)));
+    Expression result = expr.subst(x, Zero());
+    assertEquals(Apps(Ref(A), Apps(lam, Zero())), result);
+    assertSame(lam, result.cast(AppExpression.class).getArgument().cast(AppExpression.class).getFunction());
+  }
+
+  @Test
+  public void findBindingSkipsUnrelatedSubterms() {
+    Binding x = new TypedBinding("x", Nat());
+    SingleDependentLink y = singleParam("y", Nat());
+    Expression expr = Lam(y, Apps(Ref(x), Ref(y)));
+    assertTrue(expr.findBinding(x));
+    assertTrue(expr.findBinding(y));
+    assertFalse(expr.findBinding(new TypedBinding("z", Nat())));
+  }
 }
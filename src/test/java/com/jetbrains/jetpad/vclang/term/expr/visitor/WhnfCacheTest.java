@@ -0,0 +1,57 @@
+package com.jetbrains.jetpad.vclang.term.expr.visitor;
+
+import com.jetbrains.jetpad.vclang.core.context.binding.inference.ExpressionInferenceVariable;
+import com.jetbrains.jetpad.vclang.core.context.binding.inference.InferenceVariable;
+import com.jetbrains.jetpad.vclang.core.context.param.SingleDependentLink;
+import com.jetbrains.jetpad.vclang.core.expr.Expression;
+import com.jetbrains.jetpad.vclang.core.expr.InferenceReferenceExpression;
+import com.jetbrains.jetpad.vclang.core.expr.UniverseExpression;
+import com.jetbrains.jetpad.vclang.core.expr.visitor.NormalizeVisitor;
+import com.jetbrains.jetpad.vclang.core.expr.visitor.WhnfCache;
+import com.jetbrains.jetpad.vclang.typechecking.implicitargs.equations.DummyEquations;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static com.jetbrains.jetpad.vclang.ExpressionFactory.*;
+import static com.jetbrains.jetpad.vclang.core.expr.ExpressionFactory.Apps;
+import static org.junit.Assert.*;
+
+public class WhnfCacheTest {
+  private final WhnfCache cache = new WhnfCache();
+  private WhnfCache previousCache;
+
+  @Before
+  public void installCache() {
+    previousCache = WhnfCache.setCurrent(cache);
+  }
+
+  @After
+  public void restoreCache() {
+    WhnfCache.setCurrent(previousCache);
+  }
+
+  @Test
+  public void reuseResult() {
+    SingleDependentLink x = singleParam("x", Universe(0));
+    Expression expr = Apps(Lam(x, Ref(x)), Universe(1));
+    Expression result = expr.normalize(NormalizeVisitor.Mode.WHNF);
+    long hits = cache.getHits();
+    assertSame(result, expr.normalize(NormalizeVisitor.Mode.WHNF));
+    assertEquals(hits + 1, cache.getHits());
+  }
+
+  @Test
+  public void invalidateOnSubstitution() {
+    InferenceVariable var = new ExpressionInferenceVariable(Pi(Universe(1), Universe(1)), null, Collections.emptySet());
+    InferenceReferenceExpression ref = new InferenceReferenceExpression(var, DummyEquations.getInstance());
+    Expression expr = Apps(ref, Universe(0));
+    assertFalse(expr.normalize(NormalizeVisitor.Mode.WHNF).isInstance(UniverseExpression.class));
+
+    SingleDependentLink y = singleParam("y", Universe(1));
+    var.solve(DummyEquations.getInstance(), Lam(y, Ref(y)));
+    assertTrue(expr.normalize(NormalizeVisitor.Mode.WHNF).isInstance(UniverseExpression.class));
+  }
+}
@@ -0,0 +1,55 @@
+package com.jetbrains.jetpad.vclang.typechecking;
+
+import com.jetbrains.jetpad.vclang.core.definition.FunctionDefinition;
+import com.jetbrains.jetpad.vclang.core.expr.visitor.ReductionBudget;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class DefinitionHeightTest extends TypeCheckingTestCase {
+  @After
+  public void disable() {
+    ReductionBudget.setLimits(0, 0);
+  }
+
+  private static String tower(int size) {
+    StringBuilder builder = new StringBuilder();
+    builder.append("\\data N | z | s N\n");
+    builder.append("\\function f0 (x : N) : N => x\n");
+    for (int i = 1; i <= size; i++) {
+      builder.append("\\function f").append(i).append(" (x : N) : N => f").append(i - 1).append(" (f").append(i - 1).append(" x)\n");
+    }
+    return builder.toString();
+  }
+
+  private int getHeight(TypeCheckClassResult result, String name) {
+    return ((FunctionDefinition) result.getDefinition(name)).getHeight();
+  }
+
+  @Test
+  public void heights() {
+    TypeCheckClassResult result = typeCheckClass(
+      "\\data N | z | s N\n" +
+      "\\function a => z\n" +
+      "\\function b => s a\n" +
+      "\\function c => \\Sigma (x : N) (x = a)\n" +
+      "\\function d (x : N) : N => \\elim x | z => b | s x' => d x'\n" +
+      "\\function e (x : N) : N => d (d x)");
+    assertEquals(1, getHeight(result, "a"));
+    assertEquals(2, getHeight(result, "b"));
+    assertEquals(2, getHeight(result, "c"));
+    assertEquals(3, getHeight(result, "d"));
+    assertEquals(4, getHeight(result, "e"));
+  }
+
+  @Test
+  public void higherSideIsUnfolded() {
+    // Each function of the tower doubles the number of unfoldings that are required to normalize it
+    ReductionBudget.setLimits(100, 0);
+    typeCheckClass(tower(20) +
+      "\\function g (x : N) : N => f20 x\n" +
+      "\\function test (x : N) : f20 x = g x => path (\\lam _ => f20 x)\n" +
+      "\\function test' (x : N) : g (f20 x) = f20 (g x) => path (\\lam _ => f20 (f20 x))");
+  }
+}
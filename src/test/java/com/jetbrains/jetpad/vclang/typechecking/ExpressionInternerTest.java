@@ -0,0 +1,91 @@
+package com.jetbrains.jetpad.vclang.typechecking;
+
+import com.jetbrains.jetpad.vclang.core.context.binding.Binding;
+import com.jetbrains.jetpad.vclang.core.context.binding.TypedBinding;
+import com.jetbrains.jetpad.vclang.core.definition.Constructor;
+import com.jetbrains.jetpad.vclang.core.definition.DataDefinition;
+import com.jetbrains.jetpad.vclang.core.expr.*;
+import com.jetbrains.jetpad.vclang.core.sort.Sort;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static com.jetbrains.jetpad.vclang.ExpressionFactory.Ref;
+import static org.junit.Assert.*;
+
+public class ExpressionInternerTest extends TypeCheckingTestCase {
+  private DataDefinition dataN;
+  private Constructor z;
+  private Constructor s;
+
+  @Before
+  public void initialize() {
+    TypeCheckClassResult result = typeCheckClass("\\data N | z | s N");
+    dataN = (DataDefinition) result.getDefinition("N");
+    z = dataN.getConstructor("z");
+    s = dataN.getConstructor("s");
+    ExpressionInterner.setEnabled(true);
+  }
+
+  @After
+  public void disable() {
+    ExpressionInterner.setEnabled(false);
+  }
+
+  private ConCallExpression conCall(Constructor constructor, Expression... args) {
+    return ExpressionInterner.intern(new ConCallExpression(constructor, Sort.SET0, Collections.emptyList(), Arrays.asList(args)));
+  }
+
+  @Test
+  public void closedTermsShared() {
+    ConCallExpression one1 = conCall(s, conCall(z));
+    ConCallExpression one2 = conCall(s, conCall(z));
+    assertSame(one1, one2);
+    assertTrue(ExpressionInterner.isInterned(one1));
+    assertSame(ExpressionInterner.intern(new DataCallExpression(dataN, Sort.SET0, Collections.emptyList())), ExpressionInterner.intern(new DataCallExpression(dataN, Sort.SET0, Collections.emptyList())));
+  }
+
+  @Test
+  public void openTermsNotShared() {
+    Binding x = new TypedBinding("x", new DataCallExpression(dataN, Sort.SET0, Collections.emptyList()));
+    ConCallExpression sx1 = conCall(s, Ref(x));
+    ConCallExpression sx2 = conCall(s, Ref(x));
+    assertNotSame(sx1, sx2);
+    assertFalse(ExpressionInterner.isInterned(sx1));
+  }
+
+  @Test
+  public void substitutionKeepsInterned() {
+    Binding x = new TypedBinding("x", new DataCallExpression(dataN, Sort.SET0, Collections.emptyList()));
+    ConCallExpression one = conCall(s, conCall(z));
+    assertSame(one, one.subst(x, conCall(z)));
+    assertSame(one, conCall(s, Ref(x)).subst(x, conCall(z)));
+  }
+
+  @Test
+  public void unusedExpressionsCollected() throws InterruptedException {
+    int size = ExpressionInterner.getSize();
+    Expression expr = conCall(z);
+    for (int i = 0; i < 10000; i++) {
+      expr = conCall(s, expr);
+    }
+    assertTrue(ExpressionInterner.getSize() > size + 10000);
+
+    expr = null;
+    for (int i = 0; i < 100 && ExpressionInterner.getSize() > size; i++) {
+      System.gc();
+      Thread.sleep(10);
+    }
+    assertTrue(ExpressionInterner.getSize() <= size + 1);
+  }
+
+  @Test
+  public void disabled() {
+    ExpressionInterner.setEnabled(false);
+    assertNotSame(conCall(z), conCall(z));
+    assertEquals(0, ExpressionInterner.getSize());
+  }
+}
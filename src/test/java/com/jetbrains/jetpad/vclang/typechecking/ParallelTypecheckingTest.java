@@ -0,0 +1,110 @@
+package com.jetbrains.jetpad.vclang.typechecking;
+
+import com.jetbrains.jetpad.vclang.core.definition.Definition;
+import com.jetbrains.jetpad.vclang.core.expr.visitor.WhnfCache;
+import com.jetbrains.jetpad.vclang.error.GeneralError;
+import com.jetbrains.jetpad.vclang.typechecking.error.TypeCheckingError;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ParallelTypecheckingTest extends TypeCheckingTestCase {
+  private static final String MODULE =
+    "\\data List (A : \\Type0) | nil | cons A (List A)\n" +
+    "\\function length {A : \\Type0} (xs : List A) : Nat => \\elim xs | nil => 0 | cons _ xs => suc (length xs)\n" +
+    "\\function + (x y : Nat) : Nat => \\elim x | zero => y | suc x' => suc (x' + y)\n" +
+    "\\function bad1 : Nat => nil\n" +
+    "\\function isEven (n : Nat) : Nat => \\elim n | zero => 1 | suc n => isOdd n\n" +
+    "\\function isOdd (n : Nat) : Nat => \\elim n | zero => 0 | suc n => isEven n\n" +
+    "\\function bad2 (x : Nat) : List Nat => x\n" +
+    "\\function test1 => length (cons 1 (cons 2 nil)) + 3\n" +
+    "\\function bad3 => bad1 + nil\n" +
+    "\\function test2 => isEven (length (cons test1 nil))\n" +
+    "\\function bad4 (x : Nat) : Nat => bad4 x";
+
+  private ForkJoinPool pool;
+
+  @Before
+  public void createPool() {
+    pool = new ForkJoinPool(4);
+  }
+
+  @After
+  public void shutdownPool() {
+    pool.shutdown();
+  }
+
+  private List<String> errorDefinitions() {
+    List<String> result = new ArrayList<>();
+    for (GeneralError error : errorList) {
+      result.add(error instanceof TypeCheckingError ? ((TypeCheckingError) error).definition.getName() : error.getClass().getSimpleName());
+    }
+    return result;
+  }
+
+  @Test
+  public void independentDefinitions() {
+    setTypecheckingPool(pool);
+    TypeCheckClassResult result = typeCheckClass(
+      "\\data N | z | s N\n" +
+      "\\function f1 : N => s z\n" +
+      "\\function f2 : N => f1\n" +
+      "\\function f3 (x : N) : N => \\elim x | z => f2 | s x => f3 x\n" +
+      "\\data D | con1 | con2 N\n" +
+      "\\function f4 (d : D) : N => \\elim d | con1 => f3 f1 | con2 n => n");
+    for (String name : new String[] { "N", "f1", "f2", "f3", "D", "f4" }) {
+      assertEquals(Definition.TypeCheckingStatus.NO_ERRORS, result.getDefinition(name).status());
+    }
+  }
+
+  @Test
+  public void sameErrorsInSameOrder() {
+    typeCheckClass(MODULE, -1);
+    List<String> expected = errorDefinitions();
+    assertTrue(expected.size() >= 4);
+
+    setTypecheckingPool(pool);
+    for (int i = 0; i < 10; i++) {
+      errorList.clear();
+      typeCheckClass(MODULE, -1);
+      assertEquals(expected, errorDefinitions());
+    }
+  }
+
+  @Test
+  public void whnfCache() {
+    typeCheckClass(MODULE, -1);
+    List<String> expected = errorDefinitions();
+
+    WhnfCache cache = new WhnfCache();
+    setWhnfCache(cache);
+    setTypecheckingPool(pool);
+    errorList.clear();
+    typeCheckClass(MODULE, -1);
+    assertEquals(expected, errorDefinitions());
+    assertTrue(cache.getMisses() > 0);
+  }
+
+  @Test
+  public void mutualRecursion() {
+    setTypecheckingPool(pool);
+    TypeCheckClassResult result = typeCheckClass(
+      "\\data N | z | s N\n" +
+      "\\function isEven (n : N) : N => \\elim n | z => s z | s n => isOdd n\n" +
+      "\\function isOdd (n : N) : N => \\elim n | z => z | s n => isEven n\n" +
+      "\\data Tree : \\Set0 | leaf | node Forest\n" +
+      "\\data Forest : \\Set0 | empty | cons Tree Forest\n" +
+      "\\function size (t : Tree) : N => \\elim t | leaf => isEven z | node f => sizeF f\n" +
+      "\\function sizeF (f : Forest) : N => \\elim f | empty => z | cons t f => s (sizeF f)");
+    for (String name : new String[] { "N", "isEven", "isOdd", "Tree", "Forest", "size", "sizeF" }) {
+      assertEquals(Definition.TypeCheckingStatus.NO_ERRORS, result.getDefinition(name).status());
+    }
+  }
+}
@@ -0,0 +1,61 @@
+package com.jetbrains.jetpad.vclang.typechecking;
+
+import com.jetbrains.jetpad.vclang.core.definition.Definition;
+import com.jetbrains.jetpad.vclang.core.expr.visitor.ReductionBudget;
+import com.jetbrains.jetpad.vclang.typechecking.error.TypeCheckingError;
+import com.jetbrains.jetpad.vclang.typechecking.error.local.ReductionLimitError;
+import org.junit.After;
+import org.junit.Test;
+
+import static com.jetbrains.jetpad.vclang.typechecking.Matchers.typecheckingError;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class ReductionBudgetTest extends TypeCheckingTestCase {
+  private static final String ARITHMETIC =
+    "\\data N | z | s N\n" +
+    "\\function + (x y : N) : N => \\elim x | z => y | s x' => s (x' + y)\n" +
+    "\\function * (x y : N) : N => \\elim x | z => z | s x' => y + (x' * y)\n" +
+    "\\function T (n : N) : \\Set0 => \\elim n | z => N | s n' => T n'\n" +
+    "\\function five => s (s (s (s (s z))))\n";
+
+  @After
+  public void disable() {
+    ReductionBudget.setLimits(0, 0);
+  }
+
+  @Test
+  public void reductionLimitExceeded() {
+    ReductionBudget.setLimits(20, 0);
+    TypeCheckClassResult result = typeCheckClass(ARITHMETIC + "\\function test : T (five * five) => z", 1);
+    assertThatErrorsAre(typecheckingError(ReductionLimitError.class));
+    assertNotNull(((ReductionLimitError) ((TypeCheckingError) errorList.get(0)).localError).unfolded);
+    assertEquals(Definition.TypeCheckingStatus.BODY_HAS_ERRORS, result.getDefinition("test").status());
+    assertEquals(Definition.TypeCheckingStatus.NO_ERRORS, result.getDefinition("*").status());
+  }
+
+  @Test
+  public void limitIsPerDefinition() {
+    ReductionBudget.setLimits(1000, 0);
+    typeCheckClass(ARITHMETIC +
+      "\\function test1 : T (five * five) => z\n" +
+      "\\function test2 : T (five * five) => z\n" +
+      "\\function test3 : T (five * five) => z");
+  }
+
+  @Test
+  public void timeout() {
+    ReductionBudget.setLimits(0, 1);
+    typeCheckClass(ARITHMETIC +
+      "\\function big => five * (five * (five * (five * five)))\n" +
+      "\\function test : T (big * (big * big)) => z", 1);
+    assertThatErrorsAre(typecheckingError(ReductionLimitError.class));
+  }
+
+  @Test
+  public void noBudgetOutsideOfTypechecking() {
+    ReductionBudget.setLimits(1, 0);
+    assertNull(ReductionBudget.getCurrent());
+  }
+}
@@ -3,6 +3,8 @@ package com.jetbrains.jetpad.vclang.typechecking;
 import com.jetbrains.jetpad.vclang.core.context.binding.Binding;
 import com.jetbrains.jetpad.vclang.core.definition.Definition;
 import com.jetbrains.jetpad.vclang.core.expr.Expression;
+import com.jetbrains.jetpad.vclang.core.expr.visitor.NormalizeVisitor;
+import com.jetbrains.jetpad.vclang.core.expr.visitor.WhnfCache;
 import com.jetbrains.jetpad.vclang.error.ListErrorReporter;
 import com.jetbrains.jetpad.vclang.frontend.Concrete;
 import com.jetbrains.jetpad.vclang.frontend.ConcreteExpressionFactory;
@@ -18,6 +20,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.notNullValue;
@@ -28,6 +31,9 @@ public class TypeCheckingTestCase extends NameResolverTestCase {
   private static SimpleTypecheckerState PRELUDE_TYPECHECKER_STATE = null;
 
   private TypecheckerState state = new SimpleTypecheckerState();
+  private ForkJoinPool typecheckingPool = null;
+  private NormalizeVisitor.Engine normalizationEngine = NormalizeVisitor.Engine.SUBSTITUTION;
+  private WhnfCache whnfCache = null;
 
   protected final LocalErrorReporter localErrorReporter = new TestLocalErrorReporter(errorReporter);
 
@@ -109,8 +115,24 @@ public class TypeCheckingTestCase extends NameResolverTestCase {
   }
 
 
+  protected void setTypecheckingPool(ForkJoinPool pool) {
+    typecheckingPool = pool;
+  }
+
+  protected void setNormalizationEngine(NormalizeVisitor.Engine engine) {
+    normalizationEngine = engine;
+  }
+
+  protected void setWhnfCache(WhnfCache cache) {
+    whnfCache = cache;
+  }
+
   private TypecheckerState typeCheckClass(Concrete.ClassDefinition classDefinition, int errors) {
-    new Typechecking(state, staticNsProvider, dynamicNsProvider, HasOpens.GET, localErrorReporter, new TypecheckedReporter.Dummy(), new DependencyListener() {}).typecheckModules(Collections.singletonList(classDefinition));
+    Typechecking typechecking = new Typechecking(state, staticNsProvider, dynamicNsProvider, HasOpens.GET, localErrorReporter, new TypecheckedReporter.Dummy(), new DependencyListener() {});
+    typechecking.setForkJoinPool(typecheckingPool);
+    typechecking.setNormalizationEngine(normalizationEngine);
+    typechecking.setWhnfCache(whnfCache);
+    typechecking.typecheckModules(Collections.singletonList(classDefinition));
     assertThat(errorList, containsErrors(errors));
     return state;
   }
@@ -0,0 +1,88 @@
+package com.jetbrains.jetpad.vclang.typechecking;
+
+import com.jetbrains.jetpad.vclang.term.Abstract;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class TypecheckingProfilerTest extends TypeCheckingTestCase {
+  @Before
+  public void enable() {
+    TypecheckingProfiler.setEnabled(true);
+  }
+
+  @After
+  public void disable() {
+    TypecheckingProfiler.setEnabled(false);
+  }
+
+  private TypecheckingProfiler.Stats getStats(String name) {
+    for (Map.Entry<Abstract.Definition, TypecheckingProfiler.Stats> entry : TypecheckingProfiler.getInstance().getDefinitionStats().entrySet()) {
+      if (name.equals(entry.getKey().getName())) {
+        return entry.getValue();
+      }
+    }
+    return null;
+  }
+
+  @Test
+  public void definitionsProfiled() {
+    typeCheckClass(
+      "\\data N | z | s N\n" +
+      "\\function T (n : N) : \\Set0 => \\elim n | z => N | s _ => N\n" +
+      "\\function test : T (s z) => z");
+
+    TypecheckingProfiler.Stats t = getStats("T");
+    TypecheckingProfiler.Stats test = getStats("test");
+    assertNotNull(t);
+    assertNotNull(test);
+    assertTrue(test.getFrames() > 0);
+    assertTrue(test.getCount(TypecheckingProfiler.Counter.REDUCTIONS) > 0);
+    assertTrue(test.getCount(TypecheckingProfiler.Counter.COMPARISONS) > 0);
+    assertTrue(TypecheckingProfiler.getInstance().getCount(TypecheckingProfiler.Counter.REDUCTIONS) >= test.getCount(TypecheckingProfiler.Counter.REDUCTIONS));
+  }
+
+  @Test
+  public void nestedFrames() {
+    Abstract.Definition outer = typeCheckDef("\\function outer => 0").getAbstractDefinition();
+    Abstract.Definition inner = typeCheckDef("\\function inner => 0").getAbstractDefinition();
+    // Discard frames of typechecking
+    TypecheckingProfiler.setEnabled(true);
+
+    TypecheckingProfiler.Frame outerFrame = TypecheckingProfiler.start(outer);
+    TypecheckingProfiler.Frame innerFrame = TypecheckingProfiler.start(inner);
+    TypecheckingProfiler.count(TypecheckingProfiler.Counter.EQUATIONS);
+    TypecheckingProfiler.count(TypecheckingProfiler.Counter.EQUATIONS);
+    TypecheckingProfiler.finish(innerFrame);
+    TypecheckingProfiler.count(TypecheckingProfiler.Counter.REDUCTIONS);
+    TypecheckingProfiler.finish(outerFrame);
+
+    TypecheckingProfiler.Stats outerStats = TypecheckingProfiler.getInstance().getDefinitionStats().get(outer);
+    TypecheckingProfiler.Stats innerStats = TypecheckingProfiler.getInstance().getDefinitionStats().get(inner);
+    assertEquals(1, outerStats.getFrames());
+    assertEquals(1, innerStats.getFrames());
+    // Counts go to the innermost frame only
+    assertEquals(0, outerStats.getCount(TypecheckingProfiler.Counter.EQUATIONS));
+    assertEquals(1, outerStats.getCount(TypecheckingProfiler.Counter.REDUCTIONS));
+    assertEquals(2, innerStats.getCount(TypecheckingProfiler.Counter.EQUATIONS));
+    assertEquals(0, innerStats.getCount(TypecheckingProfiler.Counter.REDUCTIONS));
+    assertEquals(2, TypecheckingProfiler.getInstance().getCount(TypecheckingProfiler.Counter.EQUATIONS));
+  }
+
+  @Test
+  public void report() throws IOException {
+    typeCheckClass("\\function f (x : Nat) : Nat => x");
+
+    StringBuilder builder = new StringBuilder();
+    TypecheckingProfiler.getInstance().writeReport(builder, Abstract.Definition::getName, definition -> "Test\"Module");
+    String report = builder.toString();
+    assertTrue(report.contains("\"name\": \"f\", \"module\": \"Test\\\"Module\""));
+    assertTrue(report.contains("\"flamegraph\": {\"name\": \"typechecking\""));
+    assertTrue(report.contains("\"reductions\": "));
+  }
+}
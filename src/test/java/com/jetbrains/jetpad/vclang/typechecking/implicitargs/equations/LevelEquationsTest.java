@@ -0,0 +1,82 @@
+package com.jetbrains.jetpad.vclang.typechecking.implicitargs.equations;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class LevelEquationsTest {
+  private static LevelEquations<String> equations(List<String> variables, List<LevelEquation<String>> equations) {
+    LevelEquations<String> result = new LevelEquations<>();
+    variables.forEach(result::addVariable);
+    equations.forEach(result::addEquation);
+    return result;
+  }
+
+  @Test
+  public void solution() {
+    // 1 <= x, x + 2 <= y, z <= max(y + 5, 0)
+    LevelEquations<String> equations = equations(Arrays.asList("x", "y", "z"), Arrays.asList(
+      new LevelEquation<>(null, "x", -1),
+      new LevelEquation<>("x", "y", -2),
+      new LevelEquation<>("y", "z", 5, 0)));
+    Map<String, Integer> solution = new HashMap<>();
+    assertNull(equations.solve(solution));
+    assertEquals(Integer.valueOf(-1), solution.get("x"));
+    assertEquals(Integer.valueOf(-3), solution.get("y"));
+    assertEquals(Integer.valueOf(0), solution.get("z"));
+    assertFalse(solution.containsKey(null));
+  }
+
+  @Test
+  public void infinity() {
+    LevelEquations<String> equations = equations(Arrays.asList("x", "y", "z"), Arrays.asList(
+      new LevelEquation<>("x", "y", 0),
+      new LevelEquation<>("x"),
+      new LevelEquation<>(null, "z", 0)));
+    Map<String, Integer> solution = new HashMap<>();
+    assertNull(equations.solve(solution));
+    assertNull(solution.get("x"));
+    assertNull(solution.get("y"));
+    assertEquals(Integer.valueOf(0), solution.get("z"));
+  }
+
+  @Test
+  public void negativeCycle() {
+    LevelEquation<String> xy = new LevelEquation<>("x", "y", -1);
+    LevelEquation<String> yx = new LevelEquation<>("y", "x", 0);
+    LevelEquations<String> equations = equations(Arrays.asList("x", "y"), Arrays.asList(xy, yx));
+    List<LevelEquation<String>> path = equations.solve(new HashMap<>());
+    assertNotNull(path);
+    assertTrue(path.contains(xy));
+    assertTrue(path.contains(yx));
+  }
+
+  @Test
+  public void constantBound() {
+    // 1 <= x, x <= 0
+    LevelEquation<String> lower = new LevelEquation<>(null, "x", -1);
+    LevelEquation<String> upper = new LevelEquation<>("x", null, 0);
+    LevelEquations<String> equations = equations(Arrays.asList("x"), Arrays.asList(lower, upper));
+    assertEquals(Arrays.asList(lower, upper), equations.solve(new HashMap<>()));
+  }
+
+  @Test
+  public void longChain() {
+    int size = 10000;
+    LevelEquations<String> equations = new LevelEquations<>();
+    for (int i = 0; i < size; i++) {
+      equations.addVariable("x" + i);
+    }
+    for (int i = size - 1; i > 0; i--) {
+      equations.addEquation(new LevelEquation<>("x" + (i - 1), "x" + i, -1));
+    }
+    Map<String, Integer> solution = new HashMap<>();
+    assertNull(equations.solve(solution));
+    assertEquals(Integer.valueOf(-(size - 1)), solution.get("x" + (size - 1)));
+  }
+}
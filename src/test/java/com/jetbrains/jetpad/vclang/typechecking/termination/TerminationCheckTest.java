@@ -236,4 +236,46 @@ public class TerminationCheckTest extends TypeCheckingTestCase {
     assert !callCategory.checkTermination();
   }
 
+  @Test
+  public void largeMutualRecursion() {
+    int size = 25;
+    TestVertex[] fs = new TestVertex[size];
+    for (int i = 0; i < size; i++) {
+      fs[i] = new TestVertex("f" + i, "x", "y");
+    }
+    Set<BaseCallMatrix<TestVertex>> cms = new HashSet<>();
+    for (int i = 0; i < size; i++) {
+      cms.add(new TestCallMatrix(i + "-next", fs[i], fs[(i + 1) % size], '=', 0, '<', 1));
+      cms.add(new TestCallMatrix(i + "-first", fs[i], fs[0], '<', 0, '?'));
+    }
+    BaseCallGraph callCategory = TestCallGraph.calculateClosure(cms);
+    assert callCategory.checkTermination();
+
+    cms.add(new TestCallMatrix("loop", fs[size - 1], fs[size - 1], '=', 0, '=', 1));
+    callCategory = TestCallGraph.calculateClosure(cms);
+    assert !callCategory.checkTermination();
+  }
+
+  @Test
+  public void wideMatrixComposition() {
+    // Arguments are shifted by one, so the composition shifts them by two across the boundary of packed words
+    int size = 40;
+    String[] arguments = new String[size];
+    Object[] data = new Object[2 * size];
+    for (int i = 0; i < size; i++) {
+      arguments[i] = "x" + i;
+      data[2 * i] = i == size - 1 ? '<' : '=';
+      data[2 * i + 1] = (i + 1) % size;
+    }
+    TestVertex f = new TestVertex("f", arguments);
+    TestCallMatrix m = new TestCallMatrix("shift", f, f, data);
+    BaseCallMatrix<TestVertex> composite = new CompositeCallMatrix<>(m, m);
+    for (int i = 0; i < size; i++) {
+      for (int j = 0; j < size; j++) {
+        BaseCallMatrix.R expected = j != (i + 2) % size ? BaseCallMatrix.R.Unknown : i >= size - 2 ? BaseCallMatrix.R.LessThan : BaseCallMatrix.R.Equal;
+        assert composite.getValue(i, j) == expected;
+      }
+    }
+    assert m.leq(m) && !composite.leq(m) && !m.leq(composite);
+  }
 }
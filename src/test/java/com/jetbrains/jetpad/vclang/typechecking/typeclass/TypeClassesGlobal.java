@@ -1,8 +1,11 @@
 package com.jetbrains.jetpad.vclang.typechecking.typeclass;
 
 import com.jetbrains.jetpad.vclang.typechecking.TypeCheckingTestCase;
+import com.jetbrains.jetpad.vclang.typechecking.TypecheckingProfiler;
 import org.junit.Test;
 
+import static org.junit.Assert.assertEquals;
+
 public class TypeClassesGlobal extends TypeCheckingTestCase {
   @Test
   public void inferInstance() {
@@ -154,4 +157,25 @@ public class TypeClassesGlobal extends TypeCheckingTestCase {
         "\\function f {A : \\Type0} {z : Y1 { A => A } } (a : A) => B1 a\n" +
         "\\function g : f 1 = 1 => path (\\lam _ => 1)");
   }
+
+  @Test
+  public void instanceLookupsAreCached() {
+    TypecheckingProfiler.setEnabled(true);
+    try {
+      typeCheckClass(
+          "\\class X {\n" +
+          "  | A : \\Type0\n" +
+          "  | B : A -> \\Type0\n" +
+          "}\n" +
+          "\\view X' \\on X \\by A { B }\n" +
+          "\\data D | c\n" +
+          "\\instance D-X => \\new X' { A => D | B => \\lam _ => D }\n" +
+          "\\function f => \\Sigma (B c) (B c) (B c)");
+      TypecheckingProfiler profiler = TypecheckingProfiler.getInstance();
+      assertEquals(3, profiler.getCount(TypecheckingProfiler.Counter.INSTANCE_LOOKUPS));
+      assertEquals(2, profiler.getCount(TypecheckingProfiler.Counter.INSTANCE_HITS));
+    } finally {
+      TypecheckingProfiler.setEnabled(false);
+    }
+  }
 }